@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer;
+
+import com.nokia.example.picasaviewer.bench.FeedSimulator;
+import com.nokia.example.picasaviewer.bench.GestureReplay;
+import com.nokia.example.picasaviewer.common.PicasaStorage;
+import com.nokia.example.picasaviewer.common.SnapshotStore;
+import com.nokia.example.picasaviewer.util.StartupTimer;
+
+/**
+ * Reports the cold start and the resume of the application against the
+ * feed simulator: the steps marked by the StartupTimer up to the first
+ * frame, the heap in use while paused, the snapshot of the grid saved
+ * while paused and the time from the resume to the first frame. In the application package as pauseApp() is protected.
+ * Exits with 1 if a value was not measured, so that the smoke target fails.
+ */
+public final class StartupReport {
+    public static void main(final String[] args) throws Exception {
+        final int width = Integer.getInteger("bench.screen.width", 240).intValue();
+        final int height = Integer.getInteger("bench.screen.height", 320).intValue();
+        final FeedSimulator simulator = new FeedSimulator(0, 100);
+        int failures = 0;
+
+        try {
+            System.setProperty(PicasaStorage.BASE_URL_PROPERTY,
+                    simulator.getBaseUrl());
+
+            final GestureReplay replay = new GestureReplay(width, height, false);
+            final PicasaViewer viewer = new PicasaViewer();
+
+            viewer.startApp();
+            replay.settle();
+
+            final long firstFrame = StartupTimer.getTimeToFirstFrame();
+
+            System.out.println("Cold start: " + StartupTimer.getMarks());
+            failures += report("time to first frame " + firstFrame + " ms",
+                    firstFrame >= 0);
+
+            viewer.pauseApp();
+            replay.settle();
+
+            final long backgroundHeap = viewer.getBackgroundHeap();
+
+            failures += report("heap in use while paused "
+                    + backgroundHeap / 1024 + " kB", backgroundHeap > 0);
+            failures += report("snapshot saved while paused",
+                    SnapshotStore.load(width, height) != null);
+
+            viewer.startApp();
+            replay.settle();
+
+            final long resumeTime = viewer.getResumeTime();
+
+            failures += report("time from resume to first frame "
+                    + resumeTime + " ms", resumeTime >= 0);
+
+            viewer.exit();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            failures++;
+        }
+        finally {
+            simulator.stop();
+        }
+
+        System.out.println(failures == 0
+                ? "Startup report passed"
+                : "Startup report failed in " + failures + " checks");
+
+        // The timers of the application are not daemons
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static int report(final String name, final boolean passed) {
+        System.out.println((passed ? "OK     " : "FAILED ") + name);
+
+        return passed ? 0 : 1;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+/**
+ * A benchmark: run() is measured, setUp() and tearDown() are not. The
+ * result of run() is consumed by the runner so the work can not be
+ * optimized away.
+ */
+public abstract class Benchmark {
+    // Members
+    private final String name;
+
+    protected Benchmark(final String name) {
+        this.name = name;
+    }
+
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Called once before the warm-up.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Runs one operation.
+     * @return The result of the operation.
+     */
+    public abstract Object run() throws Exception;
+
+    /**
+     * Called once after the measurement.
+     */
+    public void tearDown() throws Exception {
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs benchmarks in the manner of JMH: timed warm-up iterations followed
+ * by timed measurement iterations, reporting the average time and the
+ * allocated bytes per operation.
+ *
+ * Configured with system properties:
+ *   bench.filter      Only run the benchmarks whose name contains this
+ *   bench.warmup      Number of warm-up iterations, default 3
+ *   bench.iterations  Number of measurement iterations, default 5
+ *   bench.time        Length of an iteration in ms, default 1000
+ *   bench.output      Also append the results as CSV to this file
+ */
+public final class BenchmarkRunner {
+    // Members
+    private final List benchmarks = new ArrayList();
+    private final String filter = System.getProperty("bench.filter", "");
+    private final int warmupIterations = Integer.getInteger("bench.warmup", 3).intValue();
+    private final int iterations = Integer.getInteger("bench.iterations", 5).intValue();
+    private final long iterationTime = Long.getLong("bench.time", 1000).longValue();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private volatile Object sink;
+
+    /**
+     * The result of a benchmark.
+     */
+    public static final class Result {
+        public final String name;
+        public final double nanosPerOp;
+        public final double errorNanosPerOp;
+        public final double bytesPerOp;
+        public final long operations;
+
+        Result(final String name,
+               final double nanosPerOp,
+               final double errorNanosPerOp,
+               final double bytesPerOp,
+               final long operations)
+        {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.errorNanosPerOp = errorNanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.operations = operations;
+        }
+    }
+
+    public void add(final Benchmark benchmark) {
+        if (benchmark.getName().indexOf(filter) >= 0) {
+            benchmarks.add(benchmark);
+        }
+    }
+
+    /**
+     * Runs the added benchmarks and prints the results.
+     * @return The results in the order of the benchmarks.
+     */
+    public List runAll(final PrintStream out) throws Exception {
+        final List results = new ArrayList();
+
+        out.println(format("Benchmark", "ns/op", "error", "B/op", "ops"));
+
+        for (int i = 0; i < benchmarks.size(); i++) {
+            final Result result = run((Benchmark) benchmarks.get(i));
+
+            results.add(result);
+            out.println(format(result.name,
+                    String.format(Locale.ROOT, "%.1f", result.nanosPerOp),
+                    String.format(Locale.ROOT, "+- %.1f", result.errorNanosPerOp),
+                    String.format(Locale.ROOT, "%.0f", result.bytesPerOp),
+                    Long.toString(result.operations)));
+        }
+
+        final String output = System.getProperty("bench.output");
+
+        if (output != null) {
+            writeCsv(output, results);
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs one benchmark.
+     */
+    public Result run(final Benchmark benchmark) throws Exception {
+        final double[] samples = new double[iterations];
+        long operations = 0;
+        long allocated = 0;
+
+        benchmark.setUp();
+
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iterate(benchmark, null);
+            }
+
+            for (int i = 0; i < iterations; i++) {
+                final long[] counts = new long[3];
+
+                iterate(benchmark, counts);
+                samples[i] = (double) counts[1] / counts[0];
+                operations += counts[0];
+                allocated += counts[2];
+            }
+        }
+        finally {
+            benchmark.tearDown();
+        }
+
+        double mean = 0;
+
+        for (int i = 0; i < samples.length; i++) {
+            mean += samples[i] / samples.length;
+        }
+
+        double variance = 0;
+
+        for (int i = 0; i < samples.length; i++) {
+            variance += (samples[i] - mean) * (samples[i] - mean)
+                    / Math.max(1, samples.length - 1);
+        }
+
+        return new Result(benchmark.getName(), mean, Math.sqrt(variance),
+                (double) allocated / Math.max(1, operations), operations);
+    }
+
+    /**
+     * Runs the benchmark for one iteration.
+     * @param counts Receives the operations, nanoseconds and allocated
+     * bytes, or null for a warm-up iteration.
+     */
+    private void iterate(final Benchmark benchmark, final long[] counts)
+        throws Exception
+    {
+        final long threadId = Thread.currentThread().getId();
+        final long startBytes = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        final long end = start + iterationTime * 1000000L;
+        long operations = 0;
+        long now;
+
+        do {
+            sink = benchmark.run();
+            operations++;
+            now = System.nanoTime();
+        }
+        while (now < end);
+
+        if (counts != null) {
+            counts[0] = operations;
+            counts[1] = now - start;
+            counts[2] = threads.getThreadAllocatedBytes(threadId) - startBytes;
+        }
+    }
+
+    private static String format(final String name,
+                                 final String time,
+                                 final String error,
+                                 final String bytes,
+                                 final String operations)
+    {
+        return String.format(Locale.ROOT, "%-48s %14s %12s %12s %10s",
+                new Object[] {name, time, error, bytes, operations});
+    }
+
+    private static void writeCsv(final String file, final List results)
+        throws IOException
+    {
+        final FileWriter writer = new FileWriter(file, true);
+
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                final Result result = (Result) results.get(i);
+
+                writer.write(String.format(Locale.ROOT, "%s,%.1f,%.1f,%.0f,%d%n",
+                        new Object[] {result.name,
+                            Double.valueOf(result.nanosPerOp),
+                            Double.valueOf(result.errorNanosPerOp),
+                            Double.valueOf(result.bytesPerOp),
+                            Long.valueOf(result.operations)}));
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
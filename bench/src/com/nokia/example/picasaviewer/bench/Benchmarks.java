@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import com.nokia.example.picasaviewer.common.CoalescingCacheBenchmarks;
+import com.nokia.example.picasaviewer.common.FeedLoadBenchmarks;
+import com.nokia.example.picasaviewer.common.FeedParseBenchmarks;
+import com.nokia.example.picasaviewer.common.HistoryStoreBenchmarks;
+import com.nokia.example.picasaviewer.common.ModelDiffBenchmarks;
+import com.nokia.example.picasaviewer.common.QuotaBenchmarks;
+import com.nokia.example.picasaviewer.common.ThumbnailAtlasBenchmarks;
+import com.nokia.example.picasaviewer.util.ImageUtilsBenchmarks;
+import com.nokia.example.picasaviewer.util.TextLayoutBenchmarks;
+
+/**
+ * Runs the benchmarks of the application code on a desktop JVM. The device
+ * APIs are replaced with the stubs in bench/stubs. See BenchmarkRunner for
+ * the options, e.g. -Dbench.filter=ImageUtils.
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+
+        ImageUtilsBenchmarks.addTo(runner);
+        FeedParseBenchmarks.addTo(runner);
+        TextLayoutBenchmarks.addTo(runner);
+        FeedLoadBenchmarks.addTo(runner);
+        QuotaBenchmarks.addTo(runner);
+        ModelDiffBenchmarks.addTo(runner);
+        CoalescingCacheBenchmarks.addTo(runner);
+        HistoryStoreBenchmarks.addTo(runner);
+        ThumbnailAtlasBenchmarks.addTo(runner);
+        runner.runAll(System.out);
+    }
+}
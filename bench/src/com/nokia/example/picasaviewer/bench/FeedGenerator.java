@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic Picasa feeds in the JSON format requested by
+ * PicasaStorage: entry(title,author(name),updated,media:group).
+ */
+public final class FeedGenerator {
+    // Constants
+    private static final String[] WORDS = {
+        "sunset", "over", "the", "lake", "mountain", "morning", "city",
+        "lights", "old", "harbour", "winter", "forest", "bridge", "street",
+        "portrait", "of", "a", "cat", "festival", "night", "market"
+    };
+
+    private FeedGenerator() {
+    }
+
+    /**
+     * Generates a feed.
+     * @param baseUrl The base URL of the thumbnails and images, e.g.
+     * "http://localhost:8080".
+     * @param entries The number of entries.
+     * @param thumbSide The side of the thumbnails in the URLs.
+     * @param seed The seed of the titles and authors, the same seed gives
+     * the same feed.
+     * @return The feed as UTF-8 JSON.
+     */
+    public static byte[] generate(final String baseUrl,
+                                  final int entries,
+                                  final int thumbSide,
+                                  final long seed)
+    {
+        final Random random = new Random(seed);
+        final StringBuffer json = new StringBuffer(entries * 600);
+
+        json.append("{\"version\":\"1.0\",\"encoding\":\"UTF-8\",\"feed\":{\"entry\":[");
+
+        for (int i = 0; i < entries; i++) {
+            final String id = Long.toString(seed, 36) + "-" + i;
+
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append("{\"updated\":{\"$t\":\"2013-06-13T12:27:00.000Z\"},");
+            json.append("\"title\":{\"$t\":\"").append(words(random, 1 + random.nextInt(6))).append("\"},");
+            json.append("\"author\":[{\"name\":{\"$t\":\"").append(words(random, 2)).append("\"}}],");
+            json.append("\"media$group\":{\"media$content\":[{\"url\":\"")
+                .append(baseUrl).append("/image/s720/").append(id).append(".jpg\",")
+                .append("\"height\":540,\"width\":720,\"type\":\"image/jpeg\",\"medium\":\"image\"}],");
+            json.append("\"media$thumbnail\":[{\"url\":\"")
+                .append(baseUrl).append("/image/s").append(thumbSide).append("-c/").append(id).append(".jpg\",")
+                .append("\"height\":").append(thumbSide).append(",\"width\":").append(thumbSide).append("}]}}");
+        }
+
+        json.append("]}}");
+
+        try {
+            return json.toString().getBytes("UTF-8");
+        }
+        catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    private static String words(final Random random, final int count) {
+        final StringBuffer words = new StringBuffer();
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+
+        return words.toString();
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the Picasa web albums API. It serves synthetic
+ * featured and search feeds and JPEG images of the requested size, with
+ * optional latency, bandwidth limit and error injection, and records a
+ * trace of the requests. Point the application at it with the JAD property
+ * Picasa-Base-URL, e.g. http://10.0.2.2:8080 from an emulator.
+ *
+ * Endpoints:
+ *   /data/feed/base/featured?...&amp;thumbsize=128c
+ *   /data/feed/base/all?...&amp;thumbsize=128c&amp;q=term
+ *   /image/s{side}[-c]/{id}.jpg
+ *   /sim/bump   Changes the featured feed, as if new photos were featured
+ *
+ * The feeds and the images carry an ETag and a Last-Modified header and
+ * conditional requests are answered with 304 Not Modified.
+ *
+ * Run standalone with FeedSimulator.main(), options as system properties:
+ *   sim.port (8080), sim.entries (20), sim.latency (0 ms),
+ *   sim.bandwidth (0 = unlimited, bytes per second), sim.errors (0.0,
+ *   share of requests answered 503), sim.trace (file for the trace, CSV).
+ */
+public final class FeedSimulator {
+    // Constants
+    private static final String LAST_MODIFIED = "Thu, 13 Jun 2013 12:27:00 GMT";
+    private static final int CHUNK_SIZE = 1024;
+
+    // Members
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int entries;
+    private volatile int latency;
+    private volatile int bandwidth;
+    private volatile double errorRate;
+    private volatile int featuredVersion = 1;
+    private final Random random = new Random(1);
+    private final Map images = Collections.synchronizedMap(new HashMap());
+    private final List trace = Collections.synchronizedList(new ArrayList());
+
+    /**
+     * A request served by the simulator.
+     */
+    public static final class Request {
+        public final long time;
+        public final String method;
+        public final String uri;
+        public final int status;
+        public final int headerBytes;
+        public final int bodyBytes;
+        public final long duration;
+
+        Request(final long time,
+                final String method,
+                final String uri,
+                final int status,
+                final int headerBytes,
+                final int bodyBytes,
+                final long duration)
+        {
+            this.time = time;
+            this.method = method;
+            this.uri = uri;
+            this.status = status;
+            this.headerBytes = headerBytes;
+            this.bodyBytes = bodyBytes;
+            this.duration = duration;
+        }
+
+        public String toString() {
+            return time + "," + method + "," + uri + "," + status + ","
+                    + headerBytes + "," + bodyBytes + "," + duration;
+        }
+    }
+
+    /**
+     * Creates and starts the simulator.
+     * @param port The port, 0 for any free port.
+     * @param entries The number of entries in each feed.
+     */
+    public FeedSimulator(final int port, final int entries) throws IOException {
+        this.entries = entries;
+        server = HttpServer.create(new InetSocketAddress(port), 64);
+        executor = Executors.newFixedThreadPool(16);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final FeedSimulator simulator = new FeedSimulator(
+                Integer.getInteger("sim.port", 8080).intValue(),
+                Integer.getInteger("sim.entries", 20).intValue());
+
+        simulator.setLatency(Integer.getInteger("sim.latency", 0).intValue());
+        simulator.setBandwidth(Integer.getInteger("sim.bandwidth", 0).intValue());
+        simulator.setErrorRate(Double.parseDouble(System.getProperty("sim.errors", "0")));
+
+        final String traceFile = System.getProperty("sim.trace");
+
+        if (traceFile != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    try {
+                        simulator.writeTrace(traceFile);
+                    }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+
+        System.out.println("Feed simulator running at " + simulator.getBaseUrl());
+    }
+
+    /**
+     * @return The base URL of the simulator, e.g. http://localhost:8080.
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param latency The delay before each response in milliseconds.
+     */
+    public void setLatency(final int latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param bandwidth The maximum bytes per second of each response, 0 for
+     * unlimited.
+     */
+    public void setBandwidth(final int bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * @param errorRate The share of requests answered with 503, 0 to 1.
+     */
+    public void setErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Changes the featured feed.
+     */
+    public void bumpFeatured() {
+        featuredVersion++;
+    }
+
+    /**
+     * @return A copy of the requests served so far.
+     */
+    public List getTrace() {
+        synchronized (trace) {
+            return new ArrayList(trace);
+        }
+    }
+
+    public void clearTrace() {
+        trace.clear();
+    }
+
+    /**
+     * Waits until the given number of requests are in the trace. A client
+     * can see the response before the simulator has recorded it.
+     * @return true if the requests were recorded before the timeout.
+     */
+    public boolean waitForTrace(final int requests, final long timeout)
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + timeout;
+
+        while (trace.size() < requests) {
+            if (System.currentTimeMillis() >= end) {
+                return false;
+            }
+
+            Thread.sleep(5);
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the trace as CSV.
+     */
+    public void writeTrace(final String file) throws IOException {
+        final PrintWriter writer = new PrintWriter(new FileWriter(file));
+
+        try {
+            writer.println("time,method,uri,status,headerBytes,bodyBytes,duration");
+
+            for (Iterator i = getTrace().iterator(); i.hasNext();) {
+                writer.println(i.next());
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(final HttpExchange exchange) throws IOException {
+        final long start = System.currentTimeMillis();
+        final URI uri = exchange.getRequestURI();
+        final String path = uri.getPath();
+        final Headers headers = exchange.getResponseHeaders();
+        int status = 200;
+        byte[] body = new byte[0];
+        String entityTag = null;
+        // The image URLs in the feeds point back to the host as seen by the
+        // client, e.g. 10.0.2.2 from an emulator
+        final String host = exchange.getRequestHeaders().getFirst("Host");
+        final String base = host != null ? "http://" + host : getBaseUrl();
+
+        try {
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+
+            if (errorRate > 0 && nextDouble() < errorRate) {
+                status = 503;
+            }
+            else if (path.equals("/data/feed/base/featured")) {
+                final int version = featuredVersion;
+                entityTag = "\"featured-" + version + "\"";
+                body = FeedGenerator.generate(base, entries,
+                        thumbSide(uri.getQuery()), version);
+                headers.set("Content-Type", "application/json; charset=UTF-8");
+            }
+            else if (path.equals("/data/feed/base/all")) {
+                final String term = parameter(uri.getQuery(), "q");
+                entityTag = "\"all-" + term.hashCode() + "\"";
+                body = FeedGenerator.generate(base, entries,
+                        thumbSide(uri.getQuery()), term.hashCode());
+                headers.set("Content-Type", "application/json; charset=UTF-8");
+            }
+            else if (path.startsWith("/image/s")) {
+                entityTag = "\"" + Integer.toHexString(path.hashCode()) + "\"";
+                body = image(path);
+                headers.set("Content-Type", "image/jpeg");
+            }
+            else if (path.equals("/sim/bump")) {
+                bumpFeatured();
+            }
+            else {
+                status = 404;
+            }
+
+            if (status == 200 && entityTag != null) {
+                headers.set("ETag", entityTag);
+                headers.set("Last-Modified", LAST_MODIFIED);
+
+                if (entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))
+                    || (exchange.getRequestHeaders().getFirst("If-None-Match") == null
+                        && LAST_MODIFIED.equals(
+                            exchange.getRequestHeaders().getFirst("If-Modified-Since"))))
+                {
+                    status = 304;
+                    body = new byte[0];
+                }
+            }
+
+            exchange.sendResponseHeaders(status, status == 304 || body.length == 0 ? -1 : body.length);
+            send(exchange.getResponseBody(), body);
+        }
+        catch (InterruptedException e) {
+            status = 500;
+        }
+        catch (RuntimeException e) {
+            status = 500;
+            e.printStackTrace();
+        }
+        finally {
+            exchange.close();
+            trace.add(new Request(start, exchange.getRequestMethod(),
+                    uri.toString(), status, headerBytes(status, headers),
+                    body.length, System.currentTimeMillis() - start));
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Writes the body, throttled to the bandwidth limit.
+     */
+    private void send(final OutputStream out, final byte[] body)
+        throws IOException, InterruptedException
+    {
+        if (bandwidth <= 0) {
+            out.write(body);
+            return;
+        }
+
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            final int length = Math.min(CHUNK_SIZE, body.length - offset);
+
+            out.write(body, offset, length);
+            out.flush();
+            Thread.sleep(length * 1000L / bandwidth);
+        }
+    }
+
+    /**
+     * @return The size of the status line and the response headers.
+     */
+    private static int headerBytes(final int status, final Headers headers) {
+        int bytes = ("HTTP/1.1 " + status + " OK\r\n\r\n").length();
+
+        for (Iterator i = headers.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry entry = (Map.Entry) i.next();
+            final List values = (List) entry.getValue();
+
+            for (int j = 0; j < values.size(); j++) {
+                bytes += ((String) entry.getKey()).length() + 2
+                        + ((String) values.get(j)).length() + 2;
+            }
+        }
+
+        return bytes + "Date: Thu, 13 Jun 2013 12:27:00 GMT\r\n".length();
+    }
+
+    /**
+     * @return A JPEG of the size given in the path, e.g. /image/s128-c/x.jpg.
+     */
+    private byte[] image(final String path) throws IOException {
+        byte[] jpeg = (byte[]) images.get(path);
+
+        if (jpeg == null) {
+            final int end = path.indexOf('/', "/image/s".length());
+            final String size = path.substring("/image/s".length(), end);
+            final int side = Integer.parseInt(size.endsWith("-c")
+                    ? size.substring(0, size.length() - 2) : size);
+            final int height = size.endsWith("-c") ? side : side * 3 / 4;
+            final BufferedImage image =
+                    new BufferedImage(side, height, BufferedImage.TYPE_INT_RGB);
+            final Graphics2D graphics = image.createGraphics();
+            final Random colors = new Random(path.hashCode());
+
+            for (int y = 0; y < height; y += 8) {
+                graphics.setColor(new Color(colors.nextInt(0xffffff)));
+                graphics.fillRect(0, y, side, 8);
+            }
+
+            graphics.dispose();
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            ImageIO.write(image, "jpg", bytes);
+            jpeg = bytes.toByteArray();
+            images.put(path, jpeg);
+        }
+
+        return jpeg;
+    }
+
+    private static int thumbSide(final String query) {
+        final String thumbSize = parameter(query, "thumbsize");
+
+        try {
+            return Integer.parseInt(thumbSize.endsWith("c")
+                    ? thumbSize.substring(0, thumbSize.length() - 1) : thumbSize);
+        }
+        catch (NumberFormatException e) {
+            return 128;
+        }
+    }
+
+    private static String parameter(final String query, final String name) {
+        if (query != null) {
+            final String[] parameters = query.split("&");
+
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i].startsWith(name + "=")) {
+                    return parameters[i].substring(name.length() + 1);
+                }
+            }
+        }
+
+        return "";
+    }
+}
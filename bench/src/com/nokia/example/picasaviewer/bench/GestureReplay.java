@@ -0,0 +1,424 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.microedition.lcdui.Canvas;
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Displayable;
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+
+import com.nokia.mid.ui.frameanimator.FrameAnimatorListener;
+import com.nokia.mid.ui.gestures.GestureListener;
+import com.nokia.mid.ui.gestures.GestureRegistrationManager;
+
+import org.tantalum.Task;
+import org.tantalum.net.HttpGetter;
+import org.tantalum.net.StaticWebCache;
+
+import com.nokia.example.picasaviewer.PicasaViewer;
+import com.nokia.example.picasaviewer.common.HttpPipeline;
+import com.nokia.example.picasaviewer.common.PicasaStorage;
+import com.nokia.example.picasaviewer.common.QuotaManager;
+import com.nokia.example.picasaviewer.common.ThumbnailPipeline;
+import com.nokia.example.picasaviewer.common.WarmUpScheduler;
+import com.nokia.example.picasaviewer.util.WorkerTuner;
+
+/**
+ * Replays a gesture trace into the running application and measures each
+ * frame: the time and the bytes allocated by the paint, the getAsync()
+ * calls issued while handling the event and the draw calls. The
+ * application is started against an in-process FeedSimulator and runs on
+ * the calling thread, the Tantalum workers and the UI thread being the
+ * stubs' queues, drained between the frames.
+ *
+ * Configured with system properties:
+ *   replay.trace     A trace recorded with GestureRecorder, by default a
+ *                    generated one
+ *   replay.repeats   The repeats of the generated trace, default 2
+ *   replay.entries   The number of entries in the feeds, default 50
+ *   replay.latency   The latency of the simulator in ms, default 0
+ *   replay.realtime  Wait between the events as recorded, default false
+ *   replay.pixels    Paint into an image instead of only counting the draw
+ *                    calls, default false
+ *   replay.output    Also write the frames as CSV to this file
+ */
+public final class GestureReplay {
+    // Constants
+    private static final long SETTLE_TIMEOUT = 30000; // ms
+    private static final int QUIET_POLLS = 10;
+
+    // Members
+    private final Display display = Display.getDisplay(null);
+    private final Graphics graphics;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final long threadId = Thread.currentThread().getId();
+    private final List frames = new ArrayList();
+
+    /**
+     * The measurements of one event of the trace.
+     */
+    public static final class FrameResult {
+        public final GestureTrace.Event event;
+        public final boolean painted;
+        public final long paintNanos;
+        public final long paintBytes;
+        public final int getAsyncCalls;
+        public final long drawCalls;
+
+        FrameResult(final GestureTrace.Event event,
+                    final boolean painted,
+                    final long paintNanos,
+                    final long paintBytes,
+                    final int getAsyncCalls,
+                    final long drawCalls)
+        {
+            this.event = event;
+            this.painted = painted;
+            this.paintNanos = paintNanos;
+            this.paintBytes = paintBytes;
+            this.getAsyncCalls = getAsyncCalls;
+            this.drawCalls = drawCalls;
+        }
+    }
+
+    /**
+     * @param width The width of the screen.
+     * @param height The height of the screen.
+     * @param pixels True to paint into an image, false to only count the
+     * draw calls.
+     */
+    public GestureReplay(final int width, final int height, final boolean pixels) {
+        graphics = pixels
+                ? Image.createImage(width, height).getGraphics()
+                : new Graphics(width, height);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int width = Integer.getInteger("bench.screen.width", 240).intValue();
+        final int height = Integer.getInteger("bench.screen.height", 320).intValue();
+        final String traceFile = System.getProperty("replay.trace", "");
+        final GestureTrace trace = traceFile.length() > 0
+                ? GestureTrace.read(traceFile)
+                : GestureTrace.generate(width, height,
+                        Integer.getInteger("replay.repeats", 2).intValue());
+        final FeedSimulator simulator = new FeedSimulator(0,
+                Integer.getInteger("replay.entries", 50).intValue());
+
+        try {
+            simulator.setLatency(Integer.getInteger("replay.latency", 0).intValue());
+            System.setProperty(PicasaStorage.BASE_URL_PROPERTY,
+                    simulator.getBaseUrl());
+
+            final GestureReplay replay = new GestureReplay(width, height,
+                    Boolean.getBoolean("replay.pixels"));
+            final PicasaViewer viewer = new PicasaViewer();
+
+            viewer.startApp();
+            replay.settle();
+
+            final int startGetAsync = StaticWebCache.getAsyncCount();
+            final int startWebRequests = getWebRequestCount();
+            final int startDownloaded = getDownloadedBytes();
+
+            replay.replay(trace, Boolean.getBoolean("replay.realtime"));
+            replay.printSummary(System.out);
+
+            // The requests of the last frames are answered asynchronously
+            replay.settle();
+            System.out.println("getAsync calls: "
+                    + (StaticWebCache.getAsyncCount() - startGetAsync)
+                    + ", web requests: "
+                    + (getWebRequestCount() - startWebRequests)
+                    + ", downloaded: "
+                    + (getDownloadedBytes() - startDownloaded)
+                    + " bytes");
+            System.out.println("thumbnail tiles created: "
+                    + ThumbnailPipeline.getTilePool().getCreatedTiles()
+                    + ", reused: "
+                    + ThumbnailPipeline.getTilePool().getReusedTiles());
+
+            // The idle-time warm-up, run at once instead of after IDLE_DELAY
+            final int warmUpRequests = getWebRequestCount();
+
+            if (WarmUpScheduler.getInstance().warmUp()) {
+                replay.settle();
+            }
+
+            System.out.println("warm-up: " + WarmUpScheduler.getInstance()
+                    + ", web requests: "
+                    + (getWebRequestCount() - warmUpRequests));
+            System.out.println("cache quota: " + QuotaManager.getInstance());
+
+            final String output = System.getProperty("replay.output");
+
+            if (output != null && output.length() > 0) {
+                replay.writeCsv(output);
+            }
+
+            viewer.exit();
+        }
+        finally {
+            simulator.stop();
+        }
+
+        // The timers of the application are not daemons
+        System.exit(0);
+    }
+
+    /**
+     * @return The web requests of the caches and the pipeline since the
+     * start.
+     */
+    static int getWebRequestCount() {
+        return StaticWebCache.getWebRequestCount()
+                + HttpPipeline.getInstance().getRequestCount();
+    }
+
+    /**
+     * @return The bytes downloaded by the HttpGetters and the pipeline since
+     * the start.
+     */
+    static int getDownloadedBytes() {
+        return HttpGetter.getDownstreamDataCount()
+                + HttpPipeline.getInstance().getDownstreamBytes();
+    }
+
+    /**
+     * Runs the queued tasks and serial calls and paints, until there is
+     * nothing left to do, e.g. after the start of the application.
+     */
+    public void settle() throws InterruptedException {
+        final long end = System.currentTimeMillis() + SETTLE_TIMEOUT;
+        int quiet = 0;
+
+        while (quiet < QUIET_POLLS && System.currentTimeMillis() < end) {
+            final int work = runQueued() + (paintPending() != null ? 1 : 0);
+
+            if (work > 0
+                    || WorkerTuner.getInstance().getDecodePool().getQueueLength() > 0
+                    || HttpPipeline.getInstance().getPendingCount() > 0)
+            {
+                quiet = 0;
+            }
+            else {
+                quiet++;
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    /**
+     * Replays the events of the trace to the listeners of the current view.
+     * @param realtime True to wait between the events as recorded.
+     */
+    public void replay(final GestureTrace trace, final boolean realtime)
+        throws InterruptedException
+    {
+        final List events = trace.getEvents();
+        final long start = System.currentTimeMillis();
+        final long firstTime = events.isEmpty()
+                ? 0 : ((GestureTrace.Event) events.get(0)).time;
+
+        for (int i = 0; i < events.size(); i++) {
+            final GestureTrace.Event event = (GestureTrace.Event) events.get(i);
+
+            if (realtime) {
+                final long wait = start + event.time - firstTime
+                        - System.currentTimeMillis();
+
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+            }
+
+            final int getAsyncCount = StaticWebCache.getAsyncCount();
+
+            dispatch(event);
+
+            final long[] paint = paintPending();
+
+            runQueued();
+            frames.add(new FrameResult(event, paint != null,
+                    paint != null ? paint[0] : 0,
+                    paint != null ? paint[1] : 0,
+                    StaticWebCache.getAsyncCount() - getAsyncCount,
+                    paint != null ? paint[2] : 0));
+        }
+    }
+
+    /**
+     * @return The results in the order of the events.
+     */
+    public List getFrames() {
+        return frames;
+    }
+
+    /**
+     * Prints the paint time and allocations by the kind of the event.
+     */
+    public void printSummary(final PrintStream out) {
+        final Map byKind = new LinkedHashMap();
+
+        for (int i = 0; i < frames.size(); i++) {
+            final FrameResult frame = (FrameResult) frames.get(i);
+            final String kind = frame.event.toString();
+            List list = (List) byKind.get(kind);
+
+            if (list == null) {
+                list = new ArrayList();
+                byKind.put(kind, list);
+            }
+
+            list.add(frame);
+        }
+
+        out.println(String.format(Locale.ROOT, "%-12s %7s %7s %10s %10s %10s %10s %9s",
+                new Object[] {"Event", "events", "paints", "mean us", "p95 us",
+                    "max us", "B/paint", "getAsync"}));
+
+        final Iterator kinds = byKind.entrySet().iterator();
+
+        while (kinds.hasNext()) {
+            final Map.Entry entry = (Map.Entry) kinds.next();
+            final List list = (List) entry.getValue();
+            final long[] nanos = new long[list.size()];
+            int paints = 0;
+            long bytes = 0;
+            long total = 0;
+            int getAsyncCalls = 0;
+
+            for (int i = 0; i < list.size(); i++) {
+                final FrameResult frame = (FrameResult) list.get(i);
+
+                getAsyncCalls += frame.getAsyncCalls;
+
+                if (frame.painted) {
+                    nanos[paints++] = frame.paintNanos;
+                    bytes += frame.paintBytes;
+                    total += frame.paintNanos;
+                }
+            }
+
+            Arrays.sort(nanos, 0, paints);
+            out.println(String.format(Locale.ROOT,
+                    "%-12s %7d %7d %10.1f %10.1f %10.1f %10.0f %9d",
+                    new Object[] {entry.getKey(),
+                        Integer.valueOf(list.size()),
+                        Integer.valueOf(paints),
+                        Double.valueOf(paints > 0 ? total / 1000.0 / paints : 0),
+                        Double.valueOf(paints > 0 ? nanos[(paints - 1) * 95 / 100] / 1000.0 : 0),
+                        Double.valueOf(paints > 0 ? nanos[paints - 1] / 1000.0 : 0),
+                        Double.valueOf(paints > 0 ? (double) bytes / paints : 0),
+                        Integer.valueOf(getAsyncCalls)}));
+        }
+    }
+
+    /**
+     * Writes one line per event: the time and kind of the event, the paint
+     * time in ns, the bytes allocated by the paint, the getAsync() calls and
+     * the draw calls.
+     */
+    public void writeCsv(final String file) throws IOException {
+        final FileWriter writer = new FileWriter(file);
+
+        try {
+            writer.write("time,event,paintNanos,paintBytes,getAsync,drawCalls\n");
+
+            for (int i = 0; i < frames.size(); i++) {
+                final FrameResult frame = (FrameResult) frames.get(i);
+
+                writer.write(frame.event.time + "," + frame.event + ","
+                        + frame.paintNanos + "," + frame.paintBytes + ","
+                        + frame.getAsyncCalls + "," + frame.drawCalls + "\n");
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private void dispatch(final GestureTrace.Event event) {
+        final Displayable current = display.getCurrent();
+        final GestureListener listener =
+                GestureRegistrationManager.getListener(current);
+
+        if (listener == null) {
+            return;
+        }
+
+        if (event instanceof GestureTrace.Gesture) {
+            listener.gestureAction(current,
+                    GestureRegistrationManager.getZone(current),
+                    (GestureTrace.Gesture) event);
+        }
+        else if (listener instanceof FrameAnimatorListener) {
+            final GestureTrace.Frame frame = (GestureTrace.Frame) event;
+
+            ((FrameAnimatorListener) listener).animate(null, frame.x, frame.y,
+                    frame.delta, frame.deltaX, frame.deltaY, frame.lastFrame);
+        }
+    }
+
+    /**
+     * Paints the current view if a repaint is pending.
+     * @return The time in ns, the allocated bytes and the draw calls of the
+     * paint, or null if there was nothing to paint.
+     */
+    public long[] paintPending() {
+        final Displayable current = display.getCurrent();
+
+        if (!(current instanceof Canvas)
+                || !((Canvas) current).isRepaintPending())
+        {
+            return null;
+        }
+
+        final long drawCalls = graphics.getDrawCalls();
+        final long startBytes = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+
+        ((Canvas) current).servicePendingRepaint(graphics);
+
+        final long nanos = System.nanoTime() - start;
+        final long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+        return new long[] {nanos, bytes, graphics.getDrawCalls() - drawCalls};
+    }
+
+    /**
+     * Runs the queued tasks and serial calls, including the ones they queue.
+     * @return The number of tasks and calls run.
+     */
+    public int runQueued() {
+        int total = 0;
+        int count;
+
+        do {
+            count = Task.runQueuedTasks() + display.runSerialCalls();
+            total += count;
+        }
+        while (count > 0);
+
+        return total;
+    }
+}
@@ -0,0 +1,402 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nokia.mid.ui.gestures.GestureEvent;
+import com.nokia.mid.ui.gestures.GestureInteractiveZone;
+
+/**
+ * A sequence of gesture events and animator frames, either read from the
+ * output of GestureRecorder on a device or generated. See GestureRecorder
+ * for the format.
+ */
+public final class GestureTrace {
+    // Constants
+    private static final int FRAME_INTERVAL = 16; // ms, about 60 fps
+    private static final int DRAG_STEPS = 10;
+
+    // Members
+    private final List events = new ArrayList();
+
+    /**
+     * An event of the trace.
+     */
+    public abstract static class Event {
+        public final long time;
+
+        Event(final long time) {
+            this.time = time;
+        }
+    }
+
+    /**
+     * A recorded gesture.
+     */
+    public static final class Gesture extends Event implements GestureEvent {
+        private final int[] values;
+        private final float flickDirection;
+
+        /**
+         * @param values The values of the event in the order of the trace,
+         * the flick direction excluded.
+         */
+        Gesture(final long time, final int[] values, final float flickDirection) {
+            super(time);
+            this.values = values;
+            this.flickDirection = flickDirection;
+        }
+
+        public int getType() {
+            return values[0];
+        }
+
+        public int getStartX() {
+            return values[1];
+        }
+
+        public int getStartY() {
+            return values[2];
+        }
+
+        public int getDragDistanceX() {
+            return values[3];
+        }
+
+        public int getDragDistanceY() {
+            return values[4];
+        }
+
+        public float getFlickDirection() {
+            return flickDirection;
+        }
+
+        public int getFlickSpeed() {
+            return values[5];
+        }
+
+        public int getFlickSpeedX() {
+            return values[6];
+        }
+
+        public int getFlickSpeedY() {
+            return values[7];
+        }
+
+        public int getPinchDistanceStarting() {
+            return values[8];
+        }
+
+        public int getPinchDistanceCurrent() {
+            return values[9];
+        }
+
+        public int getPinchDistanceChange() {
+            return values[10];
+        }
+
+        public int getPinchCenterX() {
+            return values[11];
+        }
+
+        public int getPinchCenterY() {
+            return values[12];
+        }
+
+        public int getPinchCenterChangeX() {
+            return values[13];
+        }
+
+        public int getPinchCenterChangeY() {
+            return values[14];
+        }
+
+        public String toString() {
+            switch (getType()) {
+                case GestureInteractiveZone.GESTURE_TAP:
+                    return "tap";
+                case GestureInteractiveZone.GESTURE_LONG_PRESS:
+                    return "long press";
+                case GestureInteractiveZone.GESTURE_DRAG:
+                    return "drag";
+                case GestureInteractiveZone.GESTURE_DROP:
+                    return "drop";
+                case GestureInteractiveZone.GESTURE_FLICK:
+                    return "flick";
+                case GestureInteractiveZone.GESTURE_PINCH:
+                    return "pinch";
+                default:
+                    return "gesture " + getType();
+            }
+        }
+    }
+
+    /**
+     * A frame of the frame animator.
+     */
+    public static final class Frame extends Event {
+        public final int x;
+        public final int y;
+        public final short delta;
+        public final short deltaX;
+        public final short deltaY;
+        public final boolean lastFrame;
+
+        Frame(final long time,
+              final int x,
+              final int y,
+              final short delta,
+              final short deltaX,
+              final short deltaY,
+              final boolean lastFrame)
+        {
+            super(time);
+            this.x = x;
+            this.y = y;
+            this.delta = delta;
+            this.deltaX = deltaX;
+            this.deltaY = deltaY;
+            this.lastFrame = lastFrame;
+        }
+
+        public String toString() {
+            return lastFrame ? "last frame" : "frame";
+        }
+    }
+
+    /**
+     * Reads a trace. Lines which are not events, e.g. other log output, are
+     * skipped.
+     */
+    public static GestureTrace read(final String file) throws IOException {
+        final GestureTrace trace = new GestureTrace();
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                trace.parse(line.trim());
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        return trace;
+    }
+
+    /**
+     * Generates a session on a grid: drags down the grid, flicks down and
+     * back up, pinches in and out and finally taps a thumbnail.
+     * @param width The width of the screen.
+     * @param height The height of the screen.
+     * @param repeats The number of times the gestures before the tap are
+     * repeated.
+     */
+    public static GestureTrace generate(final int width,
+                                        final int height,
+                                        final int repeats)
+    {
+        final GestureTrace trace = new GestureTrace();
+        final int x = width / 2;
+        final int y = height / 2;
+        long time = 0;
+
+        for (int i = 0; i < repeats; i++) {
+            time = trace.drag(time, x, y, -height / 2);
+            time = trace.flick(time + 300, x, y, -1200);
+            time = trace.drag(time + 300, x, y / 2, height / 3);
+            time = trace.flick(time + 300, x, y, 1500);
+            time = trace.pinch(time + 500, x, y, 100, 200);
+            time = trace.pinch(time + 500, x, y, 200, 100) + 500;
+        }
+
+        // Opens the detail view, so last
+        trace.gesture(time, GestureInteractiveZone.GESTURE_TAP, x / 2, y / 2,
+                0, 0, 0, 0, 0, 0);
+
+        return trace;
+    }
+
+    /**
+     * Generates a drag in the middle of the screen.
+     * @param width The width of the screen.
+     * @param height The height of the screen.
+     * @param distance The distance of the drag, negative upwards, which
+     * scrolls down a grid.
+     */
+    public static GestureTrace generateDrag(final int width,
+                                            final int height,
+                                            final int distance)
+    {
+        final GestureTrace trace = new GestureTrace();
+
+        trace.drag(0, width / 2, (height - distance) / 2, distance);
+
+        return trace;
+    }
+
+    /**
+     * Generates a pinch in the middle of the screen.
+     * @param width The width of the screen.
+     * @param height The height of the screen.
+     * @param from The distance between the fingers at the start.
+     * @param to The distance between the fingers at the end.
+     */
+    public static GestureTrace generatePinch(final int width,
+                                             final int height,
+                                             final int from,
+                                             final int to)
+    {
+        final GestureTrace trace = new GestureTrace();
+
+        trace.pinch(0, width / 2, height / 2, from, to);
+
+        return trace;
+    }
+
+    /**
+     * @return The events, GestureTrace.Gesture or GestureTrace.Frame.
+     */
+    public List getEvents() {
+        return events;
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    private void parse(final String line) {
+        final String[] fields = line.split(",");
+
+        try {
+            if (fields.length == 18 && fields[0].equals("G")) {
+                final int[] values = new int[15];
+
+                for (int i = 0; i < 5; i++) {
+                    values[i] = Integer.parseInt(fields[2 + i]);
+                }
+
+                for (int i = 5; i < values.length; i++) {
+                    values[i] = Integer.parseInt(fields[3 + i]);
+                }
+
+                events.add(new Gesture(Long.parseLong(fields[1]), values,
+                        Float.parseFloat(fields[7])));
+            }
+            else if (fields.length == 8 && fields[0].equals("F")) {
+                events.add(new Frame(Long.parseLong(fields[1]),
+                        Integer.parseInt(fields[2]),
+                        Integer.parseInt(fields[3]),
+                        Short.parseShort(fields[4]),
+                        Short.parseShort(fields[5]),
+                        Short.parseShort(fields[6]),
+                        fields[7].equals("1")));
+            }
+        }
+        catch (NumberFormatException e) {
+            // Not an event
+        }
+    }
+
+    private void gesture(final long time,
+                         final int type,
+                         final int startX,
+                         final int startY,
+                         final int dragX,
+                         final int dragY,
+                         final int flickSpeedY,
+                         final int pinchStarting,
+                         final int pinchCurrent,
+                         final int pinchChange)
+    {
+        events.add(new Gesture(time, new int[] {
+                type, startX, startY, dragX, dragY,
+                Math.abs(flickSpeedY), 0, flickSpeedY,
+                pinchStarting, pinchCurrent, pinchChange,
+                startX, startY, 0, 0},
+                flickSpeedY < 0 ? (float) (-Math.PI / 2) : (float) (Math.PI / 2)));
+    }
+
+    /**
+     * Adds a drag in steps, as the gesture framework reports it, and the
+     * drop.
+     * @return The time of the end of the drag.
+     */
+    private long drag(long time, final int x, final int y, final int distance) {
+        for (int i = 0; i < DRAG_STEPS; i++) {
+            final int step = distance * (i + 1) / DRAG_STEPS - distance * i / DRAG_STEPS;
+
+            time += FRAME_INTERVAL;
+            gesture(time, GestureInteractiveZone.GESTURE_DRAG, x,
+                    y + distance * i / DRAG_STEPS, 0, step, 0, 0, 0, 0);
+        }
+
+        time += FRAME_INTERVAL;
+        gesture(time, GestureInteractiveZone.GESTURE_DROP, x, y + distance,
+                0, 0, 0, 0, 0, 0);
+
+        return time;
+    }
+
+    /**
+     * Adds a flick and the frames of the kinetic scroll which follows it,
+     * slowing down linearly.
+     * @param speed The speed in pixels per second, negative upwards.
+     * @return The time of the last frame.
+     */
+    private long flick(long time, final int x, final int y, final int speed) {
+        gesture(time, GestureInteractiveZone.GESTURE_FLICK, x, y, 0, 0, speed,
+                0, 0, 0);
+
+        final int frames = Math.abs(speed) / 40;
+        int scroll = 0;
+
+        for (int i = 0; i < frames; i++) {
+            final int deltaY = speed * (frames - i) / frames * FRAME_INTERVAL / 1000;
+
+            time += FRAME_INTERVAL;
+            scroll += deltaY;
+            events.add(new Frame(time, 0, scroll, (short) Math.abs(deltaY),
+                    (short) 0, (short) deltaY, i == frames - 1));
+        }
+
+        return time;
+    }
+
+    /**
+     * Adds a pinch from a distance between the fingers to another.
+     * @return The time of the end of the pinch.
+     */
+    private long pinch(long time,
+                       final int x,
+                       final int y,
+                       final int from,
+                       final int to)
+    {
+        int current = from;
+
+        for (int i = 1; i <= DRAG_STEPS; i++) {
+            final int next = from + (to - from) * i / DRAG_STEPS;
+
+            time += FRAME_INTERVAL;
+            gesture(time, GestureInteractiveZone.GESTURE_PINCH, x, y, 0, 0, 0,
+                    from, next, next - current);
+            current = next;
+        }
+
+        return time;
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A TCP proxy in front of the FeedSimulator which emulates the round trip
+ * time of a mobile link. The data is delayed by half the round trip time in
+ * each direction, and the first bytes of a new connection are delayed by
+ * another round trip, the TCP handshake. Unlike the latency of the
+ * simulator, which delays each response, this lets pipelined requests
+ * share a round trip.
+ */
+public final class LinkEmulator {
+    // Constants
+    private static final int BUFFER_SIZE = 4096;
+
+    // Members
+    private final ServerSocket serverSocket;
+    private final int targetPort;
+    private final int roundTrip;
+    private final List sockets = Collections.synchronizedList(new ArrayList());
+    private volatile boolean stopped = false;
+    private int connectionCount = 0;
+
+    /**
+     * Creates and starts the emulator on any free port.
+     * @param targetPort The port of the server on this host.
+     * @param roundTrip The round trip time in milliseconds.
+     */
+    public LinkEmulator(final int targetPort, final int roundTrip)
+        throws IOException
+    {
+        this.targetPort = targetPort;
+        this.roundTrip = roundTrip;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress("localhost", 0), 64);
+
+        final Thread acceptor = new Thread("LinkEmulator") {
+            public void run() {
+                accept();
+            }
+        };
+
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @param url A URL of the server, e.g. FeedSimulator.getBaseUrl().
+     * @return The port of the URL.
+     */
+    public static int getPort(final String url) {
+        return Integer.parseInt(url.substring(url.lastIndexOf(':') + 1));
+    }
+
+    /**
+     * @return The base URL of the emulated link, e.g. http://localhost:1234.
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return The number of connections accepted so far.
+     */
+    public synchronized int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public void stop() {
+        stopped = true;
+
+        try {
+            serverSocket.close();
+        }
+        catch (IOException e) {
+            // Closed anyway
+        }
+
+        synchronized (sockets) {
+            for (int i = 0; i < sockets.size(); i++) {
+                close((Socket) sockets.get(i));
+            }
+
+            sockets.clear();
+        }
+    }
+
+    private void accept() {
+        while (!stopped) {
+            try {
+                final Socket client = serverSocket.accept();
+                final Socket server = new Socket("localhost", targetPort);
+                final long handshakeDone = System.currentTimeMillis() + roundTrip;
+
+                synchronized (this) {
+                    connectionCount++;
+                }
+
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(server);
+                new Pipe(client, server, handshakeDone).start();
+                new Pipe(server, client, 0).start();
+            }
+            catch (IOException e) {
+                if (!stopped) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static void close(final Socket socket) {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            // Closed anyway
+        }
+    }
+
+    /**
+     * Copies one direction of a connection, each chunk delayed by half the
+     * round trip time from when it was read, but not before the given time.
+     */
+    private final class Pipe {
+        private final Socket from;
+        private final Socket to;
+        private final long notBefore;
+        private final LinkedList chunks = new LinkedList(); // Of Chunk, null for the end
+
+        Pipe(final Socket from, final Socket to, final long notBefore) {
+            this.from = from;
+            this.to = to;
+            this.notBefore = notBefore;
+        }
+
+        void start() {
+            final Thread reader = new Thread("LinkEmulator reader") {
+                public void run() {
+                    read();
+                }
+            };
+            final Thread writer = new Thread("LinkEmulator writer") {
+                public void run() {
+                    write();
+                }
+            };
+
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+
+        private void read() {
+            try {
+                final InputStream in = from.getInputStream();
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+
+                while ((count = in.read(buffer)) > 0) {
+                    final byte[] bytes = new byte[count];
+
+                    System.arraycopy(buffer, 0, bytes, 0, count);
+                    add(new Chunk(bytes, Math.max(System.currentTimeMillis(),
+                            notBefore) + roundTrip / 2));
+                }
+            }
+            catch (IOException e) {
+                // The connection is closed
+            }
+
+            add(null);
+        }
+
+        private synchronized void add(final Chunk chunk) {
+            chunks.addLast(chunk);
+            notifyAll();
+        }
+
+        private void write() {
+            try {
+                final OutputStream out = to.getOutputStream();
+
+                while (true) {
+                    final Chunk chunk;
+
+                    synchronized (this) {
+                        while (chunks.isEmpty()) {
+                            wait();
+                        }
+
+                        chunk = (Chunk) chunks.removeFirst();
+                    }
+
+                    if (chunk == null) {
+                        to.shutdownOutput();
+                        return;
+                    }
+
+                    final long wait = chunk.due - System.currentTimeMillis();
+
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+
+                    out.write(chunk.bytes);
+                    out.flush();
+                }
+            }
+            catch (Exception e) {
+                // The connection is closed
+                LinkEmulator.close(from);
+                LinkEmulator.close(to);
+            }
+        }
+    }
+
+    /**
+     * Bytes to write and the time to write them.
+     */
+    private static final class Chunk {
+        final byte[] bytes;
+        final long due;
+
+        Chunk(final byte[] bytes, final long due) {
+            this.bytes = bytes;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.lang.reflect.Method;
+
+import javax.microedition.lcdui.Command;
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Displayable;
+
+import com.nokia.example.picasaviewer.PicasaViewer;
+import com.nokia.example.picasaviewer.common.PicasaStorage;
+import com.nokia.example.picasaviewer.ui.ImageGridCanvas;
+
+/**
+ * Checks the feed loads while the feed server is down: the featured feed is
+ * loaded, the simulator is stopped and the feed is loaded again, cached
+ * first and then revalidated, and refreshed. The cached grid must stay on
+ * screen and the spinner must be stopped once the web request has failed.
+ * Exits with 1 on failure, so that the smoke target fails.
+ */
+public final class NetworkDownCheck {
+    // Members
+    private final GestureReplay replay;
+    private final Display display = Display.getDisplay(null);
+
+    private NetworkDownCheck(final GestureReplay replay) {
+        this.replay = replay;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int width = Integer.getInteger("bench.screen.width", 240).intValue();
+        final int height = Integer.getInteger("bench.screen.height", 320).intValue();
+        final FeedSimulator simulator = new FeedSimulator(0, 20);
+        int failures = 0;
+
+        try {
+            System.setProperty(PicasaStorage.BASE_URL_PROPERTY,
+                    simulator.getBaseUrl());
+
+            final GestureReplay replay = new GestureReplay(width, height, false);
+            final NetworkDownCheck check = new NetworkDownCheck(replay);
+            final PicasaViewer viewer = new PicasaViewer();
+
+            viewer.startApp();
+            replay.settle();
+            failures += check.report("grid loaded", check.call("isViewportLoaded"));
+
+            // The network is gone
+            simulator.stop();
+
+            // As on the next launch, the cached feed and then the web
+            ((ImageGridCanvas) check.display.getCurrent()).loadFeed(null,
+                    PicasaStorage.GET_STALE_WHILE_REVALIDATE);
+            replay.settle();
+            failures += check.report("cached grid kept",
+                    check.call("isViewportLoaded"));
+            failures += check.report("spinner stopped after revalidation",
+                    !check.call("isSpinning"));
+
+            check.command("Refresh");
+            failures += check.report("spinner stopped after refresh",
+                    !check.call("isSpinning"));
+
+            viewer.exit();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            failures++;
+        }
+        finally {
+            simulator.stop();
+        }
+
+        System.out.println(failures == 0
+                ? "Network down check passed"
+                : "Network down check failed in " + failures + " checks");
+
+        // The timers of the application are not daemons
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return 0 if the check passed, 1 otherwise.
+     */
+    private int report(final String name, final boolean passed) {
+        System.out.println((passed ? "OK     " : "FAILED ") + name);
+
+        return passed ? 0 : 1;
+    }
+
+    /**
+     * Calls a protected boolean method of the current view.
+     */
+    private boolean call(final String name) throws Exception {
+        final Displayable current = display.getCurrent();
+        Class type = current.getClass();
+
+        while (type != null) {
+            try {
+                final Method method = type.getDeclaredMethod(name, new Class[0]);
+
+                method.setAccessible(true);
+
+                return ((Boolean) method.invoke(current, new Object[0])).booleanValue();
+            }
+            catch (NoSuchMethodException e) {
+                type = type.getSuperclass();
+            }
+        }
+
+        throw new IllegalStateException("No method " + name + " in "
+                + current.getClass().getName());
+    }
+
+    private void command(final String label) throws InterruptedException {
+        final Displayable current = display.getCurrent();
+        final Command command = current.getCommand(label);
+
+        if (command == null) {
+            throw new IllegalStateException("No command " + label + " in "
+                    + current.getClass().getName());
+        }
+
+        current.dispatchCommand(command);
+        replay.settle();
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.lang.reflect.Method;
+
+import javax.microedition.lcdui.Command;
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Displayable;
+
+import com.nokia.mid.ui.gestures.GestureInteractiveZone;
+import com.nokia.mid.ui.gestures.GestureListener;
+import com.nokia.mid.ui.gestures.GestureRegistrationManager;
+
+import com.nokia.example.picasaviewer.PicasaViewer;
+import com.nokia.example.picasaviewer.common.OfflinePacks;
+import com.nokia.example.picasaviewer.common.PicasaStorage;
+
+/**
+ * Checks the offline packs: the featured feed is pinned, the simulator is
+ * stopped and the feed is browsed in the offline mode. The grid and the
+ * full image must load from the pack without a single web request and the
+ * spinner must not be left running. Once the pack is removed, the feed must
+ * not be shown offline. A pack removed while it is being downloaded must
+ * not leave entries in the offline cache. Exits with 1 on failure, so that
+ * the smoke target fails.
+ */
+public final class OfflineCheck {
+    // Members
+    private final GestureReplay replay;
+    private final Display display = Display.getDisplay(null);
+
+    private OfflineCheck(final GestureReplay replay) {
+        this.replay = replay;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int width = Integer.getInteger("bench.screen.width", 240).intValue();
+        final int height = Integer.getInteger("bench.screen.height", 320).intValue();
+        final FeedSimulator simulator = new FeedSimulator(0, 20);
+        int failures = 0;
+
+        try {
+            System.setProperty(PicasaStorage.BASE_URL_PROPERTY,
+                    simulator.getBaseUrl());
+
+            final GestureReplay replay = new GestureReplay(width, height, false);
+            final OfflineCheck check = new OfflineCheck(replay);
+            final PicasaViewer viewer = new PicasaViewer();
+
+            viewer.startApp();
+            replay.settle();
+
+            // Removed while the feed or the first images are in flight
+            check.dispatch("Keep offline");
+            replay.runQueued();
+            replay.runQueued();
+            check.command("Remove offline copy");
+            failures += check.report("no entries of a removed pack",
+                    PicasaStorage.offlineCache.getCache().size() == 0);
+
+            check.command("Keep offline");
+            failures += check.report("pack complete",
+                    OfflinePacks.getInstance().isComplete(null));
+            System.out.println(OfflinePacks.getInstance());
+
+            // The network is gone
+            simulator.stop();
+
+            final int webRequests = GestureReplay.getWebRequestCount();
+
+            check.command("Browse offline");
+            failures += check.report("grid loaded", check.call("isViewportLoaded"));
+
+            check.tap(width / 4, height / 4);
+            failures += check.report("spinner stopped", !check.call("isSpinning"));
+            failures += check.report("no web requests",
+                    GestureReplay.getWebRequestCount() == webRequests);
+
+            // The online grid is still cached, but not in a pack anymore
+            check.command("Back");
+            check.command("Remove offline copy");
+            check.command("Browse online");
+            check.command("Browse offline");
+            failures += check.report("unpinned grid not shown",
+                    !check.call("isViewportLoaded"));
+            failures += check.report("spinner stopped when unpinned",
+                    !check.call("isSpinning"));
+
+            viewer.exit();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            failures++;
+        }
+        finally {
+            simulator.stop();
+        }
+
+        System.out.println(failures == 0
+                ? "Offline check passed"
+                : "Offline check failed in " + failures + " checks");
+
+        // The timers of the application are not daemons
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return 0 if the check passed, 1 otherwise.
+     */
+    private int report(final String name, final boolean passed) {
+        System.out.println((passed ? "OK     " : "FAILED ") + name);
+
+        return passed ? 0 : 1;
+    }
+
+    /**
+     * Calls a protected boolean method of the current view.
+     */
+    private boolean call(final String name) throws Exception {
+        final Displayable current = display.getCurrent();
+        Class type = current.getClass();
+
+        while (type != null) {
+            try {
+                final Method method = type.getDeclaredMethod(name, new Class[0]);
+
+                method.setAccessible(true);
+
+                return ((Boolean) method.invoke(current, new Object[0])).booleanValue();
+            }
+            catch (NoSuchMethodException e) {
+                type = type.getSuperclass();
+            }
+        }
+
+        throw new IllegalStateException("No method " + name + " in "
+                + current.getClass().getName());
+    }
+
+    private void tap(final int x, final int y) throws InterruptedException {
+        final Displayable current = display.getCurrent();
+        final GestureListener listener =
+                GestureRegistrationManager.getListener(current);
+        final int[] values = new int[15];
+
+        values[0] = GestureInteractiveZone.GESTURE_TAP;
+        values[1] = x;
+        values[2] = y;
+        listener.gestureAction(current,
+                GestureRegistrationManager.getZone(current),
+                new GestureTrace.Gesture(0, values, 0));
+        replay.settle();
+    }
+
+    private void command(final String label) throws InterruptedException {
+        dispatch(label);
+        replay.settle();
+    }
+
+    /**
+     * Runs a command without waiting for the tasks it starts.
+     */
+    private void dispatch(final String label) {
+        final Displayable current = display.getCurrent();
+        final Command command = current.getCommand(label);
+
+        if (command == null) {
+            throw new IllegalStateException("No command " + label + " in "
+                    + current.getClass().getName());
+        }
+
+        current.dispatchCommand(command);
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import java.util.Locale;
+
+import javax.microedition.lcdui.Command;
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Displayable;
+
+import com.nokia.mid.ui.CategoryBar;
+import com.nokia.mid.ui.frameanimator.FrameAnimatorListener;
+import com.nokia.mid.ui.gestures.GestureInteractiveZone;
+import com.nokia.mid.ui.gestures.GestureListener;
+import com.nokia.mid.ui.gestures.GestureRegistrationManager;
+
+import com.nokia.example.picasaviewer.PicasaViewer;
+import com.nokia.example.picasaviewer.common.PicasaStorage;
+
+/**
+ * Checks that the views paint without allocating once their content is
+ * loaded. Each view is shown, loaded and scrolled back and forth a few
+ * pixels; the bytes allocated by the paints after a warm-up must be zero.
+ * Exits with 1 if a view allocates, so that the smoke target fails.
+ */
+public final class PaintAllocationCheck {
+    // Constants
+    private static final int WARMUP_FRAMES = 200;
+    private static final int MEASURED_FRAMES = 100;
+    private static final short SCROLL_STEP = 4; // px
+    private static final int SEARCH_TAB = 1; // In the category bar
+
+    // Members
+    private final GestureReplay replay;
+    private final Display display = Display.getDisplay(null);
+
+    private PaintAllocationCheck(final GestureReplay replay) {
+        this.replay = replay;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int width = Integer.getInteger("bench.screen.width", 240).intValue();
+        final int height = Integer.getInteger("bench.screen.height", 320).intValue();
+        final FeedSimulator simulator = new FeedSimulator(0, 50);
+        int failures = 0;
+
+        try {
+            System.setProperty(PicasaStorage.BASE_URL_PROPERTY,
+                    simulator.getBaseUrl());
+
+            final GestureReplay replay = new GestureReplay(width, height, false);
+            final PaintAllocationCheck check = new PaintAllocationCheck(replay);
+            final PicasaViewer viewer = new PicasaViewer();
+
+            viewer.startApp();
+            replay.settle();
+            failures += check.measure("featured");
+
+            check.tap(width / 4, height / 4);
+            failures += check.measure("detail");
+
+            check.command("Back");
+            check.command("History");
+            failures += check.measure("history");
+
+            check.command("Back");
+            check.tab(SEARCH_TAB, "Search");
+            failures += check.measure("search");
+
+            viewer.exit();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            failures++;
+        }
+        finally {
+            simulator.stop();
+        }
+
+        System.out.println(failures == 0
+                ? "Paint allocation check passed"
+                : "Paint allocation check failed in " + failures + " views");
+
+        // The timers of the application are not daemons
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Scrolls the current view back and forth and measures the paints.
+     * @param view The name of the view for the report.
+     * @return 1 if the view allocated while painting, 0 otherwise.
+     */
+    private int measure(final String view) throws InterruptedException {
+        final Displayable current = display.getCurrent();
+        final FrameAnimatorListener listener = (FrameAnimatorListener)
+                GestureRegistrationManager.getListener(current);
+
+        replay.settle();
+        scroll(listener, WARMUP_FRAMES);
+
+        final long[] totals = scroll(listener, MEASURED_FRAMES);
+
+        System.out.println(String.format(Locale.ROOT,
+                "%-10s %4d paints %8d bytes %s",
+                new Object[] {view,
+                    Long.valueOf(totals[0]),
+                    Long.valueOf(totals[1]),
+                    totals[1] == 0 ? "OK" : "ALLOCATES"}));
+
+        return totals[1] == 0 ? 0 : 1;
+    }
+
+    /**
+     * @return The number of paints and the bytes they allocated.
+     */
+    private long[] scroll(final FrameAnimatorListener listener, final int frames) {
+        final long[] totals = new long[2];
+
+        for (int i = 0; i < frames; i++) {
+            final short deltaY = i % 2 == 0 ? (short) -SCROLL_STEP : SCROLL_STEP;
+
+            listener.animate(null, 0, 0, SCROLL_STEP, (short) 0, deltaY,
+                    i == frames - 1);
+
+            final long[] paint = replay.paintPending();
+
+            if (paint != null) {
+                totals[0]++;
+                totals[1] += paint[1];
+            }
+
+            replay.runQueued();
+        }
+
+        return totals;
+    }
+
+    private void tap(final int x, final int y) throws InterruptedException {
+        final Displayable current = display.getCurrent();
+        final GestureListener listener =
+                GestureRegistrationManager.getListener(current);
+        final int[] values = new int[15];
+
+        values[0] = GestureInteractiveZone.GESTURE_TAP;
+        values[1] = x;
+        values[2] = y;
+        listener.gestureAction(current,
+                GestureRegistrationManager.getZone(current),
+                new GestureTrace.Gesture(0, values, 0));
+        replay.settle();
+    }
+
+    private void command(final String label) throws InterruptedException {
+        final Displayable current = display.getCurrent();
+        final Command command = current.getCommand(label);
+
+        if (command == null) {
+            throw new IllegalStateException("No command " + label + " in "
+                    + current.getClass().getName());
+        }
+
+        current.dispatchCommand(command);
+        replay.settle();
+    }
+
+    /**
+     * Selects a tab of the category bar, or runs the command of the same
+     * name where there is no category bar.
+     */
+    private void tab(final int index, final String label)
+            throws InterruptedException
+    {
+        if (CategoryBar.selectVisibleElement(index)) {
+            replay.settle();
+        }
+        else {
+            command(label);
+        }
+    }
+}
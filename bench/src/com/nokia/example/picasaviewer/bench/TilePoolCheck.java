@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.bench;
+
+import com.nokia.example.picasaviewer.PicasaViewer;
+import com.nokia.example.picasaviewer.common.PicasaStorage;
+import com.nokia.example.picasaviewer.common.ThumbnailPipeline;
+import com.nokia.example.picasaviewer.util.ImagePool;
+
+/**
+ * Checks that scrolling a long grid reuses the thumbnail tiles: the grid is
+ * dragged down and back up half a screen at a time, once to warm up the
+ * tile pool and once more, which must reuse tiles without creating any.
+ * The grid is then pinched to smaller tiles: the scaled copies of the
+ * thumbnails must be taken from the pool, and scrolling at the new size
+ * must again reach a steady state without new tiles. Exits with 1 on
+ * failure, so that the smoke target fails.
+ */
+public final class TilePoolCheck {
+    // Constants
+    private static final int ENTRIES = 300;
+    private static final int DRAGS = 40; // Of half a screen, most of the grid
+    private static final long PINCH_SETTLE_WAIT = 500; // ms, over the delay of the grid
+
+    // Members
+    private final GestureReplay replay;
+    private final ImagePool pool = ThumbnailPipeline.getTilePool();
+
+    private TilePoolCheck(final GestureReplay replay) {
+        this.replay = replay;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int width = Integer.getInteger("bench.screen.width", 240).intValue();
+        final int height = Integer.getInteger("bench.screen.height", 320).intValue();
+        final FeedSimulator simulator = new FeedSimulator(0, ENTRIES);
+        int failures = 0;
+
+        try {
+            System.setProperty(PicasaStorage.BASE_URL_PROPERTY,
+                    simulator.getBaseUrl());
+
+            final GestureReplay replay = new GestureReplay(width, height, false);
+            final PicasaViewer viewer = new PicasaViewer();
+
+            viewer.startApp();
+            replay.settle();
+
+            final TilePoolCheck check = new TilePoolCheck(replay);
+            final GestureTrace[] scroll = new GestureTrace[2 * DRAGS];
+
+            for (int i = 0; i < DRAGS; i++) {
+                scroll[i] = GestureTrace.generateDrag(width, height, -height / 2);
+                scroll[DRAGS + i] = GestureTrace.generateDrag(width, height, height / 2);
+            }
+
+            check.replay(scroll, "warm-up");
+
+            final int[] steady = check.replay(scroll, "steady");
+
+            failures += report("tiles reused", steady[1] > 0);
+            failures += report("no tiles created", steady[0] == 0);
+
+            // To three columns, the thumbnails of the feed are scaled down
+            final int[] pinch = check.replay(new GestureTrace[] {
+                    GestureTrace.generatePinch(width, height, 150, 100)}, "pinch");
+
+            failures += report("scaled copies taken from the pool",
+                    pinch[0] + pinch[1] > 0);
+            check.replay(scroll, "warm-up after pinch");
+
+            final int[] pinched = check.replay(scroll, "steady after pinch");
+
+            failures += report("no tiles created after pinch", pinched[0] == 0);
+
+            viewer.exit();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            failures++;
+        }
+        finally {
+            simulator.stop();
+        }
+
+        System.out.println(failures == 0
+                ? "Tile pool check passed"
+                : "Tile pool check failed in " + failures + " checks");
+
+        // The timers of the application are not daemons
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Replays the traces, waiting for the thumbnails after each, including
+     * the ones requested once a pinch has settled.
+     * @return The tiles created and reused during the replay.
+     */
+    private int[] replay(final GestureTrace[] traces, final String name)
+        throws InterruptedException
+    {
+        final int created = pool.getCreatedTiles();
+        final int reused = pool.getReusedTiles();
+
+        for (int i = 0; i < traces.length; i++) {
+            replay.replay(traces[i], false);
+            replay.settle();
+        }
+
+        Thread.sleep(PINCH_SETTLE_WAIT);
+        replay.settle();
+
+        final int[] tiles = {pool.getCreatedTiles() - created,
+                pool.getReusedTiles() - reused};
+
+        System.out.println(name + ": tiles created: " + tiles[0]
+                + ", reused: " + tiles[1]);
+
+        return tiles;
+    }
+
+    private static int report(final String name, final boolean passed) {
+        System.out.println((passed ? "OK     " : "FAILED ") + name);
+
+        return passed ? 0 : 1;
+    }
+}
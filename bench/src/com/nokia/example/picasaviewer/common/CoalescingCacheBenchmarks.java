@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import org.tantalum.Task;
+import org.tantalum.net.StaticWebCache;
+import org.tantalum.storage.CacheView;
+import org.tantalum.storage.FlashDatabaseException;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+
+/**
+ * Benchmarks of the request coalescing: a burst of requests for the same
+ * URL, as when a grid is scrolled back and forth, must reach the cache as a
+ * single request, and every callback must receive its result. Requests of
+ * different cache views must not be shared. Fails if the suppressed and the
+ * forwarded requests do not add up. A shared request must go on while a
+ * callback waits for it and must not reach the network once all the
+ * callbacks have been canceled.
+ */
+public final class CoalescingCacheBenchmarks {
+    // Constants
+    private static final int REQUESTS = 8;
+    private static final String URL = "http://localhost/thumb/0";
+    private static final String MISSING_URL = "http://localhost:1/thumb/1";
+    private static final CacheView VIEW = new BytesView();
+    private static final CacheView OTHER_VIEW = new BytesView();
+
+    private CoalescingCacheBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        runner.add(shared());
+        runner.add(views());
+        runner.add(cancel());
+    }
+
+    private static Benchmark shared() {
+        return new Benchmark("CoalescingCache.getAsync/shared") {
+            private CoalescingCache cache;
+            private byte[] bytes;
+
+            public void setUp() throws Exception {
+                cache = createCache('s');
+                bytes = (byte[]) cache.getCache().put(URL, new byte[1000],
+                        VIEW, null);
+            }
+
+            public Object run() throws Exception {
+                final int requests = cache.getRequestCount();
+                final int suppressed = cache.getSuppressedCount();
+                final int forwarded = StaticWebCache.getAsyncCount();
+                final Task[] callbacks = new Task[REQUESTS];
+
+                for (int i = 0; i < REQUESTS; i++) {
+                    callbacks[i] = cache.getAsync(URL, Task.NORMAL_PRIORITY,
+                            StaticWebCache.GET_LOCAL, new Identity());
+                }
+
+                // A prefetch of a URL being loaded is suppressed too
+                cache.getAsync(URL, Task.NORMAL_PRIORITY,
+                        StaticWebCache.GET_ANYWHERE, new Identity());
+                cache.prefetch(URL);
+
+                // All but the first GET_LOCAL, and the prefetch
+                check(cache, requests + REQUESTS + 2, suppressed + REQUESTS);
+
+                if (StaticWebCache.getAsyncCount() - forwarded != 1) {
+                    throw new IllegalStateException("Not shared: "
+                            + (StaticWebCache.getAsyncCount() - forwarded)
+                            + " requests to the cache");
+                }
+
+                Task.runQueuedTasks();
+
+                for (int i = 0; i < REQUESTS; i++) {
+                    if (callbacks[i].get() != bytes) {
+                        throw new IllegalStateException("Callback " + i
+                                + " got " + callbacks[i].get());
+                    }
+                }
+
+                return callbacks;
+            }
+        };
+    }
+
+    private static Benchmark views() {
+        return new Benchmark("CoalescingCache.getAsync/views") {
+            private CoalescingCache cache;
+
+            public void setUp() throws Exception {
+                cache = createCache('v');
+                cache.getCache().put(URL, new byte[1000], VIEW, null);
+            }
+
+            public Object run() throws Exception {
+                final int requests = cache.getRequestCount();
+                final int suppressed = cache.getSuppressedCount();
+                final int forwarded = StaticWebCache.getAsyncCount();
+
+                cache.getAsync(URL, null, Task.NORMAL_PRIORITY,
+                        StaticWebCache.GET_LOCAL, new Identity(),
+                        StaticWebCache.DEFAULT_HTTP_GETTER_FACTORY, VIEW);
+                cache.getAsync(URL, null, Task.NORMAL_PRIORITY,
+                        StaticWebCache.GET_LOCAL, new Identity(),
+                        StaticWebCache.DEFAULT_HTTP_GETTER_FACTORY, OTHER_VIEW);
+                check(cache, requests + 2, suppressed);
+
+                if (StaticWebCache.getAsyncCount() - forwarded != 2) {
+                    throw new IllegalStateException("Views shared");
+                }
+
+                return new Integer(Task.runQueuedTasks());
+            }
+        };
+    }
+
+    private static Benchmark cancel() {
+        return new Benchmark("CoalescingCache.cancel") {
+            private CoalescingCache cache;
+            private byte[] bytes;
+
+            public void setUp() throws Exception {
+                cache = createCache('c');
+                bytes = (byte[]) cache.getCache().put(URL, new byte[1000],
+                        VIEW, null);
+            }
+
+            public Object run() throws Exception {
+                final Task canceled = cache.getAsync(URL, Task.NORMAL_PRIORITY,
+                        StaticWebCache.GET_LOCAL, new Identity());
+                final Task waiting = cache.getAsync(URL, Task.NORMAL_PRIORITY,
+                        StaticWebCache.GET_LOCAL, new Identity());
+
+                cache.cancel(canceled, "Scrolled away");
+                Task.runQueuedTasks();
+
+                if (!canceled.isCanceled() || waiting.get() != bytes) {
+                    throw new IllegalStateException("Shared request canceled");
+                }
+
+                final int webRequests = StaticWebCache.getWebRequestCount();
+                final Task[] callbacks = new Task[REQUESTS];
+
+                for (int i = 0; i < REQUESTS; i++) {
+                    callbacks[i] = cache.getAsync(MISSING_URL,
+                            Task.NORMAL_PRIORITY, StaticWebCache.GET_WEB,
+                            new Identity());
+                }
+
+                for (int i = 0; i < REQUESTS; i++) {
+                    if (!cache.cancel(callbacks[i], "Scrolled away")) {
+                        throw new IllegalStateException("Callback " + i
+                                + " not waiting");
+                    }
+                }
+
+                Task.runQueuedTasks();
+
+                if (StaticWebCache.getWebRequestCount() != webRequests) {
+                    throw new IllegalStateException(
+                            "Request made without callbacks");
+                }
+
+                return callbacks;
+            }
+        };
+    }
+
+    private static CoalescingCache createCache(final char id)
+        throws FlashDatabaseException
+    {
+        return new CoalescingCache(id, StaticWebCache.getWebCache(id, VIEW));
+    }
+
+    private static void check(final CoalescingCache cache,
+                              final int requests,
+                              final int suppressed)
+    {
+        if (cache.getRequestCount() != requests
+            || cache.getSuppressedCount() != suppressed)
+        {
+            throw new IllegalStateException("Wrong counts: requests="
+                    + cache.getRequestCount() + " suppressed="
+                    + cache.getSuppressedCount() + ", expected "
+                    + requests + " and " + suppressed);
+        }
+    }
+
+    private static final class BytesView implements CacheView {
+        public Object convertToUseForm(final Object key, final byte[] bytes) {
+            return bytes;
+        }
+    }
+
+    private static final class Identity extends Task {
+        Identity() {
+            super(Task.NORMAL_PRIORITY);
+        }
+
+        protected Object exec(final Object in) {
+            return in;
+        }
+    }
+}
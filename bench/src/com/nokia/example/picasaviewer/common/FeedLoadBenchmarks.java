@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.microedition.lcdui.Image;
+
+import org.tantalum.Task;
+import org.tantalum.net.StaticWebCache;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+import com.nokia.example.picasaviewer.bench.FeedSimulator;
+import com.nokia.example.picasaviewer.bench.LinkEmulator;
+
+/**
+ * Offline end-to-end load benchmarks against the FeedSimulator: feed
+ * refreshes through PicasaStorage with and without validators, and filling the grid with
+ * thumbnails over a slow link with one or several parallel connections.
+ */
+public final class FeedLoadBenchmarks {
+    // Constants
+    private static final String FEATURED_PATH = "/data/feed/base/featured"
+            + "?alt=json&kind=photo&max-results=20"
+            + "&fields=entry(title,author(name),updated,media:group)"
+            + "&thumbsize=128c";
+    private static final int ENTRIES = 20; // PicasaStorage.NR_OF_FEATURED
+    private static final int SCREEN_WIDTH = 240; // Thumbnails of 128c
+    private static final int LATENCY = 50;
+
+    // Members
+    private static int storagePort = 0;
+
+    private FeedLoadBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        runner.add(featuredFeed(false));
+        runner.add(featuredFeed(true));
+        runner.add(gridFill(1));
+        runner.add(gridFill(4));
+    }
+
+    /**
+     * Refreshes the featured feed through PicasaStorage like the Refresh
+     * command, after loading it cold like the start of the application.
+     * When conditional, the validators stored by the cold load are sent and
+     * an unchanged feed costs only the headers. Otherwise the cache is
+     * cleared before each refresh, so there is nothing to revalidate.
+     */
+    private static Benchmark featuredFeed(final boolean conditional) {
+        return new Benchmark("PicasaStorage.featuredFeed/"
+                + (conditional ? "conditional" : "full"))
+        {
+            private FeedSimulator simulator;
+
+            public void setUp() throws Exception {
+                // PicasaStorage keeps the URLs of the first server
+                simulator = new FeedSimulator(storagePort, ENTRIES);
+                storagePort = LinkEmulator.getPort(simulator.getBaseUrl());
+
+                try {
+                    PicasaStorage.setBaseUrl(simulator.getBaseUrl());
+                    PicasaStorage.init(SCREEN_WIDTH);
+                    StaticWebCache.reset();
+
+                    final String url = PicasaStorage.getFeedUrl(null);
+
+                    load(StaticWebCache.GET_ANYWHERE);
+
+                    // Recorded after the response, not to be taken for a refresh
+                    if (!simulator.waitForTrace(1, 1000)) {
+                        throw new IllegalStateException("Feed not loaded");
+                    }
+
+                    if (ValidatorStore.getInstance().getEntityTag(url) == null) {
+                        throw new IllegalStateException(
+                                "Validators not stored by the cold load");
+                    }
+
+                    final FeedSimulator.Request request =
+                            (FeedSimulator.Request) run();
+
+                    System.out.println(getName() + ": " + request.headerBytes
+                            + " header bytes, " + request.bodyBytes + " body bytes");
+                }
+                catch (Exception e) {
+                    simulator.stop();
+                    throw e;
+                }
+            }
+
+            public Object run() throws Exception {
+                if (!conditional) {
+                    StaticWebCache.reset();
+                }
+
+                simulator.clearTrace();
+
+                if (((Vector) load(StaticWebCache.GET_WEB)).size() != ENTRIES
+                    || !simulator.waitForTrace(1, 1000))
+                {
+                    throw new IllegalStateException("Feed not refreshed");
+                }
+
+                final FeedSimulator.Request request =
+                        (FeedSimulator.Request) simulator.getTrace().get(0);
+
+                if (request.status != (conditional ? 304 : 200)
+                    || (conditional && request.bodyBytes != 0))
+                {
+                    throw new IllegalStateException("Unexpected response "
+                            + request.status + ", " + request.bodyBytes + " bytes");
+                }
+
+                return request;
+            }
+
+            public void tearDown() {
+                simulator.stop();
+            }
+        };
+    }
+
+    /**
+     * Gets the featured feed through PicasaStorage, running the tasks in
+     * this thread.
+     */
+    private static Object load(final int getType) throws Exception {
+        final Task callback = new Task() {
+            protected Object exec(final Object in) {
+                return in;
+            }
+        };
+
+        PicasaStorage.getImageObjects(null, Task.HIGH_PRIORITY, getType,
+                callback);
+        Task.runQueuedTasks();
+
+        return callback.get();
+    }
+
+    /**
+     * Loads the featured feed and decodes all the thumbnails in it, over
+     * a link with LATENCY ms round trips.
+     */
+    private static Benchmark gridFill(final int connections) {
+        return new Benchmark("FeedSimulator.gridFill/" + connections + "conn") {
+            private FeedSimulator simulator;
+            private ExecutorService executor;
+            private final ImageObjectTypeHandler handler = new ImageObjectTypeHandler();
+
+            public void setUp() throws IOException {
+                simulator = new FeedSimulator(0, ENTRIES);
+                simulator.setLatency(LATENCY);
+                executor = Executors.newFixedThreadPool(connections);
+            }
+
+            public Object run() throws Exception {
+                final byte[] feed = read(get(simulator.getBaseUrl() + FEATURED_PATH));
+                final Vector items = (Vector) handler.convertToUseForm(FEATURED_PATH, feed);
+                final List futures = new ArrayList();
+
+                for (int i = 0; i < items.size(); i++) {
+                    final String url = ((PicasaImageObject) items.elementAt(i)).thumbUrl;
+
+                    futures.add(executor.submit(new Callable() {
+                        public Object call() throws IOException {
+                            final byte[] bytes = read(get(url));
+
+                            return Image.createImage(bytes, 0, bytes.length);
+                        }
+                    }));
+                }
+
+                for (int i = 0; i < futures.size(); i++) {
+                    ((Future) futures.get(i)).get();
+                }
+
+                return futures;
+            }
+
+            public void tearDown() {
+                executor.shutdownNow();
+                simulator.stop();
+            }
+        };
+    }
+
+    private static HttpURLConnection get(final String url) throws IOException {
+        final HttpURLConnection connection =
+                (HttpURLConnection) new URL(url).openConnection();
+
+        connection.setUseCaches(false);
+
+        return connection;
+    }
+
+    private static byte[] read(final HttpURLConnection connection)
+        throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+            final InputStream in = connection.getInputStream();
+            final byte[] buffer = new byte[4096];
+            int count;
+
+            try {
+                while ((count = in.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, count);
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.util.Vector;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+import com.nokia.example.picasaviewer.bench.FeedGenerator;
+
+/**
+ * Benchmarks of parsing the feed into PicasaImageObjects, as done by
+ * ImageObjectTypeHandler when a feed is read from the cache or the web.
+ */
+public final class FeedParseBenchmarks {
+    private FeedParseBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        runner.add(parse(20)); // PicasaStorage.NR_OF_FEATURED
+        runner.add(parse(200));
+    }
+
+    private static Benchmark parse(final int entries) {
+        return new Benchmark("ImageObjectTypeHandler.convertToUseForm/" + entries) {
+            private final ImageObjectTypeHandler handler = new ImageObjectTypeHandler();
+            private byte[] feed;
+
+            public void setUp() {
+                feed = FeedGenerator.generate("http://localhost", entries, 128, 1);
+
+                if (((Vector) handler.convertToUseForm("feed", feed)).size() != entries) {
+                    throw new IllegalStateException("Feed not parsed");
+                }
+            }
+
+            public Object run() {
+                return handler.convertToUseForm("feed", feed);
+            }
+        };
+    }
+}
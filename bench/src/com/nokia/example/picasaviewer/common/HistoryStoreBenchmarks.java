@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.util.Vector;
+
+import org.tantalum.Task;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+
+/**
+ * Benchmarks of the history store with a long history: the images of a
+ * grid are opened one after the other, as when browsing the details. The
+ * index records are written once for the whole burst, so the garbage per
+ * operation stays small. Fails if the history does not list the opened
+ * images most recent first, before and after the index is written. The
+ * starred state of every image in the history is looked up too, as when
+ * the details are opened, which fails if it does not match the
+ * favourites.
+ */
+public final class HistoryStoreBenchmarks {
+    // Constants
+    private static final int ENTRIES = 2000;
+    private static final int OPENED = 20; // A grid of images
+    private static final int STARRED = 10; // Every tenth image is a favourite
+
+    private HistoryStoreBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        runner.add(addViewed());
+        runner.add(isStarred());
+    }
+
+    private static Benchmark addViewed() {
+        return new Benchmark("HistoryStore.addViewed") {
+            private final HistoryStore store = HistoryStore.getInstance();
+            private int first = 0;
+
+            public void setUp() {
+                for (int i = 0; i < ENTRIES; i++) {
+                    store.addViewedAsync(createImage(i));
+                }
+
+                store.flushAsync();
+                Task.runQueuedTasks();
+            }
+
+            public Object run() {
+                // The oldest images, which move to the top of the history
+                first = (first + OPENED) % ENTRIES;
+
+                for (int i = first; i < first + OPENED; i++) {
+                    store.addViewedAsync(createImage(i));
+                }
+
+                Task.runQueuedTasks();
+                check();
+                store.flushAsync();
+                Task.runQueuedTasks();
+                check();
+
+                return store;
+            }
+
+            private void check() {
+                final Vector page = store.getPage(HistoryStore.LIST_HISTORY, 0);
+
+                for (int i = 0; i < OPENED; i++) {
+                    final String expected =
+                            createImage(first + OPENED - 1 - i).imageUrl;
+
+                    if (!expected.equals(
+                            ((PicasaImageObject) page.elementAt(i)).imageUrl))
+                    {
+                        throw new IllegalStateException("Wrong history at "
+                                + i + ": " + page.elementAt(i));
+                    }
+                }
+            }
+        };
+    }
+
+    private static Benchmark isStarred() {
+        return new Benchmark("HistoryStore.isStarred") {
+            private final HistoryStore store = HistoryStore.getInstance();
+
+            public void setUp() {
+                for (int i = 0; i < ENTRIES; i++) {
+                    store.addViewedAsync(createImage(i));
+                    store.setStarredAsync(createImage(i), i % STARRED == 0);
+                }
+
+                Task.runQueuedTasks();
+            }
+
+            public Object run() {
+                for (int i = 0; i < ENTRIES; i++) {
+                    if (store.isStarred("http://localhost/image/" + i)
+                        != (i % STARRED == 0))
+                    {
+                        throw new IllegalStateException("Wrong starred state: "
+                                + i);
+                    }
+                }
+
+                return store;
+            }
+        };
+    }
+
+    private static PicasaImageObject createImage(final int i) {
+        return new PicasaImageObject("Title " + i,
+                "Author " + i,
+                "http://localhost/thumb/" + i,
+                "http://localhost/image/" + i);
+    }
+}
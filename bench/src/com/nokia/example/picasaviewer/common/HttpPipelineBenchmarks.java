@@ -0,0 +1,504 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Vector;
+
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Image;
+
+import org.tantalum.Task;
+import org.tantalum.net.StaticWebCache;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+import com.nokia.example.picasaviewer.bench.FeedSimulator;
+import com.nokia.example.picasaviewer.bench.LinkEmulator;
+
+/**
+ * Grid fill time against the round trip time of the link, with the
+ * thumbnails downloaded through the HttpPipeline and with the bounded
+ * parallel HttpGetter fallback. Each operation starts with empty caches and
+ * no open connections and loads the thumbnails of a feed page through a
+ * ThumbnailPipeline, as the grid does, over a LinkEmulator.
+ *
+ * Run with -Dhttp.keepAlive=false, so that the HttpGetter stub opens a
+ * connection per request like an HttpConnection without persistent
+ * connections, see the rttbench target.
+ *
+ * A response which never arrives, as on a half-open socket, must be
+ * requested again on a new connection after the read timeout, and close()
+ * must close a connection blocked in a read.
+ */
+public final class HttpPipelineBenchmarks {
+    // Constants
+    private static final String FEATURED_PATH = "/data/feed/base/featured"
+            + "?alt=json&kind=photo&max-results=20"
+            + "&fields=entry(title,author(name),updated,media:group)"
+            + "&thumbsize=128c";
+    private static final int ENTRIES = 20; // PicasaStorage.NR_OF_FEATURED
+    private static final int[] ROUND_TRIPS = { 50, 200, 500 }; // ms
+    private static final int WORKERS = 4; // Emulated Tantalum workers
+    private static final int SCREEN_WIDTH = 240;
+    private static final long TIMEOUT = 60000; // ms
+    private static final int READ_TIMEOUT = 300; // ms, of the stalled reads
+    private static final long CLOSE_TIMEOUT = 2000; // ms
+
+    private HttpPipelineBenchmarks() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+
+        addTo(runner);
+        runner.runAll(System.out);
+
+        // The decode pool and the timers are not daemons
+        System.exit(0);
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        for (int i = 0; i < ROUND_TRIPS.length; i++) {
+            runner.add(gridFill(true, ROUND_TRIPS[i]));
+            runner.add(gridFill(false, ROUND_TRIPS[i]));
+        }
+
+        runner.add(stalledRead());
+        runner.add(closeStalled());
+    }
+
+    private static Benchmark gridFill(final boolean pipelined,
+                                      final int roundTrip)
+    {
+        return new Benchmark("HttpPipeline.gridFill/"
+                + (pipelined ? "pipelined" : "parallel") + "/" + roundTrip + "ms")
+        {
+            private final Display display = Display.getDisplay(null);
+            private final Vector urls = new Vector();
+            private final Vector workers = new Vector();
+            private FeedSimulator simulator;
+            private LinkEmulator link;
+            private volatile boolean running;
+            private boolean[] loaded;
+            private int ready;
+            private int droppedJobs;
+            private int grids;
+
+            public void setUp() throws Exception {
+                simulator = new FeedSimulator(0, ENTRIES);
+                link = new LinkEmulator(LinkEmulator.getPort(simulator.getBaseUrl()),
+                        roundTrip);
+                PicasaStorage.setBaseUrl(link.getBaseUrl());
+                PicasaStorage.init(SCREEN_WIDTH);
+                HttpPipeline.getInstance().setEnabled(pipelined);
+
+                final Vector items = (Vector) new ImageObjectTypeHandler()
+                        .convertToUseForm(FEATURED_PATH,
+                            read(link.getBaseUrl() + FEATURED_PATH));
+
+                for (int i = 0; i < items.size(); i++) {
+                    urls.addElement(((PicasaImageObject) items.elementAt(i)).thumbUrl);
+                }
+
+                running = true;
+
+                for (int i = 0; i < WORKERS; i++) {
+                    final Thread worker = new Thread("worker " + i) {
+                        public void run() {
+                            while (running) {
+                                if (Task.runQueuedTasks() == 0) {
+                                    try {
+                                        Thread.sleep(1);
+                                    }
+                                    catch (InterruptedException e) {
+                                        return;
+                                    }
+                                }
+                            }
+                        }
+                    };
+
+                    worker.setDaemon(true);
+                    worker.start();
+                    workers.addElement(worker);
+                }
+            }
+
+            public Object run() throws Exception {
+                StaticWebCache.reset();
+                HttpPipeline.getInstance().close();
+                ready = 0;
+                grids++;
+
+                final ThumbnailPipeline pipeline =
+                        new ThumbnailPipeline(new ThumbnailPipeline.Listener() {
+                    public boolean isVisible(final Object key) {
+                        return true;
+                    }
+
+                    public void thumbnailReady(final Object key,
+                                               final String url,
+                                               final Image image)
+                    {
+                        loaded[((Integer) key).intValue()] = true;
+                        ready++;
+                    }
+                });
+
+                loaded = new boolean[urls.size()];
+                request(pipeline);
+
+                final long end = System.currentTimeMillis() + TIMEOUT;
+
+                while (ready < urls.size()) {
+                    if (display.runSerialCalls() == 0) {
+                        if (System.currentTimeMillis() > end) {
+                            throw new IllegalStateException("Grid not filled: "
+                                    + ready + "/" + urls.size());
+                        }
+
+                        // Like the grid when it paints the placeholders
+                        request(pipeline);
+                        Thread.sleep(1);
+                    }
+                }
+
+                droppedJobs += pipeline.getDroppedJobs();
+
+                return pipeline;
+            }
+
+            /**
+             * Requests the thumbnails not loaded yet, unless already in the
+             * pipeline. A job dropped by a full stage is requested again.
+             */
+            private void request(final ThumbnailPipeline pipeline) {
+                for (int i = 0; i < urls.size(); i++) {
+                    final Integer key = new Integer(i);
+
+                    if (!loaded[i] && !pipeline.isRequested(key)) {
+                        pipeline.request(key, (String) urls.elementAt(i),
+                                PicasaStorage.imageSide);
+                    }
+                }
+            }
+
+            public void tearDown() {
+                running = false;
+                System.out.println(getName() + ": " + link.getConnectionCount()
+                        + " connections for " + grids + " grids of "
+                        + urls.size() + " thumbnails, " + droppedJobs
+                        + " dropped jobs");
+                HttpPipeline.getInstance().close();
+                HttpPipeline.getInstance().setEnabled(true);
+                link.stop();
+                simulator.stop();
+            }
+        };
+    }
+
+    private static Benchmark stalledRead() {
+        return new Benchmark("HttpPipeline.stalledRead") {
+            private StallingServer server;
+            private int readTimeout;
+
+            public void setUp() throws Exception {
+                server = new StallingServer();
+                readTimeout = HttpPipeline.getInstance().getReadTimeout();
+                HttpPipeline.getInstance().setReadTimeout(READ_TIMEOUT);
+            }
+
+            public Object run() throws Exception {
+                final HttpPipeline pipeline = HttpPipeline.getInstance();
+
+                pipeline.close();
+                server.reset(2);
+
+                // The first response makes the host a pipelining one
+                await(pipeline.get(server.getUrl(1), Task.NORMAL_PRIORITY,
+                        new Result()), TIMEOUT);
+
+                final long start = System.currentTimeMillis();
+                final Result result = (Result) pipeline.get(server.getUrl(2),
+                        Task.NORMAL_PRIORITY, new Result());
+
+                await(result, TIMEOUT);
+
+                final long time = System.currentTimeMillis() - start;
+
+                if (time < READ_TIMEOUT || server.connections != 2) {
+                    throw new IllegalStateException("Stalled read not retried: "
+                            + time + " ms, " + server.connections
+                            + " connections");
+                }
+
+                return result;
+            }
+
+            public void tearDown() throws Exception {
+                HttpPipeline.getInstance().close();
+                HttpPipeline.getInstance().setReadTimeout(readTimeout);
+                server.stop();
+            }
+        };
+    }
+
+    private static Benchmark closeStalled() {
+        return new Benchmark("HttpPipeline.closeStalled") {
+            private StallingServer server;
+
+            public void setUp() throws Exception {
+                server = new StallingServer();
+            }
+
+            public Object run() throws Exception {
+                final HttpPipeline pipeline = HttpPipeline.getInstance();
+                final int pending = pipeline.getPendingCount();
+                final Task callback = new Result();
+
+                pipeline.close();
+                server.reset(1);
+                pipeline.get(server.getUrl(1), Task.NORMAL_PRIORITY, callback);
+
+                final long end = System.currentTimeMillis() + TIMEOUT;
+
+                while (server.stalled == 0) {
+                    if (System.currentTimeMillis() > end) {
+                        throw new IllegalStateException("Request not sent");
+                    }
+
+                    Thread.sleep(1);
+                }
+
+                // As the grid when the application is paused
+                callback.cancel(false, "Paused");
+                pipeline.close();
+
+                final long closed = System.currentTimeMillis() + CLOSE_TIMEOUT;
+
+                while (server.clientCloses == 0
+                       || pipeline.getPendingCount() != pending)
+                {
+                    if (System.currentTimeMillis() > closed) {
+                        throw new IllegalStateException("Stalled connection "
+                                + "not closed: closes=" + server.clientCloses
+                                + " pending=" + pipeline.getPendingCount());
+                    }
+
+                    Task.runQueuedTasks();
+                    Thread.sleep(1);
+                }
+
+                return callback;
+            }
+
+            public void tearDown() throws Exception {
+                HttpPipeline.getInstance().close();
+                server.stop();
+            }
+        };
+    }
+
+    /**
+     * Runs the queued tasks until the result has its body.
+     */
+    private static void await(final Task task, final long timeout)
+        throws Exception
+    {
+        final Result result = (Result) task;
+        final long end = System.currentTimeMillis() + timeout;
+
+        while (result.body == null) {
+            if (System.currentTimeMillis() > end || result.isCanceled()) {
+                throw new IllegalStateException("No response: "
+                        + result.getStatusString());
+            }
+
+            if (Task.runQueuedTasks() == 0) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static byte[] read(final String url) throws Exception {
+        final InputStream in = new URL(url).openStream();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int count;
+
+        try {
+            while ((count = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, count);
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static final class Result extends Task {
+        volatile byte[] body;
+
+        Result() {
+            super(Task.NORMAL_PRIORITY);
+        }
+
+        protected Object exec(final Object in) {
+            body = (byte[]) in;
+
+            return in;
+        }
+    }
+
+    /**
+     * A keep-alive HTTP server which never answers one of the requests, as
+     * a half-open socket, but keeps its connection open until the client
+     * closes it.
+     */
+    private static final class StallingServer implements Runnable {
+        private static final byte[] RESPONSE = ("HTTP/1.1 200 OK\r\n"
+                + "Content-Length: 5\r\n"
+                + "Connection: keep-alive\r\n\r\n"
+                + "hello").getBytes();
+        private final ServerSocket serverSocket;
+        private final Vector sockets = new Vector();
+        private int requests;
+        private int stallAt;
+        volatile int connections;
+        volatile int stalled;
+        volatile int clientCloses;
+
+        StallingServer() throws IOException {
+            serverSocket = new ServerSocket(0);
+
+            final Thread thread = new Thread(this, "StallingServer");
+
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String getUrl(final int n) {
+            return "http://localhost:" + serverSocket.getLocalPort() + "/" + n;
+        }
+
+        /**
+         * @param stallAt The request, counted from 1, not to answer.
+         */
+        synchronized void reset(final int stallAt) {
+            this.stallAt = stallAt;
+            requests = 0;
+            connections = 0;
+            stalled = 0;
+            clientCloses = 0;
+        }
+
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+
+                    sockets.addElement(socket);
+                    connections++;
+
+                    final Thread thread = new Thread("StallingServer connection") {
+                        public void run() {
+                            serve(socket);
+                        }
+                    };
+
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(final Socket socket) {
+            try {
+                final InputStream in = socket.getInputStream();
+                final OutputStream out = socket.getOutputStream();
+
+                while (readRequest(in)) {
+                    final boolean stall;
+
+                    synchronized (this) {
+                        stall = ++requests == stallAt;
+                    }
+
+                    if (stall) {
+                        stalled++;
+
+                        while (in.read() >= 0) {
+                        }
+
+                        clientCloses++;
+
+                        return;
+                    }
+
+                    out.write(RESPONSE);
+                    out.flush();
+                }
+            }
+            catch (IOException e) {
+                // The client or stop() closed the socket
+            }
+            finally {
+                try {
+                    socket.close();
+                }
+                catch (IOException e) {
+                    // Closed anyway
+                }
+            }
+        }
+
+        /**
+         * Reads a request up to the empty line ending the headers.
+         * @return False at the end of the stream.
+         */
+        private static boolean readRequest(final InputStream in)
+            throws IOException
+        {
+            int matched = 0;
+
+            while (matched < 4) {
+                final int b = in.read();
+
+                if (b < 0) {
+                    return false;
+                }
+
+                matched = b == "\r\n\r\n".charAt(matched) ? matched + 1
+                        : b == '\r' ? 1 : 0;
+            }
+
+            return true;
+        }
+
+        void stop() throws IOException {
+            serverSocket.close();
+
+            for (int i = 0; i < sockets.size(); i++) {
+                ((Socket) sockets.elementAt(i)).close();
+            }
+        }
+    }
+}
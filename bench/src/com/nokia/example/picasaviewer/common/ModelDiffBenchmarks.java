@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.util.Vector;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+
+/**
+ * Benchmarks of updating a model to a refreshed feed: new entries at the
+ * top, entries dropped from the feed, entries moved and entries with a new
+ * title. Fails if the model does not match the new feed afterwards, if the
+ * listener is told of other changes than the ones made or if an unchanged
+ * entry loses its instance.
+ */
+public final class ModelDiffBenchmarks {
+    // Constants
+    private static final int ENTRIES = 100;
+    private static final int CHANGES = 10;
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int MOVED = 2;
+    private static final int CHANGED = 3;
+    private static final String[] NAMES = {"insert", "remove", "move", "change"};
+
+    private ModelDiffBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        for (int i = 0; i < NAMES.length; i++) {
+            runner.add(apply(i));
+        }
+    }
+
+    private static Benchmark apply(final int change) {
+        return new Benchmark("ModelDiff.apply/" + NAMES[change]) {
+            private Vector feed;
+            private Vector newFeed;
+
+            public void setUp() {
+                feed = createFeed(0, ENTRIES, "");
+                newFeed = new Vector(ENTRIES + CHANGES);
+
+                switch (change) {
+                    case INSERTED:
+                        copy(createFeed(ENTRIES, CHANGES, ""), newFeed);
+                        copy(feed, newFeed);
+                        break;
+                    case REMOVED:
+                        copy(feed, newFeed);
+
+                        for (int i = 0; i < CHANGES; i++) {
+                            newFeed.removeElementAt(i * 2);
+                        }
+
+                        break;
+                    case MOVED:
+                        copy(feed, newFeed);
+
+                        // The last entries move to the top
+                        for (int i = 0; i < CHANGES; i++) {
+                            final Object item = newFeed.lastElement();
+
+                            newFeed.removeElementAt(ENTRIES - 1);
+                            newFeed.insertElementAt(item, i);
+                        }
+
+                        break;
+                    default:
+                        copy(feed, newFeed);
+
+                        for (int i = 0; i < CHANGES; i++) {
+                            newFeed.setElementAt(
+                                    createFeed(i * 10, 1, " edited").elementAt(0),
+                                    i * 10);
+                        }
+                }
+            }
+
+            public Object run() {
+                final Vector model = new Vector(ENTRIES + CHANGES);
+                final int[] counts = new int[NAMES.length];
+
+                copy(feed, model);
+
+                final int changes = ModelDiff.apply(model, newFeed,
+                    new ModelDiff.Listener() {
+                        public void itemInserted(final int index,
+                                                 final PicasaImageObject item)
+                        {
+                            counts[INSERTED]++;
+                        }
+
+                        public void itemRemoved(final int index,
+                                                final PicasaImageObject item)
+                        {
+                            counts[REMOVED]++;
+                        }
+
+                        public void itemMoved(final int from,
+                                              final int to,
+                                              final PicasaImageObject item)
+                        {
+                            counts[MOVED]++;
+                        }
+
+                        public void itemChanged(final int index,
+                                                final PicasaImageObject oldItem,
+                                                final PicasaImageObject item)
+                        {
+                            counts[CHANGED]++;
+                        }
+                    });
+
+                check(model, counts, changes);
+
+                return model;
+            }
+
+            private void check(final Vector model,
+                               final int[] counts,
+                               final int changes)
+            {
+                for (int i = 0; i < NAMES.length; i++) {
+                    // A move to the top shifts the others without events
+                    if (counts[i] != (i == change ? CHANGES : 0)
+                        || changes != CHANGES)
+                    {
+                        throw new IllegalStateException("Wrong changes: "
+                                + NAMES[i] + "=" + counts[i]
+                                + " total=" + changes);
+                    }
+                }
+
+                if (model.size() != newFeed.size()) {
+                    throw new IllegalStateException("Wrong size: "
+                            + model.size());
+                }
+
+                for (int i = 0; i < model.size(); i++) {
+                    final PicasaImageObject item =
+                            (PicasaImageObject) model.elementAt(i);
+                    final PicasaImageObject expected =
+                            (PicasaImageObject) newFeed.elementAt(i);
+
+                    if (!item.imageUrl.equals(expected.imageUrl)
+                        || !item.title.equals(expected.title))
+                    {
+                        throw new IllegalStateException("Wrong entry at "
+                                + i + ": " + item);
+                    }
+
+                    // The instances of the old feed are kept unless changed
+                    if (feed.contains(expected) && item != expected) {
+                        throw new IllegalStateException("Instance lost at "
+                                + i + ": " + item);
+                    }
+                }
+            }
+        };
+    }
+
+    private static Vector createFeed(final int first,
+                                     final int count,
+                                     final String edit)
+    {
+        final Vector feed = new Vector(count);
+
+        for (int i = first; i < first + count; i++) {
+            feed.addElement(new PicasaImageObject("Title " + i + edit,
+                    "Author " + i,
+                    "http://localhost/thumb/" + i,
+                    "http://localhost/image/" + i));
+        }
+
+        return feed;
+    }
+
+    private static void copy(final Vector from, final Vector to) {
+        for (int i = 0; i < from.size(); i++) {
+            to.addElement(from.elementAt(i));
+        }
+    }
+}
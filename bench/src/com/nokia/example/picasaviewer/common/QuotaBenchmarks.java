@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import org.tantalum.net.StaticWebCache;
+import org.tantalum.storage.CacheView;
+import org.tantalum.util.CryptoUtils;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+
+/**
+ * Benchmarks of the quota manager: the index of a few weeks of browsing,
+ * mostly thumbnails with some full images and feeds, is compacted to the
+ * quota with each policy. Fails if a feed is evicted while there are full
+ * images or thumbnails left. The index is also reconciled with a cache from
+ * which Tantalum has removed every other entry, which fails if the removed
+ * entries are still counted.
+ */
+public final class QuotaBenchmarks {
+    // Constants
+    private static final int ENTRIES = 2000;
+    private static final int CACHED_ENTRIES = 200; // The stub looks up digests linearly
+    private static final int QUOTA = 1024 * 1024; // Bytes
+    private static final String[] POLICIES = {"LRU", "LFU", "GDSF"};
+
+    private QuotaBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        for (int i = 0; i < POLICIES.length; i++) {
+            runner.add(compact(i));
+        }
+
+        runner.add(reconcile());
+    }
+
+    private static Benchmark compact(final int policy) {
+        return new Benchmark("QuotaManager.compact/" + POLICIES[policy]) {
+            private StaticWebCache cache;
+
+            public void setUp() throws Exception {
+                cache = StaticWebCache.getWebCache('q', new CacheView() {
+                    public Object convertToUseForm(final Object key,
+                                                   final byte[] bytes)
+                    {
+                        return bytes;
+                    }
+                });
+            }
+
+            public Object run() {
+                final QuotaManager quotaManager =
+                        new QuotaManager(QUOTA, policy);
+
+                quotaManager.register('q', cache);
+
+                for (int i = 0; i < ENTRIES; i++) {
+                    final String url = "http://localhost/entry/" + i;
+                    final int tier = i % 50 == 0 ? QuotaManager.TIER_FEED
+                            : i % 10 == 0 ? QuotaManager.TIER_FULL_IMAGE
+                            : QuotaManager.TIER_THUMBNAIL;
+                    final int size = tier == QuotaManager.TIER_FULL_IMAGE ? 100000
+                            : tier == QuotaManager.TIER_FEED ? 20000 : 5000;
+
+                    quotaManager.record('q', url, size, tier);
+
+                    // A part of the entries is viewed again
+                    for (int j = 0; j < i % 3; j++) {
+                        quotaManager.touch('q', url);
+                    }
+                }
+
+                final int feedBytes =
+                        quotaManager.getUsedBytes(QuotaManager.TIER_FEED);
+
+                quotaManager.compact();
+
+                if (quotaManager.getUsedBytes() > QUOTA
+                    || quotaManager.getUsedBytes(QuotaManager.TIER_FEED) != feedBytes)
+                {
+                    throw new IllegalStateException("Evicted wrong entries: "
+                            + quotaManager);
+                }
+
+                return quotaManager;
+            }
+        };
+    }
+
+    private static Benchmark reconcile() {
+        return new Benchmark("QuotaManager.reconcile") {
+            private StaticWebCache cache;
+
+            public void setUp() throws Exception {
+                cache = StaticWebCache.getWebCache('r', new CacheView() {
+                    public Object convertToUseForm(final Object key,
+                                                   final byte[] bytes)
+                    {
+                        return bytes;
+                    }
+                });
+            }
+
+            public Object run() throws Exception {
+                final QuotaManager quotaManager =
+                        new QuotaManager(QUOTA, QuotaManager.POLICY_GDSF);
+                final byte[] bytes = new byte[1000];
+
+                quotaManager.register('r', cache);
+                cache.clear();
+
+                for (int i = 0; i < CACHED_ENTRIES; i++) {
+                    final String url = "http://localhost/entry/" + i;
+
+                    cache.put(url, bytes, cache.getDefaultCacheView(), null);
+                    quotaManager.record('r', url, bytes.length,
+                            QuotaManager.TIER_THUMBNAIL);
+                }
+
+                // Tantalum makes space without telling the quota manager
+                for (int i = 0; i < CACHED_ENTRIES; i += 2) {
+                    cache.remove(CryptoUtils.getInstance().toDigest(
+                            "http://localhost/entry/" + i));
+                }
+
+                final int dropped = quotaManager.reconcile('r');
+
+                if (dropped != CACHED_ENTRIES / 2
+                    || quotaManager.getUsedBytes() != cache.size() * bytes.length)
+                {
+                    throw new IllegalStateException("Removed entries counted: "
+                            + quotaManager);
+                }
+
+                return quotaManager;
+            }
+        };
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+import com.nokia.example.picasaviewer.util.ImageUtils;
+import com.nokia.example.picasaviewer.util.PngEncoder;
+
+/**
+ * Loading the thumbnails of a feed page: the atlas record of the JPEGs, the
+ * thumbnails one by one and, for comparison, a PNG of the tiles composited
+ * like the grid. The thumbnails are photo-like 128 pixel JPEGs, the ones the
+ * grid loads for tiles of 80 to 128 pixels. The sizes of the records are
+ * printed, as they are written to and read from the flash.
+ */
+public final class ThumbnailAtlasBenchmarks {
+    // Constants
+    private static final int THUMB_SIDE = 128;
+    private static final int[] TILE_SIDES = { 80, 120, 128 };
+    private static final int COLUMNS = 3;
+    private static final int PNG_DROP_BITS = 2; // As the snapshots
+
+    private ThumbnailAtlasBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        final byte[][] jpegs = createThumbnails(ThumbnailAtlas.MAX_TILES);
+
+        for (int i = 0; i < TILE_SIDES.length; i++) {
+            runner.add(decodeAtlas(jpegs, TILE_SIDES[i]));
+            runner.add(decodeThumbnails(jpegs, TILE_SIDES[i]));
+            runner.add(decodePng(jpegs, TILE_SIDES[i]));
+        }
+    }
+
+    private static Benchmark decodeAtlas(final byte[][] jpegs, final int side) {
+        return new Benchmark("ThumbnailAtlas.decode/atlas/" + side) {
+            private byte[] record;
+
+            public void setUp() throws Exception {
+                final String[] urls = new String[jpegs.length];
+
+                for (int i = 0; i < urls.length; i++) {
+                    urls[i] = "http://localhost/image/s128-c/" + i + ".jpg";
+                }
+
+                record = ThumbnailAtlas.encode(side, urls, jpegs);
+                System.out.println(getName() + ": " + record.length
+                        + " bytes for " + jpegs.length + " tiles");
+            }
+
+            public Object run() {
+                final ThumbnailAtlas atlas = ThumbnailAtlas.decode(record);
+
+                if (atlas == null || atlas.getSide() != side) {
+                    throw new IllegalStateException("Atlas not decoded");
+                }
+
+                return atlas;
+            }
+        };
+    }
+
+    /**
+     * The thumbnails read from the cache one by one, without an atlas.
+     */
+    private static Benchmark decodeThumbnails(final byte[][] jpegs, final int side) {
+        return new Benchmark("ThumbnailAtlas.decode/thumbnails/" + side) {
+            public void setUp() {
+                int length = 0;
+
+                for (int i = 0; i < jpegs.length; i++) {
+                    length += jpegs[i].length;
+                }
+
+                System.out.println(getName() + ": " + length + " bytes in "
+                        + jpegs.length + " records");
+            }
+
+            public Object run() {
+                final Image[] tiles = new Image[jpegs.length];
+
+                for (int i = 0; i < jpegs.length; i++) {
+                    final Image image = Image.createImage(jpegs[i], 0, jpegs[i].length);
+
+                    tiles[i] = image.getWidth() == side ?
+                            image : ImageUtils.scale(image, side, side);
+                }
+
+                return tiles;
+            }
+        };
+    }
+
+    /**
+     * The tiles composited and stored as a PNG, the first atlas format.
+     */
+    private static Benchmark decodePng(final byte[][] jpegs, final int side) {
+        return new Benchmark("ThumbnailAtlas.decode/png/" + side) {
+            private byte[] png;
+
+            public void setUp() {
+                final int rows = (jpegs.length + COLUMNS - 1) / COLUMNS;
+                final int width = COLUMNS * side;
+                final int height = rows * side;
+                final Image atlas = Image.createImage(width, height);
+                final int[] argb = new int[width * height];
+
+                for (int i = 0; i < jpegs.length; i++) {
+                    final Image image = Image.createImage(jpegs[i], 0, jpegs[i].length);
+
+                    atlas.getGraphics().drawImage(
+                            image.getWidth() == side ?
+                                image : ImageUtils.scale(image, side, side),
+                            (i % COLUMNS) * side,
+                            (i / COLUMNS) * side,
+                            Graphics.TOP | Graphics.LEFT);
+                }
+
+                atlas.getRGB(argb, 0, width, 0, 0, width, height);
+                png = PngEncoder.encode(argb, width, height, PNG_DROP_BITS);
+                System.out.println(getName() + ": " + png.length
+                        + " bytes for " + jpegs.length + " tiles");
+            }
+
+            public Object run() {
+                return Image.createImage(png, 0, png.length);
+            }
+        };
+    }
+
+    /**
+     * @return JPEGs with smooth gradients, edges and noise, which compress
+     * like photos rather than like the stripes of the feed simulator.
+     */
+    private static byte[][] createThumbnails(final int count) {
+        final byte[][] jpegs = new byte[count][];
+        final Random random = new Random(count);
+
+        try {
+            for (int i = 0; i < count; i++) {
+                final BufferedImage image = new BufferedImage(THUMB_SIDE,
+                        THUMB_SIDE, BufferedImage.TYPE_INT_RGB);
+                final int[] base = {
+                    random.nextInt(256), random.nextInt(256), random.nextInt(256)
+                };
+                final int edge = THUMB_SIDE / 3 + random.nextInt(THUMB_SIDE / 3);
+
+                for (int y = 0; y < THUMB_SIDE; y++) {
+                    for (int x = 0; x < THUMB_SIDE; x++) {
+                        int rgb = 0;
+
+                        for (int c = 0; c < 3; c++) {
+                            final int value = base[c] + (x + y) * (c + 1) / 4
+                                    + (x + y / 2 > edge ? 60 : 0)
+                                    + random.nextInt(24);
+
+                            rgb = (rgb << 8) | Math.min(255, Math.max(0, value % 256));
+                        }
+
+                        image.setRGB(x, y, rgb);
+                    }
+                }
+
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+                ImageIO.write(image, "jpg", bytes);
+                jpegs[i] = bytes.toByteArray();
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e.toString());
+        }
+
+        return jpegs;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import java.util.Random;
+
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Image;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+
+/**
+ * Benchmarks of ImageUtils with the image sizes used by the application:
+ * thumbnails of 128 and 256 pixels, category bar textures of 44 pixels high
+ * and icons of 48 pixels.
+ */
+public final class ImageUtilsBenchmarks {
+    private ImageUtilsBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        runner.add(new Benchmark("ImageUtils.scale/256to128") {
+            private final Image image = createImage(256, 256, false);
+
+            public Object run() {
+                return ImageUtils.scale(image, 128, 128);
+            }
+        });
+        runner.add(new Benchmark("ImageUtils.scaleInto/256to128") {
+            private final Image image = createImage(256, 256, false);
+            private final ImagePool pool = new ImagePool(128 * 128 * 4);
+
+            public Object run() {
+                final Image tile = ImageUtils.scaleInto(image, pool.acquire(128));
+                pool.release(tile);
+                return tile;
+            }
+        });
+        runner.add(new Benchmark("ImageUtils.scale/128to240") {
+            private final Image image = createImage(128, 128, false);
+
+            public Object run() {
+                return ImageUtils.scale(image, 240, 240);
+            }
+        });
+        runner.add(new Benchmark("ImageUtils.scale/texture240x44") {
+            private final Image image = createImage(24, 44, false);
+
+            public Object run() {
+                return ImageUtils.scale(image, 240, 44);
+            }
+        });
+        runner.add(new Benchmark("ImageUtils.setAlpha/240x44") {
+            private final Image image = createImage(240, 44, true);
+
+            public Object run() {
+                return ImageUtils.setAlpha(image, 128);
+            }
+        });
+        runner.add(new Benchmark("ImageUtils.substractRgb/48x48") {
+            private final Image image = createImage(48, 48, true);
+
+            public Object run() {
+                return ImageUtils.substractRgb(image, 214, 88, 51);
+            }
+        });
+        runner.add(new Benchmark("ImageUtils.drawMaskedImage/48x48") {
+            private final Image image = createImage(48, 48, true);
+            private final Display display = Display.getDisplay(null);
+
+            public Object run() {
+                return ImageUtils.drawMaskedImage(image, display);
+            }
+        });
+    }
+
+    /**
+     * Creates an image of random pixels.
+     * @param translucent True to give a part of the pixels partial or no
+     * alpha, like an icon.
+     */
+    static Image createImage(final int width,
+                             final int height,
+                             final boolean translucent)
+    {
+        final Random random = new Random(width * 31 + height);
+        final int[] argb = new int[width * height];
+
+        for (int i = 0; i < argb.length; i++) {
+            int alpha = 0xff;
+
+            if (translucent && random.nextInt(4) == 0) {
+                alpha = random.nextInt(2) == 0 ? 0 : random.nextInt(0xff);
+            }
+
+            argb[i] = (alpha << 24) | (random.nextInt() & 0xffffff);
+        }
+
+        return Image.createRGBImage(argb, width, height, true);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import javax.microedition.lcdui.Font;
+
+import com.nokia.example.picasaviewer.bench.Benchmark;
+import com.nokia.example.picasaviewer.bench.BenchmarkRunner;
+
+/**
+ * Benchmarks of TextLayout: splitting a caption into lines (splitToLines)
+ * on a cache miss and on a cache hit, and truncating a title.
+ */
+public final class TextLayoutBenchmarks {
+    // Constants
+    private static final String TEXT =
+            "Sunset over the old harbour on a winter morning, "
+            + "photographed from the bridge by the market street";
+
+    private TextLayoutBenchmarks() {
+    }
+
+    public static void addTo(final BenchmarkRunner runner) {
+        final Font font = Font.getFont(
+                Font.FACE_SYSTEM, Font.STYLE_PLAIN, Font.SIZE_SMALL);
+
+        runner.add(new Benchmark("TextLayout.splitToLines/miss") {
+            public Object run() {
+                TextLayout.clearCache();
+                return TextLayout.getLines(TEXT, font, 120);
+            }
+        });
+        runner.add(new Benchmark("TextLayout.getLines/hit") {
+            public Object run() {
+                return TextLayout.getLines(TEXT, font, 120);
+            }
+        });
+        runner.add(new Benchmark("TextLayout.truncate/miss") {
+            public Object run() {
+                TextLayout.clearCache();
+                return TextLayout.truncate(TEXT, font, 120);
+            }
+        });
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui;
+
+import javax.microedition.lcdui.Canvas;
+import javax.microedition.lcdui.Graphics;
+
+/**
+ * Desktop stub of the Nokia UI canvas graphics item. The item is painted by
+ * the stub canvas on top of the canvas, see paintItem().
+ */
+public abstract class CanvasGraphicsItem extends CanvasItem {
+    public CanvasGraphicsItem(final int width, final int height) {
+        super(width, height);
+    }
+
+    public void repaint() {
+        repaint(0, 0, getWidth(), getHeight());
+    }
+
+    public void repaint(final int x, final int y, final int width, final int height) {
+        if (getParent() instanceof Canvas && isVisible()) {
+            ((Canvas) getParent()).repaint(getPositionX() + x,
+                    getPositionY() + y, width, height);
+        }
+    }
+
+    protected abstract void paint(Graphics graphics);
+
+    /**
+     * Not in the Nokia UI API: paints the item if it is visible, in its own
+     * coordinates.
+     */
+    public final void paintItem(final Graphics graphics) {
+        if (isVisible()) {
+            graphics.translate(getPositionX(), getPositionY());
+            paint(graphics);
+            graphics.translate(-getPositionX(), -getPositionY());
+        }
+    }
+}
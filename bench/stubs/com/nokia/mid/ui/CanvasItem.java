@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui;
+
+import javax.microedition.lcdui.Canvas;
+
+/**
+ * Desktop stub of the Nokia UI canvas item.
+ */
+public abstract class CanvasItem {
+    // Members
+    private Object parent = null;
+    private int x = 0;
+    private int y = 0;
+    private int width;
+    private int height;
+    private boolean visible = false;
+
+    CanvasItem(final int width, final int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public void setParent(final Object parent) {
+        if (this.parent instanceof Canvas) {
+            ((Canvas) this.parent).removeCanvasItem(this);
+        }
+
+        this.parent = parent;
+
+        if (parent instanceof Canvas) {
+            ((Canvas) parent).addCanvasItem(this);
+        }
+    }
+
+    public Object getParent() {
+        return parent;
+    }
+
+    public void setPosition(final int x, final int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public int getPositionX() {
+        return x;
+    }
+
+    public int getPositionY() {
+        return y;
+    }
+
+    public void setSize(final int width, final int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setVisible(final boolean visible) {
+        this.visible = visible;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui;
+
+import javax.microedition.lcdui.Image;
+
+/**
+ * Desktop stub of the Nokia UI category bar, keeps only the state.
+ */
+public class CategoryBar {
+    // Constants
+    public static final int ELEMENT_MODE_RELEASE_SELECTED = 0;
+    public static final int ELEMENT_MODE_STAY_SELECTED = 1;
+
+    // Members
+    private static CategoryBar visibleBar = null;
+    private ElementListener listener = null;
+    private int selectedIndex = 0;
+    private boolean visible = false;
+
+    public CategoryBar(final IconCommand[] elements, final boolean useLongLabel) {
+    }
+
+    public CategoryBar(final IconCommand[] elements,
+                       final boolean useLongLabel,
+                       final int mode)
+    {
+    }
+
+    public CategoryBar(final Image[] unselectedIcons,
+                       final Image[] selectedIcons,
+                       final String[] labels)
+    {
+    }
+
+    public CategoryBar(final Image[] unselectedIcons,
+                       final Image[] selectedIcons,
+                       final String[] labels,
+                       final int mode)
+    {
+    }
+
+    public void setVisibility(final boolean visible) {
+        this.visible = visible;
+
+        if (visible) {
+            visibleBar = this;
+        }
+        else if (visibleBar == this) {
+            visibleBar = null;
+        }
+    }
+
+    public boolean getVisibility() {
+        return visible;
+    }
+
+    public void setElementListener(final ElementListener listener) {
+        this.listener = listener;
+    }
+
+    public void setSelectedIndex(final int index) {
+        selectedIndex = index;
+    }
+
+    public int getSelectedIndex() {
+        return selectedIndex;
+    }
+
+    /**
+     * Stub only, selects an element of the visible category bar as if it was
+     * tapped.
+     * @return False if no category bar is visible.
+     */
+    public static boolean selectVisibleElement(final int index) {
+        final CategoryBar bar = visibleBar;
+
+        if (bar == null || bar.listener == null) {
+            return false;
+        }
+
+        bar.listener.notifyElementSelected(bar, index);
+        return true;
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui;
+
+import javax.microedition.lcdui.Image;
+
+/**
+ * Desktop stub of the Nokia UI utilities.
+ */
+public class DirectUtils {
+    /**
+     * Creates a mutable image filled with the given colour, which may be
+     * transparent.
+     */
+    public static Image createImage(final int width,
+                                    final int height,
+                                    final int argb)
+    {
+        return Image.createFilledImage(width, height, argb);
+    }
+}
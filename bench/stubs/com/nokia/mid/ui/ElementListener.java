@@ -0,0 +1,18 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui;
+
+/**
+ * Desktop stub of the Nokia UI category bar listener.
+ */
+public interface ElementListener {
+    int BACK = -1;
+
+    void notifyElementSelected(CategoryBar categoryBar, int selectedIndex);
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui;
+
+import javax.microedition.lcdui.Command;
+import javax.microedition.lcdui.Image;
+
+/**
+ * Desktop stub of the Nokia UI icon command.
+ */
+public class IconCommand extends Command {
+    // Constants
+    public static final int ICON_OK = 1;
+
+    public IconCommand(final String shortLabel,
+                       final String longLabel,
+                       final Image unselectedIcon,
+                       final Image selectedIcon,
+                       final int commandType,
+                       final int priority)
+    {
+        super(shortLabel, longLabel, commandType, priority);
+    }
+
+    public IconCommand(final String shortLabel,
+                       final String longLabel,
+                       final int commandType,
+                       final int priority,
+                       final int iconId)
+    {
+        super(shortLabel, longLabel, commandType, priority);
+    }
+}
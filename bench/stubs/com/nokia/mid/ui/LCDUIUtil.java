@@ -0,0 +1,23 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui;
+
+/**
+ * Desktop stub of the Nokia UI LCDUI utilities, the traits are ignored.
+ */
+public class LCDUIUtil {
+    private LCDUIUtil() {
+    }
+
+    public static void setObjectTrait(final Object object,
+                                      final String key,
+                                      final Object value)
+    {
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui;
+
+/**
+ * Desktop stub of the Nokia UI text editor, keeps only the content.
+ */
+public class TextEditor extends CanvasItem {
+    // Members
+    private final StringBuffer content = new StringBuffer();
+    private TextEditorListener listener = null;
+    private boolean focus = false;
+
+    private TextEditor(final int width, final int height) {
+        super(width, height);
+    }
+
+    public static TextEditor createTextEditor(final String text,
+                                              final int maxSize,
+                                              final int constraints,
+                                              final int width,
+                                              final int height)
+    {
+        final TextEditor editor = new TextEditor(width, height);
+
+        editor.content.append(text);
+
+        return editor;
+    }
+
+    public void insert(final String text, final int position) {
+        content.insert(position, text);
+        notifyListener();
+    }
+
+    public void setContent(final String text) {
+        content.setLength(0);
+        content.append(text);
+        notifyListener();
+    }
+
+    public String getContent() {
+        return content.toString();
+    }
+
+    public void setForegroundColor(final int color) {
+    }
+
+    public void setBackgroundColor(final int color) {
+    }
+
+    public void setTouchEnabled(final boolean enabled) {
+    }
+
+    public void setFocus(final boolean focus) {
+        this.focus = focus;
+    }
+
+    public boolean hasFocus() {
+        return focus;
+    }
+
+    public void setTextEditorListener(final TextEditorListener listener) {
+        this.listener = listener;
+    }
+
+    private void notifyListener() {
+        if (listener != null) {
+            listener.inputAction(this, TextEditorListener.ACTION_CONTENT_CHANGE);
+        }
+    }
+}
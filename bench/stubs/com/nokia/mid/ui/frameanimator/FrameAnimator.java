@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui.frameanimator;
+
+/**
+ * Desktop stub of the Nokia UI frame animator. It does not produce frames
+ * of its own, the harness replays the frames recorded on a device to the
+ * registered listener, see getListener().
+ */
+public class FrameAnimator {
+    // Constants
+    public static final int FRAME_ANIMATOR_VERTICAL = 1;
+    public static final int FRAME_ANIMATOR_HORIZONTAL = 2;
+    public static final int FRAME_ANIMATOR_FREE_ANGLE = 3;
+    public static final int FRAME_ANIMATOR_FRICTION_LOW = 0;
+    public static final int FRAME_ANIMATOR_FRICTION_MEDIUM = 1;
+    public static final int FRAME_ANIMATOR_FRICTION_HIGH = 2;
+
+    // Members
+    private FrameAnimatorListener listener = null;
+    private int kineticScrolls = 0;
+
+    public boolean register(final int x,
+                            final int y,
+                            final short maxFps,
+                            final short maxPps,
+                            final FrameAnimatorListener listener)
+    {
+        this.listener = listener;
+
+        return true;
+    }
+
+    public void unregister() {
+        listener = null;
+    }
+
+    public boolean isRegistered() {
+        return listener != null;
+    }
+
+    public void drag(final int x, final int y) {
+    }
+
+    public void kineticScroll(final int speed,
+                              final int direction,
+                              final int friction,
+                              final float angle)
+    {
+        kineticScrolls++;
+    }
+
+    public void stop() {
+    }
+
+    /**
+     * Not in the Nokia UI API.
+     * @return The registered listener or null.
+     */
+    public FrameAnimatorListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Not in the Nokia UI API.
+     * @return The number of kinetic scrolls started.
+     */
+    public int getKineticScrolls() {
+        return kineticScrolls;
+    }
+}
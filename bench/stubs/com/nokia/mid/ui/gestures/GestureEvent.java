@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui.gestures;
+
+/**
+ * Desktop stub of the Nokia UI gesture event.
+ */
+public interface GestureEvent {
+    int getType();
+
+    int getStartX();
+
+    int getStartY();
+
+    int getDragDistanceX();
+
+    int getDragDistanceY();
+
+    float getFlickDirection();
+
+    int getFlickSpeed();
+
+    int getFlickSpeedX();
+
+    int getFlickSpeedY();
+
+    int getPinchDistanceStarting();
+
+    int getPinchDistanceCurrent();
+
+    int getPinchDistanceChange();
+
+    int getPinchCenterX();
+
+    int getPinchCenterY();
+
+    int getPinchCenterChangeX();
+
+    int getPinchCenterChangeY();
+}
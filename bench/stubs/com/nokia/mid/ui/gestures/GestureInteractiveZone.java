@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui.gestures;
+
+/**
+ * Desktop stub of the Nokia UI gesture zone.
+ */
+public class GestureInteractiveZone {
+    // Constants
+    public static final int GESTURE_TAP = 0x1;
+    public static final int GESTURE_LONG_PRESS = 0x2;
+    public static final int GESTURE_DRAG = 0x4;
+    public static final int GESTURE_DROP = 0x8;
+    public static final int GESTURE_FLICK = 0x10;
+    public static final int GESTURE_LONG_PRESS_REPEATED = 0x20;
+    public static final int GESTURE_PINCH = 0x40;
+    public static final int GESTURE_ALL = 0x7f;
+
+    // Members
+    private final int gestures;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+
+    public GestureInteractiveZone(final int gestures) {
+        this.gestures = gestures;
+    }
+
+    public void setRectangle(final int x, final int y, final int width, final int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getGestures() {
+        return gestures;
+    }
+
+    public boolean contains(final int px, final int py) {
+        return px >= x && py >= y && px < x + width && py < y + height;
+    }
+}
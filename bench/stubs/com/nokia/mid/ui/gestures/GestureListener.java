@@ -0,0 +1,18 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui.gestures;
+
+/**
+ * Desktop stub of the Nokia UI gesture listener.
+ */
+public interface GestureListener {
+    void gestureAction(Object container,
+                       GestureInteractiveZone gestureInteractiveZone,
+                       GestureEvent gestureEvent);
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.mid.ui.gestures;
+
+import java.util.Hashtable;
+
+/**
+ * Desktop stub of the Nokia UI gesture registration. The harness delivers
+ * the gestures to the registered listener, see getListener().
+ */
+public class GestureRegistrationManager {
+    // Members
+    private static final Hashtable listeners = new Hashtable();
+    private static final Hashtable zones = new Hashtable();
+
+    private GestureRegistrationManager() {
+    }
+
+    public static boolean register(final Object container,
+                                   final GestureInteractiveZone zone)
+    {
+        zones.put(container, zone);
+
+        return true;
+    }
+
+    public static void unregisterAll(final Object container) {
+        zones.remove(container);
+        listeners.remove(container);
+    }
+
+    public static void setListener(final Object container,
+                                   final GestureListener listener)
+    {
+        listeners.put(container, listener);
+    }
+
+    /**
+     * Not in the Nokia UI API.
+     * @return The listener of the container or null.
+     */
+    public static GestureListener getListener(final Object container) {
+        return (GestureListener) listeners.get(container);
+    }
+
+    /**
+     * Not in the Nokia UI API.
+     * @return The zone registered for the container or null.
+     */
+    public static GestureInteractiveZone getZone(final Object container) {
+        return (GestureInteractiveZone) zones.get(container);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Desktop stub of the connector. Only socket://host:port is supported, over
+ * a java.net.Socket.
+ */
+public class Connector {
+    // Constants
+    private static final String SOCKET_SCHEME = "socket://";
+
+    private Connector() {
+    }
+
+    public static Connection open(final String name) throws IOException {
+        if (!name.startsWith(SOCKET_SCHEME)) {
+            throw new ConnectionNotFoundException("Not supported: " + name);
+        }
+
+        final int colon = name.lastIndexOf(':');
+
+        if (colon < SOCKET_SCHEME.length()) {
+            throw new IllegalArgumentException("No port: " + name);
+        }
+
+        return new SocketStub(new Socket(
+                name.substring(SOCKET_SCHEME.length(), colon),
+                Integer.parseInt(name.substring(colon + 1))));
+    }
+
+    private static final class SocketStub implements SocketConnection {
+        private final Socket socket;
+
+        SocketStub(final Socket socket) {
+            this.socket = socket;
+        }
+
+        public InputStream openInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        public OutputStream openOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        public void setSocketOption(final byte option, final int value)
+            throws IOException
+        {
+            try {
+                switch (option) {
+                    case DELAY:
+                        socket.setTcpNoDelay(value == 0);
+                        break;
+                    case LINGER:
+                        socket.setSoLinger(value > 0, value);
+                        break;
+                    case KEEPALIVE:
+                        socket.setKeepAlive(value != 0);
+                        break;
+                    case RCVBUF:
+                        socket.setReceiveBufferSize(value);
+                        break;
+                    case SNDBUF:
+                        socket.setSendBufferSize(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Option " + option);
+                }
+            }
+            catch (SocketException e) {
+                throw new IOException(e.toString());
+            }
+        }
+
+        public int getSocketOption(final byte option) throws IOException {
+            switch (option) {
+                case DELAY:
+                    return socket.getTcpNoDelay() ? 0 : 1;
+                case LINGER:
+                    return socket.getSoLinger();
+                case KEEPALIVE:
+                    return socket.getKeepAlive() ? 1 : 0;
+                case RCVBUF:
+                    return socket.getReceiveBufferSize();
+                case SNDBUF:
+                    return socket.getSendBufferSize();
+                default:
+                    throw new IllegalArgumentException("Option " + option);
+            }
+        }
+
+        public String getAddress() {
+            return socket.getInetAddress().getHostAddress();
+        }
+
+        public int getPort() {
+            return socket.getPort();
+        }
+
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
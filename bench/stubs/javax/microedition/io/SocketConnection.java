@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.io;
+
+import java.io.IOException;
+
+/**
+ * Desktop stub of the MIDP 2.0 socket connection.
+ */
+public interface SocketConnection extends StreamConnection {
+    // Constants
+    byte DELAY = 0;
+    byte LINGER = 1;
+    byte KEEPALIVE = 2;
+    byte RCVBUF = 3;
+    byte SNDBUF = 4;
+
+    void setSocketOption(byte option, int value)
+        throws IllegalArgumentException, IOException;
+
+    int getSocketOption(byte option) throws IllegalArgumentException, IOException;
+
+    String getAddress() throws IOException;
+
+    int getPort() throws IOException;
+}
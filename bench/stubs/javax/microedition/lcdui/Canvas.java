@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.lcdui;
+
+import java.util.Vector;
+
+import com.nokia.mid.ui.CanvasGraphicsItem;
+import com.nokia.mid.ui.CanvasItem;
+
+/**
+ * Desktop stub of the MIDP canvas. Repaint requests are only recorded, the
+ * harness paints the pending area with servicePendingRepaint(). The canvas
+ * graphics items are painted on top of the canvas.
+ */
+public abstract class Canvas extends Displayable {
+    // Members
+    private int repaintX;
+    private int repaintY;
+    private int repaintRight;
+    private int repaintBottom;
+    private boolean repaintPending = false;
+    private final Vector items = new Vector();
+
+    protected Canvas() {
+    }
+
+    public void setFullScreenMode(final boolean mode) {
+    }
+
+    public final void repaint() {
+        repaint(0, 0, getWidth(), getHeight());
+    }
+
+    public final synchronized void repaint(final int x,
+                                           final int y,
+                                           final int width,
+                                           final int height)
+    {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (!repaintPending) {
+            repaintX = x;
+            repaintY = y;
+            repaintRight = x + width;
+            repaintBottom = y + height;
+            repaintPending = true;
+        }
+        else {
+            repaintX = Math.min(repaintX, x);
+            repaintY = Math.min(repaintY, y);
+            repaintRight = Math.max(repaintRight, x + width);
+            repaintBottom = Math.max(repaintBottom, y + height);
+        }
+    }
+
+    public final void serviceRepaints() {
+    }
+
+    /**
+     * Not in MIDP.
+     * @return True if a repaint has been requested since the last paint.
+     */
+    public final synchronized boolean isRepaintPending() {
+        return repaintPending;
+    }
+
+    /**
+     * Not in MIDP: paints the area requested with repaint(), clipped as on
+     * the device.
+     * @param graphics The graphics context of the screen.
+     * @return True if there was something to paint.
+     */
+    public final boolean servicePendingRepaint(final Graphics graphics) {
+        synchronized (this) {
+            if (!repaintPending) {
+                return false;
+            }
+
+            repaintPending = false;
+            graphics.translate(-graphics.getTranslateX(), -graphics.getTranslateY());
+            graphics.setClip(repaintX, repaintY, repaintRight - repaintX,
+                    repaintBottom - repaintY);
+        }
+
+        paint(graphics);
+
+        for (int i = 0; i < items.size(); i++) {
+            if (items.elementAt(i) instanceof CanvasGraphicsItem) {
+                ((CanvasGraphicsItem) items.elementAt(i)).paintItem(graphics);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Not in MIDP, called by the stub CanvasItem.setParent().
+     */
+    public final void addCanvasItem(final CanvasItem item) {
+        if (!items.contains(item)) {
+            items.addElement(item);
+        }
+    }
+
+    /**
+     * Not in MIDP, called by the stub CanvasItem.setParent().
+     */
+    public final void removeCanvasItem(final CanvasItem item) {
+        items.removeElement(item);
+    }
+
+    protected abstract void paint(Graphics graphics);
+
+    protected void showNotify() {
+    }
+
+    protected void hideNotify() {
+    }
+
+    protected void keyPressed(final int keyCode) {
+    }
+
+    protected void pointerPressed(final int x, final int y) {
+    }
+
+    protected void pointerReleased(final int x, final int y) {
+    }
+
+    protected void pointerDragged(final int x, final int y) {
+    }
+
+    /**
+     * Not in MIDP: delivers a pointer event as the platform would.
+     */
+    public final void dispatchPointer(final int type, final int x, final int y) {
+        if (type == 0) {
+            pointerPressed(x, y);
+        }
+        else if (type == 1) {
+            pointerDragged(x, y);
+        }
+        else {
+            pointerReleased(x, y);
+        }
+    }
+
+    final void showNotifyInternal() {
+        showNotify();
+    }
+
+    final void hideNotifyInternal() {
+        hideNotify();
+    }
+}
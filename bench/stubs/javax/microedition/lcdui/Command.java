@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.lcdui;
+
+/**
+ * Desktop stub of the MIDP command.
+ */
+public class Command {
+    // Constants
+    public static final int SCREEN = 1;
+    public static final int BACK = 2;
+    public static final int CANCEL = 3;
+    public static final int OK = 4;
+    public static final int HELP = 5;
+    public static final int STOP = 6;
+    public static final int EXIT = 7;
+    public static final int ITEM = 8;
+
+    // Members
+    private final String label;
+    private final int commandType;
+    private final int priority;
+
+    public Command(final String label, final int commandType, final int priority) {
+        this(label, label, commandType, priority);
+    }
+
+    public Command(final String shortLabel,
+                   final String longLabel,
+                   final int commandType,
+                   final int priority)
+    {
+        this.label = shortLabel;
+        this.commandType = commandType;
+        this.priority = priority;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getCommandType() {
+        return commandType;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.lcdui;
+
+import java.util.Vector;
+
+import javax.microedition.midlet.MIDlet;
+
+/**
+ * Desktop stub of the MIDP display. There is no event thread: the serial
+ * calls are queued and run by the harness with runSerialCalls().
+ */
+public class Display {
+    // Constants
+    public static final int COLOR_BACKGROUND = 0;
+    public static final int COLOR_FOREGROUND = 1;
+    public static final int COLOR_HIGHLIGHTED_BACKGROUND = 2;
+    public static final int COLOR_HIGHLIGHTED_FOREGROUND = 3;
+    public static final int COLOR_BORDER = 4;
+    public static final int COLOR_HIGHLIGHTED_BORDER = 5;
+    private static final Display INSTANCE = new Display();
+
+    // Members
+    private final Vector serialCalls = new Vector();
+    private Displayable current = null;
+
+    private Display() {
+    }
+
+    public static Display getDisplay(final MIDlet midlet) {
+        return INSTANCE;
+    }
+
+    public int getColor(final int colorSpecifier) {
+        return colorSpecifier == COLOR_HIGHLIGHTED_BORDER ? 0x29a7cc : 0xffffff;
+    }
+
+    public Displayable getCurrent() {
+        return current;
+    }
+
+    public void setCurrent(final Displayable displayable) {
+        if (displayable == current) {
+            return;
+        }
+
+        final Displayable previous = current;
+
+        current = displayable;
+
+        if (previous instanceof Canvas) {
+            ((Canvas) previous).hideNotifyInternal();
+        }
+
+        if (displayable instanceof Canvas) {
+            ((Canvas) displayable).showNotifyInternal();
+            ((Canvas) displayable).repaint();
+        }
+    }
+
+    public void callSerially(final Runnable runnable) {
+        serialCalls.addElement(runnable);
+    }
+
+    /**
+     * Not in MIDP: runs the queued serial calls, including the ones queued
+     * while running them.
+     * @return The number of calls run.
+     */
+    public int runSerialCalls() {
+        int count = 0;
+
+        while (true) {
+            final Runnable runnable;
+
+            synchronized (serialCalls) {
+                if (serialCalls.isEmpty()) {
+                    return count;
+                }
+
+                runnable = (Runnable) serialCalls.elementAt(0);
+                serialCalls.removeElementAt(0);
+            }
+
+            runnable.run();
+            count++;
+        }
+    }
+}
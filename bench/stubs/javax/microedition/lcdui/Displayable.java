@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.lcdui;
+
+import java.util.Vector;
+
+/**
+ * Desktop stub of the MIDP displayable. The screen size is read from the
+ * system properties bench.screen.width and bench.screen.height, by default
+ * 240x320 as on the Asha full touch phones.
+ */
+public abstract class Displayable {
+    // Members
+    private final int width = Integer.getInteger("bench.screen.width", 240).intValue();
+    private final int height = Integer.getInteger("bench.screen.height", 320).intValue();
+    private final Vector commands = new Vector();
+    private CommandListener commandListener = null;
+    private String title = null;
+
+    Displayable() {
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void addCommand(final Command command) {
+        if (!commands.contains(command)) {
+            commands.addElement(command);
+        }
+    }
+
+    public void removeCommand(final Command command) {
+        commands.removeElement(command);
+    }
+
+    public void setCommandListener(final CommandListener listener) {
+        commandListener = listener;
+    }
+
+    /**
+     * Not in MIDP: invokes the command listener as if the user had selected
+     * the command.
+     */
+    public void dispatchCommand(final Command command) {
+        if (commandListener != null) {
+            commandListener.commandAction(command, this);
+        }
+    }
+
+    /**
+     * Not in MIDP.
+     * @return The added command with the given label or null.
+     */
+    public Command getCommand(final String label) {
+        for (int i = 0; i < commands.size(); i++) {
+            final Command command = (Command) commands.elementAt(i);
+
+            if (command.getLabel().equals(label)) {
+                return command;
+            }
+        }
+
+        return null;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(final String title) {
+        this.title = title;
+    }
+
+    public boolean isShown() {
+        return Display.getDisplay(null).getCurrent() == this;
+    }
+
+    protected void sizeChanged(final int width, final int height) {
+    }
+}
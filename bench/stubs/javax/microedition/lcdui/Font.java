@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.lcdui;
+
+/**
+ * Desktop stub of the MIDP font with fixed metrics: the characters of the
+ * medium size are 8 pixels wide, spaces and narrow letters half of that.
+ */
+public final class Font {
+    // Constants
+    public static final int FACE_SYSTEM = 0;
+    public static final int FACE_MONOSPACE = 32;
+    public static final int FACE_PROPORTIONAL = 64;
+    public static final int STYLE_PLAIN = 0;
+    public static final int STYLE_BOLD = 1;
+    public static final int STYLE_ITALIC = 2;
+    public static final int STYLE_UNDERLINED = 4;
+    public static final int SIZE_SMALL = 8;
+    public static final int SIZE_MEDIUM = 0;
+    public static final int SIZE_LARGE = 16;
+    private static final Font DEFAULT = new Font(FACE_SYSTEM, STYLE_PLAIN, SIZE_MEDIUM);
+
+    // Members
+    private final int face;
+    private final int style;
+    private final int size;
+    private final int charWidth;
+
+    private Font(final int face, final int style, final int size) {
+        this.face = face;
+        this.style = style;
+        this.size = size;
+        this.charWidth = size == SIZE_SMALL ? 6 : size == SIZE_LARGE ? 10 : 8;
+    }
+
+    public static Font getDefaultFont() {
+        return DEFAULT;
+    }
+
+    public static Font getFont(final int face, final int style, final int size) {
+        return new Font(face, style, size);
+    }
+
+    public int getFace() {
+        return face;
+    }
+
+    public int getStyle() {
+        return style;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getHeight() {
+        return charWidth * 2;
+    }
+
+    public int getBaselinePosition() {
+        return charWidth * 2 - charWidth / 2;
+    }
+
+    public int charWidth(final char c) {
+        return c == ' ' || c == 'i' || c == 'l' || c == '.' ? charWidth / 2 : charWidth;
+    }
+
+    public int charsWidth(final char[] chars, final int offset, final int length) {
+        int width = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            width += charWidth(chars[i]);
+        }
+
+        return width;
+    }
+
+    public int stringWidth(final String text) {
+        return substringWidth(text, 0, text.length());
+    }
+
+    public int substringWidth(final String text, final int offset, final int length) {
+        int width = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            width += charWidth(text.charAt(i));
+        }
+
+        return width;
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.lcdui;
+
+/**
+ * Desktop stub of the MIDP graphics context: a software renderer into the
+ * pixels of a mutable image, or a counting no-op if there is no image.
+ * Text is not rendered, only measured.
+ */
+public class Graphics {
+    // Constants
+    public static final int HCENTER = 1;
+    public static final int VCENTER = 2;
+    public static final int LEFT = 4;
+    public static final int RIGHT = 8;
+    public static final int TOP = 16;
+    public static final int BOTTOM = 32;
+    public static final int BASELINE = 64;
+    public static final int SOLID = 0;
+    public static final int DOTTED = 1;
+
+    // Members
+    private final Image target;
+    private final int targetWidth;
+    private final int targetHeight;
+    private int color = 0xff000000;
+    private Font font = Font.getDefaultFont();
+    private int translateX = 0;
+    private int translateY = 0;
+    private int clipX;
+    private int clipY;
+    private int clipWidth;
+    private int clipHeight;
+    private long drawCalls = 0;
+
+    Graphics(final Image target) {
+        this(target, target.width, target.height);
+    }
+
+    /**
+     * Creates a graphics context which only counts the draw calls, e.g. for
+     * measuring the painting logic without the cost of the pixels.
+     * @param width The width of the surface.
+     * @param height The height of the surface.
+     */
+    public Graphics(final int width, final int height) {
+        this(null, width, height);
+    }
+
+    private Graphics(final Image target, final int width, final int height) {
+        this.target = target;
+        this.targetWidth = width;
+        this.targetHeight = height;
+        clipWidth = width;
+        clipHeight = height;
+    }
+
+    /**
+     * @return The number of draw calls made through this context.
+     */
+    public long getDrawCalls() {
+        return drawCalls;
+    }
+
+    public void setColor(final int rgb) {
+        color = 0xff000000 | rgb;
+    }
+
+    public void setColor(final int red, final int green, final int blue) {
+        setColor((red << 16) | (green << 8) | blue);
+    }
+
+    public int getColor() {
+        return color & 0xffffff;
+    }
+
+    public void setFont(final Font font) {
+        this.font = font != null ? font : Font.getDefaultFont();
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public void translate(final int x, final int y) {
+        translateX += x;
+        translateY += y;
+    }
+
+    public int getTranslateX() {
+        return translateX;
+    }
+
+    public int getTranslateY() {
+        return translateY;
+    }
+
+    public void setClip(final int x, final int y, final int width, final int height) {
+        clipX = x + translateX;
+        clipY = y + translateY;
+        clipWidth = width;
+        clipHeight = height;
+    }
+
+    public void clipRect(final int x, final int y, final int width, final int height) {
+        final int left = Math.max(clipX, x + translateX);
+        final int top = Math.max(clipY, y + translateY);
+        final int right = Math.min(clipX + clipWidth, x + translateX + width);
+        final int bottom = Math.min(clipY + clipHeight, y + translateY + height);
+
+        clipX = left;
+        clipY = top;
+        clipWidth = Math.max(0, right - left);
+        clipHeight = Math.max(0, bottom - top);
+    }
+
+    public int getClipX() {
+        return clipX - translateX;
+    }
+
+    public int getClipY() {
+        return clipY - translateY;
+    }
+
+    public int getClipWidth() {
+        return clipWidth;
+    }
+
+    public int getClipHeight() {
+        return clipHeight;
+    }
+
+    public void fillRect(final int x, final int y, final int width, final int height) {
+        drawCalls++;
+        fill(x + translateX, y + translateY, width, height);
+    }
+
+    public void fillRoundRect(final int x,
+                              final int y,
+                              final int width,
+                              final int height,
+                              final int arcWidth,
+                              final int arcHeight)
+    {
+        fillRect(x, y, width, height);
+    }
+
+    public void drawRect(final int x, final int y, final int width, final int height) {
+        drawCalls++;
+        fill(x + translateX, y + translateY, width + 1, 1);
+        fill(x + translateX, y + translateY + height, width + 1, 1);
+        fill(x + translateX, y + translateY, 1, height + 1);
+        fill(x + translateX + width, y + translateY, 1, height + 1);
+    }
+
+    public void drawLine(final int x1, final int y1, final int x2, final int y2) {
+        drawCalls++;
+        final int steps = Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1));
+
+        for (int i = 0; i <= steps; i++) {
+            final int x = steps == 0 ? x1 : x1 + (x2 - x1) * i / steps;
+            final int y = steps == 0 ? y1 : y1 + (y2 - y1) * i / steps;
+
+            fill(x + translateX, y + translateY, 1, 1);
+        }
+    }
+
+    public void drawString(final String text, final int x, final int y, final int anchor) {
+        drawCalls++;
+    }
+
+    public void drawSubstring(final String text,
+                              final int offset,
+                              final int length,
+                              final int x,
+                              final int y,
+                              final int anchor)
+    {
+        drawCalls++;
+    }
+
+    public void drawChars(final char[] chars,
+                          final int offset,
+                          final int length,
+                          final int x,
+                          final int y,
+                          final int anchor)
+    {
+        drawCalls++;
+    }
+
+    public void drawImage(final Image image, final int x, final int y, final int anchor) {
+        drawRegion(image, 0, 0, image.width, image.height, 0, x, y, anchor);
+    }
+
+    public void drawRegion(final Image image,
+                           final int sourceX,
+                           final int sourceY,
+                           final int width,
+                           final int height,
+                           final int transform,
+                           final int x,
+                           final int y,
+                           final int anchor)
+    {
+        if (transform != 0) {
+            throw new IllegalArgumentException("Transforms are not supported");
+        }
+
+        drawCalls++;
+        blit(image.argb, sourceY * image.width + sourceX, image.width,
+                anchorX(x, width, anchor) + translateX,
+                anchorY(y, height, anchor) + translateY,
+                width, height, true);
+    }
+
+    public void drawRGB(final int[] rgb,
+                        final int offset,
+                        final int scanLength,
+                        final int x,
+                        final int y,
+                        final int width,
+                        final int height,
+                        final boolean processAlpha)
+    {
+        drawCalls++;
+        blit(rgb, offset, scanLength, x + translateX, y + translateY, width,
+                height, processAlpha);
+    }
+
+    private static int anchorX(final int x, final int width, final int anchor) {
+        if ((anchor & HCENTER) != 0) {
+            return x - width / 2;
+        }
+
+        return (anchor & RIGHT) != 0 ? x - width : x;
+    }
+
+    private static int anchorY(final int y, final int height, final int anchor) {
+        if ((anchor & VCENTER) != 0) {
+            return y - height / 2;
+        }
+
+        return (anchor & BOTTOM) != 0 ? y - height : y;
+    }
+
+    private void fill(final int x, final int y, final int width, final int height) {
+        if (target == null) {
+            return;
+        }
+
+        final int left = Math.max(x, Math.max(clipX, 0));
+        final int top = Math.max(y, Math.max(clipY, 0));
+        final int right = Math.min(x + width, Math.min(clipX + clipWidth, targetWidth));
+        final int bottom = Math.min(y + height, Math.min(clipY + clipHeight, targetHeight));
+
+        for (int row = top; row < bottom; row++) {
+            final int start = row * targetWidth;
+
+            for (int column = left; column < right; column++) {
+                target.argb[start + column] = color;
+            }
+        }
+    }
+
+    private void blit(final int[] source,
+                      final int offset,
+                      final int scanLength,
+                      final int x,
+                      final int y,
+                      final int width,
+                      final int height,
+                      final boolean processAlpha)
+    {
+        if (target == null) {
+            return;
+        }
+
+        final int left = Math.max(x, Math.max(clipX, 0));
+        final int top = Math.max(y, Math.max(clipY, 0));
+        final int right = Math.min(x + width, Math.min(clipX + clipWidth, targetWidth));
+        final int bottom = Math.min(y + height, Math.min(clipY + clipHeight, targetHeight));
+
+        for (int row = top; row < bottom; row++) {
+            final int sourceStart = offset + (row - y) * scanLength - x;
+            final int targetStart = row * targetWidth;
+
+            for (int column = left; column < right; column++) {
+                final int pixel = source[sourceStart + column];
+                final int alpha = processAlpha ? pixel >>> 24 : 0xff;
+
+                if (alpha == 0xff) {
+                    target.argb[targetStart + column] = pixel | 0xff000000;
+                }
+                else if (alpha != 0) {
+                    target.argb[targetStart + column] =
+                            blend(target.argb[targetStart + column], pixel, alpha);
+                }
+            }
+        }
+    }
+
+    private static int blend(final int under, final int over, final int alpha) {
+        final int inverse = 0xff - alpha;
+        final int red = (((over >> 16) & 0xff) * alpha + ((under >> 16) & 0xff) * inverse) / 0xff;
+        final int green = (((over >> 8) & 0xff) * alpha + ((under >> 8) & 0xff) * inverse) / 0xff;
+        final int blue = ((over & 0xff) * alpha + (under & 0xff) * inverse) / 0xff;
+
+        return 0xff000000 | (red << 16) | (green << 8) | blue;
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.lcdui;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Desktop stub of the MIDP image: an ARGB pixel array. Encoded images are
+ * decoded with javax.imageio.
+ */
+public class Image {
+    // Members
+    final int width;
+    final int height;
+    final int[] argb;
+    private final boolean mutable;
+
+    Image(final int width, final int height, final boolean mutable) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+
+        this.width = width;
+        this.height = height;
+        this.argb = new int[width * height];
+        this.mutable = mutable;
+    }
+
+    public static Image createImage(final int width, final int height) {
+        final Image image = new Image(width, height, true);
+
+        java.util.Arrays.fill(image.argb, 0xffffffff);
+
+        return image;
+    }
+
+    /**
+     * Not in MIDP: creates a mutable image filled with the given colour,
+     * which may be transparent. Used by the DirectUtils stub.
+     */
+    public static Image createFilledImage(final int width,
+                                          final int height,
+                                          final int argb)
+    {
+        final Image image = new Image(width, height, true);
+
+        java.util.Arrays.fill(image.argb, argb);
+
+        return image;
+    }
+
+    public static Image createImage(final Image source) {
+        if (!source.mutable) {
+            return source;
+        }
+
+        final Image image = new Image(source.width, source.height, false);
+
+        System.arraycopy(source.argb, 0, image.argb, 0, source.argb.length);
+
+        return image;
+    }
+
+    public static Image createImage(final Image source,
+                                    final int x,
+                                    final int y,
+                                    final int width,
+                                    final int height,
+                                    final int transform)
+    {
+        if (transform != 0) {
+            throw new IllegalArgumentException("Transforms are not supported");
+        }
+
+        final Image image = new Image(width, height, false);
+
+        source.getRGB(image.argb, 0, width, x, y, width, height);
+
+        return image;
+    }
+
+    public static Image createRGBImage(final int[] rgb,
+                                       final int width,
+                                       final int height,
+                                       final boolean processAlpha)
+    {
+        final Image image = new Image(width, height, false);
+
+        for (int i = 0; i < image.argb.length; i++) {
+            image.argb[i] = processAlpha ? rgb[i] : rgb[i] | 0xff000000;
+        }
+
+        return image;
+    }
+
+    public static Image createImage(final byte[] data,
+                                    final int offset,
+                                    final int length)
+    {
+        try {
+            return createImage(new ByteArrayInputStream(data, offset, length));
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(e.toString());
+        }
+    }
+
+    public static Image createImage(final InputStream stream)
+        throws IOException
+    {
+        final java.awt.image.BufferedImage decoded =
+                javax.imageio.ImageIO.read(stream);
+
+        if (decoded == null) {
+            throw new IOException("Can not decode image");
+        }
+
+        final Image image =
+                new Image(decoded.getWidth(), decoded.getHeight(), false);
+
+        decoded.getRGB(0, 0, image.width, image.height, image.argb, 0,
+                image.width);
+
+        return image;
+    }
+
+    public static Image createImage(final String name) throws IOException {
+        final InputStream stream = Image.class.getResourceAsStream(name);
+
+        if (stream == null) {
+            throw new IOException("No resource " + name);
+        }
+
+        return createImage(stream);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isMutable() {
+        return mutable;
+    }
+
+    public Graphics getGraphics() {
+        if (!mutable) {
+            throw new IllegalStateException("Image is immutable");
+        }
+
+        return new Graphics(this);
+    }
+
+    public void getRGB(final int[] rgb,
+                       final int offset,
+                       final int scanLength,
+                       final int x,
+                       final int y,
+                       final int width,
+                       final int height)
+    {
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(argb, (y + row) * this.width + x, rgb,
+                    offset + row * scanLength, width);
+        }
+    }
+}
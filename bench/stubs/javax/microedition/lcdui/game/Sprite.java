@@ -0,0 +1,20 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.lcdui.game;
+
+/**
+ * Desktop stub of the MIDP sprite, only the transforms.
+ */
+public class Sprite {
+    // Constants
+    public static final int TRANS_NONE = 0;
+
+    private Sprite() {
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.midlet;
+
+/**
+ * Desktop stub of the MIDlet, application properties are read from the
+ * system properties.
+ */
+public abstract class MIDlet {
+    protected MIDlet() {
+    }
+
+    protected abstract void startApp() throws MIDletStateChangeException;
+
+    protected abstract void pauseApp();
+
+    protected abstract void destroyApp(boolean unconditional)
+        throws MIDletStateChangeException;
+
+    public final String getAppProperty(final String key) {
+        return System.getProperty(key);
+    }
+
+    public final void notifyDestroyed() {
+    }
+
+    public final void notifyPaused() {
+    }
+
+    public final void resumeRequest() {
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.midlet;
+
+/**
+ * Desktop stub of the MIDlet state change exception.
+ */
+public class MIDletStateChangeException extends Exception {
+    public MIDletStateChangeException() {
+    }
+
+    public MIDletStateChangeException(final String message) {
+        super(message);
+    }
+}
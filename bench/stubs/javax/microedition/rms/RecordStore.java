@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package javax.microedition.rms;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Desktop stub of the RMS record store, kept in memory for the lifetime of
+ * the JVM. Deleted records leave a null slot, so record IDs are not reused.
+ */
+public class RecordStore {
+    // Members
+    private static final Hashtable stores = new Hashtable();
+    private final String name;
+    private final Vector records = new Vector(); // Record ID - 1 to byte[]
+    private int openCount = 0;
+
+    private RecordStore(final String name) {
+        this.name = name;
+    }
+
+    public static RecordStore openRecordStore(final String name,
+                                              final boolean createIfNecessary)
+        throws RecordStoreException
+    {
+        synchronized (stores) {
+            RecordStore store = (RecordStore) stores.get(name);
+
+            if (store == null) {
+                if (!createIfNecessary) {
+                    throw new RecordStoreNotFoundException(name);
+                }
+
+                store = new RecordStore(name);
+                stores.put(name, store);
+            }
+
+            store.openCount++;
+
+            return store;
+        }
+    }
+
+    public static void deleteRecordStore(final String name)
+        throws RecordStoreException
+    {
+        synchronized (stores) {
+            if (stores.remove(name) == null) {
+                throw new RecordStoreNotFoundException(name);
+            }
+        }
+    }
+
+    public static String[] listRecordStores() {
+        synchronized (stores) {
+            if (stores.isEmpty()) {
+                return null;
+            }
+
+            final String[] names = new String[stores.size()];
+            final java.util.Enumeration keys = stores.keys();
+
+            for (int i = 0; keys.hasMoreElements(); i++) {
+                names[i] = (String) keys.nextElement();
+            }
+
+            return names;
+        }
+    }
+
+    public synchronized void closeRecordStore() throws RecordStoreException {
+        checkOpen();
+        openCount--;
+    }
+
+    public synchronized int addRecord(final byte[] data,
+                                      final int offset,
+                                      final int length)
+        throws RecordStoreException
+    {
+        checkOpen();
+        records.addElement(copy(data, offset, length));
+
+        return records.size();
+    }
+
+    public synchronized void setRecord(final int recordId,
+                                       final byte[] data,
+                                       final int offset,
+                                       final int length)
+        throws RecordStoreException
+    {
+        checkRecord(recordId);
+        records.setElementAt(copy(data, offset, length), recordId - 1);
+    }
+
+    public synchronized byte[] getRecord(final int recordId)
+        throws RecordStoreException
+    {
+        final byte[] record = checkRecord(recordId);
+
+        return record.length == 0 ? null : copy(record, 0, record.length);
+    }
+
+    public synchronized int getRecord(final int recordId,
+                                      final byte[] buffer,
+                                      final int offset)
+        throws RecordStoreException
+    {
+        final byte[] record = checkRecord(recordId);
+
+        System.arraycopy(record, 0, buffer, offset, record.length);
+
+        return record.length;
+    }
+
+    public synchronized int getRecordSize(final int recordId)
+        throws RecordStoreException
+    {
+        return checkRecord(recordId).length;
+    }
+
+    public synchronized void deleteRecord(final int recordId)
+        throws RecordStoreException
+    {
+        checkRecord(recordId);
+        records.setElementAt(null, recordId - 1);
+    }
+
+    public synchronized int getNumRecords() throws RecordStoreNotOpenException {
+        checkOpen();
+
+        int count = 0;
+
+        for (int i = 0; i < records.size(); i++) {
+            if (records.elementAt(i) != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    public synchronized int getNextRecordID() throws RecordStoreException {
+        checkOpen();
+
+        return records.size() + 1;
+    }
+
+    public synchronized int getSize() throws RecordStoreNotOpenException {
+        checkOpen();
+
+        int size = 0;
+
+        for (int i = 0; i < records.size(); i++) {
+            if (records.elementAt(i) != null) {
+                size += ((byte[]) records.elementAt(i)).length;
+            }
+        }
+
+        return size;
+    }
+
+    public int getSizeAvailable() throws RecordStoreNotOpenException {
+        checkOpen();
+
+        return 1024 * 1024;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void checkOpen() throws RecordStoreNotOpenException {
+        if (openCount <= 0) {
+            throw new RecordStoreNotOpenException(name);
+        }
+    }
+
+    private byte[] checkRecord(final int recordId) throws RecordStoreException {
+        checkOpen();
+
+        if (recordId < 1 || recordId > records.size()
+            || records.elementAt(recordId - 1) == null)
+        {
+            throw new InvalidRecordIDException(name + " " + recordId);
+        }
+
+        return (byte[]) records.elementAt(recordId - 1);
+    }
+
+    private static byte[] copy(final byte[] data,
+                               final int offset,
+                               final int length)
+    {
+        final byte[] copy = new byte[data == null ? 0 : length];
+
+        if (data != null) {
+            System.arraycopy(data, offset, copy, 0, length);
+        }
+
+        return copy;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package org.tantalum;
+
+import javax.microedition.lcdui.Display;
+
+/**
+ * Desktop stub of the Tantalum platform utilities. The UI runnables are
+ * queued as serial calls of the stub Display, see Display.runSerialCalls().
+ */
+public final class PlatformUtils {
+    // Constants
+    public static final int PHONE_DATABASE_CACHE = 0;
+    public static final int PHONE_FILESYSTEM_CACHE = 1;
+    public static final int MEMORY_CARD_FILESYSTEM_CACHE = 2;
+    public static final int NORMAL_LOG_MODE = 0;
+    public static final int USB_SERIAL_PORT_LOG_MODE = 1;
+    public static final int MEMORY_CARD_LOG_MODE = 2;
+    public static final int PLATFORM_NOT_INITIALIZED = 0;
+    public static final int PLATFORM_JME = 1;
+    public static final int PLATFORM_ANDROID = 2;
+
+    // Members
+    private static final PlatformUtils instance = new PlatformUtils();
+    private Object program = null;
+
+    private PlatformUtils() {
+    }
+
+    public static PlatformUtils getInstance() {
+        return instance;
+    }
+
+    public boolean setProgram(final Object program, final int numberOfWorkers) {
+        return setProgram(program, numberOfWorkers, NORMAL_LOG_MODE);
+    }
+
+    public boolean setProgram(final Object program,
+                              final int numberOfWorkers,
+                              final int logMode)
+    {
+        this.program = program;
+
+        return true;
+    }
+
+    public Object getProgram() {
+        return program;
+    }
+
+    public boolean isUIThread() {
+        return true;
+    }
+
+    public boolean isSingleCore() {
+        return true;
+    }
+
+    public void runOnUiThread(final Runnable action) {
+        Display.getDisplay(null).callSerially(action);
+    }
+
+    public void shutdown(final boolean block, final String reason) {
+    }
+}
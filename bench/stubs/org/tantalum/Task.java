@@ -0,0 +1,383 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package org.tantalum;
+
+import java.util.Timer;
+import java.util.Vector;
+
+/**
+ * Desktop stub of the Tantalum task. There are no worker threads: forked
+ * tasks are queued and run by the harness with runQueuedTasks(), the
+ * higher priorities first and in fork order within a priority. UI priority
+ * tasks are run through PlatformUtils.runOnUiThread(). Chained tasks run
+ * right after the task they are chained to, as on a Tantalum worker.
+ *
+ * join() and get() run a task which has not started yet at once in the
+ * calling thread.
+ */
+public abstract class Task {
+    // Constants
+    public static final int DEDICATED_THREAD_PRIORITY = 8;
+    public static final int UI_PRIORITY = 7;
+    public static final int FASTLANE_PRIORITY = 6;
+    public static final int SERIAL_PRIORITY = 5;
+    public static final int HIGH_PRIORITY = 4;
+    public static final int NORMAL_PRIORITY = 3;
+    public static final int IDLE_PRIORITY = 2;
+    public static final int SHUTDOWN = 1;
+    public static final Object LARGE_MEMORY_MUTEX = new Object();
+    public static final int MAX_TIMEOUT = 120000;
+    public static final int PENDING = 0;
+    public static final int FINISHED = 1;
+    public static final int CANCELED = 2;
+    public static final int EXECUTE_NORMALLY_ON_SHUTDOWN = 0;
+    public static final int DEQUEUE_ON_SHUTDOWN = 1;
+    public static final int DEQUEUE_BUT_LEAVE_RUNNING_IF_ALREADY_STARTED_ON_SHUTDOWN = 2;
+    public static final int DEQUEUE_OR_CANCEL_ON_SHUTDOWN = 3;
+
+    // Members
+    private static final Vector queue = new Vector();
+    private static Timer timer = null;
+    private static int forkCount = 0;
+    protected int status = PENDING;
+    private final int forkPriority;
+    private Object value;
+    private Vector chainedTasks = null;
+    private int shutdownBehaviour = DEQUEUE_ON_SHUTDOWN;
+    private boolean started = false;
+    private String className = null;
+
+    public Task() {
+        this(NORMAL_PRIORITY);
+    }
+
+    public Task(final int priority) {
+        this(priority, null);
+    }
+
+    public Task(final int priority, final Object initialValue) {
+        forkPriority = priority;
+        value = initialValue;
+    }
+
+    public static synchronized Timer getTimer() {
+        if (timer == null) {
+            timer = new Timer(true);
+        }
+
+        return timer;
+    }
+
+    /**
+     * Not in Tantalum: runs the queued tasks, including the ones forked
+     * while running them.
+     * @return The number of tasks run.
+     */
+    public static int runQueuedTasks() {
+        int count = 0;
+
+        while (true) {
+            final Task task;
+
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    return count;
+                }
+
+                task = (Task) queue.elementAt(0);
+                queue.removeElementAt(0);
+            }
+
+            task.run();
+            count++;
+        }
+    }
+
+    /**
+     * Not in Tantalum.
+     * @return The number of tasks forked since the start.
+     */
+    public static int getForkCount() {
+        synchronized (queue) {
+            return forkCount;
+        }
+    }
+
+    public final int getShutdownBehaviour() {
+        return shutdownBehaviour;
+    }
+
+    public final Task setShutdownBehaviour(final int shutdownBehaviour) {
+        this.shutdownBehaviour = shutdownBehaviour;
+
+        return this;
+    }
+
+    public final Object get() throws CancellationException, TimeoutException {
+        return join();
+    }
+
+    public final synchronized Object set(final Object value) {
+        this.value = value;
+
+        return value;
+    }
+
+    public final Task fork() {
+        synchronized (queue) {
+            forkCount++;
+        }
+
+        if (forkPriority == UI_PRIORITY) {
+            PlatformUtils.getInstance().runOnUiThread(new Runnable() {
+                public void run() {
+                    Task.this.run();
+                }
+            });
+        }
+        else {
+            synchronized (queue) {
+                int i = 0;
+
+                while (i < queue.size()
+                       && ((Task) queue.elementAt(i)).forkPriority >= forkPriority)
+                {
+                    i++;
+                }
+
+                queue.insertElementAt(this, i);
+            }
+        }
+
+        return this;
+    }
+
+    public static Task[] fork(final Task[] tasks) {
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i].fork();
+        }
+
+        return tasks;
+    }
+
+    public static void runAtomic(final Runnable runnable) {
+        synchronized (queue) {
+            runnable.run();
+        }
+    }
+
+    public final Object join() throws CancellationException, TimeoutException {
+        return join(MAX_TIMEOUT);
+    }
+
+    public final Object join(final long timeout)
+        throws CancellationException, TimeoutException
+    {
+        final boolean queued;
+
+        // Like in Tantalum, only a task waiting in the queue is run in the
+        // joining thread, e.g. not a chained task waiting for its input
+        synchronized (queue) {
+            queued = queue.removeElement(this);
+        }
+
+        if (queued) {
+            run();
+        }
+
+        synchronized (this) {
+            final long end = System.currentTimeMillis() + timeout;
+
+            while (status == PENDING) {
+                final long wait = end - System.currentTimeMillis();
+
+                if (wait <= 0 || !started) {
+                    throw new TimeoutException("Task not finished: " + this);
+                }
+
+                try {
+                    wait(wait);
+                }
+                catch (InterruptedException e) {
+                    throw new TimeoutException("Interrupted: " + this);
+                }
+            }
+
+            if (status == CANCELED) {
+                throw new CancellationException("Task canceled: " + this);
+            }
+
+            return value;
+        }
+    }
+
+    public static void joinAll(final Task[] tasks)
+        throws CancellationException, TimeoutException
+    {
+        joinAll(tasks, MAX_TIMEOUT);
+    }
+
+    public static void joinAll(final Task[] tasks, final long timeout)
+        throws CancellationException, TimeoutException
+    {
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i].join(timeout);
+        }
+    }
+
+    public final synchronized int getStatus() {
+        return status;
+    }
+
+    public final String getStatusString() {
+        final int currentStatus = getStatus();
+
+        return currentStatus == PENDING ? "PENDING"
+                : currentStatus == FINISHED ? "FINISHED" : "CANCELED";
+    }
+
+    public final synchronized Task chain(final Task nextTask) {
+        if (nextTask != null) {
+            if (chainedTasks == null) {
+                chainedTasks = new Vector();
+            }
+
+            chainedTasks.addElement(nextTask);
+        }
+
+        return this;
+    }
+
+    public final int getForkPriority() {
+        return forkPriority;
+    }
+
+    public boolean cancel(final boolean mayInterruptIfRunning, final String reason) {
+        return cancel(mayInterruptIfRunning, reason, null);
+    }
+
+    public boolean cancel(final boolean mayInterruptIfRunning,
+                          final String reason,
+                          final Throwable t)
+    {
+        final Vector chained;
+
+        synchronized (this) {
+            if (status != PENDING) {
+                return false;
+            }
+
+            status = CANCELED;
+            chained = chainedTasks;
+            notifyAll();
+        }
+
+        synchronized (queue) {
+            queue.removeElement(this);
+        }
+
+        onCanceled(reason);
+
+        if (chained != null) {
+            for (int i = 0; i < chained.size(); i++) {
+                ((Task) chained.elementAt(i)).cancel(mayInterruptIfRunning,
+                        "Previous task in chain was canceled: " + reason, t);
+            }
+        }
+
+        return true;
+    }
+
+    public final synchronized boolean isCanceled() {
+        return status == CANCELED;
+    }
+
+    public static String getClassName(final Object object) {
+        return object == null ? "null" : object.getClass().getName();
+    }
+
+    public String getClassName() {
+        return className != null ? className : getClassName(this);
+    }
+
+    public Task setClassName(final String className) {
+        this.className = className;
+
+        return this;
+    }
+
+    public String toString() {
+        return getClassName() + " status=" + getStatusString()
+                + " priority=" + forkPriority;
+    }
+
+    protected abstract Object exec(Object in)
+        throws CancellationException, TimeoutException, InterruptedException;
+
+    protected void onCanceled(final String reason) {
+    }
+
+    /**
+     * Executes the task and the tasks chained to it.
+     */
+    private void run() {
+        final Object in;
+
+        synchronized (this) {
+            if (status != PENDING || started) {
+                return;
+            }
+
+            started = true;
+            in = value;
+        }
+
+        Object out;
+
+        try {
+            out = exec(in);
+        }
+        catch (CancellationException e) {
+            cancel(false, "Canceled in exec: " + e.getMessage(), e);
+            return;
+        }
+        catch (Exception e) {
+            cancel(false, "Exception in exec: " + e, e);
+            return;
+        }
+
+        final Vector chained;
+
+        synchronized (this) {
+            if (status != PENDING) {
+                return; // Canceled during exec
+            }
+
+            value = out;
+            status = FINISHED;
+            chained = chainedTasks;
+            notifyAll();
+        }
+
+        if (chained != null) {
+            for (int i = 0; i < chained.size(); i++) {
+                final Task next = (Task) chained.elementAt(i);
+
+                next.set(out);
+
+                if (next.forkPriority == UI_PRIORITY) {
+                    next.fork();
+                }
+                else {
+                    next.run();
+                }
+            }
+        }
+    }
+}
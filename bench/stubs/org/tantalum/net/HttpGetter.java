@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package org.tantalum.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.tantalum.Task;
+
+/**
+ * Desktop stub of the Tantalum HTTP GET task over HttpURLConnection. The
+ * input of the task is the URL, the output the response body. A response
+ * refused by checkResponseCode() cancels the task.
+ */
+public class HttpGetter extends Task {
+    // Constants
+    public static final String HTTP_GET = "GET";
+    public static final String HTTP_POST = "POST";
+    public static final int HTTP_200_OK = 200;
+    public static final int HTTP_304_NOT_MODIFIED = 304;
+    public static final int HTTP_404_NOT_FOUND = 404;
+    public static final int HTTP_500_INTERNAL_SERVER_ERROR = 500;
+    public static final int HTTP_503_SERVICE_UNAVAILABLE = 503;
+    public static final int HTTP_OPERATION_PENDING = -1;
+
+    // Members
+    private static int downstreamDataCount = 0;
+    private static int upstreamDataCount = 0;
+    protected int retriesRemaining = 0;
+    protected byte[] postMessage = null;
+    private final Hashtable requestProperties = new Hashtable();
+    private Hashtable responseHeaders = new Hashtable();
+    private int responseCode = HTTP_OPERATION_PENDING;
+
+    public HttpGetter() {
+        this(Task.NORMAL_PRIORITY);
+    }
+
+    public HttpGetter(final int priority) {
+        super(priority);
+    }
+
+    public HttpGetter(final int priority, final String url) {
+        super(priority, url);
+    }
+
+    public HttpGetter(final String url) {
+        this(Task.NORMAL_PRIORITY, url);
+    }
+
+    public Task setRetriesRemaining(final int retries) {
+        retriesRemaining = retries;
+
+        return this;
+    }
+
+    public synchronized int getResponseCode() {
+        return responseCode;
+    }
+
+    public synchronized Hashtable getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    public synchronized void setRequestProperty(final String key,
+                                                final String value)
+    {
+        requestProperties.put(key, value);
+    }
+
+    public Object exec(final Object in) throws InterruptedException {
+        final String url = (String) in;
+
+        try {
+            final HttpURLConnection connection =
+                    (HttpURLConnection) new URL(url).openConnection();
+
+            synchronized (this) {
+                final Enumeration keys = requestProperties.keys();
+
+                while (keys.hasMoreElements()) {
+                    final String key = (String) keys.nextElement();
+
+                    connection.setRequestProperty(key,
+                            (String) requestProperties.get(key));
+                }
+            }
+
+            if (postMessage != null) {
+                connection.setRequestMethod(HTTP_POST);
+                connection.setDoOutput(true);
+                connection.getOutputStream().write(postMessage);
+                addUpstreamDataCount(postMessage.length);
+            }
+
+            final int code = connection.getResponseCode();
+            final Hashtable headers = new Hashtable();
+            final Iterator fields =
+                    connection.getHeaderFields().entrySet().iterator();
+
+            while (fields.hasNext()) {
+                final Map.Entry field = (Map.Entry) fields.next();
+
+                if (field.getKey() != null) {
+                    final List values = (List) field.getValue();
+
+                    headers.put(field.getKey(),
+                            (String[]) values.toArray(new String[values.size()]));
+                }
+            }
+
+            synchronized (this) {
+                responseCode = code;
+                responseHeaders = headers;
+            }
+
+            if (!checkResponseCode(url, code, headers)) {
+                connection.disconnect();
+                cancel(false, "Bad response code " + code + ": " + url);
+                return null;
+            }
+
+            final InputStream stream = code >= 400
+                    ? connection.getErrorStream() : connection.getInputStream();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            if (stream != null) {
+                try {
+                    final byte[] buffer = new byte[4096];
+                    int count;
+
+                    while ((count = stream.read(buffer)) >= 0) {
+                        bytes.write(buffer, 0, count);
+                    }
+                }
+                finally {
+                    stream.close();
+                }
+            }
+
+            addDownstreamDataCount(bytes.size());
+
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            cancel(false, "Can not get " + url + ": " + e);
+        }
+
+        return null;
+    }
+
+    protected boolean checkResponseCode(final String url,
+                                        final int responseCode,
+                                        final Hashtable headers)
+        throws IOException
+    {
+        if (responseCode < 300) {
+            return true;
+        }
+
+        if (responseCode < 500) {
+            return false;
+        }
+
+        throw new IOException("Server error " + responseCode + ": " + url);
+    }
+
+    public static synchronized int getDownstreamDataCount() {
+        return downstreamDataCount;
+    }
+
+    public static synchronized int getUpstreamDataCount() {
+        return upstreamDataCount;
+    }
+
+    public static synchronized void clearDownstreamDataCount() {
+        downstreamDataCount = 0;
+    }
+
+    public static synchronized void clearUpstreamDataCount() {
+        upstreamDataCount = 0;
+    }
+
+    protected static synchronized void addDownstreamDataCount(final int count) {
+        downstreamDataCount += count;
+    }
+
+    protected static synchronized void addUpstreamDataCount(final int count) {
+        upstreamDataCount += count;
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package org.tantalum.net;
+
+import org.tantalum.CancellationException;
+import org.tantalum.Task;
+import org.tantalum.TimeoutException;
+import org.tantalum.storage.CacheView;
+import org.tantalum.storage.FlashCache;
+import org.tantalum.storage.FlashDatabaseException;
+import org.tantalum.storage.StaticCache;
+
+/**
+ * Desktop stub of the Tantalum web cache. Counts the getAsync() calls and
+ * the web requests, see getAsyncCount() and getWebRequestCount().
+ */
+public final class StaticWebCache extends StaticCache {
+    // Constants
+    public static final int GET_LOCAL = 0;
+    public static final int GET_ANYWHERE = 1;
+    public static final int GET_WEB = 2;
+    public static final HttpTaskFactory DEFAULT_HTTP_GETTER_FACTORY =
+            new HttpTaskFactory();
+
+    // Members
+    private static int getAsyncCount = 0;
+    private static int webRequestCount = 0;
+    private final HttpTaskFactory httpTaskFactory;
+
+    /**
+     * Creates the HTTP tasks of a cache and validates their responses.
+     */
+    public static class HttpTaskFactory {
+        public HttpGetter getHttpTask(final int priority,
+                                      final String url,
+                                      final byte[] postMessage)
+        {
+            return new HttpGetter(priority, url);
+        }
+
+        public boolean validateHttpResponse(final HttpGetter httpGetter,
+                                            final byte[] bytes)
+        {
+            return bytes != null;
+        }
+    }
+
+    private StaticWebCache(final char priority,
+                           final int cacheType,
+                           final CacheView cacheView,
+                           final HttpTaskFactory httpTaskFactory,
+                           final FlashCache.StartupTask startupTask)
+        throws FlashDatabaseException
+    {
+        super(priority, cacheType, cacheView, startupTask);
+        this.httpTaskFactory = httpTaskFactory != null
+                ? httpTaskFactory : DEFAULT_HTTP_GETTER_FACTORY;
+    }
+
+    public static synchronized StaticWebCache getWebCache(final char priority,
+                                                          final CacheView cacheView)
+        throws FlashDatabaseException
+    {
+        return getWebCache(priority, 0, cacheView, DEFAULT_HTTP_GETTER_FACTORY,
+                null);
+    }
+
+    public static synchronized StaticWebCache getWebCache(final char priority,
+                                                          final int cacheType,
+                                                          final CacheView cacheView,
+                                                          final HttpTaskFactory httpTaskFactory,
+                                                          final FlashCache.StartupTask startupTask)
+        throws FlashDatabaseException
+    {
+        final Character key = new Character(priority);
+        StaticWebCache cache = (StaticWebCache) caches.get(key);
+
+        if (cache == null) {
+            cache = new StaticWebCache(priority, cacheType, cacheView,
+                    httpTaskFactory, startupTask);
+            caches.put(key, cache);
+        }
+
+        return cache;
+    }
+
+    /**
+     * Not in Tantalum.
+     * @return The number of getAsync() calls to all the web caches.
+     */
+    public static synchronized int getAsyncCount() {
+        return getAsyncCount;
+    }
+
+    /**
+     * Not in Tantalum.
+     * @return The number of HTTP requests made by all the web caches.
+     */
+    public static synchronized int getWebRequestCount() {
+        return webRequestCount;
+    }
+
+    /**
+     * Not in Tantalum: clears the caches and the counts.
+     */
+    public static synchronized void reset() {
+        getAsyncCount = 0;
+        webRequestCount = 0;
+
+        final java.util.Enumeration e = caches.elements();
+
+        while (e.hasMoreElements()) {
+            ((StaticCache) e.nextElement()).clear();
+        }
+    }
+
+    private static synchronized void countGetAsync() {
+        getAsyncCount++;
+    }
+
+    private static synchronized void countWebRequest() {
+        webRequestCount++;
+    }
+
+    public Object get(final String key)
+        throws CancellationException, TimeoutException
+    {
+        return getAsync(key, Task.HIGH_PRIORITY, GET_ANYWHERE, null).get();
+    }
+
+    public Task getAsync(final String url, final Task chainedTask) {
+        return getAsync(url, Task.NORMAL_PRIORITY, GET_ANYWHERE, chainedTask);
+    }
+
+    public Task getAsync(final String url,
+                         final int priority,
+                         final int getType,
+                         final Task chainedTask)
+    {
+        return getAsync(url, null, priority, getType, chainedTask,
+                httpTaskFactory, defaultCacheView);
+    }
+
+    public Task getAsync(final String url,
+                         final byte[] postMessage,
+                         final int priority,
+                         final int getType,
+                         final Task chainedTask,
+                         final HttpTaskFactory factory,
+                         final CacheView cacheView)
+    {
+        countGetAsync();
+
+        final Task task = new Task(priority) {
+            protected Object exec(final Object in)
+                throws CancellationException, TimeoutException
+            {
+                try {
+                    if (getType != GET_WEB) {
+                        final Object o = synchronousGet(url, cacheView);
+
+                        if (o != null || getType == GET_LOCAL) {
+                            if (o == null) {
+                                cancel(false, "Not in cache: " + url);
+                            }
+
+                            return o;
+                        }
+                    }
+
+                    countWebRequest();
+
+                    final HttpGetter getter =
+                            factory.getHttpTask(priority, url, postMessage);
+                    final byte[] bytes = (byte[]) getter.fork().join();
+
+                    if (!factory.validateHttpResponse(getter, bytes)) {
+                        throw new CancellationException("Invalid response: " + url);
+                    }
+
+                    return put(url, bytes, cacheView, null);
+                }
+                catch (FlashDatabaseException e) {
+                    throw new CancellationException(e.toString());
+                }
+            }
+        };
+
+        task.chain(chainedTask);
+
+        return task.fork();
+    }
+
+    public void prefetch(final String url) throws FlashDatabaseException {
+        if (!containsKey(url)) {
+            getAsync(url, Task.IDLE_PRIORITY, GET_ANYWHERE, null);
+        }
+    }
+}
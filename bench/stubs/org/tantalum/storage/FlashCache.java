@@ -0,0 +1,21 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package org.tantalum.storage;
+
+/**
+ * Desktop stub of the Tantalum flash cache, only the startup task type.
+ */
+public abstract class FlashCache {
+    /**
+     * Run for each key in the cache at startup.
+     */
+    public interface StartupTask {
+        void execForEachKey(FlashCache flashCache, long digest);
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package org.tantalum.storage;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import org.tantalum.CancellationException;
+import org.tantalum.Task;
+import org.tantalum.TimeoutException;
+import org.tantalum.util.CryptoUtils;
+
+/**
+ * Desktop stub of the Tantalum cache. The "flash" is a table of bytes in
+ * memory and the RAM cache a table of the use forms, which is cleared by
+ * clearHeap() but never by the garbage collector.
+ */
+public class StaticCache {
+    // Members
+    protected static final Hashtable caches = new Hashtable();
+    protected final Hashtable ramCache = new Hashtable();
+    protected final Hashtable flash = new Hashtable();
+    protected final char cachePriorityChar;
+    protected final CacheView defaultCacheView;
+
+    protected StaticCache(final char priority,
+                          final int cacheType,
+                          final CacheView cacheView,
+                          final FlashCache.StartupTask startupTask)
+        throws FlashDatabaseException
+    {
+        this.cachePriorityChar = priority;
+        this.defaultCacheView = cacheView;
+    }
+
+    public static synchronized StaticCache getCache(final char priority,
+                                                    final int cacheType,
+                                                    final CacheView cacheView,
+                                                    final FlashCache.StartupTask startupTask)
+        throws FlashDatabaseException
+    {
+        StaticCache cache = (StaticCache) caches.get(new Character(priority));
+
+        if (cache == null) {
+            cache = new StaticCache(priority, cacheType, cacheView, startupTask);
+            caches.put(new Character(priority), cache);
+        }
+
+        return cache;
+    }
+
+    public Object synchronousRAMCacheGet(final String key)
+        throws FlashDatabaseException
+    {
+        return ramCache.get(key);
+    }
+
+    /**
+     * @return The object from the RAM or the flash, or null. Like in
+     * Tantalum, the RAM holds the default use form only, so another view
+     * always converts the bytes from the flash.
+     */
+    protected Object synchronousGet(final String key, CacheView cacheView)
+        throws FlashDatabaseException
+    {
+        if (cacheView == null) {
+            cacheView = defaultCacheView;
+        }
+
+        Object o = cacheView == defaultCacheView ? ramCache.get(key) : null;
+
+        if (o == null) {
+            final byte[] bytes = (byte[]) flash.get(key);
+
+            if (bytes != null) {
+                o = cacheView.convertToUseForm(key, bytes);
+
+                if (cacheView == defaultCacheView) {
+                    ramCache.put(key, o);
+                }
+            }
+        }
+
+        return o;
+    }
+
+    public Task getAsync(final String key,
+                         final int priority,
+                         final Task chainedTask,
+                         final CacheView cacheView)
+    {
+        final Task task = new Task(priority) {
+            protected Object exec(final Object in) throws CancellationException {
+                try {
+                    return synchronousGet(key, cacheView);
+                }
+                catch (FlashDatabaseException e) {
+                    throw new CancellationException(e.toString());
+                }
+            }
+        };
+
+        task.chain(chainedTask);
+
+        return task.fork();
+    }
+
+    public Object get(final String key)
+        throws CancellationException, TimeoutException
+    {
+        return getAsync(key, Task.HIGH_PRIORITY, null, defaultCacheView).get();
+    }
+
+    public Object put(final String key,
+                      final byte[] bytes,
+                      final CacheView cacheView,
+                      final Task chainedTask)
+        throws FlashDatabaseException
+    {
+        flash.put(key, bytes);
+
+        final Object o = cacheView.convertToUseForm(key, bytes);
+
+        if (o != null && cacheView == defaultCacheView) {
+            ramCache.put(key, o);
+        }
+
+        if (chainedTask != null) {
+            chainedTask.set(o);
+            chainedTask.fork();
+        }
+
+        return o;
+    }
+
+    public int size() {
+        return flash.size();
+    }
+
+    /**
+     * Removes the entry of the given key digest from the RAM and the flash.
+     */
+    public synchronized boolean remove(final long digest) {
+        final Enumeration keys = flash.keys();
+
+        while (keys.hasMoreElements()) {
+            final String key = (String) keys.nextElement();
+
+            try {
+                if (CryptoUtils.getInstance().toDigest(key) == digest) {
+                    flash.remove(key);
+                    ramCache.remove(key);
+                    return true;
+                }
+            }
+            catch (Exception e) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    public long getFreespace() throws FlashDatabaseException {
+        return Integer.MAX_VALUE;
+    }
+
+    public void clearHeap() {
+        ramCache.clear();
+    }
+
+    /**
+     * Not in Tantalum: clears the RAM and the flash.
+     */
+    public void clear() {
+        ramCache.clear();
+        flash.clear();
+    }
+
+    public boolean containsKey(final String key) {
+        return flash.containsKey(key);
+    }
+
+    public synchronized boolean containsDigest(final long digest) {
+        final Enumeration keys = flash.keys();
+
+        while (keys.hasMoreElements()) {
+            try {
+                if (CryptoUtils.getInstance().toDigest((String) keys.nextElement()) == digest) {
+                    return true;
+                }
+            }
+            catch (Exception e) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    public int getPriority() {
+        return cachePriorityChar;
+    }
+
+    public CacheView getDefaultCacheView() {
+        return defaultCacheView;
+    }
+
+    public String toString() {
+        return "StaticCache " + cachePriorityChar + " size=" + size();
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package org.tantalum.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Desktop stub of the Tantalum digests: the first eight bytes of the MD5
+ * of the UTF-8 bytes.
+ */
+public class CryptoUtils {
+    // Constants
+    public static final int DIGEST_LENGTH = 8;
+
+    // Members
+    private static final CryptoUtils instance = new CryptoUtils();
+
+    private CryptoUtils() {
+    }
+
+    public static CryptoUtils getInstance() {
+        return instance;
+    }
+
+    public synchronized long toDigest(final String key)
+        throws DigestException, UnsupportedEncodingException
+    {
+        return toDigest(key.getBytes("UTF-8"));
+    }
+
+    public synchronized long toDigest(final byte[] bytes)
+        throws DigestException, UnsupportedEncodingException
+    {
+        try {
+            return bytesToLong(MessageDigest.getInstance("MD5").digest(bytes), 0);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new DigestException(e.toString());
+        }
+    }
+
+    public long bytesToLong(final byte[] bytes, final int start) {
+        long l = 0;
+
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            l = (l << 8) | (bytes[start + i] & 0xff);
+        }
+
+        return l;
+    }
+
+    public byte[] longToBytes(final long l) {
+        final byte[] bytes = new byte[DIGEST_LENGTH];
+
+        longToBytes(l, bytes, 0);
+
+        return bytes;
+    }
+
+    public void longToBytes(long l, final byte[] bytes, final int offset) {
+        for (int i = DIGEST_LENGTH - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) l;
+            l >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package org.tantalum.util;
+
+/**
+ * Desktop stub of the Tantalum logger. Only the errors are printed, the
+ * debug output would distort the measurements.
+ */
+public class L {
+    public static void i(final String message, final String details) {
+    }
+
+    public static void i(final Object caller,
+                         final String message,
+                         final String details)
+    {
+    }
+
+    public static void e(final String message,
+                         final String details,
+                         final Throwable t)
+    {
+        System.err.println(message + ": " + details + " " + t);
+    }
+
+    public static void e(final Object caller,
+                         final String message,
+                         final String details,
+                         final Throwable t)
+    {
+        e(message, details, t);
+    }
+}
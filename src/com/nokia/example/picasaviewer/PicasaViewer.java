@@ -13,7 +13,18 @@ import javax.microedition.midlet.MIDlet;
 import javax.microedition.midlet.MIDletStateChangeException;
 
 import org.tantalum.PlatformUtils;
+import org.tantalum.util.L;
+
+import com.nokia.example.picasaviewer.common.HistoryStore;
+import com.nokia.example.picasaviewer.common.HttpPipeline;
+import com.nokia.example.picasaviewer.common.PicasaStorage;
+import com.nokia.example.picasaviewer.common.QuotaManager;
+import com.nokia.example.picasaviewer.common.WarmUpScheduler;
+import com.nokia.example.picasaviewer.util.GestureRecorder;
+import com.nokia.example.picasaviewer.util.StartupTimer;
+import com.nokia.example.picasaviewer.util.TextLayout;
 import com.nokia.example.picasaviewer.util.ViewManager;
+import com.nokia.example.picasaviewer.util.WorkerTuner;
 
 /**
  * The main class of the application.
@@ -21,16 +32,11 @@ import com.nokia.example.picasaviewer.util.ViewManager;
 public final class PicasaViewer
         extends MIDlet
 {
-    /*
-     * Tune this number up and down for best concurrency of your application.
-     * Less than 2 is not allowed and more than 4 probably introduces too much
-     * context switching between threads.
-     */
-    private static final int NUMBER_OF_WORKER_THREADS = 2;
-    
     public static final boolean HAS_ONE_KEY_BACK;
 
     private ViewManager viewManager;
+    private long resumeTime = -1; // ms, from startApp() to the first repaint
+    private long backgroundHeap = 0; // Bytes in use while paused
 
     /**
      * Static constructor.
@@ -50,19 +56,121 @@ public final class PicasaViewer
      * @see javax.microedition.midlet.MIDlet#startApp()
      */
     public void startApp() {
+        if (viewManager != null) {
+            // Resumed from the background
+            resume();
+            return;
+        }
+        
+        StartupTimer.start();
+        
+        /*
+         * The number of worker threads is tuned at runtime, see WorkerTuner.
+         * It starts from the JAD property and the tuned value is stored for
+         * the next launch.
+         */
+        final WorkerTuner workerTuner = WorkerTuner.getInstance();
+        workerTuner.init(this);
+        
         // Must be initialized before using any parts of Tantalum e.g. L class.
         PlatformUtils.getInstance().setProgram(this,
-                NUMBER_OF_WORKER_THREADS,
+                workerTuner.getNetworkWorkers(),
                 PlatformUtils.NORMAL_LOG_MODE);
+        workerTuner.start();
+        StartupTimer.mark("setProgram");
+        
+        // Optional, points the application to e.g. a local feed simulator
+        PicasaStorage.setBaseUrl(getAppProperty(PicasaStorage.BASE_URL_PROPERTY));
+        
+        // Pipelines the image requests unless turned off in the JAD
+        HttpPipeline.getInstance().init(this);
+        
+        // Keeps the flash caches within the quota set in the JAD
+        QuotaManager.getInstance().init(this);
+        
+        // Fills the caches for the next launch when the workers are idle
+        WarmUpScheduler.getInstance().init(this);
+        
+        // Optional, records the gestures for replaying them in the harness
+        GestureRecorder.init(getAppProperty(GestureRecorder.RECORD_PROPERTY));
         
         viewManager = new ViewManager(this);
         viewManager.showInitialView();
+        WarmUpScheduler.getInstance().start();
     }
 
     /**
+     * Cancels the image loads, stops the timers and animations and releases
+     * the decoded images. The models and the scroll positions are kept, the
+     * images are decoded again from the flash cache on resume.
      * @see javax.microedition.midlet.MIDlet#pauseApp()
      */
     protected void pauseApp() {
+        if (viewManager == null) {
+            return;
+        }
+        
+        viewManager.pause();
+        WorkerTuner.getInstance().stop();
+        WarmUpScheduler.getInstance().stop();
+        HttpPipeline.getInstance().close();
+        QuotaManager.getInstance().saveAsync();
+        HistoryStore.getInstance().flushAsync();
+        TextLayout.clearCache();
+        
+        if (PicasaStorage.imageCache != null) {
+            PicasaStorage.imageCache.clearHeap();
+        }
+        
+        System.gc();
+        
+        final Runtime runtime = Runtime.getRuntime();
+        backgroundHeap = runtime.totalMemory() - runtime.freeMemory();
+        
+        //#debug
+        L.i("Paused", "heap in use=" + backgroundHeap);
+    }
+
+    /**
+     * Restarts the sampling of the worker load and restores the views.
+     */
+    private void resume() {
+        final long started = System.currentTimeMillis();
+        
+        WorkerTuner.getInstance().start();
+        WarmUpScheduler.getInstance().start();
+        viewManager.resume(new Runnable() {
+            public void run() {
+                resumeTime = System.currentTimeMillis() - started;
+                
+                //#debug
+                L.i("Resumed", "time to first frame=" + resumeTime + " ms");
+            }
+        });
+    }
+
+    /**
+     * @return The time from the last resume to the first repaint in
+     * milliseconds or -1 if the application has not been resumed.
+     */
+    public long getResumeTime() {
+        return resumeTime;
+    }
+
+    /**
+     * @return The heap in use in bytes while the application was last in the
+     * background.
+     */
+    public long getBackgroundHeap() {
+        return backgroundHeap;
+    }
+
+    /**
+     * Exits the application. Unlike calling notifyDestroyed() directly, this
+     * lets the views save their state and Tantalum run its shutdown tasks.
+     */
+    public void exit() {
+        shutdown(true, "Exit");
     }
 
     /**
@@ -71,6 +179,21 @@ public final class PicasaViewer
     protected void destroyApp(boolean unconditional)
             throws MIDletStateChangeException
     {
-        PlatformUtils.getInstance().shutdown(unconditional, "Shutting down.");
+        shutdown(unconditional, "Shutting down.");
+    }
+
+    private void shutdown(final boolean unconditional, final String reason) {
+        if (viewManager != null) {
+            viewManager.pause();
+        }
+        
+        WorkerTuner.getInstance().stop();
+        WorkerTuner.getInstance().shutdownDecodePool();
+        WarmUpScheduler.getInstance().stop();
+        HttpPipeline.getInstance().close();
+        QuotaManager.getInstance().saveAsync();
+        HistoryStore.getInstance().flushAsync();
+        GestureRecorder.print();
+        PlatformUtils.getInstance().shutdown(unconditional, reason);
     }
 }
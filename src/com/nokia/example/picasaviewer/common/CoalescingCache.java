@@ -0,0 +1,499 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.tantalum.CancellationException;
+import org.tantalum.Task;
+import org.tantalum.net.StaticWebCache;
+import org.tantalum.storage.CacheView;
+import org.tantalum.storage.FlashDatabaseException;
+import org.tantalum.util.L;
+
+/**
+ * Wraps a StaticWebCache so that concurrent requests for the same URL share
+ * a single request. The first request is passed to the cache, the following
+ * ones wait for it and all the callbacks receive its result.
+ *
+ * Requests are shared only if they have the same get type and cache view,
+ * e.g. a GET_WEB refresh never waits for a GET_LOCAL lookup.
+ *
+ * The GET_ANYWHERE requests of the default cache view which are not in the
+ * cache are downloaded through the pipeline if one is set, otherwise with a
+ * ConditionalGetter so that the validators of the response are stored for
+ * the next revalidateAsync().
+ *
+ * A callback is canceled with cancel(), which also cancels the shared
+ * request once no other callback waits for it, e.g. the download of a
+ * thumbnail which has been scrolled away.
+ */
+public final class CoalescingCache {
+    // Members
+    private final char id; // The priority character of the cache
+    private final StaticWebCache cache;
+    private final Hashtable inFlight = new Hashtable(); // key -> Vector of callbacks
+    private final Hashtable requests = new Hashtable(); // key -> Task of the shared request
+    private final Hashtable waiting = new Hashtable(); // callback -> key
+    private HttpPipeline pipeline = null;
+    private int requestCount = 0;
+    private int suppressedCount = 0;
+
+    /**
+     * Constructor.
+     * @param id The priority character of the cache, for the quota manager.
+     * @param cache The cache to wrap.
+     */
+    public CoalescingCache(final char id, final StaticWebCache cache) {
+        this.id = id;
+        this.cache = cache;
+    }
+
+    /**
+     * @param pipeline The pipeline for downloading the GET_ANYWHERE requests,
+     * null for the HttpGetter of the cache.
+     */
+    public void setPipeline(final HttpPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * @see StaticWebCache#getAsync(String, int, int, Task)
+     * @return The callback, which can be joined or canceled without
+     * affecting the other requests for the URL.
+     */
+    public Task getAsync(final String url,
+                         final int priority,
+                         final int getType,
+                         final Task callback)
+    {
+        final String key = getType + " " + url;
+
+        QuotaManager.getInstance().touch(id, url);
+
+        if (attach(key, callback)) {
+            if (getType == StaticWebCache.GET_ANYWHERE) {
+                start(key, new AnywhereGet(url, key, priority));
+            }
+            else {
+                setRequest(key, cache.getAsync(url, priority, getType,
+                        new FanOut(key, priority)));
+            }
+        }
+
+        return callback;
+    }
+
+    /**
+     * @see StaticWebCache#getAsync(String, byte[], int, int, Task,
+     * StaticWebCache.HttpTaskFactory, CacheView)
+     * @return The callback, which can be joined or canceled without
+     * affecting the other requests for the URL.
+     */
+    public Task getAsync(final String url,
+                         final byte[] postMessage,
+                         final int priority,
+                         final int getType,
+                         final Task callback,
+                         final StaticWebCache.HttpTaskFactory httpTaskFactory,
+                         final CacheView cacheView)
+    {
+        QuotaManager.getInstance().touch(id, url);
+
+        if (postMessage != null) {
+            // Not idempotent, never shared
+            return cache.getAsync(url, postMessage, priority, getType,
+                    callback, httpTaskFactory, cacheView);
+        }
+
+        final String key = getType + " "
+                + System.identityHashCode(cacheView) + " "
+                + System.identityHashCode(httpTaskFactory) + " " + url;
+
+        if (attach(key, callback)) {
+            setRequest(key, cache.getAsync(url, null, priority, getType,
+                    new FanOut(key, priority), httpTaskFactory, cacheView));
+        }
+
+        return callback;
+    }
+
+    /**
+     * Gets the URL from the web like GET_WEB, but as a conditional GET if
+     * the validators of the cached response are known. If the server
+     * answers 304 Not Modified, the callback receives the cached object
+     * without the response being parsed again.
+     * @param url The URL to get.
+     * @param priority The priority of the request.
+     * @param callback The callback for the result.
+     * @return The callback.
+     */
+    public Task revalidateAsync(final String url,
+                                final int priority,
+                                final Task callback)
+    {
+        final String key = StaticWebCache.GET_WEB + " " + url;
+
+        QuotaManager.getInstance().touch(id, url);
+
+        if (attach(key, callback)) {
+            final ValidatorStore validators = ValidatorStore.getInstance();
+            String entityTag = validators.getEntityTag(url);
+            String lastModified = validators.getLastModified(url);
+
+            try {
+                if (!cache.containsKey(url)) {
+                    // Nothing to revalidate, the full response is needed
+                    entityTag = null;
+                    lastModified = null;
+                }
+            }
+            catch (Exception e) {
+                //#debug
+                L.e("Can not check cache", url, e);
+                entityTag = null;
+                lastModified = null;
+            }
+
+            final ConditionalGetter getter = new ConditionalGetter(
+                    priority, url, entityTag, lastModified);
+
+            start(key, getter.chain(new Revalidation(url, priority, getter)
+                    .chain(new FanOut(key, priority))));
+        }
+
+        return callback;
+    }
+
+    /**
+     * Cancels a callback given to getAsync() or revalidateAsync(). The
+     * shared request is canceled too if no other callback waits for it.
+     * @param callback The callback.
+     * @param reason The reason of the cancellation.
+     * @return True if the callback was waiting for a request of this cache.
+     */
+    public boolean cancel(final Task callback, final String reason) {
+        Task request = null;
+        boolean found = false;
+
+        synchronized (this) {
+            final String key = (String) waiting.remove(callback);
+
+            if (key != null) {
+                final Vector callbacks = (Vector) inFlight.get(key);
+
+                found = true;
+                callbacks.removeElement(callback);
+
+                if (callbacks.isEmpty()) {
+                    inFlight.remove(key);
+                    request = (Task) requests.remove(key);
+                }
+            }
+        }
+
+        callback.cancel(false, reason);
+
+        if (request != null) {
+            //#debug
+            L.i("No callbacks left, canceling request", reason);
+            request.cancel(false, reason);
+        }
+
+        return found;
+    }
+
+    /**
+     * Prefetches the URL unless it is already being loaded.
+     * @see StaticWebCache#prefetch(String)
+     */
+    public void prefetch(final String url) throws FlashDatabaseException {
+        synchronized (this) {
+            requestCount++;
+
+            if (inFlight.containsKey(StaticWebCache.GET_ANYWHERE + " " + url)) {
+                suppressedCount++;
+                return;
+            }
+        }
+
+        cache.prefetch(url);
+    }
+
+    /**
+     * @see StaticWebCache#clearHeap()
+     */
+    public void clearHeap() {
+        cache.clearHeap();
+    }
+
+    /**
+     * @return The wrapped cache.
+     */
+    public StaticWebCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return The number of requests made through this wrapper.
+     */
+    public synchronized int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return The number of requests which were served by a request already
+     * in flight instead of a request of their own.
+     */
+    public synchronized int getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    /**
+     * Adds the callback to the callbacks waiting for the key.
+     * @return True if there was no request in flight for the key, i.e. the
+     * caller has to start one.
+     */
+    private synchronized boolean attach(final String key, final Task callback) {
+        Vector callbacks = (Vector) inFlight.get(key);
+
+        requestCount++;
+
+        if (callbacks != null) {
+            suppressedCount++;
+            callbacks.addElement(callback);
+            waiting.put(callback, key);
+            return false;
+        }
+
+        callbacks = new Vector(2);
+        callbacks.addElement(callback);
+        inFlight.put(key, callbacks);
+        waiting.put(callback, key);
+
+        return true;
+    }
+
+    private synchronized Vector detach(final String key) {
+        final Vector callbacks = (Vector) inFlight.remove(key);
+
+        requests.remove(key);
+
+        for (int i = 0; callbacks != null && i < callbacks.size(); i++) {
+            waiting.remove(callbacks.elementAt(i));
+        }
+
+        return callbacks;
+    }
+
+    /**
+     * Records the task of the shared request, to cancel it once no callback
+     * waits for it.
+     * @return False if no callback waits for the request any more, in which
+     * case the task is canceled.
+     */
+    private boolean setRequest(final String key, final Task request) {
+        synchronized (this) {
+            if (inFlight.containsKey(key)) {
+                requests.put(key, request);
+                return true;
+            }
+        }
+
+        request.cancel(false, "No callbacks left");
+
+        return false;
+    }
+
+    /**
+     * Forks the next stage of the shared request unless all its callbacks
+     * have been canceled.
+     */
+    private void start(final String key, final Task request) {
+        if (setRequest(key, request)) {
+            request.fork();
+        }
+    }
+
+    /**
+     * Turns the response of a conditional GET into the object to use: the
+     * cached one if the response was not modified, otherwise the new
+     * response, which is stored in the cache with its validators.
+     */
+    private final class Revalidation extends Task {
+        private final String url;
+        private final ConditionalGetter getter;
+
+        Revalidation(final String url,
+                     final int priority,
+                     final ConditionalGetter getter)
+        {
+            super(priority);
+            this.url = url;
+            this.getter = getter;
+        }
+
+        protected Object exec(final Object in) {
+            try {
+                if (getter.isNotModified()) {
+                    //#debug
+                    L.i("Not modified", url);
+                    final Object cached = cache.synchronousRAMCacheGet(url);
+
+                    if (cached != null) {
+                        return cached;
+                    }
+
+                    return cache.getAsync(url, getForkPriority(),
+                            StaticWebCache.GET_LOCAL, null).get();
+                }
+
+                ValidatorStore.getInstance().put(url,
+                        getter.getResponseHeader("ETag"),
+                        getter.getResponseHeader("Last-Modified"));
+
+                return cache.put(url, (byte[]) in,
+                        cache.getDefaultCacheView(), null);
+            }
+            catch (Exception e) {
+                //#debug
+                L.e("Can not revalidate", url, e);
+                cancel(false, "Can not revalidate " + url);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Reads the URL from the cache, or downloads it and stores it in the
+     * cache if it is not there.
+     */
+    private final class AnywhereGet extends Task {
+        private final String url;
+        private final String key;
+
+        AnywhereGet(final String url, final String key, final int priority) {
+            super(priority);
+            this.url = url;
+            this.key = key;
+        }
+
+        protected Object exec(final Object in) {
+            Object cached = null;
+
+            try {
+                cached = cache.getAsync(url, getForkPriority(),
+                        StaticWebCache.GET_LOCAL, null).get();
+            }
+            catch (CancellationException e) {
+                // Not in the cache
+            }
+            catch (Exception e) {
+                //#debug
+                L.e("Can not read cache", url, e);
+            }
+
+            if (cached != null) {
+                new Task(getForkPriority(), cached) {
+                    protected Object exec(final Object in) {
+                        return in;
+                    }
+                }.chain(new FanOut(key, getForkPriority())).fork();
+            }
+            else if (pipeline != null) {
+                final Task store = new Store(url, getForkPriority())
+                        .chain(new FanOut(key, getForkPriority()));
+
+                // The pipeline skips the request once the store is canceled
+                if (setRequest(key, store)) {
+                    pipeline.get(url, getForkPriority(), store);
+                }
+            }
+            else {
+                // Unconditional, but the validators of the response are kept
+                final ConditionalGetter getter = new ConditionalGetter(
+                        getForkPriority(), url, null, null);
+
+                start(key, getter.chain(new Revalidation(url, getForkPriority(),
+                        getter).chain(new FanOut(key, getForkPriority()))));
+            }
+
+            return in;
+        }
+    }
+
+    /**
+     * Stores the bytes downloaded through the pipeline in the cache and
+     * passes on the object to use.
+     */
+    private final class Store extends Task {
+        private final String url;
+
+        Store(final String url, final int priority) {
+            super(priority);
+            this.url = url;
+        }
+
+        protected Object exec(final Object in) {
+            try {
+                return cache.put(url, (byte[]) in,
+                        cache.getDefaultCacheView(), null);
+            }
+            catch (Exception e) {
+                //#debug
+                L.e("Can not store", url, e);
+                cancel(false, "Can not store " + url);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Hands the result of the shared request to all the callbacks.
+     */
+    private final class FanOut extends Task {
+        private final String key;
+        private final int priority;
+
+        FanOut(final String key, final int priority) {
+            super(Task.FASTLANE_PRIORITY);
+            this.key = key;
+            this.priority = priority;
+        }
+
+        protected Object exec(final Object in) {
+            final Vector callbacks = detach(key);
+
+            for (int i = 0; callbacks != null && i < callbacks.size(); i++) {
+                final Task callback = (Task) callbacks.elementAt(i);
+
+                if (!callback.isCanceled()) {
+                    new Task(priority, in) {
+                        protected Object exec(final Object in) {
+                            return in;
+                        }
+                    }.chain(callback).fork();
+                }
+            }
+
+            return in;
+        }
+
+        protected void onCanceled(final String reason) {
+            final Vector callbacks = detach(key);
+
+            for (int i = 0; callbacks != null && i < callbacks.size(); i++) {
+                ((Task) callbacks.elementAt(i)).cancel(false, reason);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import org.tantalum.net.HttpGetter;
+
+/**
+ * An HTTP GET which sends the validators of the cached response, so the
+ * server can answer 304 Not Modified with just the headers instead of the
+ * whole response. A 304 is accepted as a successful response with an empty
+ * body, see isNotModified().
+ */
+public class ConditionalGetter extends HttpGetter {
+    // Members
+    private volatile boolean notModified = false;
+
+    /**
+     * Constructor.
+     * @param priority The priority of the task.
+     * @param url The URL to get.
+     * @param entityTag The ETag of the cached response or null.
+     * @param lastModified The Last-Modified date of the cached response or
+     * null.
+     */
+    public ConditionalGetter(final int priority,
+                             final String url,
+                             final String entityTag,
+                             final String lastModified)
+    {
+        super(priority, url);
+
+        if (entityTag != null) {
+            setRequestProperty("If-None-Match", entityTag);
+        }
+
+        if (lastModified != null) {
+            setRequestProperty("If-Modified-Since", lastModified);
+        }
+    }
+
+    /**
+     * @return True if the server answered that the cached response is still
+     * valid.
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * @param name The name of the header, in any case.
+     * @return The first value of the response header or null.
+     */
+    public String getResponseHeader(final String name) {
+        final Hashtable headers = getResponseHeaders();
+        final Enumeration keys = headers.keys();
+
+        while (keys.hasMoreElements()) {
+            final String key = (String) keys.nextElement();
+
+            if (key != null && key.toLowerCase().equals(name.toLowerCase())) {
+                final Object value = headers.get(key);
+
+                if (value instanceof String[]) {
+                    return ((String[]) value).length > 0
+                            ? ((String[]) value)[0] : null;
+                }
+
+                return (String) value;
+            }
+        }
+
+        return null;
+    }
+
+    protected boolean checkResponseCode(final String url,
+                                        final int responseCode,
+                                        final Hashtable headers)
+        throws IOException
+    {
+        if (responseCode == HTTP_304_NOT_MODIFIED) {
+            notModified = true;
+            return true;
+        }
+
+        return super.checkResponseCode(url, responseCode, headers);
+    }
+}
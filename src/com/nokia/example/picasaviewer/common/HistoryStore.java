@@ -0,0 +1,645 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.TimerTask;
+import java.util.Vector;
+
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+
+import org.tantalum.Task;
+import org.tantalum.util.CryptoUtils;
+import org.tantalum.util.L;
+
+/**
+ * Persistent store for the images the user has viewed (history) or starred
+ * (favourites).
+ *
+ * Each image is a record of its own in the data store. The index store holds
+ * three compact records: the digests of the image URLs sorted for binary
+ * search, each followed by the id of the data record with the high bit set
+ * for a favourite, and the ids of the history and favourites entries in
+ * most recent first order. Only these
+ * arrays are held in memory; the entries are read from flash a page at a
+ * time. The store is opened lazily on first use, not at startup.
+ *
+ * The index records are large, so the changed ones are written in an idle
+ * task FLUSH_DELAY after the first change, or by flushAsync() when the
+ * application is paused, rather than on every image viewed.
+ *
+ * Access the store from worker threads only, e.g. through the asynchronous
+ * methods.
+ */
+public final class HistoryStore {
+    // Constants
+    public static final int LIST_HISTORY = 0;
+    public static final int LIST_FAVOURITES = 1;
+    public static final int PAGE_SIZE = 20;
+    public static final int FLAG_VIEWED = 1;
+    public static final int FLAG_STARRED = 2;
+    private static final String DATA_STORE_NAME = "PicasaHistory";
+    private static final String INDEX_STORE_NAME = "PicasaHistoryIndex";
+    private static final int INDEX_RECORD_ID = 1;
+    private static final int HISTORY_RECORD_ID = 2;
+    private static final int FAVOURITES_RECORD_ID = 3;
+    private static final int INDEX_ENTRY_LENGTH = 12; // Digest and record id
+    private static final int STARRED_BIT = 0x80; // Of the first byte of the record id
+    private static final int MAX_HISTORY_LENGTH = 5000; // Favourites are never dropped
+    private static final int FLUSH_DELAY = 10000; // ms
+
+    // Members
+    private static HistoryStore instance = null;
+    private RecordStore dataStore = null;
+    private RecordStore indexStore = null;
+    private byte[] index = null;
+    private int indexLength = 0; // Number of entries
+    private int[][] lists = null;
+    private int[] listLengths = null;
+    private boolean indexChanged = false; // Not written to flash yet
+    private final boolean[] listChanged = new boolean[2];
+    private boolean flushScheduled = false;
+    private volatile int historyChanges = 0; // Incremented when the list changes
+    private volatile int favouritesChanges = 0;
+
+    /**
+     * @return The history store instance.
+     */
+    public static synchronized HistoryStore getInstance() {
+        if (instance == null) {
+            instance = new HistoryStore();
+        }
+
+        return instance;
+    }
+
+    private HistoryStore() {
+    }
+
+    /**
+     * Records that the user has viewed the given image.
+     * @param picasaImageObject The viewed image.
+     * @return The task writing the entry.
+     */
+    public Task addViewedAsync(final PicasaImageObject picasaImageObject) {
+        return new Task(Task.IDLE_PRIORITY) {
+            protected Object exec(final Object in) {
+                update(picasaImageObject, FLAG_VIEWED, true);
+                return in;
+            }
+        }.fork();
+    }
+
+    /**
+     * Stars or unstars the given image.
+     * @param picasaImageObject The image.
+     * @param starred True to add the image to the favourites.
+     * @return The task writing the entry.
+     */
+    public Task setStarredAsync(final PicasaImageObject picasaImageObject,
+                                final boolean starred)
+    {
+        return new Task(Task.NORMAL_PRIORITY) {
+            protected Object exec(final Object in) {
+                update(picasaImageObject, FLAG_STARRED, starred);
+                return in;
+            }
+        }.fork();
+    }
+
+    /**
+     * Writes the changed index records now, e.g. when the application is
+     * paused. The task is run even if the application is shutting down.
+     * @return The task writing the records.
+     */
+    public Task flushAsync() {
+        return new Task(Task.IDLE_PRIORITY) {
+            protected Object exec(final Object in) {
+                flush();
+                return in;
+            }
+        }.setShutdownBehaviour(Task.EXECUTE_NORMALLY_ON_SHUTDOWN).fork();
+    }
+
+    /**
+     * Reads a page of entries from flash.
+     * @param list LIST_HISTORY or LIST_FAVOURITES.
+     * @param page The index of the page.
+     * @param callback Receives a Vector of PicasaImageObjects.
+     * @return The task reading the page.
+     */
+    public Task getPageAsync(final int list,
+                             final int page,
+                             final Task callback)
+    {
+        final Task task = new Task(Task.HIGH_PRIORITY) {
+            protected Object exec(final Object in) {
+                return getPage(list, page);
+            }
+        };
+
+        task.chain(callback);
+
+        return task.fork();
+    }
+
+    /**
+     * @param list LIST_HISTORY or LIST_FAVOURITES.
+     * @return The number of entries in the list.
+     */
+    public synchronized int size(final int list) {
+        return open() ? listLengths[list] : 0;
+    }
+
+    /**
+     * Can be called from the UI thread.
+     * @param list LIST_HISTORY or LIST_FAVOURITES.
+     * @return The number of changes to the list so far, e.g. for reloading
+     * a view of the list only when it has changed.
+     */
+    public int getChanges(final int list) {
+        return list == LIST_HISTORY ? historyChanges : favouritesChanges;
+    }
+
+    /**
+     * @param imageUrl The URL of the image.
+     * @return True if the image has been starred.
+     */
+    public synchronized boolean isStarred(final String imageUrl) {
+        if (!open()) {
+            return false;
+        }
+
+        final int position = find(toDigest(imageUrl));
+
+        return position >= 0 && isStarred(position);
+    }
+
+    /**
+     * Reads a page of entries from flash.
+     * @param list LIST_HISTORY or LIST_FAVOURITES.
+     * @param page The index of the page.
+     * @return The entries of the page.
+     */
+    public synchronized Vector getPage(final int list, final int page) {
+        final Vector entries = new Vector(PAGE_SIZE);
+
+        if (!open()) {
+            return entries;
+        }
+
+        final int end = Math.min(listLengths[list], (page + 1) * PAGE_SIZE);
+
+        for (int i = page * PAGE_SIZE; i < end; i++) {
+            try {
+                entries.addElement(readEntry(
+                        dataStore.getRecord(lists[list][i])));
+            }
+            catch (Exception e) {
+                //#debug
+                L.e("Can not read history entry", "" + lists[list][i], e);
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Adds or updates the entry of the given image.
+     */
+    private synchronized void update(final PicasaImageObject picasaImageObject,
+                                     final int flag,
+                                     final boolean set)
+    {
+        if (picasaImageObject == null
+            || picasaImageObject.imageUrl.length() == 0
+            || !open())
+        {
+            return;
+        }
+
+        try {
+            final long digest = toDigest(picasaImageObject.imageUrl);
+            final byte[] entry = writeEntry(picasaImageObject);
+            int position = find(digest);
+            int recordId;
+
+            if (position >= 0) {
+                recordId = getRecordId(position);
+                dataStore.setRecord(recordId, entry, 0, entry.length);
+            }
+            else if (set) {
+                recordId = dataStore.addRecord(entry, 0, entry.length);
+                position = -position - 1;
+                insertIndexEntry(position, digest, recordId);
+            }
+            else {
+                return;
+            }
+
+            if (flag == FLAG_VIEWED) {
+                moveToFront(LIST_HISTORY, recordId);
+                dropOldestHistory();
+            }
+            else if (set) {
+                moveToFront(LIST_FAVOURITES, recordId);
+                setStarred(position, true);
+            }
+            else {
+                remove(LIST_FAVOURITES, recordId);
+                setStarred(position, false);
+
+                if (indexOf(LIST_HISTORY, recordId) < 0) {
+                    removeIndexEntry(recordId);
+                    dataStore.deleteRecord(recordId);
+                }
+            }
+
+            scheduleFlush();
+        }
+        catch (RecordStoreException e) {
+            //#debug
+            L.e("Can not write history entry", picasaImageObject.imageUrl, e);
+        }
+    }
+
+    /**
+     * Writes the changed index records FLUSH_DELAY from now, so that the
+     * changes of several images viewed in a row are written together.
+     */
+    private void scheduleFlush() {
+        if (flushScheduled
+            || !(indexChanged
+                 || listChanged[LIST_HISTORY]
+                 || listChanged[LIST_FAVOURITES]))
+        {
+            return;
+        }
+
+        flushScheduled = true;
+        Task.getTimer().schedule(new TimerTask() {
+            public void run() {
+                flushAsync();
+            }
+        }, FLUSH_DELAY);
+    }
+
+    /**
+     * Writes the changed index records.
+     */
+    private synchronized void flush() {
+        flushScheduled = false;
+
+        if (dataStore == null) {
+            return;
+        }
+
+        try {
+            writeIndex();
+        }
+        catch (RecordStoreException e) {
+            //#debug
+            L.e("Can not write history index", INDEX_STORE_NAME, e);
+        }
+    }
+
+    /**
+     * Opens the record stores and reads the index on first use.
+     * @return True if the store is usable.
+     */
+    private boolean open() {
+        if (dataStore != null) {
+            return true;
+        }
+
+        try {
+            dataStore = RecordStore.openRecordStore(DATA_STORE_NAME, true);
+            indexStore = RecordStore.openRecordStore(INDEX_STORE_NAME, true);
+            lists = new int[2][];
+            listLengths = new int[2];
+
+            if (indexStore.getNumRecords() == 0) {
+                final byte[] empty = new byte[4];
+                indexStore.addRecord(empty, 0, empty.length);
+                indexStore.addRecord(empty, 0, empty.length);
+                indexStore.addRecord(empty, 0, empty.length);
+                index = new byte[0];
+                lists[LIST_HISTORY] = new int[0];
+                lists[LIST_FAVOURITES] = new int[0];
+            }
+            else {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                        indexStore.getRecord(INDEX_RECORD_ID)));
+                indexLength = in.readInt();
+                index = new byte[indexLength * INDEX_ENTRY_LENGTH];
+                in.readFully(index);
+                readList(LIST_HISTORY, HISTORY_RECORD_ID);
+                readList(LIST_FAVOURITES, FAVOURITES_RECORD_ID);
+                markFavourites();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not open history store", DATA_STORE_NAME, e);
+            dataStore = null;
+        }
+
+        return dataStore != null;
+    }
+
+    private void readList(final int list, final int recordId)
+        throws RecordStoreException, IOException
+    {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                indexStore.getRecord(recordId)));
+        final int length = in.readInt();
+
+        lists[list] = new int[length];
+        listLengths[list] = length;
+
+        for (int i = 0; i < length; i++) {
+            lists[list][i] = in.readInt();
+        }
+    }
+
+    /**
+     * Sets the starred bits of the index entries from the favourites list,
+     * as an index written by an earlier version has none.
+     */
+    private void markFavourites() {
+        final Hashtable favourites = new Hashtable(listLengths[LIST_FAVOURITES]);
+
+        for (int i = 0; i < listLengths[LIST_FAVOURITES]; i++) {
+            final Integer recordId = new Integer(lists[LIST_FAVOURITES][i]);
+
+            favourites.put(recordId, recordId);
+        }
+
+        for (int position = 0; position < indexLength; position++) {
+            setStarred(position,
+                    favourites.containsKey(new Integer(getRecordId(position))));
+        }
+    }
+
+    /**
+     * Writes the index records which have changed.
+     */
+    private void writeIndex() throws RecordStoreException {
+        try {
+            ByteArrayOutputStream bytes;
+            DataOutputStream out;
+            byte[] record;
+
+            if (indexChanged) {
+                bytes = new ByteArrayOutputStream(
+                        4 + indexLength * INDEX_ENTRY_LENGTH);
+                out = new DataOutputStream(bytes);
+                out.writeInt(indexLength);
+                out.write(index, 0, indexLength * INDEX_ENTRY_LENGTH);
+                record = bytes.toByteArray();
+                indexStore.setRecord(INDEX_RECORD_ID, record, 0, record.length);
+                indexChanged = false;
+            }
+
+            for (int list = LIST_HISTORY; list <= LIST_FAVOURITES; list++) {
+                if (!listChanged[list]) {
+                    continue;
+                }
+
+                bytes = new ByteArrayOutputStream(4 + listLengths[list] * 4);
+                out = new DataOutputStream(bytes);
+                out.writeInt(listLengths[list]);
+
+                for (int i = 0; i < listLengths[list]; i++) {
+                    out.writeInt(lists[list][i]);
+                }
+
+                record = bytes.toByteArray();
+                indexStore.setRecord(list == LIST_HISTORY ?
+                        HISTORY_RECORD_ID : FAVOURITES_RECORD_ID,
+                        record, 0, record.length);
+                listChanged[list] = false;
+            }
+        }
+        catch (IOException e) {
+            throw new RecordStoreException(e.toString());
+        }
+    }
+
+    /**
+     * Binary search for the given digest in the index.
+     * @return The position of the entry, or (-(insertion point) - 1) if not
+     * found.
+     */
+    private int find(final long digest) {
+        final CryptoUtils cryptoUtils = CryptoUtils.getInstance();
+        int low = 0;
+        int high = indexLength - 1;
+
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final long value =
+                cryptoUtils.bytesToLong(index, middle * INDEX_ENTRY_LENGTH);
+
+            if (value < digest) {
+                low = middle + 1;
+            }
+            else if (value > digest) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    private int getRecordId(final int position) {
+        final int offset = position * INDEX_ENTRY_LENGTH + 8;
+
+        return ((index[offset] & ~STARRED_BIT & 0xff) << 24)
+                | ((index[offset + 1] & 0xff) << 16)
+                | ((index[offset + 2] & 0xff) << 8)
+                | (index[offset + 3] & 0xff);
+    }
+
+    private boolean isStarred(final int position) {
+        return (index[position * INDEX_ENTRY_LENGTH + 8] & STARRED_BIT) != 0;
+    }
+
+    private void setStarred(final int position, final boolean starred) {
+        final int offset = position * INDEX_ENTRY_LENGTH + 8;
+
+        if (isStarred(position) != starred) {
+            index[offset] ^= STARRED_BIT;
+            indexChanged = true;
+        }
+    }
+
+    private void insertIndexEntry(final int position,
+                                  final long digest,
+                                  final int recordId)
+    {
+        if ((indexLength + 1) * INDEX_ENTRY_LENGTH > index.length) {
+            final byte[] grown = new byte[(indexLength + 16) * INDEX_ENTRY_LENGTH];
+            System.arraycopy(index, 0, grown, 0, indexLength * INDEX_ENTRY_LENGTH);
+            index = grown;
+        }
+
+        final int offset = position * INDEX_ENTRY_LENGTH;
+
+        System.arraycopy(index, offset, index, offset + INDEX_ENTRY_LENGTH,
+                (indexLength - position) * INDEX_ENTRY_LENGTH);
+        CryptoUtils.getInstance().longToBytes(digest, index, offset);
+        index[offset + 8] = (byte) (recordId >>> 24);
+        index[offset + 9] = (byte) (recordId >>> 16);
+        index[offset + 10] = (byte) (recordId >>> 8);
+        index[offset + 11] = (byte) recordId;
+        indexLength++;
+        indexChanged = true;
+    }
+
+    private void removeIndexEntry(final int recordId) {
+        for (int position = 0; position < indexLength; position++) {
+            if (getRecordId(position) == recordId) {
+                final int offset = position * INDEX_ENTRY_LENGTH;
+
+                System.arraycopy(index, offset + INDEX_ENTRY_LENGTH, index, offset,
+                        (indexLength - position - 1) * INDEX_ENTRY_LENGTH);
+                indexLength--;
+                indexChanged = true;
+                return;
+            }
+        }
+    }
+
+    private int indexOf(final int list, final int recordId) {
+        for (int i = 0; i < listLengths[list]; i++) {
+            if (lists[list][i] == recordId) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void moveToFront(final int list, final int recordId) {
+        int position = indexOf(list, recordId);
+
+        if (position == 0) {
+            return;
+        }
+
+        if (position < 0) {
+            if (listLengths[list] == lists[list].length) {
+                final int[] grown = new int[listLengths[list] + PAGE_SIZE];
+                System.arraycopy(lists[list], 0, grown, 0, listLengths[list]);
+                lists[list] = grown;
+            }
+
+            position = listLengths[list]++;
+        }
+
+        System.arraycopy(lists[list], 0, lists[list], 1, position);
+        lists[list][0] = recordId;
+        changed(list);
+    }
+
+    private void remove(final int list, final int recordId) {
+        final int position = indexOf(list, recordId);
+
+        if (position >= 0) {
+            System.arraycopy(lists[list], position + 1, lists[list], position,
+                    listLengths[list] - position - 1);
+            listLengths[list]--;
+            changed(list);
+        }
+    }
+
+    /**
+     * Marks the list to be written and counts the change.
+     */
+    private void changed(final int list) {
+        listChanged[list] = true;
+
+        if (list == LIST_HISTORY) {
+            historyChanges++;
+        }
+        else {
+            favouritesChanges++;
+        }
+    }
+
+    /**
+     * Drops the oldest history entries which are not favourites when the
+     * history grows too long.
+     */
+    private void dropOldestHistory() throws RecordStoreException {
+        while (listLengths[LIST_HISTORY] > MAX_HISTORY_LENGTH) {
+            final int recordId = lists[LIST_HISTORY][--listLengths[LIST_HISTORY]];
+
+            changed(LIST_HISTORY);
+
+            if (indexOf(LIST_FAVOURITES, recordId) < 0) {
+                removeIndexEntry(recordId);
+                dataStore.deleteRecord(recordId);
+            }
+        }
+    }
+
+    private static long toDigest(final String url) {
+        try {
+            return CryptoUtils.getInstance().toDigest(url);
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not create digest", url, e);
+            return url.hashCode();
+        }
+    }
+
+    private static byte[] writeEntry(final PicasaImageObject picasaImageObject)
+        throws RecordStoreException
+    {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(picasaImageObject.title);
+            out.writeUTF(picasaImageObject.author);
+            out.writeUTF(picasaImageObject.thumbUrl);
+            out.writeUTF(picasaImageObject.imageUrl);
+
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new RecordStoreException(e.toString());
+        }
+    }
+
+    private static PicasaImageObject readEntry(final byte[] record)
+        throws IOException
+    {
+        final DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(record));
+
+        in.readLong(); // Time of the last update
+
+        return new PicasaImageObject(in.readUTF(), in.readUTF(),
+                in.readUTF(), in.readUTF());
+    }
+}
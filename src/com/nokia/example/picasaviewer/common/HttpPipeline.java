@@ -0,0 +1,973 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.TimerTask;
+import java.util.Vector;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.SocketConnection;
+import javax.microedition.midlet.MIDlet;
+
+import org.tantalum.Task;
+import org.tantalum.net.HttpGetter;
+import org.tantalum.util.L;
+
+import com.nokia.example.picasaviewer.util.WorkerTuner;
+
+/**
+ * Downloads images over persistent connections. The requests for the same
+ * host share a socket connection which is kept alive between the requests,
+ * and the requests queued while a response is being read are written to
+ * the connection at once (HTTP/1.1 pipelining). On a slow link a grid of
+ * thumbnails then costs one connection setup and a few round trips instead
+ * of a connection setup and a round trip per thumbnail.
+ *
+ * The connection threads do the waiting, not the Tantalum workers, so the
+ * number of requests in flight is not limited by the number of workers.
+ *
+ * A host is first sent one request at a time. Only once it has answered
+ * with HTTP/1.1 and kept the connection open are the requests pipelined,
+ * and if it then drops a connection in the middle of a pipeline, its
+ * requests are again sent one at a time. If the socket can not be opened,
+ * e.g. the platform does not allow it, or the host does not keep the
+ * connection alive, the requests of the host fall back to HttpGetter tasks,
+ * at most MAX_PARALLEL at a time. Such a host is probed again after
+ * RETRY_DELAY, twice as long after each failed probe, and after close(),
+ * as the network may have changed while the application was paused. Only
+ * plain http:// URLs are pipelined. Pipelining can be turned off with a JAD
+ * property.
+ *
+ * A connection which receives no bytes of a response for READ_TIMEOUT, e.g.
+ * a half-open socket on a cellular link, is closed by its watchdog like a
+ * failed connection, so that its requests are sent again or fall back
+ * instead of stalling the host. close() also closes the connections blocked
+ * in a read.
+ */
+public final class HttpPipeline {
+    // Constants
+    public static final String PIPELINING_PROPERTY = "Picasa-Http-Pipelining";
+    private static final int MAX_DEPTH = 8; // Requests in flight on a connection
+    private static final int MAX_SERIAL_CONNECTIONS = 2; // Per host, when not pipelining
+    private static final int MAX_PARALLEL = 4; // Fallback requests in flight
+    private static final int MAX_RETRIES = 2; // Before falling back
+    private static final int IDLE_TIMEOUT = 4000; // ms, below the usual keep-alive timeouts of the servers
+    private static final int READ_TIMEOUT = 20000; // ms without a byte of the response
+    private static final int WATCHDOG_INTERVAL = 1000; // ms
+    private static final long RETRY_DELAY = 30000; // ms, before a failed host is probed again
+    private static final int MAX_RETRY_DOUBLINGS = 4; // The delay grows up to 8 minutes
+    private static final int BUFFER_SIZE = 2048;
+    private static final int UNKNOWN = 0; // The host has not answered yet
+    private static final int PIPELINING = 1;
+    private static final int SERIAL = 2; // Kept alive but not pipelined
+    private static final int FAILED = 3; // Not kept alive, the requests fall back
+
+    // Members
+    private static HttpPipeline instance = null;
+    private final Hashtable hosts = new Hashtable(); // "host:port" -> Host
+    private final Vector parallelQueue = new Vector(); // Requests waiting for a fallback slot
+    private final Vector connections = new Vector(); // Open Connections
+    private volatile boolean enabled = true;
+    private volatile int readTimeout = READ_TIMEOUT;
+    private int generation = 0; // Incremented by close()
+    private int parallelRequests = 0; // Fallback requests in flight
+    private int pendingRequests = 0; // Not answered yet
+    private int requestCount = 0;
+    private int pipelinedCount = 0; // Written behind another request
+    private int fallbackCount = 0;
+    private int connectionCount = 0;
+    private int downstreamBytes = 0; // Read from the sockets
+
+    /**
+     * @return The pipeline instance.
+     */
+    public static synchronized HttpPipeline getInstance() {
+        if (instance == null) {
+            instance = new HttpPipeline();
+        }
+
+        return instance;
+    }
+
+    private HttpPipeline() {
+    }
+
+    /**
+     * Reads from the JAD properties whether to pipeline the requests.
+     * @param midlet The MIDlet.
+     */
+    public void init(final MIDlet midlet) {
+        setEnabled(!"false".equals(midlet.getAppProperty(PIPELINING_PROPERTY)));
+    }
+
+    /**
+     * @param enabled False to send all the requests as HttpGetter tasks.
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param readTimeout The time in milliseconds without a byte of the
+     * response after which a connection is closed, e.g. shorter in the
+     * harness.
+     */
+    void setReadTimeout(final int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Gets the URL from the web.
+     * @param url The URL to get.
+     * @param priority The priority of the callback.
+     * @param callback The callback receiving the body of the response. It is
+     * canceled if the request fails or the response is not 2xx.
+     * @return The callback.
+     */
+    public Task get(final String url, final int priority, final Task callback) {
+        final Request request = new Request(url, priority, callback);
+
+        synchronized (this) {
+            requestCount++;
+            pendingRequests++;
+
+            final Host host = enabled ? getHost(url) : null;
+
+            if (host != null
+                && host.state == FAILED
+                && System.currentTimeMillis() >= host.retryAt)
+            {
+                host.state = UNKNOWN;
+            }
+
+            if (host == null || host.state == FAILED) {
+                fallback(request);
+            }
+            else {
+                request.path = getPath(url);
+                host.queue.addElement(request);
+
+                if (host.idleConnections > 0) {
+                    notifyAll();
+                }
+                else if (host.connections < getMaxConnections(host)) {
+                    startConnection(host);
+                }
+            }
+        }
+
+        return callback;
+    }
+
+    /**
+     * Closes the idle connections and the ones blocked in a read, and the
+     * others once their responses have been read, e.g. when the application
+     * is paused. The following requests open new ones.
+     */
+    public synchronized void close() {
+        final Enumeration elements = hosts.elements();
+
+        generation++;
+
+        for (int i = 0; i < connections.size(); i++) {
+            final Connection connection = (Connection) connections.elementAt(i);
+
+            if (connection.isReading()) {
+                connection.abort("Pipeline closed");
+            }
+        }
+
+        // Probed again, the network may be another one when resumed
+        while (elements.hasMoreElements()) {
+            final Host host = (Host) elements.nextElement();
+
+            host.state = UNKNOWN;
+            host.failures = 0;
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * @return The number of requests not answered yet.
+     */
+    public synchronized int getPendingCount() {
+        return pendingRequests;
+    }
+
+    /**
+     * @return The number of requests made since the start, including the
+     * ones which fell back to HttpGetter tasks.
+     */
+    public synchronized int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return The number of bytes read from the sockets since the start. The
+     * bytes of the fallback requests are counted by HttpGetter.
+     */
+    public synchronized int getDownstreamBytes() {
+        return downstreamBytes;
+    }
+
+    /**
+     * @return The number of connections opened since the start.
+     */
+    public synchronized int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public synchronized String toString() {
+        return "HttpPipeline enabled=" + enabled
+                + " requests=" + requestCount
+                + " pipelined=" + pipelinedCount
+                + " fallbacks=" + fallbackCount
+                + " connections=" + connectionCount
+                + " pending=" + pendingRequests;
+    }
+
+    /**
+     * @return The host of an http:// URL, or null if the URL can not be
+     * pipelined.
+     */
+    private Host getHost(final String url) {
+        if (!url.startsWith("http://")) {
+            return null;
+        }
+
+        int end = url.indexOf('/', 7);
+
+        if (end < 0) {
+            end = url.length();
+        }
+
+        final String authority = url.substring(7, end);
+        Host host = (Host) hosts.get(authority);
+
+        if (host == null) {
+            final int colon = authority.indexOf(':');
+            int port = 80;
+
+            if (colon >= 0) {
+                try {
+                    port = Integer.parseInt(authority.substring(colon + 1));
+                }
+                catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+
+            host = new Host(authority,
+                    colon >= 0 ? authority.substring(0, colon) : authority,
+                    port);
+            hosts.put(authority, host);
+        }
+
+        return host;
+    }
+
+    /**
+     * @return The path and the query of the URL, without the fragment.
+     */
+    private static String getPath(final String url) {
+        final int start = url.indexOf('/', 7);
+        final int fragment = url.indexOf('#');
+
+        if (start < 0) {
+            return "/";
+        }
+
+        return url.substring(start, fragment > start ? fragment : url.length());
+    }
+
+    private static int getMaxConnections(final Host host) {
+        return host.state == SERIAL ? MAX_SERIAL_CONNECTIONS : 1;
+    }
+
+    private void startConnection(final Host host) {
+        final Connection connection = new Connection(host, generation);
+
+        host.connections++;
+        connectionCount++;
+        connections.addElement(connection);
+        new Thread(connection, "HttpPipeline").start();
+    }
+
+    /**
+     * Sends the request as an HttpGetter task, or queues it until one of
+     * the MAX_PARALLEL fallback requests finishes.
+     */
+    private void fallback(final Request request) {
+        fallbackCount++;
+
+        if (parallelRequests < MAX_PARALLEL) {
+            startParallel(request);
+        }
+        else {
+            parallelQueue.addElement(request);
+        }
+    }
+
+    private void startParallel(final Request request) {
+        parallelRequests++;
+        request.started = System.currentTimeMillis();
+        WorkerTuner.getInstance().workerRequestStarted();
+        new HttpGetter(request.priority, request.url)
+                .chain(new ParallelResult(request)
+                    .chain(request.callback))
+                .fork();
+    }
+
+    private synchronized void parallelFinished() {
+        parallelRequests--;
+        pendingRequests--;
+
+        while (!parallelQueue.isEmpty() && parallelRequests < MAX_PARALLEL) {
+            final Request request = (Request) parallelQueue.elementAt(0);
+
+            parallelQueue.removeElementAt(0);
+
+            if (request.callback.isCanceled()) {
+                pendingRequests--;
+            }
+            else {
+                startParallel(request);
+            }
+        }
+    }
+
+    /**
+     * Takes the requests to write to a connection. Waits for requests if
+     * the connection has none in flight.
+     * @param connection The connection.
+     * @param inFlight The number of requests in flight on the connection.
+     * @return The requests, or null if the connection is to be closed.
+     */
+    private synchronized Vector take(final Connection connection,
+                                     final int inFlight)
+        throws InterruptedException
+    {
+        final Host host = connection.host;
+
+        if (inFlight == 0) {
+            final long end = System.currentTimeMillis() + IDLE_TIMEOUT;
+
+            connection.burstAnswered = 0;
+            host.idleConnections++;
+
+            try {
+                while (host.queue.isEmpty() && connection.generation == generation) {
+                    final long wait = end - System.currentTimeMillis();
+
+                    if (wait <= 0) {
+                        break;
+                    }
+
+                    wait(wait);
+                }
+            }
+            finally {
+                host.idleConnections--;
+            }
+
+            if (host.queue.isEmpty() || connection.generation != generation) {
+                return null;
+            }
+        }
+
+        final int depth = host.state == PIPELINING ? MAX_DEPTH : 1;
+        final Vector requests = new Vector();
+
+        while (inFlight + requests.size() < depth && !host.queue.isEmpty()) {
+            final Request request = (Request) host.queue.elementAt(0);
+
+            host.queue.removeElementAt(0);
+
+            if (request.callback.isCanceled()) {
+                pendingRequests--;
+            }
+            else {
+                requests.addElement(request);
+            }
+        }
+
+        if (inFlight + requests.size() > 1) {
+            pipelinedCount += inFlight > 0 ? requests.size() : requests.size() - 1;
+        }
+
+        // Under the lock, so that close() sees the requests in flight
+        if (inFlight == 0 && !requests.isEmpty()) {
+            connection.lastRead = System.currentTimeMillis();
+        }
+
+        return requests;
+    }
+
+    /**
+     * Hands a response to its callback and learns from it whether the host
+     * keeps the connections alive.
+     */
+    private void answered(final Connection connection,
+                          final Request request,
+                          final Response response)
+    {
+        synchronized (this) {
+            final Host host = connection.host;
+
+            pendingRequests--;
+            downstreamBytes += response.body.length;
+            connection.burstAnswered++;
+
+            if (host.state == UNKNOWN) {
+                if (response.keepAlive) {
+                    host.state = PIPELINING;
+                    host.failures = 0;
+                }
+                else {
+                    setFailed(host);
+                }
+
+                //#debug
+                L.i("Pipelining " + (host.state == PIPELINING), host.name);
+            }
+        }
+
+        if (response.status >= 200 && response.status < 300) {
+            new Task(request.priority, response.body) {
+                protected Object exec(final Object in) {
+                    return in;
+                }
+            }.chain(request.callback).fork();
+        }
+        else {
+            request.callback.cancel(false, "Bad response code "
+                    + response.status + ": " + request.url);
+        }
+    }
+
+    /**
+     * Called when a connection fails. A host which never answered is not
+     * used until it is probed again and a host which dropped a pipeline is
+     * no longer sent pipelined requests. A connection closed by close()
+     * says nothing about the host.
+     */
+    private synchronized void failed(final Connection connection,
+                                     final Vector inFlight,
+                                     final Exception e)
+    {
+        final Host host = connection.host;
+
+        //#debug
+        L.e("Connection failed", host.name + " in flight=" + inFlight.size(), e);
+
+        if (connection.generation != generation) {
+            return;
+        }
+
+        if (host.state == UNKNOWN) {
+            setFailed(host);
+        }
+        else if (host.state == PIPELINING
+                 && connection.burstAnswered > 0
+                 && inFlight.size() > 0)
+        {
+            host.state = SERIAL;
+        }
+    }
+
+    /**
+     * Sends the requests of the host to HttpGetter tasks until the host is
+     * probed again, RETRY_DELAY from now, doubled for each failed probe in
+     * a row.
+     */
+    private static void setFailed(final Host host) {
+        host.state = FAILED;
+        host.retryAt = System.currentTimeMillis()
+                + (RETRY_DELAY << Math.min(host.failures, MAX_RETRY_DOUBLINGS));
+        host.failures++;
+    }
+
+    /**
+     * Called when a connection is closed. The requests written to it but
+     * not answered are sent again.
+     */
+    private synchronized void closed(final Connection connection,
+                                     final Vector inFlight)
+    {
+        final Host host = connection.host;
+
+        host.connections--;
+        connections.removeElement(connection);
+
+        for (int i = inFlight.size() - 1; i >= 0; i--) {
+            final Request request = (Request) inFlight.elementAt(i);
+
+            if (request.callback.isCanceled()) {
+                pendingRequests--;
+            }
+            else if (++request.retries > MAX_RETRIES) {
+                fallback(request);
+            }
+            else {
+                host.queue.insertElementAt(request, 0);
+            }
+        }
+
+        if (host.state == FAILED) {
+            while (!host.queue.isEmpty()) {
+                fallback((Request) host.queue.elementAt(0));
+                host.queue.removeElementAt(0);
+            }
+        }
+        else if (!host.queue.isEmpty()
+                 && host.connections < getMaxConnections(host))
+        {
+            startConnection(host);
+        }
+    }
+
+    /**
+     * A host and its queue of requests.
+     */
+    private static final class Host {
+        final String authority; // For the Host header
+        final String name;
+        final int port;
+        final Vector queue = new Vector();
+        int state = UNKNOWN;
+        int failures = 0; // Failed probes in a row
+        long retryAt = 0; // When a FAILED host is probed again
+        int connections = 0;
+        int idleConnections = 0;
+
+        Host(final String authority, final String name, final int port) {
+            this.authority = authority;
+            this.name = name;
+            this.port = port;
+        }
+    }
+
+    /**
+     * A request and the callback waiting for it.
+     */
+    private static final class Request {
+        final String url;
+        final int priority;
+        final Task callback;
+        String path = null;
+        int retries = 0;
+        long started = 0; // When sent as a fallback request
+
+        Request(final String url, final int priority, final Task callback) {
+            this.url = url;
+            this.priority = priority;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * A response read from a connection.
+     */
+    private static final class Response {
+        int status = 0;
+        byte[] body = null;
+        boolean keepAlive = false; // The connection can be used again
+    }
+
+    /**
+     * Ends a fallback request, the result is passed on to the callback.
+     */
+    private final class ParallelResult extends Task {
+        private final Request request;
+
+        ParallelResult(final Request request) {
+            super(request.priority);
+            this.request = request;
+        }
+
+        protected Object exec(final Object in) {
+            finished();
+
+            return in;
+        }
+
+        protected void onCanceled(final String reason) {
+            finished();
+        }
+
+        private void finished() {
+            WorkerTuner.getInstance().workerRequestFinished(
+                    (int) (System.currentTimeMillis() - request.started));
+            parallelFinished();
+        }
+    }
+
+    /**
+     * A socket connection to a host. Writes the requests of the host and
+     * reads the responses in order until the host closes the connection,
+     * the connection has been idle for IDLE_TIMEOUT, no bytes have been
+     * received for the read timeout or close() is called.
+     */
+    private final class Connection implements Runnable {
+        private final Host host;
+        private final int generation;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = 0;
+        private int limit = 0;
+        private InputStream in = null;
+        private volatile SocketConnection socket = null;
+        private volatile boolean aborted = false;
+        private volatile long lastRead = 0; // When a byte was last received or the requests sent, 0 if none in flight
+        int burstAnswered = 0; // Since the connection was last idle
+
+        Connection(final Host host, final int generation) {
+            this.host = host;
+            this.generation = generation;
+        }
+
+        /**
+         * @return True if the connection has requests in flight.
+         */
+        boolean isReading() {
+            return lastRead != 0;
+        }
+
+        /**
+         * Closes the socket, which ends a read in progress with an
+         * IOException. Called from another thread.
+         * @param reason The reason, for the log.
+         */
+        void abort(final String reason) {
+            aborted = true;
+
+            final SocketConnection connection = socket;
+
+            //#debug
+            L.i("Closing connection", host.name + " " + reason);
+
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+            catch (IOException e) {
+                // Closed anyway
+            }
+        }
+
+        public void run() {
+            final Vector inFlight = new Vector();
+            final TimerTask watchdog = new TimerTask() {
+                public void run() {
+                    final long since = lastRead;
+
+                    if (since != 0
+                        && System.currentTimeMillis() - since > readTimeout)
+                    {
+                        cancel();
+                        abort("Read timeout");
+                    }
+                }
+            };
+
+            try {
+                socket = (SocketConnection) Connector.open(
+                        "socket://" + host.name + ":" + host.port);
+
+                if (aborted) {
+                    throw new IOException("Connection closed");
+                }
+
+                Task.getTimer().schedule(watchdog, WATCHDOG_INTERVAL,
+                        WATCHDOG_INTERVAL);
+
+                try {
+                    socket.setSocketOption(SocketConnection.DELAY, 0);
+                    socket.setSocketOption(SocketConnection.KEEPALIVE, 1);
+                }
+                catch (IllegalArgumentException e) {
+                    // Not supported, the defaults will do
+                }
+
+                final OutputStream out = socket.openOutputStream();
+                boolean keepAlive = true;
+
+                in = socket.openInputStream();
+
+                while (keepAlive) {
+                    final Vector requests = take(this, inFlight.size());
+
+                    if (requests == null) {
+                        break;
+                    }
+
+                    if (!requests.isEmpty()) {
+                        // Sent again if the write fails
+                        for (int i = 0; i < requests.size(); i++) {
+                            inFlight.addElement(requests.elementAt(i));
+                        }
+
+                        write(out, requests);
+                    }
+
+                    if (!inFlight.isEmpty()) {
+                        final Request request = (Request) inFlight.elementAt(0);
+                        final Response response = read();
+
+                        inFlight.removeElementAt(0);
+
+                        if (inFlight.isEmpty()) {
+                            lastRead = 0;
+                        }
+
+                        keepAlive = response.keepAlive;
+                        answered(this, request, response);
+                    }
+                }
+            }
+            catch (Exception e) {
+                failed(this, inFlight, e);
+            }
+            finally {
+                lastRead = 0;
+                watchdog.cancel();
+
+                try {
+                    if (socket != null) {
+                        socket.close();
+                    }
+                }
+                catch (IOException e) {
+                    // Closed anyway
+                }
+
+                closed(this, inFlight);
+            }
+        }
+
+        private void write(final OutputStream out, final Vector requests)
+            throws IOException
+        {
+            final StringBuffer headers = new StringBuffer();
+
+            for (int i = 0; i < requests.size(); i++) {
+                headers.append("GET ")
+                        .append(((Request) requests.elementAt(i)).path)
+                        .append(" HTTP/1.1\r\nHost: ")
+                        .append(host.authority)
+                        .append("\r\nConnection: keep-alive\r\n\r\n");
+            }
+
+            out.write(headers.toString().getBytes());
+            out.flush();
+        }
+
+        /**
+         * Reads a response, skipping the 1xx interim responses.
+         */
+        private Response read() throws IOException {
+            final Response response = new Response();
+            String version;
+            int length;
+            boolean chunked;
+            boolean close;
+            boolean keepAlive;
+
+            do {
+                final String statusLine = readLine();
+                final int space = statusLine.indexOf(' ');
+
+                if (!statusLine.startsWith("HTTP/") || space < 0) {
+                    throw new IOException("Bad status line: " + statusLine);
+                }
+
+                version = statusLine.substring(0, space);
+                response.status = Integer.parseInt(
+                        statusLine.substring(space + 1, space + 4));
+                length = -1;
+                chunked = false;
+                close = false;
+                keepAlive = false;
+
+                for (String line = readLine(); line.length() > 0; line = readLine()) {
+                    final int colon = line.indexOf(':');
+
+                    if (colon < 0) {
+                        continue;
+                    }
+
+                    final String name = line.substring(0, colon).trim().toLowerCase();
+                    final String value = line.substring(colon + 1).trim().toLowerCase();
+
+                    if (name.equals("content-length")) {
+                        length = Integer.parseInt(value);
+                    }
+                    else if (name.equals("transfer-encoding")) {
+                        chunked = value.indexOf("chunked") >= 0;
+                    }
+                    else if (name.equals("connection")) {
+                        close = value.indexOf("close") >= 0;
+                        keepAlive = value.indexOf("keep-alive") >= 0;
+                    }
+                }
+            } while (response.status >= 100 && response.status < 200);
+
+            response.keepAlive = !close
+                    && (version.equals("HTTP/1.1") || keepAlive);
+
+            if (response.status == 204 || response.status == 304) {
+                response.body = new byte[0];
+            }
+            else if (chunked) {
+                response.body = readChunked();
+            }
+            else if (length >= 0) {
+                response.body = new byte[length];
+                readFully(response.body, 0, length);
+            }
+            else {
+                // Delimited by the end of the connection
+                response.body = readToEnd();
+                response.keepAlive = false;
+            }
+
+            return response;
+        }
+
+        private byte[] readChunked() throws IOException {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+            while (true) {
+                String size = readLine();
+                final int extension = size.indexOf(';');
+
+                if (extension >= 0) {
+                    size = size.substring(0, extension);
+                }
+
+                final int length = Integer.parseInt(size.trim(), 16);
+
+                if (length == 0) {
+                    break;
+                }
+
+                final byte[] chunk = new byte[length];
+
+                readFully(chunk, 0, length);
+                body.write(chunk, 0, length);
+                readLine();
+            }
+
+            // The trailers
+            while (readLine().length() > 0) {
+            }
+
+            return body.toByteArray();
+        }
+
+        private byte[] readToEnd() throws IOException {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+            body.write(buffer, position, limit - position);
+            position = limit;
+
+            for (int count = receive(buffer, 0, buffer.length);
+                 count > 0;
+                 count = receive(buffer, 0, buffer.length))
+            {
+                body.write(buffer, 0, count);
+            }
+
+            return body.toByteArray();
+        }
+
+        private void readFully(final byte[] bytes, int offset, final int length)
+            throws IOException
+        {
+            final int end = offset + length;
+            final int buffered = Math.min(limit - position, length);
+
+            System.arraycopy(buffer, position, bytes, offset, buffered);
+            position += buffered;
+            offset += buffered;
+
+            while (offset < end) {
+                final int count = receive(bytes, offset, end - offset);
+
+                if (count < 0) {
+                    throw new IOException("Connection closed");
+                }
+
+                offset += count;
+            }
+        }
+
+        /**
+         * Reads from the socket and keeps the watchdog from closing the
+         * connection while bytes are received.
+         */
+        private int receive(final byte[] bytes, final int offset, final int length)
+            throws IOException
+        {
+            final int count = in.read(bytes, offset, length);
+
+            if (count > 0 && lastRead != 0) {
+                lastRead = System.currentTimeMillis();
+            }
+
+            return count;
+        }
+
+        /**
+         * @return The line without the CR LF.
+         */
+        private String readLine() throws IOException {
+            final StringBuffer line = new StringBuffer();
+
+            while (true) {
+                if (position == limit) {
+                    limit = receive(buffer, 0, buffer.length);
+                    position = 0;
+
+                    if (limit < 0) {
+                        limit = 0;
+                        throw new IOException("Connection closed");
+                    }
+                }
+
+                final char c = (char) (buffer[position++] & 0xff);
+
+                if (c == '\n') {
+                    break;
+                }
+
+                if (c != '\r') {
+                    line.append(c);
+                }
+            }
+
+            return line.toString();
+        }
+    }
+}
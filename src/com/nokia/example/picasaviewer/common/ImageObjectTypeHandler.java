@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.json.me.JSONArray;
+import org.json.me.JSONException;
+import org.json.me.JSONObject;
+import org.tantalum.storage.CacheView;
+import org.tantalum.util.L;
+
+/**
+ * Class for converting the JSON response in to a Vector of
+ * PicasaImageObject-objects. The vector is saved by Tantalum.
+ */
+final class ImageObjectTypeHandler implements CacheView {
+    private static final Hashtable parsedSizes = new Hashtable(); // key -> Integer, JSON bytes
+    private final boolean recorded;
+
+    /**
+     * Constructor for the feed cache.
+     */
+    ImageObjectTypeHandler() {
+        this(true);
+    }
+
+    /**
+     * @param recorded True to record the feeds in the quota manager, false
+     * for feeds outside the feed cache, e.g. in the offline packs.
+     */
+    ImageObjectTypeHandler(final boolean recorded) {
+        this.recorded = recorded;
+    }
+
+    public Object convertToUseForm(Object key, byte[] bytes) {
+        if (recorded) {
+            QuotaManager.getInstance().record(PicasaStorage.FEED_CACHE_ID,
+                    (String) key, bytes.length, QuotaManager.TIER_FEED);
+            parsedSizes.put(key, new Integer(bytes.length));
+        }
+        
+        JSONObject responseJson;
+        
+        try {
+            responseJson = new JSONObject(new String(bytes));
+        }
+        catch (JSONException ex) {
+            //#debug
+            L.e("bytes are not a JSON object", String.valueOf(key), ex);
+            return null;
+        }
+        
+        JSONArray entries = new JSONArray();
+        final Vector vector = new Vector();
+        
+        try {
+            final JSONObject feed = 
+                    ((JSONObject) responseJson).getJSONObject("feed");
+            entries = feed.getJSONArray("entry");
+        }
+        catch (JSONException e) {
+            vector.addElement(
+                    new PicasaImageObject("No Results", "", "", ""));
+
+            //#debug
+            L.e("JSON no result", String.valueOf(key), e);
+        }
+
+        for (int i = 0; i < entries.length(); i++) {
+            try {
+                final JSONObject jsonObject = 
+                        entries.getJSONObject(i);
+                final String title = 
+                        jsonObject.getJSONObject("title").getString("$t");
+                final String author = 
+                        jsonObject.getJSONArray("author").getJSONObject(0).getJSONObject("name").getString("$t");
+                final String thumbUrl = 
+                        jsonObject.getJSONObject("media$group").getJSONArray("media$thumbnail").getJSONObject(0).getString("url");
+                final String imageUrl = 
+                        jsonObject.getJSONObject("media$group").getJSONArray("media$content").getJSONObject(0).getString("url");
+
+                //#mdebug
+                L.i("JSON parsed title: ", title);
+                L.i("JSON parsed author: ", author);
+                L.i("JSON parsed thumb url: ", thumbUrl);
+                L.i("JSON parsed image url: ", imageUrl);
+                //#enddebug
+
+                vector.addElement(
+                        new PicasaImageObject(title, author, thumbUrl, imageUrl));
+            }
+            catch (JSONException e) {
+                //#debug
+                L.e("JSON item parse error", String.valueOf(key), e);
+            }
+        }
+
+        if (entries.length() == 0) {
+            vector.addElement(new PicasaImageObject("No Results", "", "", ""));
+        }
+        
+        return vector;
+    }
+
+    /**
+     * @return The estimated number of bytes held by the feeds parsed for the
+     * feed cache since the last clearParsed(), the length of their JSON.
+     */
+    static int getParsedBytes() {
+        int bytes = 0;
+
+        synchronized (parsedSizes) {
+            final Enumeration sizes = parsedSizes.elements();
+
+            while (sizes.hasMoreElements()) {
+                bytes += ((Integer) sizes.nextElement()).intValue();
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Forgets the parsed feeds, e.g. when the RAM cache has been cleared.
+     */
+    static void clearParsed() {
+        parsedSizes.clear();
+    }
+}
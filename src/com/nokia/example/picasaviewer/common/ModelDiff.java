@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Updates a model of PicasaImageObjects in place to match a new feed. The
+ * items are matched by their image URL, so an item which is still in the
+ * feed keeps its instance and the data stored by it, e.g. the decoded
+ * thumbnail. Each change is reported to the listener as it is made.
+ */
+public final class ModelDiff {
+
+    /**
+     * Receives the changes. The indexes are those of the model right after
+     * the change.
+     */
+    public interface Listener {
+        void itemInserted(int index, PicasaImageObject item);
+
+        void itemRemoved(int index, PicasaImageObject item);
+
+        void itemMoved(int from, int to, PicasaImageObject item);
+
+        /**
+         * The item was replaced with an item of the same image URL but
+         * different content, e.g. a new title.
+         */
+        void itemChanged(int index,
+                         PicasaImageObject oldItem,
+                         PicasaImageObject item);
+    }
+
+    private ModelDiff() {
+    }
+
+    /**
+     * Updates the model to match the new feed.
+     * @param model The model to update.
+     * @param newModel The new feed.
+     * @param listener The listener of the changes.
+     * @return The number of changes made.
+     */
+    public static int apply(final Vector model,
+                            final Vector newModel,
+                            final Listener listener)
+    {
+        final Hashtable newItems = new Hashtable();
+        int changes = 0;
+
+        for (int i = 0; i < newModel.size(); i++) {
+            final PicasaImageObject item =
+                    (PicasaImageObject) newModel.elementAt(i);
+            newItems.put(item.imageUrl, item);
+        }
+
+        // Remove the items which are not in the new feed, and duplicates
+        final Hashtable oldItems = new Hashtable();
+
+        for (int i = model.size() - 1; i >= 0; i--) {
+            final PicasaImageObject item =
+                    (PicasaImageObject) model.elementAt(i);
+
+            if (!newItems.containsKey(item.imageUrl)
+                || oldItems.containsKey(item.imageUrl))
+            {
+                model.removeElementAt(i);
+                listener.itemRemoved(i, item);
+                changes++;
+            }
+            else {
+                oldItems.put(item.imageUrl, item);
+            }
+        }
+
+        // Move, insert and change the items in the order of the new feed
+        for (int i = 0; i < newModel.size(); i++) {
+            final PicasaImageObject item =
+                    (PicasaImageObject) newModel.elementAt(i);
+            final PicasaImageObject oldItem =
+                    (PicasaImageObject) oldItems.remove(item.imageUrl);
+
+            if (oldItem == null) {
+                model.insertElementAt(item, i);
+                listener.itemInserted(i, item);
+                changes++;
+                continue;
+            }
+
+            final int index = model.indexOf(oldItem, i);
+
+            if (index != i) {
+                model.removeElementAt(index);
+                model.insertElementAt(oldItem, i);
+                listener.itemMoved(index, i, oldItem);
+                changes++;
+            }
+
+            if (!isSameContent(oldItem, item)) {
+                model.setElementAt(item, i);
+                listener.itemChanged(i, oldItem, item);
+                changes++;
+            }
+        }
+
+        // Duplicates in the new feed leave extra items at the end
+        for (int i = model.size() - 1; i >= newModel.size(); i--) {
+            final PicasaImageObject item =
+                    (PicasaImageObject) model.elementAt(i);
+            model.removeElementAt(i);
+            listener.itemRemoved(i, item);
+            changes++;
+        }
+
+        return changes;
+    }
+
+    private static boolean isSameContent(final PicasaImageObject a,
+                                         final PicasaImageObject b)
+    {
+        return a.thumbUrl.equals(b.thumbUrl)
+                && a.title.equals(b.title)
+                && a.author.equals(b.author);
+    }
+}
@@ -0,0 +1,576 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Vector;
+
+import javax.microedition.rms.RecordStore;
+
+import org.tantalum.Task;
+import org.tantalum.net.StaticWebCache;
+import org.tantalum.util.CryptoUtils;
+import org.tantalum.util.L;
+
+/**
+ * Feeds made available offline. Pinning a feed, a search or the featured
+ * feed, downloads the feed, its thumbnails and its full images to the
+ * offline cache, which the quota manager does not track and Tantalum clears
+ * last, so the normal eviction does not touch the packs. The full images
+ * are the ones in the feed, sized for the screen.
+ *
+ * The packs are downloaded one at a time in the background. The images
+ * already in the image cache are copied from there instead of downloaded.
+ * The index of the packs is kept in a record store of its own; a pack which
+ * was not complete when the application exited is completed on the next
+ * launch.
+ */
+public final class OfflinePacks {
+    // Constants
+    private static final String RECORD_STORE_NAME = "PicasaOfflinePacks";
+    private static final int RECORD_ID = 1;
+    private static final int VERSION = 1;
+    private static final String FEATURED = ""; // The search of the featured feed
+
+    // Members
+    private static OfflinePacks instance = null;
+    private final Vector packs = new Vector(); // Pack
+    private Pack current = null; // The pack being downloaded
+    private int next = 0; // Index of the next URL of the current pack
+    private boolean loaded = false;
+
+    /**
+     * @return The offline packs instance.
+     */
+    public static synchronized OfflinePacks getInstance() {
+        if (instance == null) {
+            instance = new OfflinePacks();
+        }
+
+        return instance;
+    }
+
+    private OfflinePacks() {
+    }
+
+    /**
+     * Loads the index and completes the packs which were left incomplete.
+     * Call after PicasaStorage.init().
+     */
+    public void init() {
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+
+            loaded = true;
+            load();
+        }
+
+        startNext();
+    }
+
+    /**
+     * @param search The search term or null for the featured feed.
+     * @return True if the feed is pinned, complete or not.
+     */
+    public synchronized boolean isPinned(final String search) {
+        return getPack(search) != null;
+    }
+
+    /**
+     * @param search The search term or null for the featured feed.
+     * @return True if the feed, the thumbnails and the full images are all
+     * in the offline cache.
+     */
+    public synchronized boolean isComplete(final String search) {
+        final Pack pack = getPack(search);
+
+        return pack != null && pack.complete;
+    }
+
+    /**
+     * @return The number of packs.
+     */
+    public synchronized int size() {
+        return packs.size();
+    }
+
+    /**
+     * Makes the feed available offline. The pack is downloaded in the
+     * background.
+     * @param search The search term or null for the featured feed.
+     */
+    public void pin(final String search) {
+        synchronized (this) {
+            if (getPack(search) != null) {
+                return;
+            }
+
+            packs.addElement(new Pack(search != null ? search : FEATURED));
+            save();
+        }
+
+        startNext();
+    }
+
+    /**
+     * Removes the pack of the feed and its images from the offline cache,
+     * except the images which are in another pack too. If the pack is being
+     * downloaded, it is removed once the image in flight has been written.
+     * @param search The search term or null for the featured feed.
+     */
+    public void unpin(final String search) {
+        final Pack pack;
+
+        synchronized (this) {
+            pack = getPack(search);
+
+            if (pack == null) {
+                return;
+            }
+
+            packs.removeElement(pack);
+            save();
+
+            if (pack == current) {
+                // Removed by finish(), the download stops at the next image
+                return;
+            }
+        }
+
+        remove(pack);
+    }
+
+    /**
+     * For debugging.
+     * @return The packs and their state.
+     */
+    public synchronized String toString() {
+        final StringBuffer buffer = new StringBuffer("packs=" + packs.size());
+
+        for (int i = 0; i < packs.size(); i++) {
+            final Pack pack = (Pack) packs.elementAt(i);
+
+            buffer.append(" [").append(pack.search).append(' ')
+                    .append(pack.complete ? "complete " : "incomplete ")
+                    .append(pack.urls.size()).append(" images ")
+                    .append(pack.bytes).append(" bytes]");
+        }
+
+        return buffer.toString();
+    }
+
+    private Pack getPack(final String search) {
+        final String key = search != null ? search : FEATURED;
+
+        for (int i = 0; i < packs.size(); i++) {
+            final Pack pack = (Pack) packs.elementAt(i);
+
+            if (pack.search.equals(key)) {
+                return pack;
+            }
+        }
+
+        return null;
+    }
+
+    private boolean isInPack(final Object url) {
+        for (int i = 0; i < packs.size(); i++) {
+            if (((Pack) packs.elementAt(i)).urls.contains(url)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Starts downloading the first incomplete pack unless a pack is being
+     * downloaded. The feed is always loaded from the web.
+     */
+    private void startNext() {
+        Pack pack = null;
+
+        synchronized (this) {
+            if (current != null || PicasaStorage.offlineCache == null) {
+                return;
+            }
+
+            for (int i = 0; i < packs.size() && pack == null; i++) {
+                if (!((Pack) packs.elementAt(i)).complete) {
+                    pack = (Pack) packs.elementAt(i);
+                }
+            }
+
+            if (pack == null) {
+                return;
+            }
+
+            current = pack;
+            next = 0;
+            pack.failed = false;
+        }
+
+        //#debug
+        L.i("Downloading offline pack", pack.search);
+
+        PicasaStorage.offlineCache.getAsync(
+                PicasaStorage.getFeedUrl(pack.getSearch()),
+                null,
+                Task.NORMAL_PRIORITY,
+                StaticWebCache.GET_WEB,
+                new FeedResult(pack),
+                StaticWebCache.DEFAULT_HTTP_GETTER_FACTORY,
+                PicasaStorage.OFFLINE_FEED_VIEW);
+    }
+
+    /**
+     * Sets the URLs of the pack from the feed.
+     */
+    private synchronized void setUrls(final Pack pack, final Vector items) {
+        pack.urls.removeAllElements();
+
+        for (int i = 0; i < items.size(); i++) {
+            final PicasaImageObject item = (PicasaImageObject) items.elementAt(i);
+
+            if (item.thumbUrl.length() > 0) {
+                pack.urls.addElement(item.thumbUrl);
+            }
+
+            if (item.imageUrl.length() > 0) {
+                pack.urls.addElement(item.imageUrl);
+            }
+        }
+    }
+
+    /**
+     * Copies or downloads the next image of the current pack which is not
+     * in the offline cache yet, or finishes the pack.
+     */
+    private void fetchNext(final Pack pack) {
+        String url = null;
+
+        synchronized (this) {
+            if (pack != current) {
+                return;
+            }
+
+            while (url == null && packs.contains(pack) && next < pack.urls.size()) {
+                url = (String) pack.urls.elementAt(next++);
+
+                try {
+                    if (PicasaStorage.offlineCache.getCache().containsKey(url)) {
+                        url = null;
+                    }
+                }
+                catch (Exception e) {
+                    //#debug
+                    L.e("Can not check offline cache", url, e);
+                }
+            }
+
+            if (url == null) {
+                finish(pack);
+                return;
+            }
+        }
+
+        // Plain bytes, the quota manager tracks the image cache by its views
+        PicasaStorage.imageCache.getAsync(
+                url,
+                null,
+                Task.IDLE_PRIORITY,
+                StaticWebCache.GET_LOCAL,
+                new CopyResult(pack, url),
+                StaticWebCache.DEFAULT_HTTP_GETTER_FACTORY,
+                PicasaStorage.offlineCache.getCache().getDefaultCacheView());
+    }
+
+    private void finish(final Pack pack) {
+        synchronized (this) {
+            current = null;
+
+            if (packs.contains(pack)) {
+                pack.complete = !pack.failed;
+                save();
+            }
+            else {
+                // Unpinned while downloading, nothing is written to it anymore
+                remove(pack);
+            }
+
+            //#debug
+            L.i("Offline pack finished", pack.search + " complete=" + pack.complete + " bytes=" + pack.bytes);
+
+            if (pack.failed) {
+                // Retried on the next launch, not again right away
+                return;
+            }
+        }
+
+        startNext();
+    }
+
+    private synchronized void fetched(final Pack pack, final byte[] bytes) {
+        pack.bytes += bytes.length;
+    }
+
+    private synchronized void failed(final Pack pack) {
+        pack.failed = true;
+    }
+
+    /**
+     * Removes the feed and the images of an unpinned pack from the offline
+     * cache in the background, except the images which are in another pack.
+     */
+    private synchronized void remove(final Pack pack) {
+        final Vector urls = new Vector();
+
+        urls.addElement(PicasaStorage.getFeedUrl(pack.getSearch()));
+
+        for (int i = 0; i < pack.urls.size(); i++) {
+            final Object url = pack.urls.elementAt(i);
+
+            if (!isInPack(url)) {
+                urls.addElement(url);
+            }
+        }
+
+        new Task(Task.IDLE_PRIORITY) {
+            protected Object exec(final Object in) {
+                remove(urls);
+                return in;
+            }
+        }.fork();
+    }
+
+    private static void remove(final Vector urls) {
+        for (int i = 0; i < urls.size(); i++) {
+            try {
+                PicasaStorage.offlineCache.getCache().remove(
+                        CryptoUtils.getInstance().toDigest((String) urls.elementAt(i)));
+            }
+            catch (Exception e) {
+                //#debug
+                L.e("Can not remove from offline cache", (String) urls.elementAt(i), e);
+            }
+        }
+    }
+
+    private void load() {
+        try {
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() == 0) {
+                    return;
+                }
+
+                final DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(recordStore.getRecord(RECORD_ID)));
+
+                if (in.readInt() != VERSION) {
+                    return;
+                }
+
+                final int count = in.readInt();
+
+                for (int i = 0; i < count; i++) {
+                    final Pack pack = new Pack(in.readUTF());
+                    final int urlCount;
+
+                    pack.complete = in.readBoolean();
+                    pack.bytes = in.readInt();
+                    urlCount = in.readInt();
+
+                    for (int j = 0; j < urlCount; j++) {
+                        pack.urls.addElement(in.readUTF());
+                    }
+
+                    packs.addElement(pack);
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not load offline packs", RECORD_STORE_NAME, e);
+        }
+    }
+
+    private void save() {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(VERSION);
+            out.writeInt(packs.size());
+
+            for (int i = 0; i < packs.size(); i++) {
+                final Pack pack = (Pack) packs.elementAt(i);
+
+                out.writeUTF(pack.search);
+                out.writeBoolean(pack.complete);
+                out.writeInt(pack.bytes);
+                out.writeInt(pack.urls.size());
+
+                for (int j = 0; j < pack.urls.size(); j++) {
+                    out.writeUTF((String) pack.urls.elementAt(j));
+                }
+            }
+
+            final byte[] record = bytes.toByteArray();
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() == 0) {
+                    recordStore.addRecord(record, 0, record.length);
+                }
+                else {
+                    recordStore.setRecord(RECORD_ID, record, 0, record.length);
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not save offline packs", RECORD_STORE_NAME, e);
+        }
+    }
+
+    /**
+     * A pinned feed and the URLs of its images.
+     */
+    private static final class Pack {
+        final String search; // FEATURED for the featured feed
+        final Vector urls = new Vector(); // Thumbnails and full images
+        boolean complete = false;
+        boolean failed = false; // In the current download
+        int bytes = 0; // Downloaded or copied
+
+        Pack(final String search) {
+            this.search = search;
+        }
+
+        /**
+         * @return The search term or null for the featured feed.
+         */
+        String getSearch() {
+            return search.equals(FEATURED) ? null : search;
+        }
+    }
+
+    /**
+     * Receives the feed of a pack.
+     */
+    private final class FeedResult extends Task {
+        private final Pack pack;
+
+        FeedResult(final Pack pack) {
+            super(Task.IDLE_PRIORITY);
+            this.pack = pack;
+        }
+
+        protected Object exec(final Object in) {
+            if (in instanceof Vector) {
+                setUrls(pack, (Vector) in);
+            }
+
+            fetchNext(pack);
+
+            return in;
+        }
+
+        protected void onCanceled(final String reason) {
+            //#debug
+            L.i("Offline pack feed not loaded", pack.search + " " + reason);
+            failed(pack);
+            finish(pack);
+        }
+    }
+
+    /**
+     * Copies an image from the image cache to the offline cache, or
+     * downloads it if it is not in the image cache.
+     */
+    private final class CopyResult extends Task {
+        private final Pack pack;
+        private final String url;
+
+        CopyResult(final Pack pack, final String url) {
+            super(Task.IDLE_PRIORITY);
+            this.pack = pack;
+            this.url = url;
+        }
+
+        protected Object exec(final Object in) {
+            try {
+                PicasaStorage.offlineCache.getCache().put(url, (byte[]) in,
+                        PicasaStorage.offlineCache.getCache().getDefaultCacheView(),
+                        null);
+                fetched(pack, (byte[]) in);
+            }
+            catch (Exception e) {
+                //#debug
+                L.e("Can not copy to offline cache", url, e);
+                failed(pack);
+            }
+
+            fetchNext(pack);
+
+            return in;
+        }
+
+        protected void onCanceled(final String reason) {
+            PicasaStorage.offlineCache.getAsync(url, Task.IDLE_PRIORITY,
+                    StaticWebCache.GET_ANYWHERE, new FetchResult(pack, url));
+        }
+    }
+
+    /**
+     * Counts a downloaded image and fetches the next one.
+     */
+    private final class FetchResult extends Task {
+        private final Pack pack;
+        private final String url;
+
+        FetchResult(final Pack pack, final String url) {
+            super(Task.IDLE_PRIORITY);
+            this.pack = pack;
+            this.url = url;
+        }
+
+        protected Object exec(final Object in) {
+            if (in instanceof byte[]) {
+                fetched(pack, (byte[]) in);
+            }
+
+            fetchNext(pack);
+
+            return in;
+        }
+
+        protected void onCanceled(final String reason) {
+            //#debug
+            L.i("Offline pack image not loaded", url + " " + reason);
+            failed(pack);
+            fetchNext(pack);
+        }
+    }
+}
@@ -9,18 +9,15 @@
 
 package com.nokia.example.picasaviewer.common;
 
-import java.util.Vector;
-import org.json.me.JSONArray;
-import org.json.me.JSONException;
-import org.json.me.JSONObject;
 import org.tantalum.PlatformUtils;
 import org.tantalum.Task;
 import org.tantalum.net.StaticWebCache;
 import org.tantalum.storage.CacheView;
 import org.tantalum.storage.FlashDatabaseException;
-import org.tantalum.storage.ImageCacheView;
 import org.tantalum.util.L;
 
+import com.nokia.example.picasaviewer.util.MemoryGovernor;
+
 /**
  * Class for accessing cached data like thumbnails, images and feeds. The class
  * gets the resource from the cache first, if it is not found there it retrieves
@@ -28,6 +25,14 @@ import org.tantalum.util.L;
  */
 public class PicasaStorage {
     public static final int NR_OF_FEATURED = 20;
+    private static final int[] THUMB_SIZES = {64, 128, 256}; // Supported cropped picasa thumb sizes
+    public static final int GET_STALE_WHILE_REVALIDATE = 3; // After the StaticWebCache get types
+    public static final String BASE_URL_PROPERTY = "Picasa-Base-URL";
+    public static final char IMAGE_CACHE_ID = '4';
+    public static final char FEED_CACHE_ID = '5';
+    public static final char OFFLINE_CACHE_ID = '9'; // Cleared last by Tantalum
+    private static final String DEFAULT_BASE_URL = "http://picasaweb.google.com";
+    private static String baseUrl = DEFAULT_BASE_URL;
     public static int imageSide;
     private static int screenWidth;
     private static String thumbSize;
@@ -36,8 +41,29 @@ public class PicasaStorage {
     private static String featURL;
     private static String searchURL;
     private static volatile PicasaImageObject selectedImage = null;
-    public static StaticWebCache feedCache;
-    public static StaticWebCache imageCache;
+    private static volatile boolean offlineMode = false;
+    static final CacheView OFFLINE_FEED_VIEW = new ImageObjectTypeHandler(false);
+    public static CoalescingCache feedCache;
+    public static CoalescingCache imageCache;
+    public static CoalescingCache offlineCache; // The offline packs
+
+    /**
+     * Sets the server of the feeds, e.g. a local feed simulator for testing.
+     * Must be called before init().
+     * @param url The base URL, e.g. "http://10.0.2.2:8080", or null for the
+     * Picasa web albums.
+     */
+    public static synchronized void setBaseUrl(final String url) {
+        if (url == null || url.trim().length() == 0) {
+            baseUrl = DEFAULT_BASE_URL;
+        }
+        else if (url.trim().endsWith("/")) {
+            baseUrl = url.trim().substring(0, url.trim().length() - 1);
+        }
+        else {
+            baseUrl = url.trim();
+        }
+    }
 
     /**
      * Initializes the storage.
@@ -46,9 +72,6 @@ public class PicasaStorage {
      */
     public static synchronized void init(final int width) {
         if (feedCache == null) {
-            final ImageCacheView imageCacheView =
-                PlatformUtils.getInstance().getImageCacheView();
-            
             screenWidth = width;
             
             if (screenWidth < 256) {
@@ -60,26 +83,59 @@ public class PicasaStorage {
                 imageSize = 720; // Picasa size for "fullsize" images
             }
             
-            imageCacheView.setMaxSize(width, width);
-            
+            // The thumbnails are kept as bytes, they are decoded in the decode
+            // pool instead of the network worker which downloaded them
             try {
-                imageCache = StaticWebCache.getWebCache(
-                        '4', 
+                imageCache = new CoalescingCache(IMAGE_CACHE_ID, StaticWebCache.getWebCache(
+                        IMAGE_CACHE_ID, 
                         PlatformUtils.PHONE_DATABASE_CACHE, 
-                        imageCacheView, 
-                        new StaticWebCache.HttpTaskFactory(), null);
+                        new BytesTypeHandler(true), 
+                        new StaticWebCache.HttpTaskFactory(), null));
+                QuotaManager.getInstance().register(IMAGE_CACHE_ID,
+                        imageCache.getCache());
+                
+                // The thumbnails of a grid share pipelined connections
+                imageCache.setPipeline(HttpPipeline.getInstance());
             } catch (FlashDatabaseException e) {
                 L.e("Could not initialize imageCache.", "", e);
             }
             
             try {
-                feedCache = StaticWebCache.getWebCache(
-                        '5', 
-                        (CacheView) new ImageObjectTypeHandler());
+                feedCache = new CoalescingCache(FEED_CACHE_ID, StaticWebCache.getWebCache(
+                        FEED_CACHE_ID, 
+                        (CacheView) new ImageObjectTypeHandler()));
+                QuotaManager.getInstance().register(FEED_CACHE_ID,
+                        feedCache.getCache());
+                
+                // The parsed feeds not shown are parsed again from flash
+                MemoryGovernor.getInstance().register(new MemoryGovernor.Cache() {
+                    public int getFootprint() {
+                        return ImageObjectTypeHandler.getParsedBytes();
+                    }
+                    
+                    public void shrink(final int tier) {
+                        if (tier == MemoryGovernor.TIER_OFF_SCREEN) {
+                            feedCache.clearHeap();
+                            ImageObjectTypeHandler.clearParsed();
+                        }
+                    }
+                });
             } catch (FlashDatabaseException e) {
                 L.e("Could not initialize feedCache.", "", e);
             }
             
+            // Not tracked by the quota manager, the packs are never evicted
+            try {
+                offlineCache = new CoalescingCache(OFFLINE_CACHE_ID, StaticWebCache.getWebCache(
+                        OFFLINE_CACHE_ID, 
+                        PlatformUtils.PHONE_DATABASE_CACHE, 
+                        new BytesTypeHandler(false), 
+                        new StaticWebCache.HttpTaskFactory(), null));
+                offlineCache.setPipeline(HttpPipeline.getInstance());
+            } catch (FlashDatabaseException e) {
+                L.e("Could not initialize offlineCache.", "", e);
+            }
+            
             thumbSize = 
                     imageSide + 
                     "c"; // c is for cropped, ensures image proportions
@@ -94,11 +150,13 @@ public class PicasaStorage {
                     imageSize;
             
             featURL = 
-                    "http://picasaweb.google.com/data/feed/base/featured" + 
+                    baseUrl + 
+                    "/data/feed/base/featured" + 
                     urlOptions;
             
             searchURL = 
-                    "http://picasaweb.google.com/data/feed/base/all" + 
+                    baseUrl + 
+                    "/data/feed/base/all" + 
                     urlOptions + 
                     "&q=";
         }
@@ -108,6 +166,49 @@ public class PicasaStorage {
         return screenWidth;
     }
 
+    /**
+     * Returns the URL of the thumbnail best suited for the given tile size.
+     * The feed contains thumbnails of size imageSide and the size is encoded
+     * in the path of the thumbnail URL (e.g. /s128-c/), so the URL of another
+     * supported size can be derived from it.
+     * @param thumbUrl The thumbnail URL from the feed.
+     * @param side The side of the tile in pixels.
+     * @return The URL of the thumbnail of suitable size.
+     */
+    public static String getThumbUrl(final String thumbUrl, final int side) {
+        int size = THUMB_SIZES[THUMB_SIZES.length - 1];
+        
+        for (int i = 0; i < THUMB_SIZES.length; i++) {
+            if (THUMB_SIZES[i] >= side) {
+                size = THUMB_SIZES[i];
+                break;
+            }
+        }
+        
+        if (size == imageSide || offlineMode) {
+            // The offline packs have the thumbnails of the feed size only
+            return thumbUrl;
+        }
+        
+        final String feedSegment = "/s" + imageSide + "-c/";
+        final int index = thumbUrl.indexOf(feedSegment);
+        
+        if (index < 0) {
+            return thumbUrl;
+        }
+        
+        return thumbUrl.substring(0, index) + "/s" + size + "-c/"
+                + thumbUrl.substring(index + feedSegment.length());
+    }
+
+    /**
+     * @param search The search term or null for the featured feed.
+     * @return The URL of the feed, also the key of the feed in the caches.
+     */
+    public static String getFeedUrl(final String search) {
+        return search != null ? searchURL + search : featURL;
+    }
+
     public static PicasaImageObject getSelectedImage() {
         return selectedImage;
     }
@@ -117,7 +218,58 @@ public class PicasaStorage {
     }
 
     /**
-     * Tell Tantalum to fetch the ImageObjects
+     * In the offline mode the feeds and the images are read only from the
+     * offline packs and the network is never used.
+     * @param offline True for the offline mode.
+     */
+    public static void setOfflineMode(final boolean offline) {
+        offlineMode = offline;
+    }
+
+    public static boolean isOfflineMode() {
+        return offlineMode;
+    }
+
+    /**
+     * Gets the bytes of an image, from the offline packs only in the offline
+     * mode.
+     * @param url The URL of the image.
+     * @param priority The priority of the request.
+     * @param callback The callback for the bytes.
+     * @return The callback.
+     */
+    public static Task getImageBytes(final String url,
+                                     final int priority,
+                                     final Task callback)
+    {
+        if (offlineMode) {
+            return offlineCache.getAsync(url, priority,
+                    StaticWebCache.GET_LOCAL, callback);
+        }
+        
+        return imageCache.getAsync(url, priority, StaticWebCache.GET_ANYWHERE,
+                callback);
+    }
+
+    /**
+     * Cancels a getImageBytes() request. The download is canceled too unless
+     * another request waits for the same image.
+     * @param callback The callback given to getImageBytes().
+     * @param reason The reason of the cancellation.
+     */
+    public static void cancelImageBytes(final Task callback,
+                                        final String reason)
+    {
+        if (!imageCache.cancel(callback, reason)) {
+            offlineCache.cancel(callback, reason);
+        }
+    }
+
+    /**
+     * Tell Tantalum to fetch the ImageObjects. A GET_WEB request is sent as
+     * a conditional GET, so an unchanged feed is not downloaded again. In the
+     * offline mode the feed is read from the offline packs whatever the get
+     * type.
      *
      * @param callback - RunnableResult to be ran in the UI thread
      * @param fromWeb - True to force fetch from web
@@ -127,77 +279,65 @@ public class PicasaStorage {
                                        final int getType,
                                        final Task callback)
     {
-        final String url = search != null ? searchURL + search : featURL;
+        final String url = getFeedUrl(search);
+        
+        if (offlineMode) {
+            return offlineCache.getAsync(url, null, getPriority,
+                    StaticWebCache.GET_LOCAL, callback,
+                    StaticWebCache.DEFAULT_HTTP_GETTER_FACTORY, OFFLINE_FEED_VIEW);
+        }
+        
+        if (getType == StaticWebCache.GET_WEB) {
+            return feedCache.revalidateAsync(url, getPriority, callback);
+        }
+        
         return feedCache.getAsync(url, getPriority, getType, callback);
     }
 
     /**
-     * Class for converting the JSON response in to a Vector of
-     * PicasaImageObject-objects. The vector is saved by Tantalum.
+     * Stale-while-revalidate: the cached feed is given to the first callback
+     * at once and the feed is revalidated from the web in the background for
+     * the second callback. The first callback is canceled if the feed is not
+     * cached.
+     *
+     * @param cachedCallback - Receives the cached feed
+     * @param freshCallback - Receives the feed from the web
+     * @return The task of the fresh feed
      */
-    private static class ImageObjectTypeHandler implements CacheView {
-        public Object convertToUseForm(Object key, byte[] bytes) {
-            JSONObject responseJson;
-            
-            try {
-                responseJson = new JSONObject(new String(bytes));
-            }
-            catch (JSONException ex) {
-                //#debug
-                L.e("bytes are not a JSON object", featURL, ex);
-                return null;
-            }
-            
-            JSONArray entries = new JSONArray();
-            final Vector vector = new Vector();
-            
-            try {
-                final JSONObject feed = 
-                        ((JSONObject) responseJson).getJSONObject("feed");
-                entries = feed.getJSONArray("entry");
-            }
-            catch (JSONException e) {
-                vector.addElement(
-                        new PicasaImageObject("No Results", "", "", ""));
-
-                //#debug
-                L.e("JSON no result", featURL, e);
-            }
-
-            for (int i = 0; i < entries.length(); i++) {
-                try {
-                    final JSONObject jsonObject = 
-                            entries.getJSONObject(i);
-                    final String title = 
-                            jsonObject.getJSONObject("title").getString("$t");
-                    final String author = 
-                            jsonObject.getJSONArray("author").getJSONObject(0).getJSONObject("name").getString("$t");
-                    final String thumbUrl = 
-                            jsonObject.getJSONObject("media$group").getJSONArray("media$thumbnail").getJSONObject(0).getString("url");
-                    final String imageUrl = 
-                            jsonObject.getJSONObject("media$group").getJSONArray("media$content").getJSONObject(0).getString("url");
-
-                    //#mdebug
-                    L.i("JSON parsed title: ", title);
-                    L.i("JSON parsed author: ", author);
-                    L.i("JSON parsed thumb url: ", thumbUrl);
-                    L.i("JSON parsed image url: ", imageUrl);
-                    //#enddebug
-
-                    vector.addElement(
-                            new PicasaImageObject(title, author, thumbUrl, imageUrl));
-                }
-                catch (JSONException e) {
-                    //#debug
-                    L.e("JSON item parse error", featURL, e);
-                }
-            }
+    public static Task getImageObjects(final String search,
+                                       final int getPriority,
+                                       final Task cachedCallback,
+                                       final Task freshCallback)
+    {
+        final String url = getFeedUrl(search);
+        
+        feedCache.getAsync(url, getPriority, StaticWebCache.GET_LOCAL,
+                cachedCallback);
+        
+        return feedCache.revalidateAsync(url, getPriority, freshCallback);
+    }
 
-            if (entries.length() == 0) {
-                vector.addElement(new PicasaImageObject("No Results", "", "", ""));
+    /**
+     * Class for keeping the cached bytes as is.
+     */
+    static class BytesTypeHandler implements CacheView {
+        private final boolean recorded;
+        
+        /**
+         * @param recorded True to record the bytes as a thumbnail of the
+         * image cache in the quota manager.
+         */
+        BytesTypeHandler(final boolean recorded) {
+            this.recorded = recorded;
+        }
+        
+        public Object convertToUseForm(Object key, byte[] bytes) {
+            if (recorded) {
+                QuotaManager.getInstance().record(IMAGE_CACHE_ID,
+                        (String) key, bytes.length, QuotaManager.TIER_THUMBNAIL);
             }
             
-            return vector;
+            return bytes;
         }
     }
 }
@@ -0,0 +1,717 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import javax.microedition.midlet.MIDlet;
+import javax.microedition.rms.RecordStore;
+
+import org.tantalum.Task;
+import org.tantalum.storage.StaticCache;
+import org.tantalum.util.CryptoUtils;
+import org.tantalum.util.L;
+
+/**
+ * Keeps the flash caches within a quota. The size, the last access and the
+ * number of hits of each cache entry are tracked, and when the entries take
+ * more than the quota, the cheapest entries are evicted in idle time until
+ * LOW_WATER_PERCENT of the quota is in use.
+ *
+ * The entries are evicted a tier at a time: full images first, then
+ * thumbnails and feeds last. Within a tier the order is given by the policy:
+ *
+ * - POLICY_LRU: the least recently used first,
+ * - POLICY_LFU: the least frequently used first,
+ * - POLICY_GDSF: Greedy-Dual-Size-Frequency, the entries with the fewest
+ *   hits per byte first, aged by the priority of the last evicted entry.
+ *
+ * The quota (in kilobytes) and the policy can be set with JAD properties.
+ * The index of the entries is kept in a record store of its own. Entries
+ * which were cached before the index existed are not tracked, and entries
+ * which Tantalum has removed by itself are dropped from the index when the
+ * cache is registered.
+ *
+ * The entries are sorted for eviction outside the lock, so that touch() and
+ * record(), which are called from the UI thread, are not blocked by a
+ * compaction.
+ */
+public final class QuotaManager {
+    // Constants
+    public static final String QUOTA_PROPERTY = "Picasa-Cache-Quota";
+    public static final String POLICY_PROPERTY = "Picasa-Cache-Policy";
+    public static final int TIER_FULL_IMAGE = 0;
+    public static final int TIER_THUMBNAIL = 1;
+    public static final int TIER_FEED = 2;
+    public static final int POLICY_LRU = 0;
+    public static final int POLICY_LFU = 1;
+    public static final int POLICY_GDSF = 2;
+    private static final String[] POLICY_NAMES = {"LRU", "LFU", "GDSF"};
+    private static final int TIER_COUNT = 3;
+    private static final int DEFAULT_QUOTA = 2048; // KB
+    private static final int LOW_WATER_PERCENT = 90; // Of the quota, after eviction
+    private static final long GDSF_SCALE = 1 << 24; // Priority per hit per byte
+    private static final String RECORD_STORE_NAME = "PicasaQuota";
+    private static final int RECORD_ID = 1;
+    private static final int VERSION = 1;
+
+    // Members
+    private static QuotaManager instance = null;
+    private final Vector caches = new Vector(); // TrackedCache
+    private int quota; // Bytes
+    private int policy;
+    private long inflation = 0; // GDSF priority of the last evicted entry
+    private int usedBytes = 0;
+    private int evictedEntries = 0;
+    private int evictedBytes = 0;
+    private boolean compactionScheduled = false;
+
+    /**
+     * @return The quota manager instance.
+     */
+    public static synchronized QuotaManager getInstance() {
+        if (instance == null) {
+            instance = new QuotaManager(DEFAULT_QUOTA * 1024, POLICY_GDSF);
+        }
+
+        return instance;
+    }
+
+    QuotaManager(final int quota, final int policy) {
+        this.quota = quota;
+        this.policy = policy;
+    }
+
+    /**
+     * Reads the quota and the policy from the JAD properties and loads the
+     * index. Call before the caches are registered.
+     * @param midlet The MIDlet.
+     */
+    public synchronized void init(final MIDlet midlet) {
+        final String quotaValue = midlet.getAppProperty(QUOTA_PROPERTY);
+        final String policyValue = midlet.getAppProperty(POLICY_PROPERTY);
+
+        if (quotaValue != null) {
+            try {
+                quota = Math.max(1, Integer.parseInt(quotaValue.trim())) * 1024;
+            }
+            catch (NumberFormatException e) {
+            }
+        }
+
+        for (int i = 0; policyValue != null && i < POLICY_NAMES.length; i++) {
+            if (POLICY_NAMES[i].equalsIgnoreCase(policyValue.trim())) {
+                policy = i;
+            }
+        }
+
+        load();
+    }
+
+    /**
+     * Starts tracking a cache. In idle time, the entries no longer in the
+     * cache are dropped from the index, and the entries of the cache are
+     * evicted if the caches are over the quota.
+     * @param id The priority character of the cache.
+     * @param cache The cache.
+     */
+    public void register(final char id, final StaticCache cache) {
+        synchronized (this) {
+            getTrackedCache(id).cache = cache;
+        }
+
+        new Task(Task.IDLE_PRIORITY) {
+            protected Object exec(final Object in) {
+                reconcile(id);
+                scheduleCompaction();
+                return in;
+            }
+        }.fork();
+    }
+
+    /**
+     * Drops the entries which are no longer in the registered cache from
+     * the index, e.g. the ones Tantalum has removed to make space.
+     * @param id The priority character of the cache.
+     * @return The number of entries dropped.
+     */
+    int reconcile(final char id) {
+        final StaticCache cache;
+        final Entry[] entries;
+
+        synchronized (this) {
+            final TrackedCache trackedCache = getTrackedCache(id);
+            final Enumeration e = trackedCache.entries.elements();
+
+            cache = trackedCache.cache;
+            entries = new Entry[trackedCache.entries.size()];
+
+            for (int i = 0; e.hasMoreElements(); i++) {
+                entries[i] = (Entry) e.nextElement();
+            }
+        }
+
+        if (cache == null) {
+            return 0;
+        }
+
+        int dropped = 0;
+
+        for (int i = 0; i < entries.length; i++) {
+            if (cache.containsDigest(entries[i].digest)) {
+                continue;
+            }
+
+            synchronized (this) {
+                final Long digest = new Long(entries[i].digest);
+                final Hashtable trackedEntries = getTrackedCache(id).entries;
+
+                if (trackedEntries.get(digest) == entries[i]) {
+                    trackedEntries.remove(digest);
+                    usedBytes -= entries[i].size;
+                    dropped++;
+                }
+            }
+        }
+
+        if (dropped > 0) {
+            //#debug
+            L.i("Cache entries dropped from the quota index", "count=" + dropped + " " + toString());
+            save();
+        }
+
+        return dropped;
+    }
+
+    /**
+     * Counts a hit of an entry, e.g. a get from the cache. Does nothing if
+     * the entry is not known yet, in which case record() adds it once the
+     * bytes are in.
+     * @param id The priority character of the cache.
+     * @param key The key of the entry.
+     */
+    public synchronized void touch(final char id, final String key) {
+        final Entry entry =
+                (Entry) getTrackedCache(id).entries.get(toDigest(key));
+
+        if (entry != null) {
+            entry.hits++;
+            access(entry);
+        }
+    }
+
+    /**
+     * Records the size and the tier of an entry which has been put to or
+     * read from the flash, e.g. when its bytes are converted to the use
+     * form. A new entry counts as one hit.
+     * @param id The priority character of the cache.
+     * @param key The key of the entry.
+     * @param size The number of bytes.
+     * @param tier TIER_FULL_IMAGE, TIER_THUMBNAIL or TIER_FEED.
+     */
+    public void record(final char id,
+                       final String key,
+                       final int size,
+                       final int tier)
+    {
+        synchronized (this) {
+            final TrackedCache trackedCache = getTrackedCache(id);
+            final Long digest = toDigest(key);
+            Entry entry = (Entry) trackedCache.entries.get(digest);
+
+            if (entry == null) {
+                entry = new Entry(digest.longValue());
+                entry.hits = 1;
+                trackedCache.entries.put(digest, entry);
+            }
+
+            usedBytes += size - entry.size;
+            entry.size = size;
+            entry.tier = tier;
+            access(entry);
+
+            if (usedBytes <= quota) {
+                return;
+            }
+        }
+
+        scheduleCompaction();
+    }
+
+    /**
+     * Evicts entries until LOW_WATER_PERCENT of the quota is in use.
+     * Called in idle time, use scheduleCompaction() instead.
+     */
+    public void compact() {
+        final Candidate[] candidates;
+        final int candidatePolicy;
+
+        synchronized (this) {
+            compactionScheduled = false;
+
+            if (usedBytes <= getTarget()) {
+                return;
+            }
+
+            candidates = getCandidates();
+            candidatePolicy = policy;
+        }
+
+        // Sorted outside the lock, the entries are touched from the UI thread
+        sort(candidates, candidatePolicy);
+
+        final Vector victims = new Vector();
+        final Vector victimCaches = new Vector();
+
+        synchronized (this) {
+            final int target = getTarget();
+
+            for (int i = 0; i < candidates.length && usedBytes > target; i++) {
+                final Candidate candidate = candidates[i];
+                final Entry victim = candidate.entry;
+                final Long digest = new Long(victim.digest);
+
+                if (candidate.trackedCache.entries.get(digest) != victim) {
+                    // Removed or replaced since the snapshot
+                    continue;
+                }
+
+                candidate.trackedCache.entries.remove(digest);
+                victims.addElement(victim);
+                victimCaches.addElement(candidate.trackedCache.cache);
+                usedBytes -= victim.size;
+                evictedEntries++;
+                evictedBytes += victim.size;
+
+                if (victim.priority > inflation) {
+                    inflation = victim.priority;
+                }
+            }
+        }
+
+        // Outside the lock, the caches may call record() while removing
+        for (int i = 0; i < victims.size(); i++) {
+            final Entry victim = (Entry) victims.elementAt(i);
+
+            ((StaticCache) victimCaches.elementAt(i)).remove(victim.digest);
+        }
+
+        if (!victims.isEmpty()) {
+            //#debug
+            L.i("Cache entries evicted", "count=" + victims.size() + " " + toString());
+            save();
+        }
+    }
+
+    /**
+     * Compacts the caches in idle time if they are over the quota.
+     */
+    public void scheduleCompaction() {
+        synchronized (this) {
+            if (compactionScheduled || usedBytes <= quota) {
+                return;
+            }
+
+            compactionScheduled = true;
+        }
+
+        new Task(Task.IDLE_PRIORITY) {
+            protected Object exec(final Object in) {
+                compact();
+                return in;
+            }
+        }.fork();
+    }
+
+    /**
+     * Stores the index in the background. The task is run even if the
+     * application is shutting down.
+     */
+    public void saveAsync() {
+        new Task(Task.IDLE_PRIORITY) {
+            protected Object exec(final Object in) {
+                save();
+                return in;
+            }
+        }.setShutdownBehaviour(Task.EXECUTE_NORMALLY_ON_SHUTDOWN).fork();
+    }
+
+    /**
+     * @return The quota in bytes.
+     */
+    public synchronized int getQuota() {
+        return quota;
+    }
+
+    /**
+     * @return POLICY_LRU, POLICY_LFU or POLICY_GDSF.
+     */
+    public synchronized int getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The number of bytes taken by the tracked entries.
+     */
+    public synchronized int getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @param tier TIER_FULL_IMAGE, TIER_THUMBNAIL or TIER_FEED.
+     * @return The number of bytes taken by the tracked entries of the tier.
+     */
+    public synchronized int getUsedBytes(final int tier) {
+        int bytes = 0;
+
+        for (int i = 0; i < caches.size(); i++) {
+            final Enumeration entries =
+                    ((TrackedCache) caches.elementAt(i)).entries.elements();
+
+            while (entries.hasMoreElements()) {
+                final Entry entry = (Entry) entries.nextElement();
+
+                if (entry.tier == tier) {
+                    bytes += entry.size;
+                }
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return The number of tracked entries.
+     */
+    public synchronized int getEntryCount() {
+        int count = 0;
+
+        for (int i = 0; i < caches.size(); i++) {
+            count += ((TrackedCache) caches.elementAt(i)).entries.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return The number of entries evicted since the start.
+     */
+    public synchronized int getEvictedEntries() {
+        return evictedEntries;
+    }
+
+    /**
+     * @return The number of bytes evicted since the start.
+     */
+    public synchronized int getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * @return The quota statistics, for logging.
+     */
+    public synchronized String toString() {
+        return "policy=" + POLICY_NAMES[policy]
+                + " quota=" + quota
+                + " used=" + usedBytes
+                + " entries=" + getEntryCount()
+                + " evicted=" + evictedEntries + "/" + evictedBytes;
+    }
+
+    /**
+     * Updates the last access and the GDSF priority of the entry.
+     */
+    private void access(final Entry entry) {
+        entry.lastAccess = System.currentTimeMillis();
+        entry.priority = inflation
+                + entry.hits * GDSF_SCALE / Math.max(1, entry.size);
+    }
+
+    private int getTarget() {
+        return (int) ((long) quota * LOW_WATER_PERCENT / 100);
+    }
+
+    /**
+     * @return A snapshot of the entries of the registered caches.
+     */
+    private Candidate[] getCandidates() {
+        int count = 0;
+
+        for (int i = 0; i < caches.size(); i++) {
+            final TrackedCache trackedCache = (TrackedCache) caches.elementAt(i);
+
+            if (trackedCache.cache != null) {
+                count += trackedCache.entries.size();
+            }
+        }
+
+        final Candidate[] candidates = new Candidate[count];
+
+        count = 0;
+
+        for (int i = 0; i < caches.size(); i++) {
+            final TrackedCache trackedCache = (TrackedCache) caches.elementAt(i);
+
+            if (trackedCache.cache == null) {
+                continue;
+            }
+
+            final Enumeration entries = trackedCache.entries.elements();
+
+            while (entries.hasMoreElements()) {
+                candidates[count++] = new Candidate(
+                        (Entry) entries.nextElement(), trackedCache);
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Sorts the candidates in the eviction order with a merge sort, which
+     * takes O(n log n) whatever the order of the index.
+     */
+    private static void sort(final Candidate[] candidates, final int policy) {
+        final Candidate[] buffer = new Candidate[candidates.length];
+
+        for (int width = 1; width < candidates.length; width *= 2) {
+            for (int low = 0; low < candidates.length; low += 2 * width) {
+                final int middle = Math.min(low + width, candidates.length);
+                final int high = Math.min(low + 2 * width, candidates.length);
+                int left = low;
+                int right = middle;
+
+                for (int i = low; i < high; i++) {
+                    if (left < middle && (right >= high
+                            || !isBefore(candidates[right], candidates[left], policy)))
+                    {
+                        buffer[i] = candidates[left++];
+                    }
+                    else {
+                        buffer[i] = candidates[right++];
+                    }
+                }
+            }
+
+            System.arraycopy(buffer, 0, candidates, 0, candidates.length);
+        }
+    }
+
+    /**
+     * @return True if the first candidate is to be evicted before the
+     * second.
+     */
+    private static boolean isBefore(final Candidate first,
+                                    final Candidate second,
+                                    final int policy)
+    {
+        if (first.tier != second.tier) {
+            return first.tier < second.tier;
+        }
+
+        if (policy == POLICY_LFU && first.hits != second.hits) {
+            return first.hits < second.hits;
+        }
+
+        if (policy == POLICY_GDSF && first.priority != second.priority) {
+            return first.priority < second.priority;
+        }
+
+        return first.lastAccess < second.lastAccess;
+    }
+
+    private TrackedCache getTrackedCache(final char id) {
+        for (int i = 0; i < caches.size(); i++) {
+            final TrackedCache trackedCache = (TrackedCache) caches.elementAt(i);
+
+            if (trackedCache.id == id) {
+                return trackedCache;
+            }
+        }
+
+        final TrackedCache trackedCache = new TrackedCache(id);
+
+        caches.addElement(trackedCache);
+
+        return trackedCache;
+    }
+
+    private static Long toDigest(final String key) {
+        try {
+            return new Long(CryptoUtils.getInstance().toDigest(key));
+        }
+        catch (Exception e) {
+            // Not expected, MD5 and UTF-8 are always supported
+            return new Long(key.hashCode());
+        }
+    }
+
+    private synchronized void load() {
+        try {
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() > 0) {
+                    final DataInputStream in = new DataInputStream(
+                            new ByteArrayInputStream(
+                                recordStore.getRecord(RECORD_ID)));
+
+                    if (in.readInt() == VERSION) {
+                        inflation = in.readLong();
+
+                        final int cacheCount = in.readInt();
+
+                        for (int i = 0; i < cacheCount; i++) {
+                            final TrackedCache trackedCache =
+                                    getTrackedCache(in.readChar());
+                            final int count = in.readInt();
+
+                            for (int j = 0; j < count; j++) {
+                                final Entry entry = new Entry(in.readLong());
+
+                                entry.size = in.readInt();
+                                entry.lastAccess = in.readLong();
+                                entry.hits = in.readInt();
+                                entry.priority = in.readLong();
+                                entry.tier = in.readByte();
+                                trackedCache.entries.put(
+                                        new Long(entry.digest), entry);
+                                usedBytes += entry.size;
+                            }
+                        }
+                    }
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not load cache quota index", RECORD_STORE_NAME, e);
+            caches.removeAllElements();
+            usedBytes = 0;
+        }
+    }
+
+    private void save() {
+        try {
+            final byte[] record;
+
+            synchronized (this) {
+                final ByteArrayOutputStream bytes =
+                        new ByteArrayOutputStream(64 + 40 * getEntryCount());
+                final DataOutputStream out = new DataOutputStream(bytes);
+
+                out.writeInt(VERSION);
+                out.writeLong(inflation);
+                out.writeInt(caches.size());
+
+                for (int i = 0; i < caches.size(); i++) {
+                    final TrackedCache trackedCache =
+                            (TrackedCache) caches.elementAt(i);
+                    final Enumeration entries = trackedCache.entries.elements();
+
+                    out.writeChar(trackedCache.id);
+                    out.writeInt(trackedCache.entries.size());
+
+                    while (entries.hasMoreElements()) {
+                        final Entry entry = (Entry) entries.nextElement();
+
+                        out.writeLong(entry.digest);
+                        out.writeInt(entry.size);
+                        out.writeLong(entry.lastAccess);
+                        out.writeInt(entry.hits);
+                        out.writeLong(entry.priority);
+                        out.writeByte(entry.tier);
+                    }
+                }
+
+                record = bytes.toByteArray();
+            }
+
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() == 0) {
+                    recordStore.addRecord(record, 0, record.length);
+                }
+                else {
+                    recordStore.setRecord(RECORD_ID, record, 0, record.length);
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not save cache quota index", RECORD_STORE_NAME, e);
+        }
+    }
+
+    /**
+     * The index of a cache.
+     */
+    private static final class TrackedCache {
+        final char id;
+        final Hashtable entries = new Hashtable(); // Long digest -> Entry
+        StaticCache cache = null; // Null until registered
+
+        TrackedCache(final char id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * An entry to evict, with the order of the entry copied at the snapshot
+     * so that touch() does not change it while sorting.
+     */
+    private static final class Candidate {
+        final Entry entry;
+        final TrackedCache trackedCache;
+        final int tier;
+        final int hits;
+        final long priority;
+        final long lastAccess;
+
+        Candidate(final Entry entry, final TrackedCache trackedCache) {
+            this.entry = entry;
+            this.trackedCache = trackedCache;
+            tier = entry.tier;
+            hits = entry.hits;
+            priority = entry.priority;
+            lastAccess = entry.lastAccess;
+        }
+    }
+
+    /**
+     * A tracked cache entry.
+     */
+    private static final class Entry {
+        final long digest;
+        int size = 0;
+        long lastAccess = 0;
+        int hits = 0;
+        long priority = 0; // GDSF
+        int tier = TIER_THUMBNAIL;
+
+        Entry(final long digest) {
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import javax.microedition.lcdui.Image;
+import javax.microedition.rms.RecordStore;
+
+import org.tantalum.Task;
+import org.tantalum.util.L;
+
+import com.nokia.example.picasaviewer.util.PngEncoder;
+
+/**
+ * Persists a snapshot of the featured grid: a PNG image of the viewport and
+ * the scroll position and the number of columns of the grid. The snapshot
+ * is painted at startup until the real thumbnails have been loaded, so the
+ * perceived startup is a single image decode.
+ */
+public final class SnapshotStore {
+    // Constants
+    private static final String RECORD_STORE_NAME = "PicasaSnapshot";
+    private static final int INFO_RECORD_ID = 1;
+    private static final int IMAGE_RECORD_ID = 2;
+    private static final int VERSION = 1;
+    private static final int DROP_BITS = 2; // Low colour bits dropped for size
+
+    /**
+     * A loaded snapshot.
+     */
+    public static final class Snapshot {
+        public final Image image;
+        public final int scrollY;
+        public final int columns;
+
+        Snapshot(final Image image, final int scrollY, final int columns) {
+            this.image = image;
+            this.scrollY = scrollY;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Encodes and stores the snapshot in the background. The task is run
+     * even if the application is shutting down.
+     * @param argb The pixels of the viewport.
+     * @param width The width of the viewport.
+     * @param height The height of the viewport.
+     * @param scrollY The scroll position of the grid.
+     * @param columns The number of columns of the grid.
+     */
+    public static void saveAsync(final int[] argb,
+                                 final int width,
+                                 final int height,
+                                 final int scrollY,
+                                 final int columns)
+    {
+        new Task(Task.IDLE_PRIORITY) {
+            protected Object exec(final Object in) {
+                save(argb, width, height, scrollY, columns);
+                return in;
+            }
+        }.setShutdownBehaviour(Task.EXECUTE_NORMALLY_ON_SHUTDOWN).fork();
+    }
+
+    /**
+     * Loads the snapshot if it was taken with the same viewport size.
+     * @param width The width of the viewport.
+     * @param height The height of the viewport.
+     * @return The snapshot or null if there is no usable snapshot.
+     */
+    public static Snapshot load(final int width, final int height) {
+        Snapshot snapshot = null;
+
+        try {
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() >= IMAGE_RECORD_ID) {
+                    final DataInputStream in = new DataInputStream(
+                            new ByteArrayInputStream(
+                                recordStore.getRecord(INFO_RECORD_ID)));
+
+                    if (in.readInt() == VERSION
+                        && in.readInt() == width
+                        && in.readInt() == height)
+                    {
+                        final int scrollY = in.readInt();
+                        final int columns = in.readInt();
+                        final byte[] png = recordStore.getRecord(IMAGE_RECORD_ID);
+
+                        snapshot = new Snapshot(
+                                Image.createImage(png, 0, png.length),
+                                scrollY, columns);
+                    }
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not load snapshot", RECORD_STORE_NAME, e);
+        }
+
+        return snapshot;
+    }
+
+    private static void save(final int[] argb,
+                             final int width,
+                             final int height,
+                             final int scrollY,
+                             final int columns)
+    {
+        try {
+            final byte[] png = PngEncoder.encode(argb, width, height, DROP_BITS);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(20);
+            final DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(scrollY);
+            out.writeInt(columns);
+
+            final byte[] info = bytes.toByteArray();
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() == 0) {
+                    recordStore.addRecord(info, 0, info.length);
+                    recordStore.addRecord(png, 0, png.length);
+                }
+                else {
+                    recordStore.setRecord(INFO_RECORD_ID, info, 0, info.length);
+                    recordStore.setRecord(IMAGE_RECORD_ID, png, 0, png.length);
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+
+            //#debug
+            L.i("Snapshot saved", "bytes=" + png.length);
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not save snapshot", RECORD_STORE_NAME, e);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+
+import org.tantalum.Task;
+import org.tantalum.net.StaticWebCache;
+import org.tantalum.util.L;
+
+import com.nokia.example.picasaviewer.util.ImageUtils;
+
+/**
+ * The thumbnails of a feed page stored together. The atlas is stored as a
+ * single record of the image cache, keyed by the URL of the feed, so showing
+ * a cached feed again takes one flash read instead of one per thumbnail.
+ *
+ * The record holds the tile size and an index of the thumbnail URLs and the
+ * lengths of their JPEGs, followed by the JPEGs as they were downloaded, so
+ * the atlas takes no more flash than the thumbnails it replaces. The tiles
+ * are decoded when the atlas is loaded.
+ */
+public final class ThumbnailAtlas {
+    // Constants
+    public static final int MAX_TILES = PicasaStorage.NR_OF_FEATURED; // One feed page
+    private static final int VERSION = 2;
+
+    // Members
+    private final Image[] tiles;
+    private final int side;
+    private final Hashtable indices; // Thumbnail URL -> Integer, tile index
+
+    private ThumbnailAtlas(final Image[] tiles,
+                           final int side,
+                           final Hashtable indices)
+    {
+        this.tiles = tiles;
+        this.side = side;
+        this.indices = indices;
+    }
+
+    /**
+     * Loads the atlas of the feed from the flash cache. The callback
+     * receives the atlas, or is canceled if there is no usable atlas of
+     * the feed.
+     * @param feedUrl The URL of the feed.
+     * @param callback The callback for the atlas, e.g. a UI_PRIORITY task.
+     */
+    public static void loadAsync(final String feedUrl, final Task callback) {
+        final Task decodeTask = new Task() {
+            protected Object exec(final Object in) {
+                final ThumbnailAtlas atlas = decode((byte[]) in);
+
+                if (atlas == null) {
+                    cancel(false, "Unusable thumbnail atlas");
+                }
+
+                return atlas;
+            }
+        };
+
+        decodeTask.chain(callback);
+        PicasaStorage.imageCache.getAsync(
+                feedUrl,
+                Task.NORMAL_PRIORITY,
+                StaticWebCache.GET_LOCAL,
+                decodeTask);
+    }
+
+    /**
+     * @return The side of the tiles in pixels.
+     */
+    public int getSide() {
+        return side;
+    }
+
+    /**
+     * @param thumbUrl The thumbnail URL of an image object, as in the feed.
+     * @return The index of the tile of the thumbnail or -1 if the atlas has
+     * no tile for it.
+     */
+    public int indexOf(final String thumbUrl) {
+        final Integer index = (Integer) indices.get(thumbUrl);
+
+        return index != null ? index.intValue() : -1;
+    }
+
+    /**
+     * @param index The index of the tile, from indexOf().
+     * @return The image of the tile.
+     */
+    public Image getTile(final int index) {
+        return tiles[index];
+    }
+
+    /**
+     * Draws a tile. Allocates nothing.
+     * @param g The graphics to draw to.
+     * @param index The index of the tile, from indexOf().
+     * @param x The x coordinate of the top left corner.
+     * @param y The y coordinate of the top left corner.
+     */
+    public void draw(final Graphics g, final int index, final int x, final int y) {
+        g.drawImage(tiles[index], x, y, Graphics.TOP | Graphics.LEFT);
+    }
+
+    /**
+     * @return The estimated number of bytes held by the atlas, 4 per pixel.
+     */
+    public int getFootprint() {
+        return tiles.length * side * side * 4;
+    }
+
+    /**
+     * @param side The side of the tiles in pixels.
+     * @param thumbUrls The thumbnail URLs of the tiles, as in the feed.
+     * @param jpegs The encoded thumbnails of the tiles, as downloaded.
+     * @return The record of the atlas.
+     */
+    static byte[] encode(final int side,
+                         final String[] thumbUrls,
+                         final byte[][] jpegs)
+        throws IOException
+    {
+        int length = 0;
+
+        for (int i = 0; i < jpegs.length; i++) {
+            length += jpegs[i].length;
+        }
+
+        final ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(length + 64 * thumbUrls.length);
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(VERSION);
+        out.writeInt(side);
+        out.writeInt(thumbUrls.length);
+
+        for (int i = 0; i < thumbUrls.length; i++) {
+            out.writeUTF(thumbUrls[i]);
+            out.writeInt(jpegs[i].length);
+        }
+
+        for (int i = 0; i < jpegs.length; i++) {
+            out.write(jpegs[i]);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the tiles of the record, scaled to the side of the tiles.
+     * @return The atlas or null if the record is of another version or can
+     * not be decoded.
+     */
+    static ThumbnailAtlas decode(final byte[] bytes) {
+        try {
+            final ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+            final DataInputStream in = new DataInputStream(stream);
+
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+
+            final int side = in.readInt();
+            final int count = in.readInt();
+            final Hashtable indices = new Hashtable(count);
+            final int[] lengths = new int[count];
+            final Image[] tiles = new Image[count];
+
+            for (int i = 0; i < count; i++) {
+                indices.put(in.readUTF(), new Integer(i));
+                lengths[i] = in.readInt();
+            }
+
+            // The JPEGs are decoded in place, the record is not copied
+            int offset = bytes.length - stream.available();
+
+            for (int i = 0; i < count; i++) {
+                final Image image = Image.createImage(bytes, offset, lengths[i]);
+
+                tiles[i] = image.getWidth() == side ?
+                        image :
+                        ImageUtils.scale(image, side,
+                            Math.max(1, image.getHeight() * side / image.getWidth()));
+                offset += lengths[i];
+            }
+
+            return new ThumbnailAtlas(tiles, side, indices);
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not decode thumbnail atlas", "bytes=" + bytes.length, e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Collects the thumbnails of a feed page as they are loaded and stores
+     * the atlas once all of them are in. Use from the UI thread.
+     */
+    public static final class Builder {
+        private final String feedUrl;
+        private final String[] thumbUrls;
+        private final String[] loadedUrls; // Of the thumbnails in the image cache
+        private final int side;
+        private int missing;
+
+        /**
+         * Constructor.
+         * @param feedUrl The URL of the feed, the key of the atlas.
+         * @param thumbUrls The thumbnail URLs of the page, as in the feed.
+         * @param side The side of the tiles in pixels.
+         */
+        public Builder(final String feedUrl,
+                       final String[] thumbUrls,
+                       final int side)
+        {
+            this.feedUrl = feedUrl;
+            this.thumbUrls = thumbUrls;
+            this.side = side;
+            loadedUrls = new String[thumbUrls.length];
+            missing = thumbUrls.length;
+        }
+
+        /**
+         * @return The side of the tiles in pixels.
+         */
+        public int getSide() {
+            return side;
+        }
+
+        /**
+         * Adds a loaded thumbnail to the atlas. Stores the atlas in the
+         * background when the last thumbnail is added, after which the
+         * builder must be dropped.
+         * @param index The index of the tile.
+         * @param thumbUrl The thumbnail URL of the image object, as in the
+         * feed.
+         * @param loadedUrl The URL the thumbnail was loaded from, the key of
+         * its bytes in the image cache.
+         * @param thumbnail The thumbnail, the side of the tiles wide.
+         * @return True if the atlas is complete.
+         */
+        public boolean add(final int index,
+                           final String thumbUrl,
+                           final String loadedUrl,
+                           final Image thumbnail)
+        {
+            if (index < 0
+                || index >= thumbUrls.length
+                || loadedUrls[index] != null
+                || loadedUrl == null
+                || thumbnail.getWidth() != side
+                || !thumbUrls[index].equals(thumbUrl))
+            {
+                return missing == 0;
+            }
+
+            loadedUrls[index] = loadedUrl;
+
+            if (--missing == 0) {
+                saveAsync();
+            }
+
+            return missing == 0;
+        }
+
+        /**
+         * Reads the thumbnails from the image cache and puts the atlas to
+         * the image cache in the background. The task is run even if the
+         * application is shutting down.
+         */
+        private void saveAsync() {
+            new Task(Task.IDLE_PRIORITY) {
+                protected Object exec(final Object in) {
+                    save();
+                    return in;
+                }
+            }.setShutdownBehaviour(Task.EXECUTE_NORMALLY_ON_SHUTDOWN).fork();
+        }
+
+        private void save() {
+            final StaticWebCache cache = PicasaStorage.imageCache.getCache();
+            final byte[][] jpegs = new byte[loadedUrls.length][];
+
+            try {
+                for (int i = 0; i < loadedUrls.length; i++) {
+                    jpegs[i] = (byte[]) cache.getAsync(loadedUrls[i],
+                            Task.IDLE_PRIORITY, StaticWebCache.GET_LOCAL, null).get();
+                }
+
+                final byte[] bytes = encode(side, thumbUrls, jpegs);
+
+                cache.put(feedUrl, bytes, cache.getDefaultCacheView(), null);
+
+                //#debug
+                L.i("Thumbnail atlas saved", feedUrl + " bytes=" + bytes.length);
+            }
+            catch (Exception e) {
+                // E.g. a thumbnail evicted since it was loaded
+                //#debug
+                L.e("Can not save thumbnail atlas", feedUrl, e);
+            }
+        }
+    }
+}
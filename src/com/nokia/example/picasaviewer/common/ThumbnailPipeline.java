@@ -0,0 +1,442 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import javax.microedition.lcdui.Image;
+
+import org.tantalum.PlatformUtils;
+import org.tantalum.Task;
+import org.tantalum.util.L;
+
+import com.nokia.example.picasaviewer.util.ImagePool;
+import com.nokia.example.picasaviewer.util.ImageUtils;
+import com.nokia.example.picasaviewer.util.MemoryGovernor;
+import com.nokia.example.picasaviewer.util.WorkerPool;
+import com.nokia.example.picasaviewer.util.WorkerTuner;
+
+/**
+ * Loads thumbnails in stages, each stage with a bounded queue of its own:
+ *
+ * 1. fetch: the bytes are read from the image cache, which downloads them
+ *    through the HttpPipeline and writes them to flash if they are not
+ *    there yet, or from the offline packs in the offline mode,
+ * 2. decode: the bytes are decoded in the decode pool,
+ * 3. scale: the decoded image is scaled to the tile size in the decode pool,
+ * 4. publish: the image is handed to the listener in the UI thread.
+ *
+ * A stage does not take more work than the next stage has room for, so a
+ * fling queues only fetches, which are cheap to drop. Before a decode or a
+ * scale the listener is asked whether the tile is still visible; if not,
+ * the job is dropped. The bytes stay cached in flash and the thumbnail is
+ * requested again once the tile is shown.
+ *
+ * The square thumbnails are drawn into tiles taken from a pool shared by
+ * the pipelines. The listener gives the tiles back with recycle() when it
+ * releases the thumbnails, so scrolling through a long feed reuses the
+ * same pixel buffers.
+ */
+public final class ThumbnailPipeline {
+    // Constants
+    private static final int MAX_FETCHES = 4; // Fetches in flight
+    private static final int MAX_PIPELINED_FETCHES = 8; // Which do not hold a network worker
+    private static final int FETCH_QUEUE_CAPACITY = 32;
+    private static final int DECODE_QUEUE_CAPACITY = 4;
+    private static final int SCALE_QUEUE_CAPACITY = 2;
+    private static final int TILE_POOL_BYTES = 256 * 1024; // Free tiles, two rows of the default grid
+
+    // Members
+    private static ImagePool tilePool = null;
+    private final Listener listener;
+    private final Hashtable jobs = new Hashtable(); // key -> Job, all stages
+    private final Vector fetchQueue = new Vector();
+    private final Vector decodeQueue = new Vector();
+    private final Vector scaleQueue = new Vector();
+    private Vector fetches = new Vector(); // Jobs in the fetch stage
+    private int droppedJobs = 0;
+
+    /**
+     * Receives the loaded thumbnails.
+     */
+    public interface Listener {
+        /**
+         * Called from the decode pool, so must not block.
+         * @param key The key given in the request.
+         * @return True if the tile of the key is visible or about to become
+         * visible.
+         */
+        boolean isVisible(Object key);
+
+        /**
+         * Called in the UI thread.
+         * @param key The key given in the request.
+         * @param url The URL of the thumbnail.
+         * @param image The thumbnail scaled to the requested size.
+         */
+        void thumbnailReady(Object key, String url, Image image);
+    }
+
+    /**
+     * Constructor.
+     * @param listener The listener receiving the thumbnails.
+     */
+    public ThumbnailPipeline(final Listener listener) {
+        this.listener = listener;
+
+        synchronized (ThumbnailPipeline.class) {
+            if (tilePool == null) {
+                tilePool = new ImagePool(TILE_POOL_BYTES);
+                MemoryGovernor.getInstance().register(tilePool);
+            }
+        }
+    }
+
+    /**
+     * Requests a thumbnail. Does nothing if the thumbnail of the given key is
+     * already in the pipeline.
+     * @param key The key identifying the tile, e.g. the image object.
+     * @param url The URL of the thumbnail.
+     * @param side The width of the tile the thumbnail is scaled to.
+     */
+    public synchronized void request(final Object key,
+                                     final String url,
+                                     final int side)
+    {
+        if (jobs.containsKey(key)) {
+            return;
+        }
+
+        final Job job = new Job(key, url, side);
+        jobs.put(key, job);
+        fetchQueue.addElement(job);
+
+        // The oldest requests are the ones most likely scrolled away
+        if (fetchQueue.size() > FETCH_QUEUE_CAPACITY) {
+            drop((Job) fetchQueue.elementAt(0));
+            fetchQueue.removeElementAt(0);
+        }
+
+        startFetches();
+    }
+
+    /**
+     * @param key The key given in the request.
+     * @return True if the thumbnail of the key is in the pipeline, in which
+     * case request() would do nothing.
+     */
+    public synchronized boolean isRequested(final Object key) {
+        return jobs.containsKey(key);
+    }
+
+    /**
+     * Drops all jobs, e.g. when the model is replaced. The fetches in flight
+     * still write the bytes to flash but the results are not decoded.
+     */
+    public synchronized void clear() {
+        jobs.clear();
+        fetchQueue.removeAllElements();
+        decodeQueue.removeAllElements();
+        scaleQueue.removeAllElements();
+    }
+
+    /**
+     * Gives a thumbnail image back for reuse once the listener no longer
+     * draws it. Images which are not pooled tiles are ignored, and so are
+     * all images while the memory is low.
+     * @param image The image given to thumbnailReady(), may be null.
+     */
+    public void recycle(final Image image) {
+        if (!MemoryGovernor.isLow()) {
+            tilePool.release(image);
+        }
+    }
+
+    /**
+     * @return The tile pool shared by the pipelines.
+     */
+    public static ImagePool getTilePool() {
+        return tilePool;
+    }
+
+    /**
+     * Drops all jobs, cancels the fetches in flight, with their downloads
+     * unless shared with other requests, and releases the free tiles, e.g.
+     * when the application is paused.
+     */
+    public synchronized void cancel() {
+        final Vector canceled = fetches;
+
+        // Clear first, the canceled fetches must not start new ones
+        fetches = new Vector();
+        clear();
+        tilePool.clear();
+
+        for (int i = 0; i < canceled.size(); i++) {
+            final Task task = ((Job) canceled.elementAt(i)).task;
+
+            if (task != null) {
+                PicasaStorage.cancelImageBytes(task,
+                        "Thumbnail pipeline canceled");
+            }
+        }
+    }
+
+    /**
+     * @return The number of jobs dropped since the start.
+     */
+    public synchronized int getDroppedJobs() {
+        return droppedJobs;
+    }
+
+    /**
+     * Starts the queued fetches, latest first, while there is room in the
+     * fetch and decode stages.
+     */
+    private void startFetches() {
+        while (!fetchQueue.isEmpty()
+               && fetches.size() < getMaxFetches()
+               && decodeQueue.size() < getDecodeQueueCapacity())
+        {
+            final Job job = (Job) fetchQueue.lastElement();
+            fetchQueue.removeElementAt(fetchQueue.size() - 1);
+            fetches.addElement(job);
+            WorkerTuner.getInstance().requestStarted();
+
+            job.task = PicasaStorage.getImageBytes(
+                    job.url,
+                    Task.NORMAL_PRIORITY,
+                    new FetchResult(job));
+        }
+    }
+
+    /**
+     * Fetch stage done. Queues the bytes for decoding.
+     */
+    private synchronized void fetched(final Job job, final byte[] bytes) {
+        fetches.removeElement(job);
+        job.task = null;
+
+        if (jobs.get(job.key) == job) {
+            if (bytes == null) {
+                jobs.remove(job.key);
+            }
+            else {
+                job.bytes = bytes;
+                decodeQueue.addElement(job);
+
+                if (decodeQueue.size() > getDecodeQueueCapacity()) {
+                    drop((Job) decodeQueue.elementAt(0));
+                    decodeQueue.removeElementAt(0);
+                }
+
+                getPool().execute(new Runnable() {
+                    public void run() {
+                        decode();
+                    }
+                });
+            }
+        }
+
+        startFetches();
+    }
+
+    /**
+     * Decode stage. Takes the latest job unless the scale stage is full.
+     */
+    private void decode() {
+        final Job job = takeJob(decodeQueue, scaleQueue, SCALE_QUEUE_CAPACITY);
+
+        if (job == null) {
+            return;
+        }
+
+        try {
+            job.image = ImageUtils.decode(job.bytes, PicasaStorage.getScreenWidth());
+        }
+        catch (IllegalArgumentException e) {
+            //#debug
+            L.e("Can not decode thumbnail", job.url, e);
+        }
+
+        job.bytes = null;
+        MemoryGovernor.getInstance().check();
+
+        synchronized (this) {
+            if (job.image == null || jobs.get(job.key) != job) {
+                drop(job);
+                startFetches();
+                return;
+            }
+
+            scaleQueue.addElement(job);
+        }
+
+        getPool().execute(new Runnable() {
+            public void run() {
+                scale();
+            }
+        });
+    }
+
+    /**
+     * Scale stage. Scales the image to the tile size and publishes it.
+     */
+    private void scale() {
+        final Job job = takeJob(scaleQueue, null, 0);
+
+        if (job == null) {
+            return;
+        }
+
+        final Image image = job.image;
+
+        job.image = null;
+
+        final Image scaled;
+
+        if (image.getHeight() * job.side / image.getWidth() >= job.side) {
+            // Fills a square tile, a taller image is cut like in the grid
+            scaled = ImageUtils.scaleInto(image, tilePool.acquire(job.side));
+        }
+        else {
+            scaled = image.getWidth() == job.side ?
+                    image :
+                    ImageUtils.scale(image, job.side,
+                            Math.max(1, image.getHeight() * job.side / image.getWidth()));
+        }
+
+        PlatformUtils.getInstance().runOnUiThread(new Runnable() {
+            public void run() {
+                synchronized (ThumbnailPipeline.this) {
+                    if (jobs.get(job.key) != job) {
+                        recycle(scaled);
+                        return;
+                    }
+
+                    jobs.remove(job.key);
+                    startFetches();
+                }
+
+                listener.thumbnailReady(job.key, job.url, scaled);
+            }
+        });
+
+        // A decode may have waited for room in the scale queue
+        getPool().execute(new Runnable() {
+            public void run() {
+                decode();
+            }
+        });
+    }
+
+    /**
+     * Takes the latest visible job from the given queue, dropping the jobs of
+     * tiles which are no longer visible.
+     * @return The job or null if there is nothing to do.
+     */
+    private synchronized Job takeJob(final Vector queue,
+                                     final Vector nextQueue,
+                                     final int nextQueueCapacity)
+    {
+        if (nextQueue != null && nextQueue.size() >= nextQueueCapacity) {
+            return null;
+        }
+
+        while (!queue.isEmpty()) {
+            final Job job = (Job) queue.lastElement();
+            queue.removeElementAt(queue.size() - 1);
+
+            if (listener.isVisible(job.key)) {
+                return job;
+            }
+
+            drop(job);
+        }
+
+        startFetches();
+
+        return null;
+    }
+
+    private void drop(final Job job) {
+        if (jobs.get(job.key) == job) {
+            jobs.remove(job.key);
+        }
+
+        job.bytes = null;
+        job.image = null;
+        droppedJobs++;
+    }
+
+    /**
+     * @return The number of fetches in flight. Through the HttpPipeline a
+     * fetch waits in a connection of the pipeline instead of a network
+     * worker, so more of them are kept in flight to fill the pipeline.
+     */
+    private static int getMaxFetches() {
+        return HttpPipeline.getInstance().isEnabled()
+                && !PicasaStorage.isOfflineMode()
+                ? MAX_PIPELINED_FETCHES : MAX_FETCHES;
+    }
+
+    /**
+     * @return The capacity of the decode queue, which grows with the fetches
+     * in flight, so that a burst of pipelined responses is not dropped.
+     */
+    private static int getDecodeQueueCapacity() {
+        return DECODE_QUEUE_CAPACITY * getMaxFetches() / MAX_FETCHES;
+    }
+
+    private static WorkerPool getPool() {
+        return WorkerTuner.getInstance().getDecodePool();
+    }
+
+    /**
+     * A thumbnail moving through the stages.
+     */
+    private static final class Job {
+        final Object key;
+        final String url;
+        final int side;
+        Task task = null; // The fetch in flight
+        byte[] bytes = null;
+        Image image = null;
+
+        Job(final Object key, final String url, final int side) {
+            this.key = key;
+            this.url = url;
+            this.side = side;
+        }
+    }
+
+    /**
+     * Receives the bytes of the fetch stage.
+     */
+    private final class FetchResult extends Task {
+        private final Job job;
+
+        FetchResult(final Job job) {
+            this.job = job;
+        }
+
+        protected Object exec(final Object in) {
+            WorkerTuner.getInstance().requestFinished();
+            fetched(job, (byte[]) in);
+
+            return in;
+        }
+
+        protected void onCanceled(final String reason) {
+            WorkerTuner.getInstance().requestFinished();
+            fetched(job, null);
+        }
+    }
+}
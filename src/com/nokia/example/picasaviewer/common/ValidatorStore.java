@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Vector;
+
+import javax.microedition.rms.RecordStore;
+
+import org.tantalum.util.L;
+
+/**
+ * Persistent store for the HTTP validators (ETag and Last-Modified) of the
+ * feeds, so that a refresh can be sent as a conditional GET even after a
+ * restart.
+ *
+ * The validators of the most recently fetched MAX_ENTRIES URLs are kept in
+ * a single record. Access the store from worker threads only.
+ */
+public final class ValidatorStore {
+    // Constants
+    private static final String RECORD_STORE_NAME = "PicasaValidators";
+    private static final int RECORD_ID = 1;
+    private static final int MAX_ENTRIES = 16;
+
+    // Members
+    private static ValidatorStore instance = null;
+    private final Vector urls = new Vector(); // Most recent first
+    private final Vector entityTags = new Vector();
+    private final Vector lastModifieds = new Vector();
+
+    /**
+     * @return The validator store instance.
+     */
+    public static synchronized ValidatorStore getInstance() {
+        if (instance == null) {
+            instance = new ValidatorStore();
+        }
+
+        return instance;
+    }
+
+    private ValidatorStore() {
+        load();
+    }
+
+    /**
+     * @param url The URL of the feed.
+     * @return The ETag of the cached response or null.
+     */
+    public synchronized String getEntityTag(final String url) {
+        final int index = urls.indexOf(url);
+
+        return index < 0 ? null : toValue(entityTags.elementAt(index));
+    }
+
+    /**
+     * @param url The URL of the feed.
+     * @return The Last-Modified date of the cached response or null.
+     */
+    public synchronized String getLastModified(final String url) {
+        final int index = urls.indexOf(url);
+
+        return index < 0 ? null : toValue(lastModifieds.elementAt(index));
+    }
+
+    /**
+     * Stores the validators of a fresh response. If the response has no
+     * validators, the old ones are removed.
+     * @param url The URL of the feed.
+     * @param entityTag The ETag header or null.
+     * @param lastModified The Last-Modified header or null.
+     */
+    public synchronized void put(final String url,
+                                 final String entityTag,
+                                 final String lastModified)
+    {
+        final int index = urls.indexOf(url);
+
+        if (index >= 0) {
+            urls.removeElementAt(index);
+            entityTags.removeElementAt(index);
+            lastModifieds.removeElementAt(index);
+        }
+        else if (entityTag == null && lastModified == null) {
+            return;
+        }
+
+        if (entityTag != null || lastModified != null) {
+            urls.insertElementAt(url, 0);
+            entityTags.insertElementAt(entityTag != null ? entityTag : "", 0);
+            lastModifieds.insertElementAt(
+                    lastModified != null ? lastModified : "", 0);
+
+            if (urls.size() > MAX_ENTRIES) {
+                urls.removeElementAt(MAX_ENTRIES);
+                entityTags.removeElementAt(MAX_ENTRIES);
+                lastModifieds.removeElementAt(MAX_ENTRIES);
+            }
+        }
+
+        save();
+    }
+
+    private static String toValue(final Object value) {
+        return "".equals(value) ? null : (String) value;
+    }
+
+    private void load() {
+        try {
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() > 0) {
+                    final DataInputStream in = new DataInputStream(
+                            new ByteArrayInputStream(
+                                recordStore.getRecord(RECORD_ID)));
+                    final int count = in.readInt();
+
+                    for (int i = 0; i < count; i++) {
+                        urls.addElement(in.readUTF());
+                        entityTags.addElement(in.readUTF());
+                        lastModifieds.addElement(in.readUTF());
+                    }
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not load validators", RECORD_STORE_NAME, e);
+            urls.removeAllElements();
+            entityTags.removeAllElements();
+            lastModifieds.removeAllElements();
+        }
+    }
+
+    private void save() {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            final DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(urls.size());
+
+            for (int i = 0; i < urls.size(); i++) {
+                out.writeUTF((String) urls.elementAt(i));
+                out.writeUTF((String) entityTags.elementAt(i));
+                out.writeUTF((String) lastModifieds.elementAt(i));
+            }
+
+            final byte[] record = bytes.toByteArray();
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() == 0) {
+                    recordStore.addRecord(record, 0, record.length);
+                }
+                else {
+                    recordStore.setRecord(RECORD_ID, record, 0, record.length);
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not save validators", RECORD_STORE_NAME, e);
+        }
+    }
+}
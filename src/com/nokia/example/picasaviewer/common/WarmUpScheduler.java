@@ -0,0 +1,459 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.TimerTask;
+import java.util.Vector;
+
+import javax.microedition.midlet.MIDlet;
+import javax.microedition.rms.RecordStore;
+
+import org.tantalum.Task;
+import org.tantalum.net.StaticWebCache;
+import org.tantalum.util.L;
+
+import com.nokia.example.picasaviewer.util.WorkerTuner;
+
+/**
+ * Warms up the caches in idle time so that the featured grid of the next
+ * launch is shown from the flash: the featured feed is revalidated and the
+ * thumbnails of the feed page, and optionally the first full images, are
+ * downloaded one at a time.
+ *
+ * A warm-up is started once the network and decode workers have been idle
+ * for IDLE_DELAY, at most once in MIN_INTERVAL. It stops when the byte
+ * budget of the run is spent or the battery runs low. Thumbnails are
+ * fetched while charging or above MIN_BATTERY_LEVEL, full images only while
+ * charging. The budget (in kilobytes, 0 disables the warm-up) and the
+ * number of full images can be set with JAD properties.
+ */
+public final class WarmUpScheduler {
+    // Constants
+    public static final String BUDGET_PROPERTY = "Picasa-Warm-Up-Budget";
+    public static final String IMAGES_PROPERTY = "Picasa-Warm-Up-Images";
+    private static final String BATTERY_LEVEL_PROPERTY = "com.nokia.mid.batterylevel"; // %
+    private static final String CHARGER_PROPERTY = "com.nokia.mid.chargerstatus";
+    private static final int DEFAULT_BUDGET = 512; // KB
+    private static final int DEFAULT_IMAGES = 0;
+    private static final int MIN_BATTERY_LEVEL = 50; // %, when not charging
+    private static final int CHECK_INTERVAL = 2000; // ms
+    private static final int IDLE_DELAY = 10000; // ms of idle workers before a run
+    private static final long MIN_INTERVAL = 60 * 60 * 1000; // ms between runs
+    private static final long RETRY_INTERVAL = 5 * 60 * 1000; // ms, after a failed run
+    private static final String RECORD_STORE_NAME = "PicasaWarmUp";
+
+    // Members
+    private static WarmUpScheduler instance = null;
+    private final Vector urls = new Vector(); // Thumbnails first, then full images
+    private int budget = DEFAULT_BUDGET * 1024; // Bytes per run
+    private int images = DEFAULT_IMAGES;
+    private int thumbnailSide = 0; // Of the grid, 0 for the size in the feed
+    private TimerTask checkTask = null;
+    private long idleSince = 0;
+    private long nextRun = 0; // ms, stored for the next launch
+    private boolean running = false;
+    private int thumbnailCount = 0; // Of the URLs
+    private int next = 0; // Index of the next URL
+    private int spentBytes = 0; // In the current or the last run
+    private int fetchedCount = 0;
+    private int runs = 0;
+
+    /**
+     * @return The warm-up scheduler instance.
+     */
+    public static synchronized WarmUpScheduler getInstance() {
+        if (instance == null) {
+            instance = new WarmUpScheduler();
+        }
+
+        return instance;
+    }
+
+    private WarmUpScheduler() {
+    }
+
+    /**
+     * Reads the budget and the number of full images from the JAD
+     * properties and the time of the next run from the record store.
+     * @param midlet The MIDlet.
+     */
+    public synchronized void init(final MIDlet midlet) {
+        budget = parse(midlet.getAppProperty(BUDGET_PROPERTY), DEFAULT_BUDGET) * 1024;
+        images = Math.max(0, parse(midlet.getAppProperty(IMAGES_PROPERTY),
+                DEFAULT_IMAGES));
+
+        try {
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() > 0) {
+                    nextRun = new DataInputStream(new ByteArrayInputStream(
+                            recordStore.getRecord(1))).readLong();
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            // Run when idle
+        }
+    }
+
+    /**
+     * Sets the side of the grid tiles, so that the thumbnails of the size
+     * the grid asks for are fetched.
+     * @param side The side of the tiles in pixels.
+     */
+    public synchronized void setThumbnailSide(final int side) {
+        thumbnailSide = side;
+    }
+
+    /**
+     * Starts waiting for the workers to become idle.
+     */
+    public synchronized void start() {
+        if (checkTask != null || budget <= 0) {
+            return;
+        }
+
+        idleSince = 0;
+        checkTask = new TimerTask() {
+            public void run() {
+                check();
+            }
+        };
+        Task.getTimer().schedule(checkTask, CHECK_INTERVAL, CHECK_INTERVAL);
+    }
+
+    /**
+     * Stops waiting and stops the run in progress after the current fetch.
+     */
+    public synchronized void stop() {
+        if (checkTask != null) {
+            checkTask.cancel();
+            checkTask = null;
+        }
+
+        running = false;
+    }
+
+    /**
+     * Starts a warm-up now unless one is running, the warm-up is disabled,
+     * the application is in the offline mode or the battery is low.
+     * @return True if a warm-up was started.
+     */
+    public boolean warmUp() {
+        synchronized (this) {
+            if (running
+                || budget <= 0
+                || PicasaStorage.feedCache == null
+                || PicasaStorage.isOfflineMode()
+                || !canFetch(false))
+            {
+                return false;
+            }
+
+            running = true;
+            runs++;
+            spentBytes = 0;
+            fetchedCount = 0;
+            urls.removeAllElements();
+            thumbnailCount = 0;
+            next = 0;
+        }
+
+        //#debug
+        L.i("Warm-up started", "budget=" + budget);
+
+        // A conditional GET, an unchanged feed costs only the headers
+        PicasaStorage.getImageObjects(null, Task.IDLE_PRIORITY,
+                StaticWebCache.GET_WEB, new FeedResult());
+
+        return true;
+    }
+
+    /**
+     * @return True if a warm-up is in progress.
+     */
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return The bytes downloaded in the current or the last warm-up.
+     */
+    public synchronized int getSpentBytes() {
+        return spentBytes;
+    }
+
+    /**
+     * @return The images downloaded in the current or the last warm-up.
+     */
+    public synchronized int getFetchedCount() {
+        return fetchedCount;
+    }
+
+    /**
+     * For debugging.
+     * @return The state of the scheduler.
+     */
+    public synchronized String toString() {
+        return "budget=" + budget + " images=" + images + " runs=" + runs
+                + " running=" + running + " fetched=" + fetchedCount
+                + " spent=" + spentBytes;
+    }
+
+    /**
+     * Called by the timer. Starts a run when the workers have been idle
+     * long enough and the previous run is old enough.
+     */
+    private void check() {
+        final long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            // The offline mode never waits on the network
+            if (running
+                || PicasaStorage.isOfflineMode()
+                || !WorkerTuner.getInstance().isIdle())
+            {
+                idleSince = 0;
+                return;
+            }
+
+            if (idleSince == 0) {
+                idleSince = now;
+            }
+
+            if (now - idleSince < IDLE_DELAY || now < nextRun) {
+                return;
+            }
+
+            // Not again right away if the run can not be started or fails
+            nextRun = now + RETRY_INTERVAL;
+        }
+
+        warmUp();
+    }
+
+    /**
+     * Queues the thumbnails of the feed page and the full images.
+     */
+    private synchronized void queue(final Vector items) {
+        final int count = Math.min(items.size(), PicasaStorage.NR_OF_FEATURED);
+
+        for (int i = 0; i < count; i++) {
+            final String thumbUrl = ((PicasaImageObject) items.elementAt(i)).thumbUrl;
+
+            urls.addElement(thumbnailSide > 0
+                    ? PicasaStorage.getThumbUrl(thumbUrl, thumbnailSide)
+                    : thumbUrl);
+        }
+
+        thumbnailCount = urls.size();
+
+        for (int i = 0; i < Math.min(count, images); i++) {
+            urls.addElement(((PicasaImageObject) items.elementAt(i)).imageUrl);
+        }
+    }
+
+    /**
+     * Fetches the next URL which is not in the flash yet, or finishes the
+     * run if there are none left, the budget is spent, the offline mode has
+     * been switched on or the battery is low.
+     */
+    private void fetchNext() {
+        String url = null;
+        boolean fullImage = false;
+
+        synchronized (this) {
+            while (running && url == null && next < urls.size()) {
+                fullImage = next >= thumbnailCount;
+
+                if (spentBytes >= budget
+                    || PicasaStorage.isOfflineMode()
+                    || !canFetch(fullImage))
+                {
+                    break;
+                }
+
+                url = (String) urls.elementAt(next++);
+
+                try {
+                    if (PicasaStorage.imageCache.getCache().containsKey(url)) {
+                        url = null;
+                    }
+                }
+                catch (Exception e) {
+                    //#debug
+                    L.e("Can not check cache", url, e);
+                    url = null;
+                }
+            }
+
+            if (url == null) {
+                finish(running && next >= urls.size());
+                return;
+            }
+        }
+
+        PicasaStorage.imageCache.getAsync(url, Task.IDLE_PRIORITY,
+                StaticWebCache.GET_ANYWHERE, new FetchResult(url, fullImage));
+    }
+
+    /**
+     * Ends the run. A complete run is not repeated for MIN_INTERVAL, also
+     * over launches.
+     * @param complete True if all the URLs are in the flash.
+     */
+    private synchronized void finish(final boolean complete) {
+        running = false;
+
+        //#debug
+        L.i("Warm-up finished", "complete=" + complete + " fetched=" + fetchedCount + " spent=" + spentBytes);
+
+        if (complete) {
+            nextRun = System.currentTimeMillis() + MIN_INTERVAL;
+            save(nextRun);
+        }
+    }
+
+    private synchronized void fetched(final String url,
+                                      final byte[] bytes,
+                                      final boolean fullImage)
+    {
+        spentBytes += bytes.length;
+        fetchedCount++;
+
+        if (fullImage) {
+            // Fetched as bytes, which the quota manager takes for a thumbnail
+            QuotaManager.getInstance().record(PicasaStorage.IMAGE_CACHE_ID,
+                    url, bytes.length, QuotaManager.TIER_FULL_IMAGE);
+        }
+    }
+
+    /**
+     * @param fullImage True for a full image, false for a thumbnail.
+     * @return True if the battery allows fetching. If the level is not
+     * known, e.g. in the emulator, the battery is taken to be charging.
+     */
+    private static boolean canFetch(final boolean fullImage) {
+        final String charger = System.getProperty(CHARGER_PROPERTY);
+        final int level = parse(System.getProperty(BATTERY_LEVEL_PROPERTY), -1);
+
+        if (level < 0
+            || "1".equals(charger)
+            || "true".equalsIgnoreCase(charger)
+            || "charging".equalsIgnoreCase(charger))
+        {
+            return true;
+        }
+
+        return !fullImage && level >= MIN_BATTERY_LEVEL;
+    }
+
+    private static void save(final long nextRun) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+            new DataOutputStream(bytes).writeLong(nextRun);
+
+            final byte[] record = bytes.toByteArray();
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() == 0) {
+                    recordStore.addRecord(record, 0, record.length);
+                }
+                else {
+                    recordStore.setRecord(1, record, 0, record.length);
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not save warm-up time", RECORD_STORE_NAME, e);
+        }
+    }
+
+    private static int parse(final String value, final int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            }
+            catch (NumberFormatException e) {
+            }
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * Receives the refreshed featured feed.
+     */
+    private final class FeedResult extends Task {
+        FeedResult() {
+            super(Task.IDLE_PRIORITY);
+        }
+
+        protected Object exec(final Object in) {
+            if (in instanceof Vector) {
+                queue((Vector) in);
+            }
+
+            fetchNext();
+
+            return in;
+        }
+
+        protected void onCanceled(final String reason) {
+            //#debug
+            L.i("Warm-up feed not loaded", reason);
+            finish(false);
+        }
+    }
+
+    /**
+     * Counts the bytes of a fetched image and fetches the next one.
+     */
+    private final class FetchResult extends Task {
+        private final String url;
+        private final boolean fullImage;
+
+        FetchResult(final String url, final boolean fullImage) {
+            super(Task.IDLE_PRIORITY);
+            this.url = url;
+            this.fullImage = fullImage;
+        }
+
+        protected Object exec(final Object in) {
+            if (in instanceof byte[]) {
+                fetched(url, (byte[]) in, fullImage);
+            }
+
+            fetchNext();
+
+            return in;
+        }
+
+        protected void onCanceled(final String reason) {
+            //#debug
+            L.i("Warm-up fetch failed", url + " " + reason);
+            fetchNext();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.ui;
+
+import java.io.IOException;
+
+import javax.microedition.lcdui.Font;
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+
+import com.nokia.mid.ui.DirectUtils;
+
+import com.nokia.example.picasaviewer.common.PicasaImageObject;
+import com.nokia.example.picasaviewer.util.ImageUtils;
+import com.nokia.example.picasaviewer.util.TextLayout;
+
+/**
+ * Renders the title and the author of an image into a small translucent
+ * image which can be drawn on top of a grid tile with a single drawImage.
+ */
+public final class CaptionRenderer {
+    // Constants
+    private static final String TEXT_CUTTER_URI = "/text-cutter.png";
+    private static final int BACKGROUND_COLOR = 0x0b0b0b;
+    private static final int BACKGROUND_ALPHA = 0xb0;
+    private static final int TITLE_COLOR = 0xf4f4f4;
+    private static final int AUTHOR_COLOR = 0xa0a0a0;
+    private static final int PADDING = 2;
+
+    // Members
+    private final Font font =
+        Font.getFont(Font.FACE_SYSTEM, Font.STYLE_PLAIN, Font.SIZE_SMALL);
+    private final int height = font.getHeight() * 2 + PADDING * 2;
+    private int[] cutterAlpha = null; // Alpha of the text cutter, one per column
+    private int cutterWidth = 0;
+
+    /**
+     * Constructor.
+     */
+    public CaptionRenderer() {
+        try {
+            final Image cutter = ImageUtils.scale(
+                    Image.createImage(TEXT_CUTTER_URI), 30, height);
+
+            cutterWidth = cutter.getWidth();
+            cutterAlpha = new int[cutterWidth];
+
+            final int[] row = new int[cutterWidth];
+            cutter.getRGB(row, 0, cutterWidth, 0, height / 2, cutterWidth, 1);
+
+            for (int i = 0; i < cutterWidth; i++) {
+                cutterAlpha[i] = row[i] >>> 24;
+            }
+        }
+        catch (IOException e) {
+            System.out.println("CaptionRenderer.CaptionRenderer(): Failed to load the text cutter!");
+        }
+    }
+
+    /**
+     * @return The height of the caption images.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Renders the caption of the given image object.
+     * @param picasaImageObject The image object.
+     * @param width The width of the caption, i.e. the width of the tile.
+     * @return The caption image.
+     */
+    public Image render(final PicasaImageObject picasaImageObject,
+                        final int width)
+    {
+        final Image caption = DirectUtils.createImage(width, height, 0x00000000);
+        final Graphics graphics = caption.getGraphics();
+        final int textWidth = width - cutterWidth / 2 - PADDING * 2;
+
+        graphics.drawRGB(createBackground(width), 0, width, 0, 0,
+                width, height, true);
+
+        graphics.setFont(font);
+        graphics.setColor(TITLE_COLOR);
+        graphics.drawString(
+                TextLayout.truncate(picasaImageObject.title, font, textWidth),
+                PADDING, PADDING, Graphics.TOP | Graphics.LEFT);
+        graphics.setColor(AUTHOR_COLOR);
+        graphics.drawString(
+                TextLayout.truncate(picasaImageObject.author, font, textWidth),
+                PADDING, PADDING + font.getHeight(), Graphics.TOP | Graphics.LEFT);
+
+        return caption;
+    }
+
+    /**
+     * Creates the pixels of the translucent background which fades out at
+     * the right edge like the text cutter asset.
+     * @param width The width of the background.
+     * @return The ARGB pixels.
+     */
+    private int[] createBackground(final int width) {
+        final int[] argb = new int[width * height];
+        final int cutterStart = width - cutterWidth;
+
+        for (int x = 0; x < width; x++) {
+            int alpha = BACKGROUND_ALPHA;
+
+            if (cutterAlpha != null && x >= cutterStart) {
+                alpha = BACKGROUND_ALPHA * cutterAlpha[x - cutterStart] / 255;
+            }
+
+            final int pixel = (alpha << 24) | BACKGROUND_COLOR;
+
+            for (int y = 0; y < height; y++) {
+                argb[y * width + x] = pixel;
+            }
+        }
+
+        return argb;
+    }
+}
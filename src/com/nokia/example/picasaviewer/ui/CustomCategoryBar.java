@@ -16,6 +16,7 @@ import com.nokia.mid.ui.ElementListener;
 import com.nokia.mid.ui.IconCommand;
 
 import com.nokia.example.picasaviewer.util.ImageUtils;
+import com.nokia.example.picasaviewer.util.MemoryGovernor;
 
 /**
  * A custom category bar.
@@ -327,6 +328,18 @@ public class CustomCategoryBar
             _currentIcons = unselectedIcons;
             createImages();
             
+            MemoryGovernor.getInstance().register(new MemoryGovernor.Cache() {
+                public int getFootprint() {
+                    return getImagesFootprint();
+                }
+                
+                public void shrink(int tier) {
+                    if (tier == MemoryGovernor.TIER_TRANSLUCENT_ASSETS) {
+                        releaseTranslucentImages();
+                    }
+                }
+            });
+            
             if (_canvas != null) {
                 setParent(_canvas);
                 _y = _canvas.getHeight() - HEIGHT;
@@ -350,17 +363,14 @@ public class CustomCategoryBar
             }
             
             if (opacity == 1.0f) {
-                System.out.println("CustomCategoryBarRenderer.setOpacity(): Setting to opaque.");
                 _currentImages = _opaqueImages;
                 _currentIcons = _unselectedIcons;
             }
             else if (_storedOpacity != opacity) {
-                System.out.println("CustomCategoryBarRenderer.setOpacity(): New opacity: " + opacity);
                 createAndTakeInUseTranslucentImages();
             }
             else {
                 // Use the existing assets
-                System.out.println("CustomCategoryBarRenderer.setOpacity(): Using stored opacity: " + _setOpacity);
                 _currentImages = _translucentImages;
                 _currentIcons = _translucentIcons;
             }
@@ -498,6 +508,43 @@ public class CustomCategoryBar
             _currentImages = _opaqueImages;
         }
 
+        /**
+         * @return The estimated number of bytes held by the image assets, 4
+         * per pixel.
+         */
+        private int getImagesFootprint() {
+            return getFootprint(_opaqueImages) + getFootprint(_translucentImages)
+                + getFootprint(_selectedIcons) + getFootprint(_translucentIcons);
+        }
+
+        private int getFootprint(Image[] images) {
+            int footprint = 0;
+            
+            if (images != null) {
+                for (int i = 0; i < images.length; ++i) {
+                    if (images[i] != null) {
+                        footprint += images[i].getWidth() * images[i].getHeight() * 4;
+                    }
+                }
+            }
+            
+            return footprint;
+        }
+
+        /**
+         * Releases the translucent image assets unless they are in use or
+         * still being created. They are created again by setOpacity().
+         */
+        private void releaseTranslucentImages() {
+            if (_currentImages != _translucentImages
+                && _storedOpacity != UNDEFINED)
+            {
+                _translucentImages = null;
+                _translucentIcons = null;
+                _storedOpacity = UNDEFINED;
+            }
+        }
+
         /**
          * Creates the translucent image assets based on the original ones.
          * Note that this is done asynchronously.
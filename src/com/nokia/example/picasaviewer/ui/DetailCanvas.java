@@ -10,7 +10,6 @@
 package com.nokia.example.picasaviewer.ui;
 
 import com.nokia.example.picasaviewer.PicasaViewer;
-import java.util.Vector;
 
 import javax.microedition.lcdui.Command;
 import javax.microedition.lcdui.Displayable;
@@ -21,14 +20,21 @@ import javax.microedition.lcdui.Image;
 import org.tantalum.Task;
 import org.tantalum.TimeoutException;
 import org.tantalum.net.StaticWebCache;
+import org.tantalum.storage.CacheView;
 import org.tantalum.util.L;
 
+import com.nokia.example.picasaviewer.common.HistoryStore;
 import com.nokia.example.picasaviewer.common.PicasaImageObject;
 import com.nokia.example.picasaviewer.common.PicasaStorage;
+import com.nokia.example.picasaviewer.common.QuotaManager;
+import com.nokia.example.picasaviewer.util.MemoryGovernor;
+import com.nokia.example.picasaviewer.util.TextLayout;
+import com.nokia.example.picasaviewer.util.TiledImage;
 import com.nokia.example.picasaviewer.util.ViewManager;
 
 /**
- * The class displaying the larger image, title and photographer.
+ * The class displaying the larger image, title and photographer. The image can
+ * be zoomed with the pinch gesture and panned by dragging.
  */
 public final class DetailCanvas 
     extends GestureCanvas
@@ -36,13 +42,25 @@ public final class DetailCanvas
     // Constants
     private static final int PADDING = 5;
     private static final double R = 12;
+    private static final CacheView FULL_IMAGE_VIEW = new FullImageTypeHandler(true);
+    private static final CacheView OFFLINE_IMAGE_VIEW = new FullImageTypeHandler(false);
 
     // Members
     private final Command backCommand = new Command("Back", Command.BACK, 0);
-    private volatile Image image = null;
-    private Vector titleLines = null;
+    private final Command favouriteCommand =
+            new Command("Add to favourites", Command.SCREEN, 1);
+    private final Command unfavouriteCommand =
+            new Command("Remove from favourites", Command.SCREEN, 1);
+    private volatile TiledImage image = null;
+    private volatile Task loadTask = null;
+    private String[] titleLines = null;
     private final int width;
     private int fontHeight = 0;
+    private int zoomLevel = TiledImage.NATIVE_ZOOM_LEVEL;
+    private int fitZoomLevel = TiledImage.NATIVE_ZOOM_LEVEL;
+    private int scrollX = 0;
+    private int pinchDistanceStarting = 0;
+    private int pinchStartZoom = 0;
 
     /**
      * Constructor.
@@ -53,13 +71,29 @@ public final class DetailCanvas
         
         yC = 50.0;
         width = getWidth();
-        titleLines = new Vector();
         fontHeight = Font.getDefaultFont().getHeight();
         
         setFullScreenMode(true);
         
         // This view always has a back command as category bar is not shown
         addCommand(backCommand);
+        addCommand(favouriteCommand);
+        
+        MemoryGovernor.getInstance().register(new MemoryGovernor.Cache() {
+            public int getFootprint() {
+                final TiledImage tiledImage = image;
+                return tiledImage == null ? 0 : tiledImage.getFootprint();
+            }
+            
+            public void shrink(final int tier) {
+                final TiledImage tiledImage = image;
+                
+                // The scaled tiles are recreated from the native tiles
+                if (tier == MemoryGovernor.TIER_PREFETCH && tiledImage != null) {
+                    tiledImage.clearCache();
+                }
+            }
+        });
     }
 
     /**
@@ -70,30 +104,82 @@ public final class DetailCanvas
         if (command.getCommandType() == Command.BACK) {
             viewManager.goBack();
         }
+        else if (command == favouriteCommand || command == unfavouriteCommand) {
+            final boolean starred = command == favouriteCommand;
+            
+            HistoryStore.getInstance().setStarredAsync(
+                    PicasaStorage.getSelectedImage(), starred);
+            updateFavouriteCommand(starred);
+        }
     }
 
     /**
-     * Resets the scroll position and hides category bar when the view is shown.
+     * Resets the scroll position, lays out the title, starts loading the
+     * image and hides category bar when the view is shown.
      * @see javax.microedition.lcdui.Canvas#showNotify()
      */
     public void showNotify() {
+        final PicasaImageObject selectedImage = PicasaStorage.getSelectedImage();
+        
         scrollY = 0;
+        scrollX = 0;
+        HistoryStore.getInstance().addViewedAsync(selectedImage);
+        loadFavouriteCommand(selectedImage);
         
         if (viewManager.supportsCategoryBar()) {
             viewManager.getCategoryBarHandler().setVisibility(false);
         }
         
+        titleLines = TextLayout.getLines(selectedImage.title,
+            Font.getDefaultFont(), width - 2 * PADDING);
         top = -calculateHeight() + getHeight();
+        loadImage();
     }
 
     /**
      * @see GestureCanvas#hideNotify()
      */
     public void hideNotify() {
+        final Task task = loadTask;
+        
+        if (task != null) {
+            task.cancel(false, "Detail view hidden");
+            loadTask = null;
+        }
+        
         image = null;
         stopSpinner();
         super.hideNotify();
-        titleLines.removeAllElements();
+        titleLines = null;
+    }
+
+    /**
+     * Cancels the image load and releases the image. It is decoded again from
+     * the flash cache on resume.
+     * @see GestureCanvas#onPause()
+     */
+    public void onPause() {
+        final Task task = loadTask;
+        
+        if (task != null) {
+            task.cancel(false, "Application paused");
+            loadTask = null;
+        }
+        
+        image = null;
+        super.onPause();
+    }
+
+    /**
+     * Loads the image again, it was released in onPause().
+     * @see GestureCanvas#onResume()
+     */
+    public void onResume() {
+        if (isShown()) {
+            loadImage();
+        }
+        
+        super.onResume();
     }
 
     /**
@@ -104,83 +190,118 @@ public final class DetailCanvas
     }
 
     /**
-     * @see javax.microedition.lcdui.Canvas#paint(javax.microedition.lcdui.Graphics)
+     * Reads from flash whether the image is in the favourites and then shows
+     * the matching command unless another image has been selected.
+     * @param selectedImage The image shown.
      */
-    public void paint(final Graphics graphics) {
-        checkThatScrollDoesNotExceedBoundaries();
+    private void loadFavouriteCommand(final PicasaImageObject selectedImage) {
+        new Task(Task.NORMAL_PRIORITY) {
+            protected Object exec(final Object in) {
+                return HistoryStore.getInstance().isStarred(
+                        selectedImage.imageUrl) ? Boolean.TRUE : Boolean.FALSE;
+            }
+        }.chain(new Task(Task.UI_PRIORITY) {
+            protected Object exec(final Object in) {
+                if (selectedImage == PicasaStorage.getSelectedImage()) {
+                    updateFavouriteCommand(in == Boolean.TRUE);
+                }
+                
+                return in;
+            }
+        }).fork();
+    }
+
+    /**
+     * Shows the command which adds the image to the favourites or the one
+     * which removes it.
+     * @param starred True if the image is in the favourites.
+     */
+    private void updateFavouriteCommand(final boolean starred) {
+        removeCommand(favouriteCommand);
+        removeCommand(unfavouriteCommand);
+        addCommand(starred ? unfavouriteCommand : favouriteCommand);
+    }
+
+    /**
+     * Starts loading the selected image unless it is loaded or being loaded.
+     * Waits for a moment so that an image in the flash cache is shown in the
+     * first frame without the spinner. In the offline mode the image is read
+     * from the offline packs only.
+     */
+    private void loadImage() {
+        if (image != null || loadTask != null) {
+            return;
+        }
         
         final PicasaImageObject selectedImage = PicasaStorage.getSelectedImage();
+        final boolean offline = PicasaStorage.isOfflineMode();
+        
+        startSpinner();
         
-        if (titleLines.isEmpty()) {
-            splitToLines(titleLines, selectedImage.title,
-                Font.getDefaultFont(), width - 2 * PADDING);
+        try {
+            final Task task = (offline
+                    ? PicasaStorage.offlineCache : PicasaStorage.imageCache).getAsync(
+                selectedImage.imageUrl,
+                null,
+                Task.HIGH_PRIORITY,
+                offline ? StaticWebCache.GET_LOCAL : StaticWebCache.GET_ANYWHERE,
+                new ImageLoadResult(selectedImage),
+                StaticWebCache.DEFAULT_HTTP_GETTER_FACTORY,
+                offline ? OFFLINE_IMAGE_VIEW : FULL_IMAGE_VIEW);
+            
+            if (image == null) {
+                loadTask = task;
+            }
+            
+            task.join(100);
         }
+        catch (TimeoutException ex) {
+            // Normal for slow load
+        }
+        catch (Exception ex) {
+            //#debug
+            L.e("Can not join image load", selectedImage.imageUrl, ex);
+        }
+    }
+
+    /**
+     * Paints the image, the title and the author. Allocates nothing, the
+     * image is loaded and the title laid out in showNotify().
+     * @see javax.microedition.lcdui.Canvas#paint(javax.microedition.lcdui.Graphics)
+     */
+    public void paint(final Graphics graphics) {
+        MemoryGovernor.getInstance().onPaint();
+        checkThatScrollDoesNotExceedBoundaries();
         
-        //#debug
-        L.i("Paint DetailCanvas", selectedImage.imageUrl);
+        final PicasaImageObject selectedImage = PicasaStorage.getSelectedImage();
+        final TiledImage tiledImage = image;
         
         graphics.setColor(0x000000);
         graphics.fillRect(0, 0, getWidth(), getHeight());
-        graphics.setColor(0xffffff);
-        
-        boolean startingSpin = false;
-        
-        // If we do not have the image and we are not loading it, start loading it
-        if (image == null && !isSpinning()) {
-            startSpinner();
-            startingSpin = true;
-            
-            try {
-                PicasaStorage.imageCache.getAsync(
-                    selectedImage.imageUrl,
-                    Task.HIGH_PRIORITY,
-                    StaticWebCache.GET_ANYWHERE,
-                    new Task() {
-                        public Object exec(final Object in) {
-                            if (in != null
-                                && selectedImage == PicasaStorage.getSelectedImage())
-                            {
-                                image = (Image) in;
-                                stopSpinner();
-                                top = -calculateHeight() + getHeight();
-                            }
-                            
-                            return in;
-                        }
-                    }).join(100);
-            }
-            catch (TimeoutException ex) {
-                // Normal for slow load
-            }
-            catch (Exception ex) {
-                //#debug
-                L.e("Can not join image load", selectedImage.imageUrl, ex);
-            }
-        }
         
         if (isSpinning()) {
-            if (!startingSpin) {
-                drawSpinner(graphics);
-            }
+            drawSpinner(graphics);
         }
-        else if (image != null) {
-            // Done, draw image
-            graphics.drawImage(image, getWidth() / 2, scrollY,
-                Graphics.TOP | Graphics.HCENTER);
+        else if (tiledImage != null) {
+            // Done, draw the tiles in the viewport
+            tiledImage.paint(graphics, getImageX(), scrollY, zoomLevel,
+                getWidth(), getHeight());
         }
         
-        int textY = (image == null) ? 
+        int textY = (tiledImage == null) ? 
                 (int) yC + ((int) R) << 1 : 
-                image.getHeight() + scrollY;
+                tiledImage.getHeight(zoomLevel) + scrollY;
         
         graphics.setColor(0xFFFFFF);
         
         // Paint the description text
-        for (int i = 0; i < titleLines.size(); i++) {
-            graphics.drawString((String) titleLines.elementAt(i),
-                PADDING, textY,
-                Graphics.LEFT | Graphics.TOP);
-            textY += fontHeight;
+        if (titleLines != null) {
+            for (int i = 0; i < titleLines.length; i++) {
+                graphics.drawString(titleLines[i],
+                    PADDING, textY,
+                    Graphics.LEFT | Graphics.TOP);
+                textY += fontHeight;
+            }
         }
         
         // Paint the name of the author
@@ -204,13 +325,97 @@ public final class DetailCanvas
         return tapWasHandledAndConsumed;
     }
 
+    /**
+     * Pans the image horizontally in addition to the vertical scrolling.
+     * @see GestureCanvas#gestureDrag(int, int, int, int)
+     */
+    public void gestureDrag(int startX,
+                            int startY,
+                            int dragDistanceX,
+                            int dragDistanceY)
+    {
+        scrollX += dragDistanceX;
+        checkThatScrollXDoesNotExceedBoundaries();
+        super.gestureDrag(startX, startY, dragDistanceX, dragDistanceY);
+    }
+
+    /**
+     * Zooms the image. The point between the fingers stays in place.
+     * @see GestureCanvas#gesturePinch(int, int, int, int, int, int, int)
+     */
+    public void gesturePinch(int pinchDistanceStarting,
+                             int pinchDistanceCurrent,
+                             int pinchDistanceChange,
+                             int centerX,
+                             int centerY,
+                             int centerChangeX,
+                             int centerChangeY)
+    {
+        if (image == null || pinchDistanceStarting <= 0) {
+            return;
+        }
+        
+        if (this.pinchDistanceStarting != pinchDistanceStarting) {
+            // A new pinch gesture
+            this.pinchDistanceStarting = pinchDistanceStarting;
+            pinchStartZoom = TiledImage.ZOOM_LEVELS[zoomLevel];
+        }
+        
+        final int newZoomLevel = TiledImage.getClosestZoomLevel(
+                pinchStartZoom * pinchDistanceCurrent / pinchDistanceStarting,
+                fitZoomLevel);
+        
+        if (newZoomLevel != zoomLevel) {
+            final int oldZoom = TiledImage.ZOOM_LEVELS[zoomLevel];
+            final int newZoom = TiledImage.ZOOM_LEVELS[newZoomLevel];
+            final int imageX = getImageX();
+            
+            scrollX = centerX - (centerX - imageX) * newZoom / oldZoom;
+            scrollY = centerY - (centerY - scrollY) * newZoom / oldZoom;
+            zoomLevel = newZoomLevel;
+            
+            checkThatScrollXDoesNotExceedBoundaries();
+            top = -calculateHeight() + getHeight();
+            repaint();
+        }
+    }
+
+    /**
+     * @return The X coordinate of the left edge of the image. Images narrower
+     * than the view are centered.
+     */
+    private int getImageX() {
+        final int imageWidth = image.getWidth(zoomLevel);
+        
+        if (imageWidth <= width) {
+            return (width - imageWidth) / 2;
+        }
+        
+        return scrollX;
+    }
+
+    /**
+     * Makes sure the horizontal pan stays within the image.
+     */
+    private void checkThatScrollXDoesNotExceedBoundaries() {
+        final int minScrollX = image == null ? 0 : width - image.getWidth(zoomLevel);
+        
+        if (scrollX < minScrollX) {
+            scrollX = minScrollX;
+        }
+        
+        if (scrollX > 0) {
+            scrollX = 0;
+        }
+    }
+
     /**
      * Calculates the height of the view for the scrolling boundary.
      * @return The height of the view.
      */
     private int calculateHeight() {
-        int height = image == null ? 0 : image.getHeight();
-        height += titleLines == null ? 0 : titleLines.size() * fontHeight;
+        int height = image == null ? 0 : image.getHeight(zoomLevel);
+        height += titleLines == null ? 0 : titleLines.length * fontHeight;
         height += fontHeight; // Author
         height += PADDING * 2;
         
@@ -218,44 +423,73 @@ public final class DetailCanvas
             height = getHeight();
         }
         
-        System.out.println("DetailsCanvas.calculateHeight(): " + height);
         return height;
     }
 
     /**
-     * Split a string in to several lines of text which will display within a
-     * maximum width.
-     * 
-     * @param vector
-     * @param text
-     * @param font
-     * @param maxWidth 
+     * Receives the loaded image in the worker and takes it in use unless
+     * another image has been selected meanwhile.
      */
-    private void splitToLines(
-            final Vector vector,
-            final String text,
-            final Font font,
-            final int maxWidth)
-    {
-        int lastSpace = 0;
-        
-        for (int i = 0; i < text.length(); i++) {
-            if (text.charAt(i) == ' ') {
-                lastSpace = i;
+    private final class ImageLoadResult extends Task {
+        private final PicasaImageObject selectedImage;
+
+        ImageLoadResult(final PicasaImageObject selectedImage) {
+            this.selectedImage = selectedImage;
+        }
+
+        public Object exec(final Object in) {
+            if (in != null
+                && selectedImage == PicasaStorage.getSelectedImage())
+            {
+                final TiledImage tiledImage = new TiledImage(
+                        (Image) in, 2 * width * getHeight());
+                
+                fitZoomLevel = tiledImage.getFitZoomLevel(width);
+                zoomLevel = fitZoomLevel;
+                image = tiledImage;
+                loadTask = null;
+                stopSpinner();
+                top = -calculateHeight() + getHeight();
             }
             
-            final int len = font.stringWidth(text.substring(0, i));
-            
-            if (len > maxWidth) {
-                vector.addElement(text.substring(0, lastSpace + 1).trim());
-                splitToLines(vector,
-                             text.substring(lastSpace + 1),
-                             font,
-                             maxWidth);
-                return;
+            return in;
+        }
+        
+        /**
+         * The image is not available, e.g. not in the offline packs in the
+         * offline mode. Stops the spinner instead of waiting.
+         */
+        protected void onCanceled(final String reason) {
+            if (selectedImage == PicasaStorage.getSelectedImage()) {
+                loadTask = null;
+                stopSpinner();
+                repaint();
             }
         }
+    }
+
+    /**
+     * Decodes the full image without scaling it down to the screen size so
+     * that it can be zoomed in.
+     */
+    private static class FullImageTypeHandler implements CacheView {
+        private final boolean recorded;
+        
+        /**
+         * @param recorded True to record the image in the quota manager,
+         * false for the offline packs.
+         */
+        FullImageTypeHandler(final boolean recorded) {
+            this.recorded = recorded;
+        }
         
-        vector.addElement(text.trim());
-    } 
+        public Object convertToUseForm(Object key, byte[] bytes) {
+            if (recorded) {
+                QuotaManager.getInstance().record(PicasaStorage.IMAGE_CACHE_ID,
+                        (String) key, bytes.length, QuotaManager.TIER_FULL_IMAGE);
+            }
+            
+            return Image.createImage(bytes, 0, bytes.length);
+        }
+    }
 }
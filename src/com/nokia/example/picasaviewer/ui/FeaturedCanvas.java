@@ -12,14 +12,19 @@ package com.nokia.example.picasaviewer.ui;
 import javax.microedition.lcdui.Command;
 import javax.microedition.lcdui.Displayable;
 import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
 
+import org.tantalum.Task;
 import org.tantalum.net.StaticWebCache;
 import org.tantalum.util.L;
 
 import com.nokia.mid.ui.LCDUIUtil;
 
 import com.nokia.example.picasaviewer.PicasaViewer;
+import com.nokia.example.picasaviewer.common.OfflinePacks;
 import com.nokia.example.picasaviewer.common.PicasaStorage;
+import com.nokia.example.picasaviewer.common.SnapshotStore;
+import com.nokia.example.picasaviewer.common.WarmUpScheduler;
 import com.nokia.example.picasaviewer.util.ViewManager;
 
 /**
@@ -30,10 +35,14 @@ public final class FeaturedCanvas
         extends ImageGridCanvas
 {
     private static final float CATEGORY_BAR_OPACITY = 0.7f;
+    private static final int SNAPSHOT_TIMEOUT = 5000; // ms, if loading is slow
     private CustomCategoryBar customCategoryBar = null;
     private Command searchCommand = null;
     private Command exitCommand = null;
     private Command refreshCommand = null;
+    private Command historyCommand = null;
+    private SnapshotStore.Snapshot snapshot = null;
+    private long snapshotShown = 0;
 
     /**
      * Constructor.
@@ -79,20 +88,34 @@ public final class FeaturedCanvas
         // Refresh is initialized whether there is a category bar or not
         refreshCommand = new Command("Refresh", Command.OK, 0);
         addCommand(refreshCommand);
+        historyCommand = new Command("History", Command.SCREEN, 2);
+        addCommand(historyCommand);
         
         if (PicasaViewer.HAS_ONE_KEY_BACK) {
             exitCommand = new Command("Exit", Command.EXIT, 0);
             addCommand(exitCommand);
         }
         
-        try {
-            PicasaStorage.init(getWidth());
-            loadFeed(null, StaticWebCache.GET_ANYWHERE).join(200);
+        // Paint the last session's grid until the thumbnails are loaded
+        snapshot = SnapshotStore.load(getWidth(), getHeight());
+        
+        if (snapshot != null
+            && snapshot.columns >= MIN_COLUMNS
+            && snapshot.columns <= MAX_COLUMNS)
+        {
+            columns = snapshot.columns;
+            imageSide = getWidth() / columns;
+            restoredScrollY = snapshot.scrollY;
         }
-        catch (Exception ex) {
-            //#debug
-            L.e("Slow initial feed load", null, ex);
+        else {
+            snapshot = null;
         }
+        
+        // The feed is shown when loaded, the first frame does not wait for it
+        PicasaStorage.init(getWidth());
+        OfflinePacks.getInstance().init();
+        loadFeed(null, PicasaStorage.GET_STALE_WHILE_REVALIDATE);
+        WarmUpScheduler.getInstance().setThumbnailSide(imageSide);
     }
 
     /**
@@ -100,6 +123,8 @@ public final class FeaturedCanvas
      * @see javax.microedition.lcdui.Canvas#showNotify()
      */
     public void showNotify() {
+        checkOfflineMode();
+        
         if (viewManager.supportsCategoryBar()) {
             viewManager.getCategoryBarHandler().setVisibility(true);
             
@@ -115,9 +140,16 @@ public final class FeaturedCanvas
      * javax.microedition.lcdui.Command, javax.microedition.lcdui.Displayable)
      */
     public void commandAction(Command command, Displayable displayable) {
+        if (handleOfflineCommand(command)) {
+            return;
+        }
+        
         if (command == refreshCommand) {
             refresh(null, StaticWebCache.GET_WEB);
         }
+        else if (command == historyCommand) {
+            viewManager.showView(ViewManager.HISTORY_VIEW_INDEX);
+        }
         else if (command == searchCommand) {
             viewManager.showView(ViewManager.SEARCH_VIEW_INDEX);
         }
@@ -133,32 +165,74 @@ public final class FeaturedCanvas
         checkThatScrollDoesNotExceedBoundaries();
         drawGrid(graphics, 0);
         
+        if (snapshot != null) {
+            if (snapshotShown == 0) {
+                snapshotShown = System.currentTimeMillis();
+            }
+            
+            if (isViewportLoaded()
+                || System.currentTimeMillis() - snapshotShown > SNAPSHOT_TIMEOUT)
+            {
+                snapshot = null;
+            }
+            else {
+                graphics.drawImage(snapshot.image, 0, 0,
+                        Graphics.TOP | Graphics.LEFT);
+            }
+        }
+        
         if (customCategoryBar != null) {
             customCategoryBar.paint(graphics, getHeight() - CustomCategoryBar.HEIGHT);
         }
     }
 
     /**
-     * Reloads the content on pinch.
-     * @see GestureCanvas#gesturePinch(int, int, int, int, int, int, int)
+     * Saves a snapshot of the grid for the next startup. The images of the
+     * viewport are taken before the thumbnails are released and drawn in
+     * an idle task, once the application has released its caches. The
+     * warm-up fetches the thumbnails of the size the grid was left in.
+     * @see ImageGridCanvas#onPause()
      */
-    public void gesturePinch(int pinchDistanceStarting,
-                             int pinchDistanceCurrent,
-                             int pinchDistanceChange,
-                             int centerX,
-                             int centerY,
-                             int centerChangeX,
-                             int centerChangeY)
-    {
-        refresh(null, StaticWebCache.GET_WEB);
+    public void onPause() {
+        WarmUpScheduler.getInstance().setThumbnailSide(imageSide);
+        
+        final Viewport viewport = isViewportLoaded() ? captureViewport(0) : null;
+        final int snapshotScrollY = scrollY;
+        final int snapshotColumns = columns;
+        
+        super.onPause();
+        
+        if (viewport != null) {
+            final int width = getWidth();
+            final int height = getHeight();
+            
+            new Task(Task.IDLE_PRIORITY) {
+                protected Object exec(final Object in) {
+                    final Image image = Image.createImage(width, height);
+                    final int[] argb = new int[width * height];
+                    
+                    viewport.draw(image.getGraphics(), width, height);
+                    image.getRGB(argb, 0, width, 0, 0, width, height);
+                    SnapshotStore.saveAsync(argb, width, height,
+                            snapshotScrollY, snapshotColumns);
+                    
+                    return in;
+                }
+            }.setShutdownBehaviour(Task.EXECUTE_NORMALLY_ON_SHUTDOWN).fork();
+        }
     }
 
-
     // Methods for forwarding touch events to custom category bar ->
 
     protected void pointerPressed(int x, int y) {
         super.pointerPressed(x, y);
         
+        // The real grid is shown once the user touches it
+        if (snapshot != null) {
+            snapshot = null;
+            repaint();
+        }
+        
         if (customCategoryBar != null) {
             customCategoryBar.onPointerPressed(x, y);
             repaint();
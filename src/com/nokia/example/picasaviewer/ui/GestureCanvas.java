@@ -123,6 +123,28 @@ public abstract class GestureCanvas
         stopSpinner();
     }
 
+    /**
+     * Called when the application is paused. Stops the animations and the
+     * spinner. Override to release resources, the scroll position is kept.
+     */
+    public void onPause() {
+        animating = false;
+        
+        if (gestureHandler != null) {
+            gestureHandler.stopAnimator();
+        }
+        
+        stopSpinner();
+    }
+
+    /**
+     * Called when the application is resumed. Override to restore the
+     * resources released in onPause().
+     */
+    public void onResume() {
+        repaint();
+    }
+
     /**
      * @see javax.microedition.lcdui.Canvas#sizeChanged(int, int)
      */
@@ -161,13 +183,9 @@ public abstract class GestureCanvas
      */
     protected void checkThatScrollDoesNotExceedBoundaries() {
         if (scrollY < top) {
-            //#debug
-            L.i("checkScroll", "bang top scrollY=" + scrollY + " top=" + top);
             scrollY = top;
         }
         else if (scrollY > 0) {
-            //#debug
-            L.i("checkScroll", "bang bottom scrollY=" + scrollY);
             scrollY = 0;
         }
     }
@@ -355,7 +373,6 @@ public abstract class GestureCanvas
                             int dragDistanceX,
                             int dragDistanceY)
     {
-        System.out.println("GestureCanvas.gestureDrop()");
         yOffset = 0;
     }
 
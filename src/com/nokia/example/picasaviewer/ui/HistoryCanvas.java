@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.ui;
+
+import java.util.Vector;
+
+import javax.microedition.lcdui.Command;
+import javax.microedition.lcdui.Displayable;
+import javax.microedition.lcdui.Graphics;
+
+import org.tantalum.Task;
+import org.tantalum.util.L;
+
+import com.nokia.example.picasaviewer.common.HistoryStore;
+import com.nokia.example.picasaviewer.util.ViewManager;
+
+/**
+ * Class for displaying the images the user has viewed or starred. The entries
+ * are read from the HistoryStore a page at a time as the user scrolls.
+ */
+public final class HistoryCanvas
+        extends ImageGridCanvas
+{
+    private final Command backCommand = new Command("Back", Command.BACK, 0);
+    private final Command favouritesCommand =
+            new Command("Favourites", Command.SCREEN, 1);
+    private final Command historyCommand =
+            new Command("History", Command.SCREEN, 1);
+    private int list = HistoryStore.LIST_HISTORY;
+    private int pagesLoaded = 0;
+    private boolean loadingPage = false;
+    private Task pageTask = null;
+    private int reloads = 0;
+    private int loadedChanges = -1; // HistoryStore.getChanges() of the list when reloaded
+    private boolean allPagesLoaded = false;
+
+    /**
+     * Constructor.
+     * @param viewManager
+     */
+    public HistoryCanvas(ViewManager viewManager) {
+        super(viewManager);
+
+        setFullScreenMode(true);
+        addCommand(backCommand);
+        addCommand(favouritesCommand);
+    }
+
+    /**
+     * Hides the category bar and reloads the first page if the list has
+     * changed while the view was hidden, e.g. an image opened from the
+     * history moves to the top. Otherwise the loaded entries and the scroll
+     * position are kept.
+     * @see javax.microedition.lcdui.Canvas#showNotify()
+     */
+    public void showNotify() {
+        if (viewManager.supportsCategoryBar()) {
+            viewManager.getCategoryBarHandler().setVisibility(false);
+        }
+
+        if (HistoryStore.getInstance().getChanges(list) != loadedChanges) {
+            reload();
+        }
+    }
+
+    /**
+     * @see javax.microedition.lcdui.CommandListener#commandAction(
+     * javax.microedition.lcdui.Command, javax.microedition.lcdui.Displayable)
+     */
+    public void commandAction(Command command, Displayable displayable) {
+        if (command == backCommand) {
+            viewManager.showView(ViewManager.FEATURED_VIEW_INDEX);
+        }
+        else if (command == favouritesCommand) {
+            removeCommand(favouritesCommand);
+            addCommand(historyCommand);
+            list = HistoryStore.LIST_FAVOURITES;
+            reload();
+        }
+        else if (command == historyCommand) {
+            removeCommand(historyCommand);
+            addCommand(favouritesCommand);
+            list = HistoryStore.LIST_HISTORY;
+            reload();
+        }
+    }
+
+    /**
+     * @see javax.microedition.lcdui.Canvas#paint(Graphics)
+     */
+    public void paint(final Graphics graphics) {
+        checkThatScrollDoesNotExceedBoundaries();
+        drawGrid(graphics, 0);
+        drawBackIcon(graphics);
+
+        // Load the next page when the last rows become visible
+        final int lastVisibleIndex = getItemIndex(getWidth() - 1, getHeight() - 1);
+
+        if (lastVisibleIndex >= imageObjectModel.size() - columns) {
+            loadNextPage();
+        }
+    }
+
+    /**
+     * Drops the loaded entries, cancels the page being read and loads the
+     * first page.
+     */
+    private void reload() {
+        if (pageTask != null) {
+            pageTask.cancel(false, "History reloaded");
+            pageTask = null;
+        }
+
+        reloads++;
+        loadedChanges = HistoryStore.getInstance().getChanges(list);
+        loadingPage = false;
+        imageObjectModel.removeAllElements();
+        clearImages();
+        scrollY = 0;
+        pagesLoaded = 0;
+        allPagesLoaded = false;
+        updateScrollBoundary();
+        loadNextPage();
+    }
+
+    /**
+     * Reads the next page of entries from flash in the background.
+     */
+    private void loadNextPage() {
+        if (loadingPage || allPagesLoaded) {
+            return;
+        }
+
+        loadingPage = true;
+
+        // A page read before a reload is not appended to the new list
+        final int loadingReload = reloads;
+
+        pageTask = HistoryStore.getInstance().getPageAsync(list, pagesLoaded,
+            new Task(Task.UI_PRIORITY) {
+                protected Object exec(final Object in) {
+                    if (loadingReload != reloads) {
+                        return in;
+                    }
+
+                    loadingPage = false;
+                    pageTask = null;
+
+                    if (in == null) {
+                        return in;
+                    }
+
+                    final Vector page = (Vector) in;
+
+                    //#debug
+                    L.i("History page loaded", "page=" + pagesLoaded + " size=" + page.size());
+
+                    for (int i = 0; i < page.size(); i++) {
+                        imageObjectModel.addElement(page.elementAt(i));
+                    }
+
+                    pagesLoaded++;
+                    allPagesLoaded = page.size() < HistoryStore.PAGE_SIZE;
+                    updateScrollBoundary();
+                    repaint();
+
+                    return in;
+                }
+            });
+    }
+}
@@ -9,19 +9,29 @@
 
 package com.nokia.example.picasaviewer.ui;
 
+import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.TimerTask;
 import java.util.Vector;
 
+import javax.microedition.lcdui.Command;
 import javax.microedition.lcdui.Graphics;
 import javax.microedition.lcdui.Image;
 
+import org.tantalum.PlatformUtils;
 import org.tantalum.Task;
 import org.tantalum.net.StaticWebCache;
 import org.tantalum.storage.FlashDatabaseException;
 import org.tantalum.util.L;
 
+import com.nokia.example.picasaviewer.common.ModelDiff;
+import com.nokia.example.picasaviewer.common.OfflinePacks;
 import com.nokia.example.picasaviewer.common.PicasaImageObject;
 import com.nokia.example.picasaviewer.common.PicasaStorage;
+import com.nokia.example.picasaviewer.common.ThumbnailAtlas;
+import com.nokia.example.picasaviewer.common.ThumbnailPipeline;
+import com.nokia.example.picasaviewer.util.ImageUtils;
+import com.nokia.example.picasaviewer.util.MemoryGovernor;
 import com.nokia.example.picasaviewer.util.ViewManager;
 
 
@@ -31,13 +41,55 @@ import com.nokia.example.picasaviewer.util.ViewManager;
  */
 public abstract class ImageGridCanvas 
         extends GestureCanvas
+        implements ThumbnailPipeline.Listener, ModelDiff.Listener
 {
+    // Constants
+    protected static final int MIN_COLUMNS = 1;
+    protected static final int MAX_COLUMNS = 4;
+    protected static final int DEFAULT_COLUMNS = 2;
+    private static final int PINCH_SETTLE_DELAY = 300; // ms
+    private static final int MIN_CAPTION_TILE_SIDE = 96; // Smaller tiles have no captions
+    private static final int KEPT_ROWS = 2; // Decoded rows kept above and below the screen
+
+    // Members
     protected final Hashtable images = new Hashtable();
     protected final Vector imageObjectModel = new Vector(); // Access only from UI thread
     protected final ViewManager viewManager;
-    protected final int imageSide;
+    protected int columns = DEFAULT_COLUMNS;
+    protected int imageSide;
     protected int headerHeight = 0;
     protected boolean statusBarVisible = true;
+    private final Hashtable scaledImages = new Hashtable(); // Tile sized copies
+    private final Hashtable loadedThumbUrls = new Hashtable();
+    private final Hashtable captions = new Hashtable(); // Rendered caption images
+    private static CaptionRenderer captionRenderer = null;
+    private final ThumbnailPipeline thumbnailPipeline = new ThumbnailPipeline(this);
+    private volatile int firstVisibleIndex = 0;
+    private volatile int lastVisibleIndex = -1;
+    private int missingVisibleTiles = 0; // Visible tiles without a thumbnail
+    protected int restoredScrollY = 0; // Scroll position after the next load
+    private int feedRequest = 0; // Sequence number of the latest loadFeed()
+    private int freshRequest = -1; // The latest request with a web result
+    private String displayedSearch = null;
+    private int firstChanged; // Items changed by the latest feed, UI thread only
+    private int lastChanged;
+    private TimerTask pinchSettleTask = null;
+    private ThumbnailAtlas atlas = null; // Thumbnails of the displayed feed
+    private ThumbnailAtlas.Builder atlasBuilder = null;
+    private String atlasFeedUrl = null; // The feed of the atlas and the builder
+    private boolean atlasLoading = false;
+    private int pinchStartColumns = 0;
+    private final Command pinCommand = new Command("Keep offline", Command.SCREEN, 3);
+    private final Command unpinCommand =
+            new Command("Remove offline copy", Command.SCREEN, 3);
+    private final Command offlineModeCommand =
+            new Command("Browse offline", Command.SCREEN, 4);
+    private final Command onlineModeCommand =
+            new Command("Browse online", Command.SCREEN, 4);
+    private boolean feedRequested = false; // loadFeed() has been called
+    private String requestedSearch = null; // Of the latest loadFeed()
+    private boolean loadedOffline = false; // The mode of the latest loadFeed()
+    private boolean unavailableOffline = false; // The feed has no offline pack
 
     /**
      * Constructor.
@@ -46,8 +98,206 @@ public abstract class ImageGridCanvas
     public ImageGridCanvas(ViewManager viewManager) {
         super(viewManager);
         this.viewManager = viewManager;
-        imageSide = getWidth() / 2;
+        imageSide = getWidth() / columns;
         headerHeight = 0;
+        
+        if (captionRenderer == null) {
+            captionRenderer = new CaptionRenderer();
+        }
+        
+        MemoryGovernor.getInstance().register(new MemoryGovernor.Cache() {
+            public int getFootprint() {
+                return getImagesFootprint();
+            }
+            
+            public void shrink(final int tier) {
+                shrinkImages(tier);
+            }
+        });
+    }
+
+    /**
+     * Changes the grid density live while pinching. Spreading the fingers
+     * makes the tiles larger (less columns) and vice versa. The thumbnails
+     * already in memory are scaled to the new tile size and replaced with
+     * thumbnails of a more suitable resolution once the gesture settles.
+     * @see GestureCanvas#gesturePinch(int, int, int, int, int, int, int)
+     */
+    public void gesturePinch(int pinchDistanceStarting,
+                             int pinchDistanceCurrent,
+                             int pinchDistanceChange,
+                             int centerX,
+                             int centerY,
+                             int centerChangeX,
+                             int centerChangeY)
+    {
+        if (pinchDistanceCurrent <= 0) {
+            return;
+        }
+        
+        if (pinchStartColumns == 0) {
+            pinchStartColumns = columns;
+        }
+        
+        // Round to the nearest column count
+        int newColumns = (2 * pinchStartColumns * pinchDistanceStarting
+                + pinchDistanceCurrent) / (2 * pinchDistanceCurrent);
+        
+        if (newColumns < MIN_COLUMNS) {
+            newColumns = MIN_COLUMNS;
+        }
+        else if (newColumns > MAX_COLUMNS) {
+            newColumns = MAX_COLUMNS;
+        }
+        
+        if (newColumns != columns) {
+            setColumns(newColumns, centerX, centerY);
+        }
+        
+        schedulePinchSettle();
+    }
+
+    /**
+     * Sets the number of columns in the grid. Keeps the tile under the given
+     * anchor point in place.
+     * @param newColumns The new number of columns.
+     * @param anchorX The X coordinate of the anchor point.
+     * @param anchorY The Y coordinate of the anchor point.
+     */
+    protected void setColumns(final int newColumns,
+                              final int anchorX,
+                              final int anchorY)
+    {
+        final int anchorIndex = getItemIndex(anchorX, anchorY);
+        
+        columns = newColumns;
+        imageSide = getWidth() / columns;
+        
+        if (anchorIndex >= 0) {
+            scrollY = -((anchorIndex / columns) * imageSide
+                    - (anchorY - headerHeight));
+        }
+        
+        updateScrollBoundary();
+        repaint();
+    }
+
+    /**
+     * (Re)starts the timer that detects when the pinch gesture has settled.
+     */
+    private synchronized void schedulePinchSettle() {
+        if (pinchSettleTask != null) {
+            pinchSettleTask.cancel();
+        }
+        
+        pinchSettleTask = new TimerTask() {
+            public void run() {
+                PlatformUtils.getInstance().runOnUiThread(new Runnable() {
+                    public void run() {
+                        onPinchSettled();
+                    }
+                });
+            }
+        };
+        
+        spinTimer.schedule(pinchSettleTask, PINCH_SETTLE_DELAY);
+    }
+
+    /**
+     * Requests thumbnails matching the new tile size in the background. The
+     * scaled thumbnails are shown until the new ones are loaded.
+     */
+    private void onPinchSettled() {
+        synchronized (this) {
+            pinchSettleTask = null;
+        }
+        
+        pinchStartColumns = 0;
+        startAtlasBuilder();
+        
+        for (int i = 0; i < imageObjectModel.size(); i++) {
+            final PicasaImageObject picasaImageObject =
+                    (PicasaImageObject) imageObjectModel.elementAt(i);
+            
+            if (picasaImageObject.thumbUrl.length() == 0) {
+                continue;
+            }
+            
+            final String thumbUrl = PicasaStorage.getThumbUrl(
+                    picasaImageObject.thumbUrl, imageSide);
+            
+            if (images.containsKey(picasaImageObject)
+                && !thumbUrl.equals(loadedThumbUrls.get(picasaImageObject)))
+            {
+                thumbnailPipeline.request(picasaImageObject, thumbUrl,
+                        imageSide);
+            }
+        }
+    }
+
+    /**
+     * Cancels the thumbnail loads and releases the thumbnails. The model and
+     * the scroll position are kept.
+     * @see GestureCanvas#onPause()
+     */
+    public void onPause() {
+        super.onPause();
+        
+        synchronized (this) {
+            if (pinchSettleTask != null) {
+                pinchSettleTask.cancel();
+                pinchSettleTask = null;
+            }
+        }
+        
+        pinchStartColumns = 0;
+        thumbnailPipeline.cancel();
+        missingVisibleTiles = lastVisibleIndex - firstVisibleIndex + 1;
+        images.clear();
+        scaledImages.clear();
+        loadedThumbUrls.clear();
+        captions.clear();
+        clearAtlas();
+    }
+
+    /**
+     * Requests the thumbnails from the flash cache, the visible ones first.
+     * @see GestureCanvas#onResume()
+     */
+    public void onResume() {
+        if (isShown()) {
+            final int size = imageObjectModel.size();
+            final int firstVisible = firstVisibleIndex;
+            final int lastVisible = Math.min(lastVisibleIndex, size - 1);
+            final int first = Math.max(0, firstVisible - columns);
+            final int last = Math.min(size - 1, lastVisible + columns);
+            
+            // The pipeline starts the latest requests first
+            for (int i = last; i > lastVisible; i--) {
+                requestThumbnail(i);
+            }
+            
+            for (int i = first; i < firstVisible; i++) {
+                requestThumbnail(i);
+            }
+            
+            for (int i = lastVisible; i >= firstVisible; i--) {
+                requestThumbnail(i);
+            }
+        }
+        
+        super.onResume();
+    }
+
+    private void requestThumbnail(final int index) {
+        final PicasaImageObject picasaImageObject =
+                (PicasaImageObject) imageObjectModel.elementAt(index);
+        
+        if (picasaImageObject.thumbUrl.length() > 0) {
+            thumbnailPipeline.request(picasaImageObject,
+                    PicasaStorage.getThumbUrl(picasaImageObject.thumbUrl, imageSide),
+                    imageSide);
+        }
     }
 
     /**
@@ -88,21 +338,51 @@ public abstract class ImageGridCanvas
     }
 
     /**
-     * @param search
-     * @param getType
-     * @return
+     * Loads the feed. With PicasaStorage.GET_STALE_WHILE_REVALIDATE the
+     * cached feed is shown at once and replaced with the fresh one when it
+     * arrives. In the offline mode the feed is loaded from the offline packs
+     * whatever the get type.
+     * @param search The search term or null for the featured feed.
+     * @param getType The StaticWebCache get type or
+     * PicasaStorage.GET_STALE_WHILE_REVALIDATE.
+     * @return The task which receives the feed from the web, or from the
+     * cache if the feed is not loaded from the web.
      */
-    public Task loadFeed(final String search, final int getType) {
+    public Task loadFeed(final String search, int getType) {
         //#debug
         L.i("loadFeed", search);
 
-        final Task task = new LoadFeedTask(search, getType);
+        final int request = ++feedRequest;
+        final Task task;
+        
+        feedRequested = true;
+        requestedSearch = search;
+        loadedOffline = PicasaStorage.isOfflineMode();
+        unavailableOffline = false;
+        updateOfflineCommands();
+        
+        if (loadedOffline) {
+            // Only the offline packs, never waits for the network
+            getType = StaticWebCache.GET_LOCAL;
+        }
         
-        PicasaStorage.getImageObjects(
-                search, 
-                Task.HIGH_PRIORITY, 
-                getType, 
-                task);
+        if (getType == PicasaStorage.GET_STALE_WHILE_REVALIDATE) {
+            task = new LoadFeedTask(search, StaticWebCache.GET_WEB, request);
+            PicasaStorage.getImageObjects(
+                    search,
+                    Task.HIGH_PRIORITY,
+                    new LoadFeedTask(search, StaticWebCache.GET_LOCAL, request)
+                        .setStale(),
+                    task);
+        }
+        else {
+            task = new LoadFeedTask(search, getType, request);
+            PicasaStorage.getImageObjects(
+                    search, 
+                    Task.HIGH_PRIORITY, 
+                    getType, 
+                    task);
+        }
         
         if (getType != StaticWebCache.GET_LOCAL) {
             startSpinner();
@@ -112,59 +392,695 @@ public abstract class ImageGridCanvas
     }
 
     /**
-     * Draw images, starting at the specified Y
+     * Draw images, starting at the specified Y. Allocates nothing once the
+     * visible thumbnails and their captions are in memory.
      *
      * @param startY
      */
     public void drawGrid(final Graphics g, final int startY) {
+        MemoryGovernor.getInstance().onPaint();
+        
+        final int width = getWidth();
+        final int height = getHeight();
+        final int size = imageObjectModel.size();
+        final int side = imageSide;
+        final boolean drawCaptions = side >= MIN_CAPTION_TILE_SIDE;
+        
         g.setColor(0x000000);
-        g.fillRect(0, startY, getWidth(), getHeight() - startY);
+        g.fillRect(0, startY, width, height - startY);
         
-        for (int i = 0; i < imageObjectModel.size(); i++) {
-            int xPosition = i % 2 * (getWidth() / 2);
-            int yPosition = startY + scrollY + ((i - i % 2) / 2) * imageSide;
+        // Skip the rows scrolled above the view
+        int first = Math.max(0, (-scrollY / side) * columns);
+        int i = first;
+        int missing = 0;
+        
+        for (; i < size; i++) {
+            final int xPosition = (i % columns) * side;
+            final int yPosition = startY + scrollY + (i / columns) * side;
             
-            if (yPosition > getHeight()) {
+            if (yPosition > height) {
                 break;
             }
             
-            // If image is in RAM
-            if (images.containsKey(imageObjectModel.elementAt(i))) {
-                g.drawImage(
-                        (Image) (images.get(imageObjectModel.elementAt(i))), 
-                        xPosition, 
-                        yPosition, 
-                        Graphics.LEFT | Graphics.TOP);
+            final PicasaImageObject picasaImageObject =
+                    (PicasaImageObject) imageObjectModel.elementAt(i);
+            final Image image = (Image) images.get(picasaImageObject);
+            final int atlasIndex = image == null && atlas != null
+                    && atlas.getSide() == side ?
+                    atlas.indexOf(picasaImageObject.thumbUrl) :
+                    -1;
+            
+            // If image is in RAM, as such or in the atlas of the feed
+            if (image != null || atlasIndex >= 0) {
+                if (image != null) {
+                    g.drawImage(
+                            getTileImage(picasaImageObject, image), 
+                            xPosition, 
+                            yPosition, 
+                            Graphics.LEFT | Graphics.TOP);
+                }
+                else {
+                    atlas.draw(g, atlasIndex, xPosition, yPosition);
+                }
+                
+                if (drawCaptions) {
+                    g.drawImage(
+                            getCaptionImage(picasaImageObject),
+                            xPosition,
+                            yPosition + side - captionRenderer.getHeight(),
+                            Graphics.LEFT | Graphics.TOP);
+                }
             }
-            else {
+            else if (picasaImageObject.thumbUrl.length() == 0) {
                 // If there were no results
-                PicasaImageObject picasaImageObject =
+                g.setColor(0xFFFFFF);
+                g.drawString(
+                        "No Result.", 
+                        0, 
+                        headerHeight, 
+                        Graphics.TOP | Graphics.LEFT);
+            }
+            else {
+                // Start loading the image, draw a placeholder. While the atlas
+                // of the feed is loading, the thumbnails are likely in it.
+                if (!atlasLoading
+                    && !thumbnailPipeline.isRequested(picasaImageObject))
+                {
+                    thumbnailPipeline.request(picasaImageObject,
+                            PicasaStorage.getThumbUrl(
+                                picasaImageObject.thumbUrl, side),
+                            side);
+                }
+                
+                g.setColor(0x111111);
+                g.fillRect(xPosition, yPosition, side, side);
+                missing++;
+            }
+        }
+        
+        if (size == 0 && unavailableOffline) {
+            g.setColor(0xFFFFFF);
+            g.drawString(
+                    "Not available offline.", 
+                    0, 
+                    headerHeight, 
+                    Graphics.TOP | Graphics.LEFT);
+        }
+        
+        final boolean scrolled = first != firstVisibleIndex;
+        
+        firstVisibleIndex = first;
+        missingVisibleTiles = missing;
+        lastVisibleIndex = i - 1;
+        
+        if (scrolled) {
+            releaseScrolledImages();
+        }
+        
+        drawSpinner(g);
+    }
+
+    /**
+     * Takes the images painted last on the visible tiles, so that the
+     * viewport can be drawn after the thumbnails have been released, e.g.
+     * into a snapshot. Loads and allocates nothing else.
+     * @param startY The Y the grid was drawn at.
+     * @return The viewport, or null if a visible tile has no thumbnail.
+     */
+    protected Viewport captureViewport(final int startY) {
+        final int size = imageObjectModel.size();
+        final int first = firstVisibleIndex;
+        final int last = Math.min(lastVisibleIndex, size - 1);
+        final int side = imageSide;
+        final boolean drawCaptions = side >= MIN_CAPTION_TILE_SIDE;
+        final Viewport viewport = new Viewport(2 * (last - first + 1));
+        
+        for (int i = first; i <= last; i++) {
+            final int xPosition = (i % columns) * side;
+            final int yPosition = startY + scrollY + (i / columns) * side;
+            final PicasaImageObject picasaImageObject =
+                    (PicasaImageObject) imageObjectModel.elementAt(i);
+            Image tile = (Image) images.get(picasaImageObject);
+            
+            if (tile != null && tile.getWidth() != side) {
+                tile = (Image) scaledImages.get(picasaImageObject);
+            }
+            else if (tile == null && atlas != null && atlas.getSide() == side) {
+                final int atlasIndex = atlas.indexOf(picasaImageObject.thumbUrl);
+                
+                tile = atlasIndex >= 0 ? atlas.getTile(atlasIndex) : null;
+            }
+            
+            if (tile == null || tile.getWidth() != side) {
+                return null;
+            }
+            
+            viewport.add(tile, xPosition, yPosition);
+            
+            final Image caption = drawCaptions ?
+                    (Image) captions.get(picasaImageObject) : null;
+            
+            if (caption != null && caption.getWidth() == side) {
+                viewport.add(caption, xPosition,
+                        yPosition + side - captionRenderer.getHeight());
+            }
+        }
+        
+        return viewport;
+    }
+
+    /**
+     * @return True if the model has been loaded and all the tiles painted
+     * last have their thumbnails.
+     */
+    protected boolean isViewportLoaded() {
+        return !imageObjectModel.isEmpty() && missingVisibleTiles == 0;
+    }
+
+    /**
+     * A tile is considered visible if it is on screen or in the row next to
+     * the screen. The tile is looked up by the thumbnail URL of the image
+     * object, as the feed may have been updated since the thumbnail was
+     * requested. Holds the lock of the model only for the rows checked and
+     * allocates nothing.
+     * @see ThumbnailPipeline.Listener#isVisible(Object)
+     */
+    public boolean isVisible(final Object key) {
+        final String thumbUrl = ((PicasaImageObject) key).thumbUrl;
+        
+        synchronized (imageObjectModel) {
+            final int first = Math.max(0, firstVisibleIndex - columns);
+            final int last = Math.min(imageObjectModel.size() - 1,
+                    lastVisibleIndex + columns);
+            
+            for (int i = first; i <= last; i++) {
+                final PicasaImageObject picasaImageObject =
                         (PicasaImageObject) imageObjectModel.elementAt(i);
                 
-                if (picasaImageObject.thumbUrl.length() == 0) {
-                    g.setColor(0xFFFFFF);
-                    g.drawString(
-                            "No Result.", 
-                            0, 
-                            headerHeight, 
-                            Graphics.TOP | Graphics.LEFT);
-                    
-                }
-                else {
-                    // Start loading the image, draw a placeholder
-                    PicasaStorage.imageCache.getAsync(
-                            picasaImageObject.thumbUrl,
-                            Task.NORMAL_PRIORITY, 
-                            StaticWebCache.GET_ANYWHERE, 
-                            new ImageResult(picasaImageObject));
-                    
-                    g.setColor(0x111111);
-                    g.fillRect(xPosition, yPosition, imageSide, imageSide);
+                if (picasaImageObject.thumbUrl.equals(thumbUrl)) {
+                    return true;
                 }
             }
         }
         
-        drawSpinner(g);
+        return false;
+    }
+
+    /**
+     * @see ThumbnailPipeline.Listener#thumbnailReady(Object, String, Image)
+     */
+    public void thumbnailReady(final Object key,
+                               final String url,
+                               final Image image)
+    {
+        final Image previous = (Image) images.put(key, image);
+        
+        if (previous != image) {
+            thumbnailPipeline.recycle(previous);
+        }
+        
+        releaseScaledImage(key);
+        loadedThumbUrls.put(key, url);
+        
+        if (atlasBuilder != null
+            && atlasBuilder.add(imageObjectModel.indexOf(key),
+                    ((PicasaImageObject) key).thumbUrl, url, image))
+        {
+            atlasBuilder = null;
+        }
+        
+        repaint();
+    }
+
+    /**
+     * Returns the image to draw for the given key. If the decoded thumbnail
+     * does not match the current tile size, e.g. during a pinch, a scaled
+     * copy is created once and reused until the tile size changes again.
+     * The square copies are drawn into tiles of the pool and given back
+     * like the thumbnails, e.g. when scrolled away after the pinch.
+     *
+     * @param key The key of the image.
+     * @param image The decoded thumbnail of the key.
+     * @return The image sized for the current tile.
+     */
+    private Image getTileImage(final Object key, final Image image) {
+        if (image.getWidth() == imageSide) {
+            return image;
+        }
+        
+        Image scaled = (Image) scaledImages.get(key);
+        
+        if (scaled == null || scaled.getWidth() != imageSide) {
+            thumbnailPipeline.recycle(scaled);
+            
+            if (image.getHeight() >= image.getWidth()) {
+                scaled = ImageUtils.scaleInto(image,
+                        ThumbnailPipeline.getTilePool().acquire(imageSide));
+            }
+            else {
+                scaled = ImageUtils.scale(image, imageSide,
+                        image.getHeight() * imageSide / image.getWidth());
+            }
+            
+            scaledImages.put(key, scaled);
+        }
+        
+        return scaled;
+    }
+
+    /**
+     * Returns the caption image of the given image object. The caption is
+     * rendered once per tile size and drawn with a single drawImage after
+     * that.
+     *
+     * @param picasaImageObject The image object.
+     * @return The caption image.
+     */
+    private Image getCaptionImage(final PicasaImageObject picasaImageObject) {
+        Image caption = (Image) captions.get(picasaImageObject);
+        
+        if (caption == null || caption.getWidth() != imageSide) {
+            caption = captionRenderer.render(picasaImageObject, imageSide);
+            captions.put(picasaImageObject, caption);
+        }
+        
+        return caption;
+    }
+
+    /**
+     * Updates the scroll boundary based on the size of the model and the
+     * current grid density.
+     */
+    protected void updateScrollBoundary() {
+        final int rows = (imageObjectModel.size() + columns - 1) / columns;
+        top = -(rows * imageSide - getHeight() / 2) + imageSide - 20;
+    }
+
+    /**
+     * Clears the images held in memory. The tiles are given back to the
+     * thumbnail pipeline for reuse.
+     */
+    protected void clearImages() {
+        thumbnailPipeline.clear();
+        
+        final Enumeration elements = images.elements();
+        
+        while (elements.hasMoreElements()) {
+            thumbnailPipeline.recycle((Image) elements.nextElement());
+        }
+        
+        images.clear();
+        clearScaledImages();
+        loadedThumbUrls.clear();
+        captions.clear();
+        clearAtlas();
+    }
+
+    /**
+     * @return The estimated number of bytes held by the thumbnails, the
+     * scaled copies, the captions and the atlas, 4 per pixel.
+     */
+    private int getImagesFootprint() {
+        return getFootprint(images) + getFootprint(scaledImages)
+                + getFootprint(captions)
+                + (atlas != null ? atlas.getFootprint() : 0);
+    }
+
+    private static int getFootprint(final Hashtable images) {
+        int footprint = 0;
+        final Enumeration elements = images.elements();
+        
+        while (elements.hasMoreElements()) {
+            final Image image = (Image) elements.nextElement();
+            footprint += image.getWidth() * image.getHeight() * 4;
+        }
+        
+        return footprint;
+    }
+
+    /**
+     * Releases the thumbnails of the given memory tier. The released
+     * thumbnails are decoded again from the flash cache when shown.
+     * @param tier The memory tier.
+     */
+    private void shrinkImages(final int tier) {
+        if (tier == MemoryGovernor.TIER_OFF_SCREEN && !isShown()) {
+            clearImages();
+        }
+        else if (tier == MemoryGovernor.TIER_OFF_SCREEN) {
+            // Keep the row next to the screen as it is about to be shown
+            releaseImagesOutside(firstVisibleIndex - columns,
+                    lastVisibleIndex + columns);
+        }
+        else if (tier == MemoryGovernor.TIER_PREFETCH) {
+            releaseImagesOutside(firstVisibleIndex, lastVisibleIndex);
+            clearScaledImages();
+        }
+    }
+
+    /**
+     * Keeps the decoded thumbnails of KEPT_ROWS rows above and below the
+     * screen. Called when the grid has scrolled, so the thumbnails further
+     * away are released a row or two at a time, and their tiles are back in
+     * the pool before the thumbnails scrolled into view are scaled.
+     */
+    private void releaseScrolledImages() {
+        final int kept = KEPT_ROWS * columns;
+        
+        releaseImagesOutside(firstVisibleIndex - kept, lastVisibleIndex + kept);
+    }
+
+    /**
+     * Releases the images of the items outside the given index range.
+     */
+    private void releaseImagesOutside(final int first, final int last) {
+        for (int i = 0; i < imageObjectModel.size(); i++) {
+            if (i < first || i > last) {
+                releaseImages(imageObjectModel.elementAt(i));
+            }
+        }
+    }
+
+    /**
+     * Updates the model to match the new feed. The items which are still in
+     * the feed keep their decoded thumbnails, only the new items are
+     * prefetched and only the tiles which changed are repainted. The scroll
+     * position is kept if the same feed is shown again.
+     * @param newModel The new feed.
+     * @param search The search term of the feed.
+     */
+    private void setModel(final Vector newModel, final String search) {
+        final boolean sameFeed = search == null
+                ? displayedSearch == null : search.equals(displayedSearch);
+        final int oldSize = imageObjectModel.size();
+        final int oldScrollY = scrollY;
+        
+        if (!sameFeed || imageObjectModel.isEmpty()) {
+            scrollY = restoredScrollY;
+        }
+        
+        restoredScrollY = 0;
+        displayedSearch = search;
+        firstChanged = Integer.MAX_VALUE;
+        lastChanged = -1;
+        
+        final int changes = ModelDiff.apply(imageObjectModel, newModel, this);
+        
+        if (!sameFeed || changes > 0 || atlasFeedUrl == null) {
+            updateAtlas(search);
+        }
+        
+        //#debug
+        L.i("Feed merged", "changes=" + changes + " items=" + imageObjectModel.size());
+        
+        updateScrollBoundary();
+        
+        if (scrollY < top) {
+            scrollY = Math.min(0, top);
+        }
+        
+        if (scrollY != oldScrollY) {
+            repaint();
+        }
+        else if (changes > 0) {
+            if (imageObjectModel.size() != oldSize) {
+                lastChanged = Math.max(oldSize, imageObjectModel.size()) - 1;
+            }
+            
+            repaintItems(firstChanged, lastChanged);
+        }
+    }
+
+    /**
+     * Repaints the rows of the given items which are on the screen.
+     */
+    private void repaintItems(final int first, final int last) {
+        final int y = headerHeight + scrollY + (first / columns) * imageSide;
+        final int bottom =
+                headerHeight + scrollY + (last / columns + 1) * imageSide;
+        
+        if (bottom > 0 && y < getHeight()) {
+            repaint(0, Math.max(0, y), getWidth(),
+                    Math.min(getHeight(), bottom) - Math.max(0, y));
+        }
+    }
+
+    /**
+     * @see ModelDiff.Listener#itemInserted(int, PicasaImageObject)
+     */
+    public void itemInserted(final int index, final PicasaImageObject item) {
+        prefetch(item);
+        itemsChanged(index, imageObjectModel.size() - 1);
+    }
+
+    /**
+     * @see ModelDiff.Listener#itemRemoved(int, PicasaImageObject)
+     */
+    public void itemRemoved(final int index, final PicasaImageObject item) {
+        releaseImages(item);
+        itemsChanged(index, imageObjectModel.size());
+    }
+
+    /**
+     * @see ModelDiff.Listener#itemMoved(int, int, PicasaImageObject)
+     */
+    public void itemMoved(final int from,
+                          final int to,
+                          final PicasaImageObject item)
+    {
+        itemsChanged(Math.min(from, to), Math.max(from, to));
+    }
+
+    /**
+     * @see ModelDiff.Listener#itemChanged(int, PicasaImageObject,
+     * PicasaImageObject)
+     */
+    public void itemChanged(final int index,
+                            final PicasaImageObject oldItem,
+                            final PicasaImageObject item)
+    {
+        if (item.thumbUrl.equals(oldItem.thumbUrl)) {
+            // Same thumbnail, only the caption is rendered again
+            moveImages(oldItem, item);
+        }
+        else {
+            releaseImages(oldItem);
+            prefetch(item);
+        }
+        
+        itemsChanged(index, index);
+    }
+
+    private void itemsChanged(final int first, final int last) {
+        firstChanged = Math.min(firstChanged, first);
+        lastChanged = Math.max(lastChanged, last);
+    }
+
+    private static void prefetch(final PicasaImageObject item) {
+        if (item.thumbUrl.length() > 0 && !PicasaStorage.isOfflineMode()) {
+            try {
+                PicasaStorage.imageCache.prefetch(item.thumbUrl);
+            }
+            catch (FlashDatabaseException e) {
+                L.e("Could not fetch image", item.thumbUrl, e);
+            }
+        }
+    }
+
+    /**
+     * Handles the offline commands: pinning the feed and switching the
+     * offline mode. Call first in commandAction().
+     * @param command The command.
+     * @return True if the command was handled.
+     */
+    protected boolean handleOfflineCommand(final Command command) {
+        if (command == pinCommand) {
+            OfflinePacks.getInstance().pin(requestedSearch);
+        }
+        else if (command == unpinCommand) {
+            OfflinePacks.getInstance().unpin(requestedSearch);
+        }
+        else if (command == offlineModeCommand || command == onlineModeCommand) {
+            PicasaStorage.setOfflineMode(command == offlineModeCommand);
+            checkOfflineMode();
+        }
+        else {
+            return false;
+        }
+        
+        updateOfflineCommands();
+        
+        return true;
+    }
+
+    /**
+     * Loads the feed again if the offline mode has been switched since it
+     * was loaded, e.g. in another view. Call when the view is shown.
+     */
+    protected void checkOfflineMode() {
+        if (feedRequested && loadedOffline != PicasaStorage.isOfflineMode()) {
+            loadFeed(requestedSearch, PicasaStorage.GET_STALE_WHILE_REVALIDATE);
+        }
+        
+        updateOfflineCommands();
+    }
+
+    /**
+     * Shows the pin or the unpin command for the requested feed and the
+     * command for switching the offline mode.
+     */
+    private void updateOfflineCommands() {
+        final boolean pinned = OfflinePacks.getInstance().isPinned(requestedSearch);
+        final boolean offline = PicasaStorage.isOfflineMode();
+        
+        removeCommand(pinCommand);
+        removeCommand(unpinCommand);
+        removeCommand(offlineModeCommand);
+        removeCommand(onlineModeCommand);
+        
+        if (feedRequested) {
+            addCommand(pinned ? unpinCommand : pinCommand);
+            addCommand(offline ? onlineModeCommand : offlineModeCommand);
+        }
+    }
+
+    /**
+     * Loads the atlas of the feed if the feed was not shown last, or else
+     * starts building a new atlas if the atlas does not cover the model.
+     * @param search The search term of the feed.
+     */
+    private void updateAtlas(final String search) {
+        final String feedUrl = PicasaStorage.getFeedUrl(search);
+        
+        if (feedUrl.equals(atlasFeedUrl)) {
+            if (!atlasLoading) {
+                startAtlasBuilder();
+            }
+            
+            return;
+        }
+        
+        clearAtlas();
+        atlasFeedUrl = feedUrl;
+        atlasLoading = true;
+        ThumbnailAtlas.loadAsync(feedUrl, new AtlasResult(feedUrl));
+    }
+
+    /**
+     * Starts compositing the thumbnails of the first page of the model into
+     * a new atlas unless the atlas covers the page at the current tile size.
+     * Every item of the page must have a thumbnail.
+     */
+    private void startAtlasBuilder() {
+        atlasBuilder = null;
+        
+        final int size = Math.min(imageObjectModel.size(), ThumbnailAtlas.MAX_TILES);
+        
+        if (atlasFeedUrl == null
+            || size == 0
+            || isCoveredByAtlas()
+            || MemoryGovernor.isLow())
+        {
+            return;
+        }
+        
+        final String[] thumbUrls = new String[size];
+        
+        for (int i = 0; i < size; i++) {
+            thumbUrls[i] = ((PicasaImageObject) imageObjectModel.elementAt(i)).thumbUrl;
+            
+            if (thumbUrls[i].length() == 0) {
+                return;
+            }
+        }
+        
+        atlasBuilder = new ThumbnailAtlas.Builder(atlasFeedUrl, thumbUrls,
+                imageSide);
+        
+        // The thumbnails already in memory
+        for (int i = 0; i < size && atlasBuilder != null; i++) {
+            final Object key = imageObjectModel.elementAt(i);
+            final Image image = (Image) images.get(key);
+            
+            if (image != null
+                && atlasBuilder.add(i, thumbUrls[i],
+                        (String) loadedThumbUrls.get(key), image))
+            {
+                atlasBuilder = null;
+            }
+        }
+    }
+
+    /**
+     * @return True if the atlas has a tile of the current size for every
+     * item of the first page of the model.
+     */
+    private boolean isCoveredByAtlas() {
+        if (atlas == null || atlas.getSide() != imageSide) {
+            return false;
+        }
+        
+        final int size = Math.min(imageObjectModel.size(), ThumbnailAtlas.MAX_TILES);
+        
+        for (int i = 0; i < size; i++) {
+            if (atlas.indexOf(((PicasaImageObject)
+                    imageObjectModel.elementAt(i)).thumbUrl) < 0)
+            {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+
+    /**
+     * Releases the atlas and the builder. The atlas is loaded again when a
+     * feed is set.
+     */
+    private void clearAtlas() {
+        atlas = null;
+        atlasBuilder = null;
+        atlasFeedUrl = null;
+        atlasLoading = false;
+    }
+
+    private void releaseImages(final Object key) {
+        thumbnailPipeline.recycle((Image) images.remove(key));
+        releaseScaledImage(key);
+        loadedThumbUrls.remove(key);
+        captions.remove(key);
+    }
+
+    private void moveImages(final Object from, final Object to) {
+        move(images, from, to);
+        move(scaledImages, from, to);
+        move(loadedThumbUrls, from, to);
+        captions.remove(from);
+    }
+
+    private static void move(final Hashtable table,
+                             final Object from,
+                             final Object to)
+    {
+        final Object value = table.remove(from);
+        
+        if (value != null) {
+            table.put(to, value);
+        }
+    }
+
+    private void releaseScaledImage(final Object key) {
+        thumbnailPipeline.recycle((Image) scaledImages.remove(key));
+    }
+
+    private void clearScaledImages() {
+        final Enumeration elements = scaledImages.elements();
+        
+        while (elements.hasMoreElements()) {
+            thumbnailPipeline.recycle((Image) elements.nextElement());
+        }
+        
+        scaledImages.clear();
     }
 
     /**
@@ -177,79 +1093,135 @@ public abstract class ImageGridCanvas
     protected int getItemIndex(int x, int y) {
         if (y > headerHeight) {
             int row = (-scrollY + y - headerHeight) / imageSide;
-            int column = x < getWidth() / 2 ? 0 : 1;
-            return (row * 2 + column);
+            int column = x / imageSide;
+            
+            if (column >= columns) {
+                column = columns - 1;
+            }
+            
+            return (row * columns + column);
         }
         return -1;
     }
 
     /**
-     * Object for adding images to the hash map when they're loaded.
+     * The images of a viewport and their positions, see captureViewport().
      */
-    protected final class ImageResult extends Task {
-        private final Object key;
+    protected static final class Viewport {
+        private final Image[] images;
+        private final int[] positions; // X and Y of each image
+        private int count = 0;
+        
+        Viewport(final int capacity) {
+            images = new Image[capacity];
+            positions = new int[capacity * 2];
+        }
         
-        public ImageResult(Object key) {
-            System.out.println("ImageResult::ImageResult(): " + key.toString());
-            this.key = key;
+        void add(final Image image, final int x, final int y) {
+            images[count] = image;
+            positions[count * 2] = x;
+            positions[count * 2 + 1] = y;
+            count++;
         }
         
-        public Object exec(final Object in) {
-            System.out.println("ImageResult::exec()");
+        /**
+         * Draws the images on black. Allocates nothing.
+         */
+        public void draw(final Graphics g, final int width, final int height) {
+            g.setColor(0x000000);
+            g.fillRect(0, 0, width, height);
             
-            if (in != null) {
-                images.put(key, in);
-                repaint();
+            for (int i = 0; i < count; i++) {
+                g.drawImage(images[i], positions[i * 2], positions[i * 2 + 1],
+                        Graphics.LEFT | Graphics.TOP);
+            }
+        }
+    }
+
+    /**
+     * Receives the atlas of a feed in the UI thread.
+     */
+    private final class AtlasResult extends Task {
+        private final String feedUrl;
+        
+        AtlasResult(final String feedUrl) {
+            super(Task.UI_PRIORITY);
+            this.feedUrl = feedUrl;
+        }
+        
+        protected Object exec(final Object in) {
+            if (feedUrl.equals(atlasFeedUrl)) {
+                atlas = (ThumbnailAtlas) in;
+                loaded();
             }
             
             return in;
         }
+        
+        protected void onCanceled(final String reason) {
+            PlatformUtils.getInstance().runOnUiThread(new Runnable() {
+                public void run() {
+                    if (feedUrl.equals(atlasFeedUrl) && atlasLoading) {
+                        loaded();
+                    }
+                }
+            });
+        }
+        
+        private void loaded() {
+            atlasLoading = false;
+            startAtlasBuilder();
+            repaint();
+        }
     }
 
     /**
-     * Loads the feed.
+     * Loads the feed. Run in the UI thread as it changes the model.
      */
     private class LoadFeedTask extends Task {
         private String search;
         private int getType;
+        private int request;
+        private boolean stale = false;
         
-        public LoadFeedTask(String search, int getType) {
+        public LoadFeedTask(String search, int getType, int request) {
+            super(Task.UI_PRIORITY);
             this.search = search;
             this.getType = getType; 
+            this.request = request;
+        }
+        
+        /**
+         * Marks the task as the cached part of a stale-while-revalidate
+         * load, which leaves the spinner running for the fresh part.
+         */
+        public Task setStale() {
+            stale = true;
+            return this;
         }
         
         protected Object exec(Object in) {
             
-            if (in != null) {
+            if (request != feedRequest
+                || (getType == StaticWebCache.GET_LOCAL && freshRequest == request))
+            {
+                // Superseded by a newer request or by the fresh feed
+                //#debug
+                L.i("Load feed result ignored, type=" + getType, search);
+            }
+            else if (in != null) {
                 //#debug
                 L.i("Load feed success, type=" + getType, search);
                 
-                scrollY = 0;
-                imageObjectModel.removeAllElements();
-                images.clear();
-                
-                L.i("Vector in", in.toString());
-                
-                final Vector newModel = (Vector) in;
-                
-                for (int i = 0; i < newModel.size(); i++) {
-                    imageObjectModel.addElement(newModel.elementAt(i));
-                    String thumbUrl = 
-                            ((PicasaImageObject) imageObjectModel.elementAt(i))
-                            .thumbUrl;
-                    try {
-                        PicasaStorage.imageCache.prefetch(thumbUrl);
-                    }
-                    catch (FlashDatabaseException e) {
-                        L.e("Could not fetch image", thumbUrl, e);
-                    }
+                if (getType != StaticWebCache.GET_LOCAL) {
+                    freshRequest = request;
                 }
                 
-                top = -((imageObjectModel.size() * imageSide) / 2 - 
-                        getHeight() / 2) + 
-                        imageSide - 20;
+                setModel((Vector) in, search);
                 
-                stopSpinner();
+                if (!stale) {
+                    stopSpinner();
+                }
             }
             else {
                 L.i("Variable in is null", "");
@@ -258,17 +1230,37 @@ public abstract class ImageGridCanvas
             return in;
         }
         
-        public void onCanceled() {
+        /**
+         * The feed is not available, e.g. not cached or no network. The
+         * spinner is stopped unless the fresh part of the load is still
+         * running, and the grid shown is kept if the fresh part failed.
+         */
+        protected void onCanceled(final String reason) {
+            PlatformUtils.getInstance().runOnUiThread(new Runnable() {
+                public void run() {
+                    canceled();
+                }
+            });
+        }
+        
+        private void canceled() {
             //#debug
             L.i("Load feed canceled, type=" + getType, search);
             
+            if (request != feedRequest || stale) {
+                return;
+            }
+            
             if (getType == StaticWebCache.GET_LOCAL) {
+                // Not the online feed, which is not in the offline packs
                 imageObjectModel.removeAllElements();
-                images.clear();
+                clearImages();
                 top = -getHeight();
+                unavailableOffline = loadedOffline;
             }
             
             stopSpinner();
+            repaint();
         }
     }
 }
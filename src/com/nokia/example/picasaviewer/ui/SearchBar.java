@@ -18,6 +18,8 @@ import com.nokia.mid.ui.TextEditor;
 import com.nokia.mid.ui.TextEditorListener;
 import com.nokia.mid.ui.VirtualKeyboard;
 
+import com.nokia.example.picasaviewer.util.TextLayout;
+
 /**
  * A search bar component with close to native look and feel.
  */
@@ -49,6 +51,7 @@ public class SearchBar
     private final Font font = Font.getDefaultFont();
     private String searchTerm = "";
     private String hintText = DEFAULT_HINT_TEXT;
+    private String truncatedHintText = null; // Fitted to the bar, for paint()
     private final int fontHeight = font.getHeight();
     private int width = 0;
     private int searchIconImageWidth = 0;
@@ -109,6 +112,7 @@ public class SearchBar
         searchTextEditor.setTouchEnabled(false);
         searchTextEditor.setTextEditorListener(this);
         
+        truncatedHintText = truncateHintText();
         setParent(parent);
         setPosition(positionX, positionY);
     }
@@ -118,6 +122,7 @@ public class SearchBar
      */
     public void setHintText(String hintText) {
         this.hintText = hintText;
+        truncatedHintText = truncateHintText();
         repaint();
     }
 
@@ -191,8 +196,6 @@ public class SearchBar
      * @see com.nokia.mid.ui.TextEditorListener#inputAction(com.nokia.mid.ui.TextEditor, int)
      */
     public void inputAction(TextEditor textEditor, int actions) {
-        System.out.println("SearchBar.inputAction(): " + actions);
-        
         if ((actions & TextEditorListener.ACTION_CONTENT_CHANGE) != 0) {
             searchTerm = textEditor.getContent().trim();
             repaint();
@@ -257,11 +260,10 @@ public class SearchBar
         graphics.setColor(BACKGROUND_COLOR);
         graphics.fillRect(0, 0, width, DEFAULT_HEIGHT);
         
-        if (searchTerm.length() == 0) {
-            if (hintText != null) {
-                graphics.setColor(HINT_TEXT_COLOR);
-                graphics.drawString(hintText, MARGIN, MARGIN, Graphics.TOP | Graphics.LEFT);
-            }
+        if (searchTerm.length() == 0 && truncatedHintText != null) {
+            graphics.setColor(HINT_TEXT_COLOR);
+            graphics.drawString(truncatedHintText, MARGIN, MARGIN,
+                Graphics.TOP | Graphics.LEFT);
         }
         
         if (searchIconImage != null) {
@@ -280,6 +282,19 @@ public class SearchBar
         graphics.drawLine(0, fontHeight + MARGIN * 2, width, fontHeight + MARGIN * 2);
     }
 
+    /**
+     * @return The hint text truncated to the width left of the icon or null
+     * if there is no hint text.
+     */
+    private String truncateHintText() {
+        if (hintText == null) {
+            return null;
+        }
+        
+        return TextLayout.truncate(hintText, font,
+            width - searchIconImageWidth - MARGIN * 3);
+    }
+
     /**
      * @see com.nokia.mid.ui.KeyboardVisibilityListener#hideNotify(int)
      */
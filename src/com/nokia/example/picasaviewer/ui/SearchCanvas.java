@@ -86,6 +86,10 @@ public final class SearchCanvas
         //#debug
         L.i("SearchCanvas Command action", "Command " + command);
         
+        if (handleOfflineCommand(command)) {
+            return;
+        }
+        
         if (command == featuredCommand) {
             viewManager.showView(ViewManager.FEATURED_VIEW_INDEX);
         }
@@ -102,6 +106,8 @@ public final class SearchCanvas
      * @see javax.microedition.lcdui.Canvas#showNotify()
      */
     public void showNotify() {
+        checkOfflineMode();
+        
         if ((!viewManager.supportsCategoryBar() || imageObjectModel.isEmpty())
             && searchBar.getSearchTerm().length() == 0)
         {
@@ -202,7 +208,8 @@ public final class SearchCanvas
     private Task startSearch() {
         disableKeyboard(false);
         scrollY = 0;
-        return loadFeed(searchBar.getSearchTerm(), StaticWebCache.GET_WEB);
+        return loadFeed(searchBar.getSearchTerm(),
+                PicasaStorage.GET_STALE_WHILE_REVALIDATE);
     }
 
     /**
@@ -65,6 +65,10 @@ public final class GestureHandler
                               final GestureInteractiveZone gestureInteractiveZone,
                               final GestureEvent gestureEvent)
     {
+        if (GestureRecorder.isEnabled()) {
+            GestureRecorder.recordGesture(gestureEvent);
+        }
+        
         switch (gestureEvent.getType()) {
             case GestureInteractiveZone.GESTURE_PINCH:
                 canvas.gesturePinch(
@@ -131,8 +135,9 @@ public final class GestureHandler
                         final short deltaY,
                         final boolean lastFrame)
     {
-        //#debug
-        L.i(L.class.getName(), "animate, y=" + y + " deltaY=" + deltaY);
+        if (GestureRecorder.isEnabled()) {
+            GestureRecorder.recordFrame(x, y, delta, deltaX, deltaY, lastFrame);
+        }
         
         canvas.animate(y, deltaY, lastFrame);
     }
@@ -149,7 +154,6 @@ public final class GestureHandler
      * Stops the animation.
      */
     public void stopAnimator() {
-        System.out.println("GestureHandler.stopAnimator()");
         animator.stop();
     }
 
@@ -161,8 +165,6 @@ public final class GestureHandler
     public void animateDrag(final int x, final int y)
         throws IllegalArgumentException
     {
-        //#debug
-        L.i(L.class.getName(), "animate drag, y=" + y + ", x=" + x);
         animator.drag(x, y);
     }
 
@@ -190,9 +192,6 @@ public final class GestureHandler
                               final int friction,
                               final float angle)
     {
-        //#debug
-        L.i(L.class.getName(), "animate start kinetic scroll, startSpeed=" + startSpeed);
-        
         animator.kineticScroll(startSpeed, direction, friction, angle);
     }
 
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import com.nokia.mid.ui.gestures.GestureEvent;
+
+/**
+ * Records the gesture events and the frames of the frame animator with
+ * their timestamps, so that a session on a device can be replayed in the
+ * benchmark harness. Off unless the JAD property Picasa-Record-Gestures is
+ * "true". The trace is printed to the standard output on exit.
+ *
+ * One event per line, the time in milliseconds from the first event:
+ *   G,time,type,startX,startY,dragDistanceX,dragDistanceY,flickDirection,
+ *     flickSpeed,flickSpeedX,flickSpeedY,pinchDistanceStarting,
+ *     pinchDistanceCurrent,pinchDistanceChange,pinchCenterX,pinchCenterY,
+ *     pinchCenterChangeX,pinchCenterChangeY
+ *   F,time,x,y,delta,deltaX,deltaY,lastFrame (0 or 1)
+ */
+public final class GestureRecorder {
+    // Constants
+    public static final String RECORD_PROPERTY = "Picasa-Record-Gestures";
+    private static final int MAX_LENGTH = 64 * 1024; // Characters
+
+    // Members
+    private static boolean enabled = false;
+    private static long startTime = -1;
+    private static final StringBuffer trace = new StringBuffer();
+
+    /**
+     * Turns the recording on if the value of the JAD property is "true".
+     * @param property The value of the property, may be null.
+     */
+    public static synchronized void init(final String property) {
+        enabled = "true".equals(property);
+        startTime = -1;
+        trace.setLength(0);
+    }
+
+    /**
+     * @return True if the events are recorded.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records a gesture event.
+     */
+    public static synchronized void recordGesture(final GestureEvent event) {
+        if (!startLine('G')) {
+            return;
+        }
+
+        trace.append(event.getType()).append(',')
+            .append(event.getStartX()).append(',')
+            .append(event.getStartY()).append(',')
+            .append(event.getDragDistanceX()).append(',')
+            .append(event.getDragDistanceY()).append(',')
+            .append(event.getFlickDirection()).append(',')
+            .append(event.getFlickSpeed()).append(',')
+            .append(event.getFlickSpeedX()).append(',')
+            .append(event.getFlickSpeedY()).append(',')
+            .append(event.getPinchDistanceStarting()).append(',')
+            .append(event.getPinchDistanceCurrent()).append(',')
+            .append(event.getPinchDistanceChange()).append(',')
+            .append(event.getPinchCenterX()).append(',')
+            .append(event.getPinchCenterY()).append(',')
+            .append(event.getPinchCenterChangeX()).append(',')
+            .append(event.getPinchCenterChangeY()).append('\n');
+    }
+
+    /**
+     * Records a frame of the frame animator.
+     */
+    public static synchronized void recordFrame(final int x,
+                                                final int y,
+                                                final short delta,
+                                                final short deltaX,
+                                                final short deltaY,
+                                                final boolean lastFrame)
+    {
+        if (!startLine('F')) {
+            return;
+        }
+
+        trace.append(x).append(',')
+            .append(y).append(',')
+            .append(delta).append(',')
+            .append(deltaX).append(',')
+            .append(deltaY).append(',')
+            .append(lastFrame ? 1 : 0).append('\n');
+    }
+
+    /**
+     * @return The recorded events, one per line.
+     */
+    public static synchronized String getTrace() {
+        return trace.toString();
+    }
+
+    /**
+     * Prints the recorded events, if any, to the standard output.
+     */
+    public static synchronized void print() {
+        if (trace.length() > 0) {
+            System.out.println("Recorded gestures:\n" + trace.toString());
+        }
+    }
+
+    /**
+     * Starts a line of the trace with the kind of the event and the time.
+     * @return False if the trace is full.
+     */
+    private static boolean startLine(final char kind) {
+        if (trace.length() > MAX_LENGTH) {
+            return false;
+        }
+
+        final long now = System.currentTimeMillis();
+
+        if (startTime < 0) {
+            startTime = now;
+        }
+
+        trace.append(kind).append(',').append(now - startTime).append(',');
+
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import java.util.Vector;
+
+import javax.microedition.lcdui.Image;
+
+import com.nokia.mid.ui.DirectUtils;
+
+/**
+ * A pool of square mutable images of one size, e.g. the thumbnail tiles of
+ * the grid. The decoded thumbnails are drawn into the pooled tiles and the
+ * tiles are given back when the thumbnails are released, so the pixel
+ * buffers are reused instead of being left to the garbage collector.
+ *
+ * The free tiles are limited to a number of bytes and are released when
+ * the memory runs low or the tile size changes.
+ */
+public final class ImagePool
+        implements MemoryGovernor.Cache
+{
+    // Constants
+    private static final int FILL_COLOR = 0xff000000; // Opaque black
+
+    // Members
+    private final int maxFreeBytes;
+    private final Vector free = new Vector();
+    private int side = 0;
+    private int createdTiles = 0;
+    private int reusedTiles = 0;
+
+    /**
+     * Constructor.
+     * @param maxFreeBytes The maximum number of bytes held by the free
+     * tiles, 4 per pixel. At least one free tile is kept.
+     */
+    public ImagePool(final int maxFreeBytes) {
+        this.maxFreeBytes = maxFreeBytes;
+    }
+
+    /**
+     * Returns a free tile or creates a new one. The free tiles of another
+     * size are released. The content of a reused tile is undefined.
+     * @param side The width and height of the tile.
+     * @return A mutable image of side x side pixels.
+     */
+    public synchronized Image acquire(final int side) {
+        if (side != this.side) {
+            free.removeAllElements();
+            this.side = side;
+        }
+
+        if (!free.isEmpty()) {
+            final Image tile = (Image) free.lastElement();
+            free.removeElementAt(free.size() - 1);
+            reusedTiles++;
+
+            return tile;
+        }
+
+        createdTiles++;
+
+        return DirectUtils.createImage(side, side, FILL_COLOR);
+    }
+
+    /**
+     * Gives a tile back to the pool. Images of other sizes, immutable
+     * images and the tiles over the byte limit are left to the garbage
+     * collector. The tile must no longer be drawn by the caller.
+     * @param image The image, may be null.
+     */
+    public synchronized void release(final Image image) {
+        if (image == null
+            || !image.isMutable()
+            || image.getWidth() != side
+            || image.getHeight() != side
+            || free.contains(image))
+        {
+            return;
+        }
+
+        if (free.isEmpty() || (free.size() + 1) * side * side * 4 <= maxFreeBytes) {
+            free.addElement(image);
+        }
+    }
+
+    /**
+     * Releases the free tiles.
+     */
+    public synchronized void clear() {
+        free.removeAllElements();
+    }
+
+    /**
+     * @return The number of tiles created since the start.
+     */
+    public synchronized int getCreatedTiles() {
+        return createdTiles;
+    }
+
+    /**
+     * @return The number of times a free tile was reused since the start.
+     */
+    public synchronized int getReusedTiles() {
+        return reusedTiles;
+    }
+
+    /**
+     * @see MemoryGovernor.Cache#getFootprint()
+     */
+    public synchronized int getFootprint() {
+        return free.size() * side * side * 4;
+    }
+
+    /**
+     * The free tiles are the cheapest to restore, so they are released on
+     * the first tier.
+     * @see MemoryGovernor.Cache#shrink(int)
+     */
+    public void shrink(final int tier) {
+        if (tier == MemoryGovernor.TIER_OFF_SCREEN) {
+            clear();
+        }
+    }
+}
@@ -11,6 +11,7 @@ package com.nokia.example.picasaviewer.util;
 
 import com.nokia.mid.ui.DirectUtils;
 import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Graphics;
 import javax.microedition.lcdui.Image;
 
 /**
@@ -158,6 +159,78 @@ public class ImageUtils {
         return Image.createRGBImage(scaledRgb, newWidth, newHeight, true);
     }
 
+    /**
+     * Scales the given image into the given mutable image, e.g. a pooled
+     * tile, instead of creating a new image. The image is scaled to the
+     * width of the target and drawn from the top; the rows which do not fit
+     * are cut.
+     * @param image The original image.
+     * @param target The mutable image to draw into.
+     * @return The target.
+     */
+    public static Image scaleInto(final Image image, final Image target) {
+        if (image == null || target == null || !target.isMutable()) {
+            throw new IllegalArgumentException(
+                "The given image is null or the target is not mutable!");
+        }
+        
+        final int sourceWidth = image.getWidth();
+        final int sourceHeight = image.getHeight();
+        final int newWidth = target.getWidth();
+        final int newHeight = Math.min(target.getHeight(),
+                Math.max(1, sourceHeight * newWidth / sourceWidth));
+        final Graphics g = target.getGraphics();
+        
+        if (sourceWidth == newWidth) {
+            g.drawImage(image, 0, 0, Graphics.TOP | Graphics.LEFT);
+            return target;
+        }
+        
+        final int[] originalRgb = new int[sourceWidth * sourceHeight];
+        image.getRGB(originalRgb, 0, sourceWidth, 0, 0, sourceWidth, sourceHeight);
+        
+        // One row at a time, the scaled pixels are not needed as a whole
+        final int[] rowRgb = new int[newWidth];
+        
+        for (int y = 0; y < newHeight; y++) {
+            final int dy = y * sourceHeight / newHeight;
+            
+            for (int x = 0; x < newWidth; x++) {
+                rowRgb[x] = originalRgb[(sourceWidth * dy) + (x * sourceWidth / newWidth)];
+            }
+            
+            g.drawRGB(rowRgb, 0, newWidth, 0, y, newWidth, 1, false);
+        }
+        
+        return target;
+    }
+
+    /**
+     * Decodes the given image data and scales the image down, preserving the
+     * aspect ratio, if it is wider or taller than the given maximum.
+     * @param bytes The encoded image, e.g. a JPEG.
+     * @param maxSide The maximum width and height of the image.
+     * @return The decoded image.
+     * @throws IllegalArgumentException If the data can not be decoded.
+     */
+    public static Image decode(final byte[] bytes, final int maxSide)
+        throws IllegalArgumentException
+    {
+        final Image image = Image.createImage(bytes, 0, bytes.length);
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        
+        if (width <= maxSide && height <= maxSide) {
+            return image;
+        }
+        
+        if (width >= height) {
+            return scale(image, maxSide, Math.max(1, height * maxSide / width));
+        }
+        
+        return scale(image, Math.max(1, width * maxSide / height), maxSide);
+    }
+
     /**
      * This method takes an image and overlays all the visible pixels with the
      * specified color. This is useful for single color icons that should be
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import java.util.Vector;
+
+import org.tantalum.PlatformUtils;
+import org.tantalum.Task;
+import org.tantalum.util.L;
+
+/**
+ * Watches the heap and asks the registered caches to shrink when the free
+ * memory runs low.
+ *
+ * The caches are shrunk one tier at a time, the cheapest to restore first:
+ *
+ * 1. TIER_OFF_SCREEN: decoded thumbnails which are not on screen and the
+ *    parsed feeds in the RAM cache,
+ * 2. TIER_TRANSLUCENT_ASSETS: translucent category bar assets not in use,
+ * 3. TIER_PREFETCH: thumbnails next to the screen and other prefetched or
+ *    derived data, e.g. text layouts and scaled tiles.
+ *
+ * A tier is shrunk when less than LOW_MEMORY_PERCENT of the heap is free,
+ * and the next tier only once the used memory has grown by GROWTH_PERCENT
+ * of the heap past what it was at the previous shrink, so that a heap which
+ * stays low but no longer grows is not shrunk on every sample. The tiers
+ * start over from the first once RECOVERED_PERCENT of the heap is free
+ * again.
+ *
+ * The heap is sampled on paint and after each decode. The caches are always
+ * shrunk in the UI thread, and the garbage collector is then run in an idle
+ * task instead of the UI thread.
+ */
+public final class MemoryGovernor {
+    // Constants
+    public static final int TIER_OFF_SCREEN = 0;
+    public static final int TIER_TRANSLUCENT_ASSETS = 1;
+    public static final int TIER_PREFETCH = 2;
+    private static final int TIER_COUNT = 3;
+    private static final int LOW_MEMORY_PERCENT = 20; // Free memory of the total
+    private static final int RECOVERED_PERCENT = 30; // Free memory of the total
+    private static final int GROWTH_PERCENT = 5; // Used memory growth of the total
+    private static final int SAMPLE_INTERVAL = 500; // ms, on paint
+
+    // Members
+    private static MemoryGovernor instance = null;
+    private final Vector caches = new Vector();
+    private long lastSample = 0;
+    private boolean shrinking = false;
+    private int nextTier = 0;
+    private long shrinkWatermark = 0; // Used memory to grow past before the next shrink
+
+    /**
+     * A cache which can release memory.
+     */
+    public interface Cache {
+        /**
+         * @return The estimated number of bytes held by the cache.
+         */
+        int getFootprint();
+
+        /**
+         * Releases the memory of the given tier. Ignore the tiers which do
+         * not apply to the cache. Called in the UI thread.
+         * @param tier TIER_OFF_SCREEN, TIER_TRANSLUCENT_ASSETS or TIER_PREFETCH.
+         */
+        void shrink(int tier);
+    }
+
+    /**
+     * @return The memory governor instance.
+     */
+    public static synchronized MemoryGovernor getInstance() {
+        if (instance == null) {
+            instance = new MemoryGovernor();
+        }
+
+        return instance;
+    }
+
+    private MemoryGovernor() {
+    }
+
+    /**
+     * @param cache The cache to shrink when the memory runs low.
+     */
+    public void register(final Cache cache) {
+        caches.addElement(cache);
+    }
+
+    /**
+     * @param cache The cache to no longer shrink.
+     */
+    public void unregister(final Cache cache) {
+        caches.removeElement(cache);
+    }
+
+    /**
+     * Samples the heap at most every SAMPLE_INTERVAL milliseconds. Call on
+     * paint.
+     */
+    public void onPaint() {
+        final long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            if (now - lastSample < SAMPLE_INTERVAL) {
+                return;
+            }
+
+            lastSample = now;
+        }
+
+        check();
+    }
+
+    /**
+     * Samples the heap and shrinks the next tier of the caches in the UI
+     * thread if the free memory is low and the used memory has grown past
+     * the watermark of the previous shrink.
+     */
+    public void check() {
+        final Runtime runtime = Runtime.getRuntime();
+        final long free = runtime.freeMemory();
+        final long total = runtime.totalMemory();
+        final int tier;
+
+        synchronized (this) {
+            if (free * 100 >= total * RECOVERED_PERCENT) {
+                nextTier = 0;
+                shrinkWatermark = 0;
+                return;
+            }
+
+            if (shrinking
+                || free * 100 >= total * LOW_MEMORY_PERCENT
+                || total - free <= shrinkWatermark)
+            {
+                return;
+            }
+
+            tier = nextTier;
+            nextTier = (nextTier + 1) % TIER_COUNT;
+            shrinkWatermark = total - free + total * GROWTH_PERCENT / 100;
+            shrinking = true;
+        }
+
+        PlatformUtils.getInstance().runOnUiThread(new Runnable() {
+            public void run() {
+                try {
+                    shrink(tier);
+                }
+                finally {
+                    synchronized (MemoryGovernor.this) {
+                        shrinking = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The sum of the footprints of the registered caches in bytes.
+     */
+    public int getFootprint() {
+        int footprint = 0;
+
+        for (int i = 0; i < caches.size(); i++) {
+            footprint += ((Cache) caches.elementAt(i)).getFootprint();
+        }
+
+        return footprint;
+    }
+
+    /**
+     * @return True if less than LOW_MEMORY_PERCENT of the heap is free.
+     */
+    public static boolean isLow() {
+        final Runtime runtime = Runtime.getRuntime();
+
+        return runtime.freeMemory() * 100
+                < runtime.totalMemory() * LOW_MEMORY_PERCENT;
+    }
+
+    private void shrink(final int tier) {
+        //#debug
+        L.i("Low memory, shrinking caches", "tier=" + tier + " free=" + Runtime.getRuntime().freeMemory() + " footprint=" + getFootprint());
+
+        for (int i = 0; i < caches.size(); i++) {
+            ((Cache) caches.elementAt(i)).shrink(tier);
+        }
+
+        // Not in the UI thread, the paints would wait for the collection
+        new Task(Task.IDLE_PRIORITY) {
+            protected Object exec(final Object in) {
+                System.gc();
+
+                //#debug
+                L.i("Caches shrunk", "tier=" + tier + " free=" + Runtime.getRuntime().freeMemory() + " footprint=" + getFootprint());
+                return in;
+            }
+        }.fork();
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes RGB pixels as a PNG image. MIDP can decode PNG images but has no
+ * encoder.
+ *
+ * The pixels are compressed with the Sub filter and a single deflate block
+ * using the fixed Huffman codes and a simple LZ77 matcher which remembers
+ * only the latest position of each hash. This is fast and needs little
+ * memory, at the cost of some compression. The low bits of the colours can
+ * be dropped before the compression, which makes the image compress much
+ * better.
+ */
+public final class PngEncoder {
+    // Constants
+    private static final byte[] SIGNATURE = {
+        (byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int WINDOW_SIZE = 32768;
+    private static final int MIN_MATCH = 3;
+    private static final int MAX_MATCH = 258;
+    private static final int HASH_BITS = 12;
+    private static final int[] LENGTH_BASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51,
+        59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA_BITS = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4,
+        4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+        513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385,
+        24577};
+    private static final int[] DISTANCE_EXTRA_BITS = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10,
+        10, 11, 11, 12, 12, 13, 13};
+    private static int[] crcTable = null;
+
+    // Members
+    private final ByteArrayOutputStream deflated;
+    private int bitBuffer = 0;
+    private int bitCount = 0;
+
+    private PngEncoder(final int expectedSize) {
+        deflated = new ByteArrayOutputStream(expectedSize);
+    }
+
+    /**
+     * Encodes the given pixels as a PNG image.
+     * @param argb The pixels, the alpha is ignored.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param dropBits The number of low bits to drop from each colour
+     * component, 0 for lossless.
+     * @return The PNG image.
+     */
+    public static byte[] encode(final int[] argb,
+                                final int width,
+                                final int height,
+                                final int dropBits)
+    {
+        final int mask = (0xff << dropBits) & 0xff;
+        final int stride = width * 3 + 1;
+        final byte[] raw = new byte[stride * height];
+
+        // One filter type byte followed by the filtered pixels per row
+        for (int y = 0; y < height; y++) {
+            final int rowStart = y * stride;
+            int left = 0;
+
+            raw[rowStart] = 1; // Sub
+
+            for (int x = 0; x < width; x++) {
+                final int pixel = argb[y * width + x];
+                final int r = (pixel >> 16) & mask;
+                final int g = (pixel >> 8) & mask;
+                final int b = pixel & mask;
+                final int i = rowStart + 1 + x * 3;
+
+                raw[i] = (byte) (r - ((left >> 16) & 0xff));
+                raw[i + 1] = (byte) (g - ((left >> 8) & 0xff));
+                raw[i + 2] = (byte) (b - (left & 0xff));
+                left = (r << 16) | (g << 8) | b;
+            }
+        }
+
+        final PngEncoder encoder = new PngEncoder(raw.length / 2);
+        final byte[] idat = encoder.deflate(raw);
+        final ByteArrayOutputStream png =
+                new ByteArrayOutputStream(idat.length + 64);
+        final byte[] ihdr = new byte[13];
+
+        writeInt(ihdr, 0, width);
+        writeInt(ihdr, 4, height);
+        ihdr[8] = 8; // Bit depth
+        ihdr[9] = 2; // Colour type RGB
+
+        png.write(SIGNATURE, 0, SIGNATURE.length);
+        writeChunk(png, "IHDR", ihdr);
+        writeChunk(png, "IDAT", idat);
+        writeChunk(png, "IEND", new byte[0]);
+
+        return png.toByteArray();
+    }
+
+    /**
+     * Compresses the data into a zlib stream of one fixed Huffman block.
+     */
+    private byte[] deflate(final byte[] data) {
+        final int[] head = new int[1 << HASH_BITS];
+        final int length = data.length;
+        int i = 0;
+
+        for (int j = 0; j < head.length; j++) {
+            head[j] = -1;
+        }
+
+        deflated.write(0x78); // Deflate, 32 kB window
+        deflated.write(0x01); // No dictionary, fastest
+        writeBits(1, 1); // Final block
+        writeBits(1, 2); // Fixed Huffman codes
+
+        while (i < length) {
+            int matchLength = 0;
+            int distance = 0;
+
+            if (i + MIN_MATCH <= length) {
+                final int hash = hash(data, i);
+                final int candidate = head[hash];
+
+                head[hash] = i;
+
+                if (candidate >= 0 && i - candidate <= WINDOW_SIZE) {
+                    final int max = Math.min(MAX_MATCH, length - i);
+
+                    while (matchLength < max
+                           && data[candidate + matchLength] == data[i + matchLength])
+                    {
+                        matchLength++;
+                    }
+
+                    distance = i - candidate;
+                }
+            }
+
+            if (matchLength >= MIN_MATCH) {
+                writeLength(matchLength);
+                writeDistance(distance);
+
+                // Remember the positions within the match too
+                final int end = Math.min(i + matchLength, length - MIN_MATCH + 1);
+
+                for (int j = i + 1; j < end; j++) {
+                    head[hash(data, j)] = j;
+                }
+
+                i += matchLength;
+            }
+            else {
+                writeLiteral(data[i] & 0xff);
+                i++;
+            }
+        }
+
+        writeLiteral(256); // End of block
+
+        if (bitCount > 0) {
+            deflated.write(bitBuffer);
+        }
+
+        final int adler = adler32(data);
+        deflated.write(adler >>> 24);
+        deflated.write(adler >>> 16);
+        deflated.write(adler >>> 8);
+        deflated.write(adler);
+
+        return deflated.toByteArray();
+    }
+
+    private static int hash(final byte[] data, final int i) {
+        final int value = ((data[i] & 0xff) << 16)
+                | ((data[i + 1] & 0xff) << 8)
+                | (data[i + 2] & 0xff);
+
+        return ((value * 0x9E3779B1) >>> (32 - HASH_BITS));
+    }
+
+    /**
+     * Writes a literal/length symbol with the fixed Huffman code.
+     */
+    private void writeLiteral(final int symbol) {
+        if (symbol < 144) {
+            writeCode(0x30 + symbol, 8);
+        }
+        else if (symbol < 256) {
+            writeCode(0x190 + symbol - 144, 9);
+        }
+        else if (symbol < 280) {
+            writeCode(symbol - 256, 7);
+        }
+        else {
+            writeCode(0xc0 + symbol - 280, 8);
+        }
+    }
+
+    private void writeLength(final int length) {
+        int code = LENGTH_BASE.length - 1;
+
+        while (LENGTH_BASE[code] > length) {
+            code--;
+        }
+
+        writeLiteral(257 + code);
+        writeBits(length - LENGTH_BASE[code], LENGTH_EXTRA_BITS[code]);
+    }
+
+    private void writeDistance(final int distance) {
+        int code = DISTANCE_BASE.length - 1;
+
+        while (DISTANCE_BASE[code] > distance) {
+            code--;
+        }
+
+        writeCode(code, 5);
+        writeBits(distance - DISTANCE_BASE[code], DISTANCE_EXTRA_BITS[code]);
+    }
+
+    /**
+     * Writes a Huffman code, most significant bit first.
+     */
+    private void writeCode(final int code, final int length) {
+        int reversed = 0;
+
+        for (int i = 0; i < length; i++) {
+            reversed |= ((code >> i) & 1) << (length - 1 - i);
+        }
+
+        writeBits(reversed, length);
+    }
+
+    /**
+     * Writes the bits, least significant bit first.
+     */
+    private void writeBits(final int value, final int count) {
+        bitBuffer |= value << bitCount;
+        bitCount += count;
+
+        while (bitCount >= 8) {
+            deflated.write(bitBuffer & 0xff);
+            bitBuffer >>>= 8;
+            bitCount -= 8;
+        }
+    }
+
+    private static void writeChunk(final ByteArrayOutputStream out,
+                                   final String type,
+                                   final byte[] data)
+    {
+        final byte[] header = new byte[8];
+        final byte[] typeBytes = type.getBytes();
+
+        writeInt(header, 0, data.length);
+        System.arraycopy(typeBytes, 0, header, 4, 4);
+        out.write(header, 0, header.length);
+        out.write(data, 0, data.length);
+
+        int crc = update(0xffffffff, typeBytes, typeBytes.length);
+        crc = update(crc, data, data.length) ^ 0xffffffff;
+
+        final byte[] crcBytes = new byte[4];
+        writeInt(crcBytes, 0, crc);
+        out.write(crcBytes, 0, crcBytes.length);
+    }
+
+    private static void writeInt(final byte[] bytes,
+                                 final int offset,
+                                 final int value)
+    {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static synchronized int update(int crc,
+                                           final byte[] bytes,
+                                           final int length)
+    {
+        if (crcTable == null) {
+            crcTable = new int[256];
+
+            for (int n = 0; n < 256; n++) {
+                int c = n;
+
+                for (int k = 0; k < 8; k++) {
+                    c = (c & 1) != 0 ? 0xedb88320 ^ (c >>> 1) : c >>> 1;
+                }
+
+                crcTable[n] = c;
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            crc = crcTable[(crc ^ bytes[i]) & 0xff] ^ (crc >>> 8);
+        }
+
+        return crc;
+    }
+
+    private static int adler32(final byte[] data) {
+        int a = 1;
+        int b = 0;
+
+        for (int i = 0; i < data.length; i++) {
+            a = (a + (data[i] & 0xff)) % 65521;
+            b = (b + a) % 65521;
+        }
+
+        return (b << 16) | a;
+    }
+}
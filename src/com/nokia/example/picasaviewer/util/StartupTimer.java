@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+/**
+ * Measures the cold start of the application: the time from startApp() to
+ * the first frame and to the other marked steps of the startup.
+ */
+public final class StartupTimer {
+    // Members
+    private static long startTime = 0;
+    private static long timeToFirstFrame = -1;
+    private static final StringBuffer marks = new StringBuffer();
+
+    /**
+     * Call first thing in startApp().
+     */
+    public static synchronized void start() {
+        startTime = System.currentTimeMillis();
+        timeToFirstFrame = -1;
+        marks.setLength(0);
+    }
+
+    /**
+     * Records the time elapsed since the start for the given step.
+     * @param step The name of the step.
+     */
+    public static synchronized void mark(final String step) {
+        if (marks.length() > 0) {
+            marks.append(", ");
+        }
+
+        marks.append(step).append('=').append(getElapsed()).append(" ms");
+    }
+
+    /**
+     * Records the time to the first frame. Only the first call counts.
+     */
+    public static synchronized void firstFrameShown() {
+        if (timeToFirstFrame < 0) {
+            timeToFirstFrame = getElapsed();
+            mark("first frame");
+        }
+    }
+
+    /**
+     * @return The time from startApp() to the first frame in milliseconds
+     * or -1 if no frame has been shown yet.
+     */
+    public static synchronized long getTimeToFirstFrame() {
+        return timeToFirstFrame;
+    }
+
+    /**
+     * @return The marked steps, e.g. "views=120 ms, first frame=310 ms".
+     */
+    public static synchronized String getMarks() {
+        return marks.toString();
+    }
+
+    private static long getElapsed() {
+        return System.currentTimeMillis() - startTime;
+    }
+}
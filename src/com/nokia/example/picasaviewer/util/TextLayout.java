@@ -0,0 +1,297 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import javax.microedition.lcdui.Font;
+
+/**
+ * Utilities for laying out text. The results are cached per text, font and
+ * width so that repeated layouts of the same text cost only a lookup.
+ */
+public final class TextLayout {
+    // Constants
+    private static final String ELLIPSIS = "...";
+    private static final int MAX_CACHED_TEXTS = 64;
+
+    // Members
+    private static final Hashtable cache = new Hashtable(); // text -> Vector of Layout
+
+    /**
+     * The layouts can be recreated at any time.
+     */
+    static {
+        MemoryGovernor.getInstance().register(new MemoryGovernor.Cache() {
+            public int getFootprint() {
+                return TextLayout.getFootprint();
+            }
+
+            public void shrink(final int tier) {
+                if (tier == MemoryGovernor.TIER_PREFETCH) {
+                    clearCache();
+                }
+            }
+        });
+    }
+
+    /**
+     * Splits the given text into lines which fit within the given width. The
+     * lines are broken at spaces, words longer than the width are broken at
+     * any character.
+     * @param text The text to split.
+     * @param font The font used to draw the text.
+     * @param maxWidth The maximum width of a line.
+     * @return The lines. Do not modify the returned array.
+     */
+    public static synchronized String[] getLines(final String text,
+                                                 final Font font,
+                                                 final int maxWidth)
+    {
+        Layout layout = getCachedLayout(text, font, maxWidth, false);
+
+        if (layout == null) {
+            layout = new Layout(font, maxWidth, false,
+                    splitToLines(text.toCharArray(), font, maxWidth));
+            putCachedLayout(text, layout);
+        }
+
+        return layout.lines;
+    }
+
+    /**
+     * Truncates the given text with an ellipsis so that it fits within the
+     * given width.
+     * @param text The text to truncate.
+     * @param font The font used to draw the text.
+     * @param maxWidth The maximum width of the text.
+     * @return The text as is if it fits, otherwise the truncated text.
+     */
+    public static synchronized String truncate(final String text,
+                                               final Font font,
+                                               final int maxWidth)
+    {
+        Layout layout = getCachedLayout(text, font, maxWidth, true);
+
+        if (layout == null) {
+            final String[] lines = {
+                truncate(text.toCharArray(), text, font, maxWidth)
+            };
+            layout = new Layout(font, maxWidth, true, lines);
+            putCachedLayout(text, layout);
+        }
+
+        return layout.lines[0];
+    }
+
+    /**
+     * @return The estimated number of bytes held by the cache, 2 per
+     * character of the texts.
+     */
+    public static synchronized int getFootprint() {
+        int footprint = 0;
+        final Enumeration texts = cache.keys();
+
+        while (texts.hasMoreElements()) {
+            footprint += ((String) texts.nextElement()).length() * 2;
+        }
+
+        return footprint;
+    }
+
+    /**
+     * Empties the layout cache.
+     */
+    public static synchronized void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Splits the characters into lines, measuring one word at a time.
+     */
+    private static String[] splitToLines(final char[] chars,
+                                         final Font font,
+                                         final int maxWidth)
+    {
+        final Vector lines = new Vector();
+        final int length = chars.length;
+        int lineStart = skipSpaces(chars, 0);
+        int lineWidth = 0;
+        int i = lineStart;
+
+        while (i < length) {
+            int wordEnd = i;
+
+            while (wordEnd < length && chars[wordEnd] != ' ') {
+                wordEnd++;
+            }
+
+            final int wordWidth = font.charsWidth(chars, i, wordEnd - i);
+
+            if (lineWidth > 0 && lineWidth + wordWidth > maxWidth) {
+                addLine(lines, chars, lineStart, i);
+                lineStart = i;
+                lineWidth = 0;
+            }
+
+            if (wordWidth > maxWidth) {
+                // Break the word at the last character that fits
+                for (int j = i; j < wordEnd; j++) {
+                    final int charWidth = font.charWidth(chars[j]);
+
+                    if (lineWidth > 0 && lineWidth + charWidth > maxWidth) {
+                        addLine(lines, chars, lineStart, j);
+                        lineStart = j;
+                        lineWidth = 0;
+                    }
+
+                    lineWidth += charWidth;
+                }
+            }
+            else {
+                lineWidth += wordWidth;
+            }
+
+            i = skipSpaces(chars, wordEnd);
+            lineWidth += font.charsWidth(chars, wordEnd, i - wordEnd);
+        }
+
+        if (lineStart < length) {
+            addLine(lines, chars, lineStart, length);
+        }
+
+        final String[] result = new String[lines.size()];
+        lines.copyInto(result);
+
+        return result;
+    }
+
+    /**
+     * Truncates the characters, measuring one character at a time.
+     */
+    private static String truncate(final char[] chars,
+                                   final String text,
+                                   final Font font,
+                                   final int maxWidth)
+    {
+        if (font.charsWidth(chars, 0, chars.length) <= maxWidth) {
+            return text;
+        }
+
+        final int availableWidth = maxWidth - font.stringWidth(ELLIPSIS);
+        int width = 0;
+        int end = 0;
+
+        while (end < chars.length) {
+            width += font.charWidth(chars[end]);
+
+            if (width > availableWidth) {
+                break;
+            }
+
+            end++;
+        }
+
+        while (end > 0 && chars[end - 1] == ' ') {
+            end--;
+        }
+
+        return new String(chars, 0, end) + ELLIPSIS;
+    }
+
+    /**
+     * Adds the characters from start to end, without the trailing spaces, as
+     * a line.
+     */
+    private static void addLine(final Vector lines,
+                                final char[] chars,
+                                final int start,
+                                int end)
+    {
+        while (end > start && chars[end - 1] == ' ') {
+            end--;
+        }
+
+        lines.addElement(new String(chars, start, end - start));
+    }
+
+    /**
+     * @return The index of the first non-space character at or after index.
+     */
+    private static int skipSpaces(final char[] chars, int index) {
+        while (index < chars.length && chars[index] == ' ') {
+            index++;
+        }
+
+        return index;
+    }
+
+    private static Layout getCachedLayout(final String text,
+                                          final Font font,
+                                          final int maxWidth,
+                                          final boolean truncated)
+    {
+        final Vector layouts = (Vector) cache.get(text);
+
+        if (layouts != null) {
+            for (int i = 0; i < layouts.size(); i++) {
+                final Layout layout = (Layout) layouts.elementAt(i);
+
+                if (layout.font == font
+                    && layout.maxWidth == maxWidth
+                    && layout.truncated == truncated)
+                {
+                    return layout;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static void putCachedLayout(final String text,
+                                        final Layout layout)
+    {
+        Vector layouts = (Vector) cache.get(text);
+
+        if (layouts == null) {
+            if (cache.size() >= MAX_CACHED_TEXTS) {
+                cache.clear();
+            }
+
+            layouts = new Vector(1);
+            cache.put(text, layouts);
+        }
+
+        layouts.addElement(layout);
+    }
+
+    /**
+     * A cached layout of a text.
+     */
+    private static final class Layout {
+        final Font font;
+        final int maxWidth;
+        final boolean truncated;
+        final String[] lines;
+
+        Layout(final Font font,
+               final int maxWidth,
+               final boolean truncated,
+               final String[] lines)
+        {
+            this.font = font;
+            this.maxWidth = maxWidth;
+            this.truncated = truncated;
+            this.lines = lines;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+import javax.microedition.lcdui.game.Sprite;
+
+/**
+ * Keeps a decoded image in fixed-size tiles and paints only the tiles that
+ * intersect the viewport at the given zoom level. The tiles scaled for zoom
+ * levels other than 100 % are cached, the least recently used tiles are
+ * evicted when the pixel budget of the cache is exceeded.
+ */
+public final class TiledImage {
+    // Constants
+    public static final int TILE_SIZE = 64;
+    public static final int[] ZOOM_LEVELS = {25, 33, 50, 75, 100, 150, 200}; // %
+    public static final int NATIVE_ZOOM_LEVEL = 4;
+    private static final int MIN_CACHED_TILES = 64;
+
+    // Members
+    private final Image[] tiles;
+    private final int columns;
+    private final int rows;
+    private final int width;
+    private final int height;
+    private final int maxCachedPixels;
+    private final int cacheSlots; // Room for all the tiles of one zoom level
+    private final int[] cacheKeys;
+    private final Image[] cacheImages;
+    private final long[] cacheLastUse;
+    private int cachedPixels = 0;
+    private long useCounter = 0;
+
+    /**
+     * Constructor. Splits the given image into tiles. The image itself is not
+     * referenced after this.
+     * @param image The decoded image.
+     * @param maxCachedPixels The maximum number of pixels held by the scaled
+     * tiles.
+     */
+    public TiledImage(final Image image, final int maxCachedPixels) {
+        width = image.getWidth();
+        height = image.getHeight();
+        columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        tiles = new Image[columns * rows];
+        this.maxCachedPixels = maxCachedPixels;
+        
+        // Zoomed out, the whole image is on the screen and every tile is
+        // painted, so fewer slots would scale the tiles again on each paint
+        cacheSlots = Math.max(MIN_CACHED_TILES, tiles.length);
+        cacheKeys = new int[cacheSlots];
+        cacheImages = new Image[cacheSlots];
+        cacheLastUse = new long[cacheSlots];
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                final int x = column * TILE_SIZE;
+                final int y = row * TILE_SIZE;
+
+                tiles[row * columns + column] = Image.createImage(image, x, y,
+                        Math.min(TILE_SIZE, width - x),
+                        Math.min(TILE_SIZE, height - y),
+                        Sprite.TRANS_NONE);
+            }
+        }
+
+        for (int i = 0; i < cacheSlots; i++) {
+            cacheKeys[i] = -1;
+        }
+    }
+
+    /**
+     * @param zoomLevel Index of the zoom level.
+     * @return The width of the image at the given zoom level.
+     */
+    public int getWidth(final int zoomLevel) {
+        return width * ZOOM_LEVELS[zoomLevel] / 100;
+    }
+
+    /**
+     * @param zoomLevel Index of the zoom level.
+     * @return The height of the image at the given zoom level.
+     */
+    public int getHeight(final int zoomLevel) {
+        return height * ZOOM_LEVELS[zoomLevel] / 100;
+    }
+
+    /**
+     * Returns the largest zoom level, up to the native size, at which the
+     * image fits in the given width.
+     * @param viewportWidth The width to fit in.
+     * @return Index of the zoom level.
+     */
+    public int getFitZoomLevel(final int viewportWidth) {
+        int zoomLevel = 0;
+
+        for (int i = NATIVE_ZOOM_LEVEL; i > 0; i--) {
+            if (getWidth(i) <= viewportWidth) {
+                zoomLevel = i;
+                break;
+            }
+        }
+
+        return zoomLevel;
+    }
+
+    /**
+     * Returns the zoom level closest to the given zoom percentage.
+     * @param percent The zoom in percents.
+     * @param minZoomLevel The smallest allowed zoom level.
+     * @return Index of the zoom level.
+     */
+    public static int getClosestZoomLevel(final int percent,
+                                          final int minZoomLevel)
+    {
+        int zoomLevel = minZoomLevel;
+
+        for (int i = minZoomLevel + 1; i < ZOOM_LEVELS.length; i++) {
+            if (Math.abs(ZOOM_LEVELS[i] - percent)
+                < Math.abs(ZOOM_LEVELS[zoomLevel] - percent))
+            {
+                zoomLevel = i;
+            }
+        }
+
+        return zoomLevel;
+    }
+
+    /**
+     * Paints the tiles intersecting the viewport.
+     * @param graphics The Graphics instance.
+     * @param x The X coordinate of the top-left corner of the image.
+     * @param y The Y coordinate of the top-left corner of the image.
+     * @param zoomLevel Index of the zoom level.
+     * @param viewportWidth The width of the viewport.
+     * @param viewportHeight The height of the viewport.
+     */
+    public void paint(final Graphics graphics,
+                      final int x,
+                      final int y,
+                      final int zoomLevel,
+                      final int viewportWidth,
+                      final int viewportHeight)
+    {
+        final int zoom = ZOOM_LEVELS[zoomLevel];
+        final int scaledTileSize = TILE_SIZE * zoom / 100;
+
+        if (scaledTileSize <= 0) {
+            return;
+        }
+
+        final int firstColumn = Math.max(0, -x / scaledTileSize - 1);
+        final int firstRow = Math.max(0, -y / scaledTileSize - 1);
+
+        for (int row = firstRow; row < rows; row++) {
+            final int top = y + row * TILE_SIZE * zoom / 100;
+
+            if (top >= viewportHeight) {
+                break;
+            }
+
+            final int bottom = y + Math.min((row + 1) * TILE_SIZE, height) * zoom / 100;
+
+            if (bottom <= 0) {
+                continue;
+            }
+
+            for (int column = firstColumn; column < columns; column++) {
+                final int left = x + column * TILE_SIZE * zoom / 100;
+
+                if (left >= viewportWidth) {
+                    break;
+                }
+
+                final int right = x + Math.min((column + 1) * TILE_SIZE, width) * zoom / 100;
+
+                if (right <= 0) {
+                    continue;
+                }
+
+                final Image tile = getTile(row * columns + column, zoomLevel,
+                        right - left, bottom - top);
+
+                if (tile != null) {
+                    graphics.drawImage(tile, left, top,
+                            Graphics.TOP | Graphics.LEFT);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The estimated number of bytes held by the tiles, 4 per pixel.
+     */
+    public int getFootprint() {
+        return (width * height + cachedPixels) * 4;
+    }
+
+    /**
+     * Releases the scaled tiles.
+     */
+    public void clearCache() {
+        for (int i = 0; i < cacheSlots; i++) {
+            cacheKeys[i] = -1;
+            cacheImages[i] = null;
+        }
+
+        cachedPixels = 0;
+    }
+
+    /**
+     * Returns the tile at the given zoom level, scaling and caching it if
+     * needed.
+     */
+    private Image getTile(final int index,
+                          final int zoomLevel,
+                          final int scaledWidth,
+                          final int scaledHeight)
+    {
+        if (zoomLevel == NATIVE_ZOOM_LEVEL) {
+            return tiles[index];
+        }
+
+        if (scaledWidth <= 0 || scaledHeight <= 0) {
+            return null;
+        }
+
+        final int key = zoomLevel * tiles.length + index;
+        int free = -1;
+
+        for (int i = 0; i < cacheSlots; i++) {
+            if (cacheKeys[i] == key) {
+                cacheLastUse[i] = ++useCounter;
+                return cacheImages[i];
+            }
+
+            if (free < 0 && cacheKeys[i] < 0) {
+                free = i;
+            }
+        }
+
+        final int pixels = scaledWidth * scaledHeight;
+
+        while (free < 0 || cachedPixels + pixels > maxCachedPixels) {
+            final int evicted = evictLeastRecentlyUsed();
+
+            if (evicted < 0) {
+                break;
+            }
+
+            if (free < 0) {
+                free = evicted;
+            }
+        }
+
+        final Image scaled = ImageUtils.scale(tiles[index], scaledWidth, scaledHeight);
+
+        if (free >= 0) {
+            cacheKeys[free] = key;
+            cacheImages[free] = scaled;
+            cacheLastUse[free] = ++useCounter;
+            cachedPixels += pixels;
+        }
+
+        return scaled;
+    }
+
+    /**
+     * Evicts the least recently used scaled tile.
+     * @return The index of the freed cache slot or -1 if the cache is empty.
+     */
+    private int evictLeastRecentlyUsed() {
+        int lru = -1;
+
+        for (int i = 0; i < cacheSlots; i++) {
+            if (cacheKeys[i] >= 0
+                && (lru < 0 || cacheLastUse[i] < cacheLastUse[lru]))
+            {
+                lru = i;
+            }
+        }
+
+        if (lru >= 0) {
+            cachedPixels -= cacheImages[lru].getWidth() * cacheImages[lru].getHeight();
+            cacheKeys[lru] = -1;
+            cacheImages[lru] = null;
+        }
+
+        return lru;
+    }
+}
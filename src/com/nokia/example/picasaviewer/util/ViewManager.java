@@ -8,14 +8,20 @@
 
 package com.nokia.example.picasaviewer.util;
 
+import java.util.TimerTask;
+
 import javax.microedition.lcdui.Display;
 import javax.microedition.lcdui.Displayable;
 
+import org.tantalum.PlatformUtils;
+import org.tantalum.Task;
 import org.tantalum.util.L;
 
 import com.nokia.example.picasaviewer.PicasaViewer;
 import com.nokia.example.picasaviewer.ui.DetailCanvas;
 import com.nokia.example.picasaviewer.ui.FeaturedCanvas;
+import com.nokia.example.picasaviewer.ui.GestureCanvas;
+import com.nokia.example.picasaviewer.ui.HistoryCanvas;
 import com.nokia.example.picasaviewer.ui.SearchCanvas;
 
 /**
@@ -26,10 +32,15 @@ public class ViewManager {
     public static final int FEATURED_VIEW_INDEX = 0;
     public static final int SEARCH_VIEW_INDEX = 1;
     public static final int DETAILS_VIEW_INDEX = 2;
+    public static final int HISTORY_VIEW_INDEX = 3;
     public static final int INITIAL_VIEW_INDEX = FEATURED_VIEW_INDEX;
     
     private static final int NO_VIEW = -1;
-    private static final int AMOUNT_OF_VIEWS = 3;
+    private static final int AMOUNT_OF_VIEWS = 4;
+    private static final boolean PREWARM_VIEWS = true;
+    private static final int PREWARM_DELAY = 1000; // ms after the first frame
+    private static final int[] PREWARMED_VIEWS = {
+        SEARCH_VIEW_INDEX, DETAILS_VIEW_INDEX};
     
     private final PicasaViewer picasaViewer;
     private final Display display;
@@ -40,13 +51,14 @@ public class ViewManager {
     private int previousViewIndex = NO_VIEW;
 
     /**
-     * Constructor. Instantiates views that are used in the application.
+     * Constructor. Instantiates the initial view.
      * 
-     * The constructor initializes all views the application needs. 
-     * These views are reused. This kind of behavior frees from instantiating 
-     * the views again.
+     * The other views are created when they are shown for the first time or,
+     * if PREWARM_VIEWS is set, when the application is idle after the first
+     * frame. These views are reused. This kind of behavior frees from
+     * instantiating the views again.
      * 
-     * Shuts down the application if views cannot be instantiated.
+     * Shuts down the application if the initial view cannot be instantiated.
      * @param picasaViewer 
      */
     public ViewManager(PicasaViewer picasaViewer) {
@@ -54,18 +66,67 @@ public class ViewManager {
         this.display = Display.getDisplay(picasaViewer);
         this.categoryBarSupported = createCategoryBar();
         
-        try {
-            // Initialize views
-            displayables[FEATURED_VIEW_INDEX] = new FeaturedCanvas(this);
-            displayables[SEARCH_VIEW_INDEX] = new SearchCanvas(this);
-            displayables[DETAILS_VIEW_INDEX] = new DetailCanvas(this);
-        }
-        catch(Exception e) {
-            L.e("Could not initialize views.", "Shutting down.", e);
+        if (getView(INITIAL_VIEW_INDEX) == null) {
             picasaViewer.notifyDestroyed();
         }
     }
 
+    /**
+     * Returns the view of the given index, creating it if it has not been
+     * created yet. Call from the UI thread.
+     * @param index The index of the view.
+     * @return The view or null if it can not be created.
+     */
+    private Displayable getView(final int index) {
+        if (displayables[index] == null) {
+            try {
+                switch (index) {
+                    case FEATURED_VIEW_INDEX:
+                        displayables[index] = new FeaturedCanvas(this);
+                        break;
+                    case SEARCH_VIEW_INDEX:
+                        displayables[index] = new SearchCanvas(this);
+                        break;
+                    case DETAILS_VIEW_INDEX:
+                        displayables[index] = new DetailCanvas(this);
+                        break;
+                    case HISTORY_VIEW_INDEX:
+                        displayables[index] = new HistoryCanvas(this);
+                        break;
+                }
+                
+                StartupTimer.mark("view " + index);
+            }
+            catch (Exception e) {
+                L.e("Could not initialize view.", "index=" + index, e);
+            }
+        }
+        
+        return displayables[index];
+    }
+
+    /**
+     * Creates the views which are likely to be shown next, one per idle
+     * moment, so that showing them the first time is fast.
+     * @param next The index in PREWARMED_VIEWS of the next view to create.
+     */
+    private void prewarmViews(final int next) {
+        if (next >= PREWARMED_VIEWS.length) {
+            return;
+        }
+        
+        Task.getTimer().schedule(new TimerTask() {
+            public void run() {
+                PlatformUtils.getInstance().runOnUiThread(new Runnable() {
+                    public void run() {
+                        getView(PREWARMED_VIEWS[next]);
+                        prewarmViews(next + 1);
+                    }
+                });
+            }
+        }, PREWARM_DELAY);
+    }
+
     /**
      * Switches to view defined by index. Index must be one of pre defined
      * indices listed in ViewManager's static final fields.
@@ -78,8 +139,14 @@ public class ViewManager {
          * previous view in a variable. In applications with multiple levels
          * of views, the opened views can be stored in Stack for back stepping.
          */
+        final Displayable displayable = getView(index);
+        
+        if (displayable == null) {
+            return;
+        }
+        
         previousViewIndex = currentViewIndex;
-        setCurrent(displayables[index]);
+        setCurrent(displayable);
         currentViewIndex = index;
     }
 
@@ -90,7 +157,7 @@ public class ViewManager {
      * is nothing where to go back.
      */
     public void goBackFromTabbedView() {
-        picasaViewer.notifyDestroyed();
+        picasaViewer.exit();
     }
 
     /**
@@ -104,7 +171,7 @@ public class ViewManager {
             previousViewIndex = ViewManager.NO_VIEW;
         } else {
             // No previous view. This indicates that we can shut down.
-            picasaViewer.notifyDestroyed();
+            picasaViewer.exit();
         }
     }
 
@@ -113,10 +180,51 @@ public class ViewManager {
      */
     public void showInitialView() {
         showView(ViewManager.INITIAL_VIEW_INDEX);
+        
+        // Serial calls are run after the pending repaints have been served
+        display.callSerially(new Runnable() {
+            public void run() {
+                StartupTimer.firstFrameShown();
+                
+                //#debug
+                L.i("Startup", StartupTimer.getMarks());
+                
+                if (PREWARM_VIEWS) {
+                    prewarmViews(0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Releases the resources of the views when the application is paused.
+     */
+    public void pause() {
+        for (int i = 0; i < AMOUNT_OF_VIEWS; i++) {
+            if (displayables[i] instanceof GestureCanvas) {
+                ((GestureCanvas) displayables[i]).onPause();
+            }
+        }
+    }
+
+    /**
+     * Restores the resources of the views when the application is resumed.
+     * @param callback Run once the current view has been repainted.
+     */
+    public void resume(final Runnable callback) {
+        for (int i = 0; i < AMOUNT_OF_VIEWS; i++) {
+            if (displayables[i] instanceof GestureCanvas) {
+                ((GestureCanvas) displayables[i]).onResume();
+            }
+        }
+        
+        // Serial calls are run after the pending repaints have been served
+        display.callSerially(callback);
     }
 
     /**
-     * @return The Displayables owned by this manager.
+     * @return The Displayables owned by this manager. The views which have
+     * not been created yet are null.
      */
     public Displayable[] getDisplayables() {
         return displayables;
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import java.util.Vector;
+
+import org.tantalum.util.L;
+
+/**
+ * A small pool of threads of its own for CPU bound work, e.g. decoding
+ * images. The Tantalum workers spend most of their time waiting for the
+ * network, so CPU bound work run in this pool never waits behind a slow HTTP
+ * request.
+ */
+public final class WorkerPool {
+    // Members
+    private final Vector queue = new Vector();
+    private final String name;
+    private int averageWait = 0; // ms, exponential moving average
+    private boolean shutdown = false;
+
+    /**
+     * Constructor. Starts the threads.
+     * @param name The name of the pool, used for the names of the threads.
+     * @param numberOfThreads The number of threads.
+     */
+    public WorkerPool(final String name, final int numberOfThreads) {
+        this.name = name;
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    runJobs();
+                }
+            });
+            thread.setPriority(Thread.MIN_PRIORITY + 1);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues the given job.
+     * @param job The job to run in one of the threads of the pool.
+     */
+    public synchronized void execute(final Runnable job) {
+        if (shutdown) {
+            return;
+        }
+
+        queue.addElement(new Job(job));
+        notify();
+    }
+
+    /**
+     * @return The number of jobs waiting for a thread.
+     */
+    public synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    /**
+     * @return The average time in milliseconds a job waits in the queue.
+     */
+    public synchronized int getAverageWait() {
+        return averageWait;
+    }
+
+    /**
+     * Drops the queued jobs and stops the threads once they have finished
+     * their current job.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        queue.removeAllElements();
+        notifyAll();
+    }
+
+    private void runJobs() {
+        while (true) {
+            final Job job;
+
+            synchronized (this) {
+                while (queue.isEmpty() && !shutdown) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                    }
+                }
+
+                if (shutdown) {
+                    return;
+                }
+
+                job = (Job) queue.elementAt(0);
+                queue.removeElementAt(0);
+
+                final int wait = (int) (System.currentTimeMillis() - job.queued);
+                averageWait = (averageWait * 7 + wait) / 8;
+            }
+
+            try {
+                job.runnable.run();
+            }
+            catch (Throwable t) {
+                //#debug
+                L.e("Job failed in worker pool", name, t);
+            }
+        }
+    }
+
+    /**
+     * A queued job.
+     */
+    private static final class Job {
+        final Runnable runnable;
+        final long queued = System.currentTimeMillis();
+
+        Job(final Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/**
+ * Copyright (c) 2013 Nokia Corporation. All rights reserved. Nokia and Nokia
+ * Connecting People are registered trademarks of Nokia Corporation. Oracle and
+ * Java are trademarks or registered trademarks of Oracle and/or its affiliates.
+ * Other product and company names mentioned herein may be trademarks or trade
+ * names of their respective owners. See LICENSE.TXT for license information.
+ */
+
+package com.nokia.example.picasaviewer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.microedition.midlet.MIDlet;
+import javax.microedition.rms.RecordStore;
+
+import org.tantalum.util.L;
+
+/**
+ * Chooses the number of network workers (the Tantalum workers) and decode
+ * workers at runtime.
+ *
+ * The counts are read from the previous session's tuning stored in RMS or,
+ * on the first launch, from the JAD properties Picasa-Network-Workers and
+ * Picasa-Decode-Workers. During the session the tuner samples how many
+ * network requests block a Tantalum worker, how long they take, how long
+ * the decode queue is and how long the decodes wait in it. The requests
+ * waiting in the HttpPipeline do not block a worker and are only counted
+ * for isIdle(). When the application exits, the counts are moved one step
+ * towards what the samples suggest and stored for the next launch.
+ */
+public final class WorkerTuner {
+    // Constants
+    public static final String NETWORK_WORKERS_PROPERTY = "Picasa-Network-Workers";
+    public static final String DECODE_WORKERS_PROPERTY = "Picasa-Decode-Workers";
+    private static final String RECORD_STORE_NAME = "PicasaWorkerTuning";
+    private static final int MIN_NETWORK_WORKERS = 2; // Required by Tantalum
+    private static final int MAX_NETWORK_WORKERS = 4; // More is mostly context switching
+    private static final int DEFAULT_NETWORK_WORKERS = 2;
+    private static final int MIN_DECODE_WORKERS = 1;
+    private static final int MAX_DECODE_WORKERS = 2;
+    private static final int SAMPLE_INTERVAL = 1000; // ms
+    private static final int MIN_SAMPLES = 20; // Samples needed before tuning
+    private static final int SLOW_REQUEST = 2000; // ms
+    private static final int SLOW_DECODE_WAIT = 400; // ms in the decode queue
+
+    // Members
+    private static WorkerTuner instance = null;
+    private int networkWorkers = DEFAULT_NETWORK_WORKERS;
+    private int decodeWorkers = MIN_DECODE_WORKERS;
+    private WorkerPool decodePool = null;
+    private Timer timer = null;
+    private int requestsInFlight = 0;
+    private int workerRequests = 0; // Requests blocking a Tantalum worker
+    private int averageLatency = 0; // ms, moving average of the worker requests
+    private long inFlightSum = 0;
+    private int workerSamples = 0; // Samples with worker requests
+    private long decodeQueueSum = 0;
+    private long decodeWaitSum = 0;
+    private int busySamples = 0; // Samples with any work at all
+    private int samples = 0;
+
+    /**
+     * @return The worker tuner instance.
+     */
+    public static synchronized WorkerTuner getInstance() {
+        if (instance == null) {
+            instance = new WorkerTuner();
+        }
+
+        return instance;
+    }
+
+    private WorkerTuner() {
+    }
+
+    /**
+     * Reads the worker counts. Called before Tantalum is initialized, so
+     * nothing is logged here.
+     * @param midlet The MIDlet, for reading the JAD properties.
+     */
+    public synchronized void init(final MIDlet midlet) {
+        networkWorkers = parse(midlet.getAppProperty(NETWORK_WORKERS_PROPERTY),
+                DEFAULT_NETWORK_WORKERS);
+        decodeWorkers = parse(midlet.getAppProperty(DECODE_WORKERS_PROPERTY),
+                MIN_DECODE_WORKERS);
+
+        try {
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() > 0) {
+                    final DataInputStream in = new DataInputStream(
+                            new ByteArrayInputStream(recordStore.getRecord(1)));
+                    networkWorkers = in.readInt();
+                    decodeWorkers = in.readInt();
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            // Use the values from the JAD
+        }
+
+        networkWorkers = clamp(networkWorkers,
+                MIN_NETWORK_WORKERS, MAX_NETWORK_WORKERS);
+        decodeWorkers = clamp(decodeWorkers,
+                MIN_DECODE_WORKERS, MAX_DECODE_WORKERS);
+    }
+
+    /**
+     * @return The number of Tantalum workers to start.
+     */
+    public synchronized int getNetworkWorkers() {
+        return networkWorkers;
+    }
+
+    /**
+     * @return The pool for decoding images, created on first use.
+     */
+    public synchronized WorkerPool getDecodePool() {
+        if (decodePool == null) {
+            decodePool = new WorkerPool("decode", decodeWorkers);
+        }
+
+        return decodePool;
+    }
+
+    /**
+     * Starts sampling the worker load.
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+
+        timer = new Timer();
+        timer.schedule(new TimerTask() {
+            public void run() {
+                sample();
+            }
+        }, SAMPLE_INTERVAL, SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Stops sampling and stores the tuned worker counts for the next launch.
+     */
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        }
+
+        timer.cancel();
+        timer = null;
+
+        if (samples < MIN_SAMPLES || busySamples == 0) {
+            return;
+        }
+
+        final int tunedNetworkWorkers = clamp(
+                networkWorkers + tuneNetworkWorkers(),
+                MIN_NETWORK_WORKERS, MAX_NETWORK_WORKERS);
+        final int tunedDecodeWorkers = clamp(
+                decodeWorkers + tuneDecodeWorkers(),
+                MIN_DECODE_WORKERS, MAX_DECODE_WORKERS);
+
+        //#debug
+        L.i("Worker tuning", "network=" + tunedNetworkWorkers + " decode=" + tunedDecodeWorkers + " latency=" + averageLatency + " decode wait=" + decodeWaitSum / busySamples);
+
+        save(tunedNetworkWorkers, tunedDecodeWorkers);
+    }
+
+    /**
+     * Call when a network request is started.
+     */
+    public synchronized void requestStarted() {
+        requestsInFlight++;
+    }
+
+    /**
+     * Call when a network request has finished or has been canceled.
+     */
+    public synchronized void requestFinished() {
+        if (requestsInFlight > 0) {
+            requestsInFlight--;
+        }
+    }
+
+    /**
+     * Call when a network request is started on a Tantalum worker, e.g. an
+     * HttpGetter.
+     */
+    public synchronized void workerRequestStarted() {
+        workerRequests++;
+    }
+
+    /**
+     * Call when a network request on a Tantalum worker has finished or has
+     * been canceled.
+     * @param latency The duration of the request in milliseconds.
+     */
+    public synchronized void workerRequestFinished(final int latency) {
+        if (workerRequests > 0) {
+            workerRequests--;
+        }
+
+        averageLatency = (averageLatency * 7 + latency) / 8;
+    }
+
+    /**
+     * @return True if no network requests are in flight and the decode
+     * queue is empty.
+     */
+    public synchronized boolean isIdle() {
+        return requestsInFlight == 0
+                && workerRequests == 0
+                && (decodePool == null || decodePool.getQueueLength() == 0);
+    }
+
+    /**
+     * Stops the decode pool, unless it was never created.
+     */
+    public synchronized void shutdownDecodePool() {
+        if (decodePool != null) {
+            decodePool.shutdown();
+        }
+    }
+
+    private synchronized void sample() {
+        final int decodeQueue =
+                decodePool != null ? decodePool.getQueueLength() : 0;
+        final int decodeWait =
+                decodePool != null ? decodePool.getAverageWait() : 0;
+
+        samples++;
+
+        if (requestsInFlight > 0 || workerRequests > 0 || decodeQueue > 0) {
+            busySamples++;
+            inFlightSum += workerRequests;
+            decodeQueueSum += decodeQueue;
+            decodeWaitSum += decodeWait;
+        }
+
+        if (workerRequests > 0) {
+            workerSamples++;
+        }
+    }
+
+    /**
+     * Requests waiting for a worker while the requests are slow means the
+     * workers are blocked on the network and more of them help. Workers idle
+     * most of the time means one less is enough. A session with all the
+     * requests in the HttpPipeline says nothing about the workers.
+     * @return The change to the number of network workers.
+     */
+    private int tuneNetworkWorkers() {
+        final long averageInFlight = inFlightSum / busySamples;
+
+        if (workerSamples == 0) {
+            return 0;
+        }
+
+        if (averageInFlight > 2 * networkWorkers
+            && averageLatency > SLOW_REQUEST)
+        {
+            return 1;
+        }
+
+        if (averageInFlight < networkWorkers / 2) {
+            return -1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * A long decode queue, or decodes waiting long in a short one, means the
+     * thumbnails are shown late and another worker helps. An empty queue
+     * with decodes barely waiting means one less is enough.
+     * @return The change to the number of decode workers.
+     */
+    private int tuneDecodeWorkers() {
+        final long averageQueue = decodeQueueSum / busySamples;
+        final long averageWait = decodeWaitSum / busySamples;
+
+        if (averageQueue > decodeWorkers || averageWait > SLOW_DECODE_WAIT) {
+            return 1;
+        }
+
+        if (averageQueue == 0 && averageWait < SLOW_DECODE_WAIT / 4) {
+            return -1;
+        }
+
+        return 0;
+    }
+
+    private void save(final int networkWorkers, final int decodeWorkers) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(networkWorkers);
+            out.writeInt(decodeWorkers);
+
+            final byte[] record = bytes.toByteArray();
+            final RecordStore recordStore =
+                    RecordStore.openRecordStore(RECORD_STORE_NAME, true);
+
+            try {
+                if (recordStore.getNumRecords() == 0) {
+                    recordStore.addRecord(record, 0, record.length);
+                }
+                else {
+                    recordStore.setRecord(1, record, 0, record.length);
+                }
+            }
+            finally {
+                recordStore.closeRecordStore();
+            }
+        }
+        catch (Exception e) {
+            //#debug
+            L.e("Can not save worker tuning", RECORD_STORE_NAME, e);
+        }
+    }
+
+    private static int parse(final String value, final int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            }
+            catch (NumberFormatException e) {
+            }
+        }
+
+        return defaultValue;
+    }
+
+    private static int clamp(final int value, final int min, final int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}